@@ -0,0 +1,195 @@
+package examp.org.com.dbquerzapp.benchmark;
+
+import com.example.model.QueryResponse;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import examp.org.com.dbquerzapp.config.JsonConfig;
+import examp.org.com.dbquerzapp.service.QueryGovernor;
+import examp.org.com.dbquerzapp.service.QueryOptions;
+import examp.org.com.dbquerzapp.service.StreamingColumnarRowHandler;
+import examp.org.com.dbquerzapp.service.StreamingCompactJsonRowHandler;
+import examp.org.com.dbquerzapp.service.StreamingJsonRowHandler;
+import examp.org.com.dbquerzapp.service.StreamingResultWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of turning a users result into the JSON body of /execute-query, against an
+ * embedded H2 database in PostgreSQL mode: queryForList's List&lt;Map&gt; with Jackson's reflective
+ * serializers, the ColumnarRows the controller materializes with the reflective and with the
+ * direct QueryResponse serializer, and the row-by-row streaming path in each of its formats.
+ * The returned body size shows the payload difference between the formats; the gc profiler's
+ * {@code gc.alloc.rate.norm} divided by {@code rows} is the bytes allocated per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class QueryResponseSerializationBenchmark {
+
+    static final String SQL = "SELECT * FROM users";
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    SingleConnectionDataSource dataSource;
+    JdbcTemplate jdbcTemplate;
+    ObjectMapper objectMapper;
+    ObjectMapper directObjectMapper;
+    QueryGovernor governor;
+
+    @Setup
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS users");
+        jdbcTemplate.execute("""
+                CREATE TABLE users (
+                    id BIGINT PRIMARY KEY,
+                    first_name VARCHAR(255) NOT NULL,
+                    last_name VARCHAR(255) NOT NULL,
+                    age INT NOT NULL,
+                    email VARCHAR(255) NOT NULL,
+                    phone VARCHAR(20),
+                    address VARCHAR(255))""");
+        jdbcTemplate.update("""
+                INSERT INTO users (id, first_name, last_name, age, email, phone, address)
+                SELECT X, 'First' || X, 'Last' || MOD(X, 1000), MOD(X, 90), 'user' || X || '@test.com',
+                       '123-456-' || MOD(X, 10000), MOD(X, 500) || ' Main St'
+                FROM SYSTEM_RANGE(1, ?)""", rows);
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .build();
+        JsonConfig jsonConfig = new JsonConfig();
+        Jackson2ObjectMapperBuilder directBuilder = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .modulesToInstall(jsonConfig.queryResponseModule());
+        jsonConfig.pooledJsonBuffers().customize(directBuilder);
+        directObjectMapper = directBuilder.build();
+        governor = new QueryGovernor(null, 0, DataSize.ofBytes(0), DataSize.ofBytes(0), Duration.ofSeconds(1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE users");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public long materialized() throws IOException {
+        List<Map<String, Object>> results = jdbcTemplate.queryForList(SQL);
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(Boolean.TRUE);
+        response.setData(new ArrayList<>(results));
+        response.setExecutionTimeMs(0L);
+        CountingOutputStream out = new CountingOutputStream();
+        objectMapper.writeValue(out, response);
+        return out.count;
+    }
+
+    /** Rows read into ColumnarRows by the governor, with the reflective QueryResponse serializer. */
+    @Benchmark
+    public long materializedColumnar() throws IOException {
+        return write(objectMapper, columnarResponse());
+    }
+
+    /**
+     * The controller's path: ColumnarRows, the hand-written QueryResponse serializer and pooled
+     * output buffers.
+     */
+    @Benchmark
+    public long materializedDirect() throws IOException {
+        return write(directObjectMapper, columnarResponse());
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        stream(new StreamingJsonRowHandler(objectMapper.createGenerator(out, JsonEncoding.UTF8), 1000));
+        return out.count;
+    }
+
+    @Benchmark
+    public long streamingCompact() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        stream(new StreamingCompactJsonRowHandler(objectMapper.createGenerator(out, JsonEncoding.UTF8), 1000));
+        return out.count;
+    }
+
+    @Benchmark
+    public long streamingColumnar() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        stream(new StreamingColumnarRowHandler(out, 1000));
+        return out.count;
+    }
+
+    private void stream(StreamingResultWriter writer) throws IOException {
+        try (writer) {
+            writer.begin();
+            jdbcTemplate.query(SQL, writer);
+            writer.end(null, 0, 0L);
+        }
+    }
+
+    private QueryResponse columnarResponse() {
+        List<Map<String, Object>> results;
+        try (QueryGovernor.Scope scope = governor.materializing(QueryOptions.NONE)) {
+            results = jdbcTemplate.query(SQL, scope::extract);
+        }
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(Boolean.TRUE);
+        response.setData(asData(results));
+        response.setExecutionTimeMs(0L);
+        return response;
+    }
+
+    private static long write(ObjectMapper mapper, QueryResponse response) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        mapper.writeValue(out, response);
+        return out.count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asData(List<Map<String, Object>> rows) {
+        return (List<Object>) (List<?>) rows;
+    }
+
+    /** Discards the body but keeps its size, so the JIT cannot drop the serialization. */
+    static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package examp.org.com.dbquerzapp.benchmark;
+
+import examp.org.com.dbquerzapp.service.CompiledQuery;
+import examp.org.com.dbquerzapp.service.CompiledQueryCache;
+import examp.org.com.dbquerzapp.service.QueryMetrics;
+import examp.org.com.dbquerzapp.service.QueryService;
+import examp.org.com.dbquerzapp.validator.SqlValidator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed per-request cost of turning a query identifier into executable SQL:
+ * reading the classpath file on every call versus the compiled query cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryServiceBenchmark {
+
+    private QueryService queryService;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        queryService = new QueryService();
+        inject(queryService, "sqlValidator", new SqlValidator());
+        inject(queryService, "compiledQueryCache", new CompiledQueryCache(256));
+        inject(queryService, "queryMetrics", new QueryMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    public String loadQueryFromFile() throws IOException {
+        return queryService.loadQueryFromFile("get_user_data");
+    }
+
+    @Benchmark
+    public CompiledQuery getCompiledQuery() throws IOException {
+        return queryService.getCompiledQuery("get_user_data");
+    }
+
+    static void inject(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
@@ -0,0 +1,85 @@
+package examp.org.com.dbquerzapp.benchmark;
+
+import examp.org.com.dbquerzapp.validator.SqlValidator;
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation cost over a corpus of realistic and adversarial saved queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SqlValidatorBenchmark {
+
+    @Param({"short", "wide50", "deepCase", "manyUnions", "pathological"})
+    public String query;
+
+    private SqlValidator sqlValidator;
+    private String sql;
+
+    @Setup
+    public void setUp() {
+        sqlValidator = new SqlValidator();
+        sql = switch (query) {
+            case "short" -> "SELECT * FROM users WHERE id = 1";
+            case "wide50" -> wideSelect(50);
+            case "deepCase" -> deepCase(40);
+            case "manyUnions" -> manyUnions(25);
+            case "pathological" -> pathological(200);
+            default -> throw new IllegalArgumentException("Unknown query: " + query);
+        };
+    }
+
+    @Benchmark
+    public ValidationResult validateSql() {
+        return sqlValidator.validateSql(sql);
+    }
+
+    static String wideSelect(int columns) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < columns; i++) {
+            sql.append(i == 0 ? "" : ", ").append("u.column_").append(i).append(" AS c").append(i);
+        }
+        return sql.append(" FROM users u WHERE u.age >= 18 AND u.email LIKE '%@test.com' ORDER BY u.column_0 LIMIT 100").toString();
+    }
+
+    static String deepCase(int branches) {
+        StringBuilder sql = new StringBuilder("SELECT id, (CASE");
+        for (int i = 0; i < branches; i++) {
+            sql.append(" WHEN age BETWEEN ").append(i * 10).append(" AND ").append(i * 10 + 9)
+               .append(" THEN 'bucket_").append(i).append('\'');
+        }
+        return sql.append(" ELSE 'other' END) AS age_bucket FROM users").toString();
+    }
+
+    static String manyUnions(int branches) {
+        StringBuilder sql = new StringBuilder("SELECT id, email FROM users WHERE age = 0");
+        for (int i = 1; i < branches; i++) {
+            sql.append(" UNION ALL SELECT id, email FROM users WHERE age = ").append(i);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Many CASE items followed by a dangling WHERE: the shape that made the old lazy
+     * CASE branches of the SELECT regex backtrack before finally failing.
+     */
+    static String pathological(int items) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < items; i++) {
+            sql.append(i == 0 ? "" : ", ")
+               .append("(CASE WHEN a").append(i).append(" = 1 THEN b WHEN c = 2 THEN d ELSE e END) x").append(i);
+        }
+        return sql.append(" FROM users WHERE").toString();
+    }
+}
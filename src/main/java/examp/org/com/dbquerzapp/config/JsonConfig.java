@@ -0,0 +1,38 @@
+package examp.org.com.dbquerzapp.config;
+
+import com.example.model.QueryResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import examp.org.com.dbquerzapp.service.QueryResponseSerializer;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JsonConfig {
+
+    /**
+     * Serializes QueryResponse without reflection, for single and batch responses alike; Spring
+     * Boot registers Module beans with the application's ObjectMapper.
+     */
+    @Bean
+    public Module queryResponseModule() {
+        SimpleModule module = new SimpleModule("DbQuerzAppQueryResponse");
+        module.addSerializer(QueryResponse.class, new QueryResponseSerializer());
+        return module;
+    }
+
+    /**
+     * Jackson recycles its output buffers per thread by default, which does nothing on virtual
+     * threads: every request would allocate fresh buffers. A shared pool lets all requests,
+     * streamed ones included, reuse the same buffers.
+     */
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer pooledJsonBuffers() {
+        return builder -> builder.factory(JsonFactory.builder()
+                .recyclerPool(JsonRecyclerPools.newConcurrentDequePool())
+                .build());
+    }
+}
@@ -0,0 +1,57 @@
+package examp.org.com.dbquerzapp.config;
+
+import examp.org.com.dbquerzapp.service.QueryCancellation;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Cancels the statement of a streamed query when its async request fails, which is how the
+ * container reports a client that disconnected, or times out. Without it the database keeps
+ * executing a query nobody reads until the next row fails to be written. The admission slots
+ * stay with a body that has started, which still holds its connection until the cancelled
+ * statement returns; those of a body that never started are released when the async request
+ * completes.
+ */
+@Configuration
+public class QueryCancellationConfig implements WebMvcConfigurer {
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+                cancel(request);
+                return RESULT_NONE;
+            }
+
+            @Override
+            public <T> Object handleError(NativeWebRequest request, Callable<T> task, Throwable t) {
+                cancel(request);
+                return RESULT_NONE;
+            }
+
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                if (cancellation(request) instanceof QueryCancellation cancellation) {
+                    cancellation.releaseIfNotStarted();
+                }
+            }
+        });
+    }
+
+    private static void cancel(NativeWebRequest request) {
+        if (cancellation(request) instanceof QueryCancellation cancellation) {
+            cancellation.cancel();
+        }
+    }
+
+    private static Object cancellation(NativeWebRequest request) {
+        return request.getAttribute(QueryCancellation.ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+}
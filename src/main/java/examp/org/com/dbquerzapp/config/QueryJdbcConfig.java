@@ -0,0 +1,29 @@
+package examp.org.com.dbquerzapp.config;
+
+import examp.org.com.dbquerzapp.service.GovernedJdbcTemplate;
+import examp.org.com.dbquerzapp.service.QueryGovernor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class QueryJdbcConfig {
+
+    /**
+     * Template used to run saved queries. Every execution is a PreparedStatement, so the
+     * PostgreSQL driver can keep a server-side plan per query and connection; the fetch size
+     * only takes effect inside a transaction, i.e. on the streaming path. Timeouts and row
+     * limits of the {@link QueryGovernor} are applied per statement.
+     */
+    @Bean
+    public NamedParameterJdbcTemplate queryJdbcTemplate(DataSource dataSource,
+                                                        @Value("${dbquerzapp.query.fetch-size:500}") int fetchSize) {
+        JdbcTemplate jdbcTemplate = new GovernedJdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        return new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+}
@@ -0,0 +1,99 @@
+package examp.org.com.dbquerzapp.config;
+
+import examp.org.com.dbquerzapp.service.ExportService;
+import examp.org.com.dbquerzapp.service.QueryAdmissionGate;
+import examp.org.com.dbquerzapp.service.QueryCatalog;
+import examp.org.com.dbquerzapp.service.QuerySubscriptions;
+import examp.org.com.dbquerzapp.service.ReplicaRouter;
+import examp.org.com.dbquerzapp.service.WorkloadScheduler;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class QueryMetricsConfig {
+
+    /**
+     * Occupancy of the admission queue, next to HikariCP's own pool gauges: a full queue with an
+     * idle pool points at slow queries, not at a pool that is too small.
+     */
+    @Bean
+    public MeterBinder queryAdmissionMetrics(QueryAdmissionGate admissionGate) {
+        return registry -> {
+            Gauge.builder("dbquerzapp.query.admission.available", admissionGate, QueryAdmissionGate::getAvailableSlots)
+                    .description("Query slots currently free")
+                    .register(registry);
+            Gauge.builder("dbquerzapp.query.admission.queued", admissionGate, QueryAdmissionGate::getQueued)
+                    .description("Queries waiting for a slot")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Running and waiting queries per workload class, to tune the class quotas; the wait time per
+     * class is the {@value WorkloadScheduler#WAIT} timer.
+     */
+    @Bean
+    public MeterBinder workloadMetrics(WorkloadScheduler workloadScheduler) {
+        return registry -> {
+            for (String workloadClass : workloadScheduler.getWorkloadClasses()) {
+                Gauge.builder("dbquerzapp.query.workload.running", workloadScheduler, scheduler -> scheduler.getRunning(workloadClass))
+                        .description("Queries running in the workload class")
+                        .tag("class", workloadClass)
+                        .register(registry);
+                Gauge.builder("dbquerzapp.query.workload.queued", workloadScheduler, scheduler -> scheduler.getQueued(workloadClass))
+                        .description("Queries waiting for a slot of the workload class")
+                        .tag("class", workloadClass)
+                        .register(registry);
+            }
+        };
+    }
+
+    /** Replicas currently in rotation; 0 while replicas are configured means every query hits the primary. */
+    @Bean
+    public MeterBinder replicaMetrics(ReplicaRouter replicaRouter) {
+        return registry -> Gauge.builder("dbquerzapp.query.replica.available", replicaRouter, ReplicaRouter::getAvailableReplicas)
+                .description("Read replicas passing their health and lag check")
+                .register(registry);
+    }
+
+    /** Saved queries found at startup or since, and how many of them fail validation. */
+    @Bean
+    public MeterBinder queryCatalogMetrics(QueryCatalog queryCatalog) {
+        return registry -> {
+            Gauge.builder("dbquerzapp.query.catalog.queries", queryCatalog, catalog -> catalog.getFileNames().size())
+                    .description("Saved queries in the catalog")
+                    .register(registry);
+            Gauge.builder("dbquerzapp.query.catalog.invalid", queryCatalog, catalog -> catalog.getInvalidQueries().size())
+                    .description("Saved queries that fail validation")
+                    .register(registry);
+        };
+    }
+
+    /** Background exports running and waiting; running exports hold admission slots as well. */
+    @Bean
+    public MeterBinder exportMetrics(ExportService exportService) {
+        return registry -> {
+            Gauge.builder("dbquerzapp.query.export.running", exportService, ExportService::getRunning)
+                    .description("Exports currently running")
+                    .register(registry);
+            Gauge.builder("dbquerzapp.query.export.queued", exportService, ExportService::getQueued)
+                    .description("Exports waiting for an export thread")
+                    .register(registry);
+        };
+    }
+
+    /** Live subscribers and the queries they watch; each watched query runs once per change, whatever the subscriber count. */
+    @Bean
+    public MeterBinder subscriptionMetrics(QuerySubscriptions querySubscriptions) {
+        return registry -> {
+            Gauge.builder("dbquerzapp.query.subscription.subscribers", querySubscriptions, QuerySubscriptions::getSubscriberCount)
+                    .description("Clients connected to live query subscriptions")
+                    .register(registry);
+            Gauge.builder("dbquerzapp.query.subscription.queries", querySubscriptions, QuerySubscriptions::getFeedCount)
+                    .description("Saved queries with at least one live subscriber")
+                    .register(registry);
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package examp.org.com.dbquerzapp.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import examp.org.com.dbquerzapp.service.ReplicaRouter;
+import examp.org.com.dbquerzapp.service.ReplicaRoutingDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Configuration
+public class ReplicaDataSourceConfig {
+
+    /**
+     * One read-only pool per replica URL in dbquerzapp.query.replica.urls (comma separated), with
+     * the credentials and driver of the primary unless set separately. A replica that is down at
+     * startup does not fail the application; the health check keeps it out of rotation.
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public ReplicaRouter replicaRouter(@Value("${dbquerzapp.query.replica.urls:}") String[] urls,
+                                       @Value("${dbquerzapp.query.replica.username:${spring.datasource.username:}}") String username,
+                                       @Value("${dbquerzapp.query.replica.password:${spring.datasource.password:}}") String password,
+                                       @Value("${spring.datasource.driver-class-name:}") String driverClassName,
+                                       @Value("${dbquerzapp.query.replica.pool-size:10}") int poolSize,
+                                       @Value("${dbquerzapp.query.replica.max-lag:10s}") Duration maxLag,
+                                       @Value("${dbquerzapp.query.replica.lag-query:}") String lagQuery,
+                                       @Value("${dbquerzapp.query.replica.health-check-interval:5s}") Duration healthCheckInterval,
+                                       MeterRegistry meterRegistry) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            String name = "replica-" + (replicas.size() + 1);
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("HikariPool-DbQuerzApp-" + name);
+            config.setJdbcUrl(url.strip());
+            config.setUsername(username);
+            config.setPassword(password);
+            if (!driverClassName.isBlank()) {
+                config.setDriverClassName(driverClassName);
+            }
+            config.setMaximumPoolSize(poolSize);
+            config.setReadOnly(true);
+            config.setInitializationFailTimeout(-1);
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.put(name, new HikariDataSource(config));
+        }
+        return new ReplicaRouter(replicas, maxLag, lagQuery.isBlank() ? ReplicaRouter.POSTGRES_LAG_QUERY : lagQuery, healthCheckInterval);
+    }
+
+    /**
+     * Replaces the auto-configured data source once replicas are configured. The primary pool is
+     * still built from spring.datasource.*; the routing data source in front of it is the one
+     * JPA, the transaction manager and the query templates use. Connections are opened lazily,
+     * at the first statement, so a transaction started before the query picks its route still
+     * lands on the right database.
+     */
+    @Configuration
+    @ConditionalOnProperty("dbquerzapp.query.replica.urls")
+    static class Routing {
+
+        @Bean
+        @ConfigurationProperties("spring.datasource.hikari")
+        public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+            return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        }
+
+        @Bean
+        @Primary
+        public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaRouter replicaRouter) {
+            return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primaryDataSource, replicaRouter));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package examp.org.com.dbquerzapp.config;
+
+import examp.org.com.dbquerzapp.service.WorkloadScheduler;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.Map;
+
+@Configuration
+public class WorkloadConfig {
+
+    /**
+     * Workload classes from dbquerzapp.query.workload.classes.&lt;name&gt;.* and known clients from
+     * dbquerzapp.query.workload.clients.&lt;key&gt;.*; both are maps, so they are bound here rather
+     * than injected with @Value.
+     */
+    @Bean
+    public WorkloadScheduler workloadScheduler(Environment environment,
+                                               @Value("${dbquerzapp.query.workload.default-class:interactive}") String defaultClass,
+                                               @Value("${dbquerzapp.query.workload.client-header:X-Client-Id}") String clientHeader,
+                                               @Value("${dbquerzapp.query.admission.retry-after:2s}") Duration retryAfter,
+                                               MeterRegistry meterRegistry) {
+        Binder binder = Binder.get(environment);
+        Map<String, WorkloadScheduler.ClassSettings> classes = binder.bind("dbquerzapp.query.workload.classes",
+                Bindable.mapOf(String.class, WorkloadScheduler.ClassSettings.class)).orElse(Map.of());
+        Map<String, WorkloadScheduler.ClientSettings> clients = binder.bind("dbquerzapp.query.workload.clients",
+                Bindable.mapOf(String.class, WorkloadScheduler.ClientSettings.class)).orElse(Map.of());
+        return new WorkloadScheduler(classes, clients, defaultClass, clientHeader, retryAfter, meterRegistry);
+    }
+}
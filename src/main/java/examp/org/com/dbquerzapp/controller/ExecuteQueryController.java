@@ -1,19 +1,54 @@
 package examp.org.com.dbquerzapp.controller;
 
 import com.example.api.ExecuteQueryApi;
+import com.example.model.BatchQueryRequest;
+import com.example.model.BatchQueryResponse;
+import com.example.model.CacheStatsResponse;
+import com.example.model.ExecuteQueryRequest;
+import com.example.model.QueryDelta;
 import com.example.model.QueryResponse;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import examp.org.com.dbquerzapp.service.ColumnarRows;
+import examp.org.com.dbquerzapp.service.CompiledQuery;
+import examp.org.com.dbquerzapp.service.CompiledQueryCache;
+import examp.org.com.dbquerzapp.service.QueryAdmissionGate;
+import examp.org.com.dbquerzapp.service.QueryCatalog;
+import examp.org.com.dbquerzapp.service.QueryMetrics;
+import examp.org.com.dbquerzapp.service.QueryPage;
+import examp.org.com.dbquerzapp.service.QueryRejectedException;
+import examp.org.com.dbquerzapp.service.QueryResultCache;
 import examp.org.com.dbquerzapp.service.QueryService;
+import examp.org.com.dbquerzapp.service.QuerySnapshots;
+import examp.org.com.dbquerzapp.service.RequestLogSampler;
+import examp.org.com.dbquerzapp.service.ResultVersions;
+import examp.org.com.dbquerzapp.service.TruncatedRows;
+import examp.org.com.dbquerzapp.service.VersionedRows;
+import examp.org.com.dbquerzapp.service.WorkloadScheduler;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 @RestController
 @Slf4j
@@ -22,96 +57,408 @@ public class ExecuteQueryController implements ExecuteQueryApi {
     @Autowired
     private QueryService queryService;
 
+    @Autowired
+    private CompiledQueryCache compiledQueryCache;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private QueryAdmissionGate admissionGate;
+
+    @Autowired
+    private QueryCatalog queryCatalog;
+
+    @Autowired
+    private QueryMetrics queryMetrics;
+
+    @Autowired
+    private RequestLogSampler requestLogSampler;
+
+    @Autowired
+    private WorkloadScheduler workloadScheduler;
+
+    @Autowired
+    private QuerySnapshots querySnapshots;
+
+    @Autowired
+    private ResultVersions resultVersions;
+
+    @Value("${dbquerzapp.query.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${dbquerzapp.query.batch.max-size:20}")
+    private int maxBatchSize;
+
+    @Value("${dbquerzapp.query.batch.max-concurrency:4}")
+    private int batchConcurrency;
+
+    @Value("${dbquerzapp.query.catalog.cache-max-age:1m}")
+    private Duration filesMaxAge;
+
+    @Override
+    public ResponseEntity<QueryResponse> executeQuery(String queryIdentifier, Integer pageSize, String pageToken, String sinceVersion) {
+        return execute(queryIdentifier, Map.of(), pageSize, pageToken, sinceVersion, false);
+    }
+
     @Override
-    public ResponseEntity<QueryResponse> executeQuery(String queryIdentifier) {
+    public ResponseEntity<QueryResponse> executeQueryWithParameters(ExecuteQueryRequest executeQueryRequest) {
+        return execute(executeQueryRequest.getQueryIdentifier(), executeQueryRequest.getParameters(),
+                executeQueryRequest.getPageSize(), executeQueryRequest.getPageToken(), executeQueryRequest.getSinceVersion(), false);
+    }
+
+    @Override
+    public ResponseEntity<BatchQueryResponse> executeBatch(BatchQueryRequest batchQueryRequest) {
+        long startTime = System.currentTimeMillis();
+        List<ExecuteQueryRequest> queries = batchQueryRequest.getQueries();
+        BatchQueryResponse response = new BatchQueryResponse();
+        if (queries == null || queries.isEmpty() || queries.size() > maxBatchSize) {
+            response.setSuccess(Boolean.FALSE);
+            response.setError("A batch must contain between 1 and " + maxBatchSize + " queries");
+            response.setCode(400);
+            response.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+            return ResponseEntity.badRequest().body(response);
+        }
+        boolean consistent = Boolean.TRUE.equals(batchQueryRequest.getConsistent());
+        List<QueryResponse> results;
+        try {
+            results = consistent ? executeInSnapshot(queries) : executeInParallel(queries);
+        } catch (QueryRejectedException e) {
+            response.setSuccess(Boolean.FALSE);
+            response.setError(e.getMessage());
+            response.setCode(503);
+            response.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(response);
+        } catch (RuntimeException e) {
+            long executionTime = System.currentTimeMillis() - startTime;
+            log.error("Batch of {} queries failed after {} ms", queries.size(), executionTime, e);
+            response.setSuccess(Boolean.FALSE);
+            response.setError("Error while executing batch");
+            response.setCode(500);
+            response.setExecutionTimeMs(executionTime);
+            return ResponseEntity.internalServerError().body(response);
+        }
+        long executionTime = System.currentTimeMillis() - startTime;
+        long failed = results.stream().filter(result -> !Boolean.TRUE.equals(result.getSuccess())).count();
+        response.setSuccess(failed == 0);
+        response.setResults(results);
+        response.setExecutionTimeMs(executionTime);
+        if (log.isInfoEnabled() && requestLogSampler.sample()) {
+            log.info("Batch finished: queries={} failed={} consistent={} time_ms={}", results.size(), failed, consistent, executionTime);
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Runs every query of the batch on a virtual thread, at most {@code max-concurrency} at once.
+     * Each one goes through admission and the result cache like a single request.
+     */
+    private List<QueryResponse> executeInParallel(List<ExecuteQueryRequest> queries) {
+        Semaphore slots = new Semaphore(Math.max(1, batchConcurrency));
+        // the queries are admitted for the client of the batch request
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<QueryResponse>> futures = new ArrayList<>(queries.size());
+            for (ExecuteQueryRequest query : queries) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    slots.acquireUninterruptibly();
+                    RequestContextHolder.setRequestAttributes(requestAttributes);
+                    try {
+                        return execute(query.getQueryIdentifier(), query.getParameters(),
+                                query.getPageSize(), query.getPageToken(), query.getSinceVersion(), false).getBody();
+                    } finally {
+                        RequestContextHolder.resetRequestAttributes();
+                        slots.release();
+                    }
+                }, executor));
+            }
+            return futures.stream().map(CompletableFuture::join).toList();
+        }
+    }
+
+    /**
+     * Runs the queries one after another in a single snapshot transaction. The batch takes one
+     * admission slot for all of them, since they share one connection, and bypasses the result
+     * cache so every result comes from the same snapshot. Each query runs in a savepoint, so one
+     * that fails at the database does not abort the transaction for the queries after it.
+     */
+    private List<QueryResponse> executeInSnapshot(List<ExecuteQueryRequest> queries) {
+        try (QueryAdmissionGate.Permit share = workloadScheduler.acquire(workloadScheduler.resolve(null));
+             QueryAdmissionGate.Permit permit = queryMetrics.time(QueryMetrics.ADMISSION, QueryMetrics.BATCH_QUERY, admissionGate::acquire)) {
+            return queryService.inSnapshot(() -> queries.stream()
+                    .map(query -> queryService.inSavepoint(() -> execute(query.getQueryIdentifier(), query.getParameters(),
+                            query.getPageSize(), query.getPageToken(), query.getSinceVersion(), true).getBody(),
+                            result -> !Boolean.TRUE.equals(result.getSuccess())))
+                    .toList());
+        }
+    }
+
+    /**
+     * Runs one query. Inside a snapshot batch the caller already holds the admission slot and
+     * the transaction, so neither the admission queue nor the result cache is used. The result
+     * of a query declared with {@code -- @key} is versioned, and answered as a delta when the
+     * client sent a version that {@link ResultVersions} still knows.
+     */
+    private ResponseEntity<QueryResponse> execute(String queryIdentifier, Map<String, Object> parameters,
+                                                  Integer pageSize, String pageToken, String sinceVersion, boolean inSnapshot) {
         long startTime = System.currentTimeMillis();
-        log.info("Executing query: " + queryIdentifier);
-        log.info("start time: "+startTime);
+        Timer.Sample request = queryMetrics.start();
+        // the identifier only becomes a metric tag once it names an existing query
+        String queryTag = QueryMetrics.UNKNOWN_QUERY;
+        log.debug("Executing query: {}", queryIdentifier);
         try {
-            String sql = queryService.loadQueryFromFile(queryIdentifier);
-            log.info("sql: "+sql);
-            List<Map<String, Object>> results = queryService.executeQuery(sql);
-            log.info("Query result: "+results);
-            List<Object> data = new ArrayList<>(results);
+            CompiledQuery compiledQuery = queryService.getCompiledQuery(queryIdentifier);
+            queryTag = compiledQuery.getIdentifier();
+            log.debug("Query {} SQL: {}", queryTag, compiledQuery.getSql());
+            if (sinceVersion != null && (pageSize != null || pageToken != null)) {
+                throw new IllegalArgumentException("since_version cannot be combined with page_size or page_token");
+            }
+            QueryPage page = null;
+            List<Object> data;
+            boolean truncated = false;
+            Object bytes = "-";
+            String etag = null;
+            Long snapshotAge = null;
+            // kept results are versioned once with the snapshot or cache entry, live ones here
+            ResultVersions.Version version = null;
+            QuerySnapshots.Snapshot snapshot = pageSize == null && pageToken == null && !inSnapshot
+                    && (parameters == null || parameters.isEmpty()) && compiledQuery.getOptions().isPrecomputed()
+                    ? querySnapshots.get(compiledQuery) : null;
+            if (snapshot != null) {
+                // precomputed in the background; without a snapshot, or past its staleness bound, the query runs live
+                bytes = snapshot.bytes();
+                truncated = snapshot.truncated();
+                etag = snapshot.etag();
+                snapshotAge = snapshot.age(Instant.now()).toMillis();
+                version = snapshot.version();
+                data = new ArrayList<>(snapshot.rows());
+            } else if (pageSize == null && pageToken == null && !inSnapshot && compiledQuery.getOptions().isResultCacheEnabled()) {
+                // the service takes an admission slot itself, on a cache miss only
+                List<RawValue> rows = queryService.executeCachedQuery(compiledQuery, parameters);
+                bytes = serializedBytes(rows);
+                truncated = TruncatedRows.isTruncated(rows);
+                etag = VersionedRows.etagOf(rows);
+                version = VersionedRows.versionOf(rows);
+                data = new ArrayList<>(rows);
+            } else {
+                // the low-priority lane, if the planner estimate calls for it, is taken before the admission slot
+                // then the slot of the workload class, where clients share the class fairly, then the pool slot
+                WorkloadScheduler.Workload workload = workloadScheduler.resolve(compiledQuery);
+                try (QueryAdmissionGate.Permit lane = queryService.admitCost(compiledQuery, parameters,
+                        pageSize != null || pageToken != null ? (pageSize != null ? pageSize : defaultPageSize) : null, inSnapshot);
+                     QueryAdmissionGate.Permit share = inSnapshot ? null : workloadScheduler.acquire(workload);
+                     QueryAdmissionGate.Permit permit = inSnapshot ? null
+                        : queryMetrics.time(QueryMetrics.ADMISSION, queryTag, admissionGate::acquire)) {
+                    if (pageSize != null || pageToken != null) {
+                        page = queryService.executePage(compiledQuery, parameters,
+                                pageSize != null ? pageSize : defaultPageSize, pageToken);
+                        data = asData(page.getRows());
+                    } else {
+                        List<Map<String, Object>> rows = queryService.executeQuery(compiledQuery, parameters);
+                        truncated = TruncatedRows.isTruncated(rows);
+                        data = asData(rows);
+                        // a cut-off result is not versioned: the rows past the limit would look deleted
+                        if (!truncated && compiledQuery.getOptions().isKeyed()) {
+                            version = resultVersions.index(compiledQuery, data);
+                        }
+                    }
+                }
+                workloadScheduler.recordRows(workload, data.size());
+            }
+            ResultVersions.Versioned versioned = version != null
+                    ? resultVersions.delta(compiledQuery, version, data, sinceVersion) : null;
             long executionTime = System.currentTimeMillis() - startTime;
-            log.info("Execution time: "+executionTime);
             QueryResponse response = new QueryResponse();
             response.setSuccess(Boolean.TRUE);
             response.setData(data);
             response.setExecutionTimeMs(executionTime);
-            log.info("Status code: 200");
-            return ResponseEntity.ok(response);
+            if (page != null) {
+                response.setPageSize(page.getPageSize());
+                response.setNextPageToken(page.getNextPageToken());
+            }
+            if (truncated) {
+                response.setTruncated(Boolean.TRUE);
+            }
+            if (snapshotAge != null) {
+                response.setSnapshotAgeMs(snapshotAge);
+            }
+            if (versioned != null) {
+                response.setVersion(versioned.version());
+                if (versioned.delta() != null) {
+                    response.setData(null);
+                    response.setDelta(asDelta(versioned.delta()));
+                }
+            }
+            queryMetrics.stopRequest(request, queryTag, QueryMetrics.SUCCESS);
+            logRequest(queryIdentifier, 200, data.size(), bytes, executionTime);
+            ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+            // the ETag is that of the full result, so a delta, which depends on since_version, gets none
+            if (etag != null && response.getDelta() == null) {
+                // Spring answers a GET whose If-None-Match matches with 304, without serializing the body
+                ok.eTag(etag).cacheControl(CacheControl.noCache().cachePrivate());
+            }
+            if (snapshotAge != null) {
+                ok.header(HttpHeaders.AGE, String.valueOf(snapshotAge / 1000));
+            }
+            return ok.body(response);
 
         } catch (IllegalArgumentException e) {
             long executionTime = System.currentTimeMillis() - startTime;
+            queryMetrics.stopRequest(request, queryTag, QueryMetrics.INVALID);
             QueryResponse response = new QueryResponse();
             response.setSuccess(Boolean.FALSE);
-            response.setExecutionTimeMs(null);
+            response.setExecutionTimeMs(executionTime);
             response.setData(null);
             response.setError(e.getMessage());
             response.setCode(400);
-            log.info("Status code: 400");
-            log.info("Execution time: "+executionTime);
+            logRequest(queryIdentifier, 400, 0, "-", executionTime);
             return ResponseEntity.badRequest().body(response);
 
+        } catch (QueryRejectedException e) {
+            long executionTime = System.currentTimeMillis() - startTime;
+            queryMetrics.stopRequest(request, queryTag, QueryMetrics.REJECTED);
+            QueryResponse response = new QueryResponse();
+            response.setSuccess(Boolean.FALSE);
+            response.setError(e.getMessage());
+            response.setCode(503);
+            response.setExecutionTimeMs(executionTime);
+            response.setData(null);
+            logRequest(queryIdentifier, 503, 0, "-", executionTime);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(response);
+
+        } catch (QueryTimeoutException e) {
+            long executionTime = System.currentTimeMillis() - startTime;
+            queryMetrics.stopRequest(request, queryTag, QueryMetrics.TIMEOUT);
+            QueryResponse response = new QueryResponse();
+            response.setSuccess(Boolean.FALSE);
+            response.setError(e.getMessage());
+            response.setCode(504);
+            response.setExecutionTimeMs(executionTime);
+            response.setData(null);
+            logRequest(queryIdentifier, 504, 0, "-", executionTime);
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(response);
+
         } catch (IOException e) {
             long executionTime = System.currentTimeMillis() - startTime;
+            queryMetrics.stopRequest(request, queryTag, QueryMetrics.NOT_FOUND);
             QueryResponse response = new QueryResponse();
             response.setSuccess(Boolean.FALSE);
             response.setError("Query not found");
             response.setCode(404);
-            response.setExecutionTimeMs(null);
+            response.setExecutionTimeMs(executionTime);
             response.setData(null);
-            log.info("Status code: 404");
-            log.info("Execution time: "+executionTime);
+            logRequest(queryIdentifier, 404, 0, "-", executionTime);
             return ResponseEntity.ofNullable(response);
 
         } catch (Exception e) {
             long executionTime = System.currentTimeMillis() - startTime;
+            queryMetrics.stopRequest(request, queryTag, QueryMetrics.ERROR);
             QueryResponse response = new QueryResponse();
             response.setSuccess(Boolean.FALSE);
             response.setError("Error while executing query");
             response.setCode(500);
-            response.setExecutionTimeMs(null);
+            response.setExecutionTimeMs(executionTime);
             response.setData(null);
-            log.info("Status code: 500");
-            log.info("Execution time: "+executionTime);
+            log.error("Query {} failed after {} ms", queryIdentifier, executionTime, e);
             return ResponseEntity.internalServerError().body(response);
         }
     }
 
+    /**
+     * One summary line per request, rate limited by {@link RequestLogSampler}. The result itself
+     * is never logged, only its row count and, where it is already serialized, its size.
+     */
+    private void logRequest(String queryIdentifier, int status, int rows, Object bytes, long executionTime) {
+        if (log.isInfoEnabled() && requestLogSampler.sample()) {
+            log.info("Query {} finished: status={} rows={} bytes={} time_ms={}", queryIdentifier, status, rows, bytes, executionTime);
+        }
+    }
+
+    /**
+     * The rows as response data without copying them, so {@link ColumnarRows} reach
+     * Jackson as they are and are written from their column buffers.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> asData(List<? extends Map<String, Object>> rows) {
+        return (List<Object>) (List<?>) rows;
+    }
+
+    private static QueryDelta asDelta(ResultVersions.Delta changes) {
+        QueryDelta delta = new QueryDelta();
+        delta.setBaseVersion(changes.baseVersion());
+        delta.setInserted(changes.inserted());
+        delta.setUpdated(changes.updated());
+        delta.setDeleted(changes.deleted());
+        return delta;
+    }
+
+    /** Size of cached rows, which are kept as serialized JSON; other results are not measured. */
+    private static long serializedBytes(List<RawValue> rows) {
+        long bytes = 0;
+        for (RawValue row : rows) {
+            if (row.rawValue() instanceof SerializableString json) {
+                bytes += json.asUnquotedUTF8().length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Served from the {@link QueryCatalog} built at startup, without scanning the classpath.
+     * The listing only changes when query files do, so it is cacheable for
+     * {@code catalog.cache-max-age} and revalidated with the catalog version as ETag.
+     */
     @Override
     public ResponseEntity<QueryResponse> listFiles()  {
-        log.info("Executing listFiles");
         long startTime = System.currentTimeMillis();
-        log.info("start time: "+startTime);
-        try {
-            PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
-            Resource[] resources = resolver.getResources("classpath:queries/*.sql");
-            log.info("resources: "+resources);
-            List<String> fileNames = new ArrayList<>();
-            for (Resource resource : resources) {
-                fileNames.add(resource.getFilename());
-            }
-            long executionTime = System.currentTimeMillis() - startTime;
-            QueryResponse response = new QueryResponse();
-            response.setSuccess(Boolean.TRUE);
-            response.setExecutionTimeMs(executionTime);
-            response.setData(new ArrayList<>(fileNames));
-            log.info("Status code: 200");
-            log.info("Execution time: "+executionTime);
-            return ResponseEntity.ok(response);
-        } catch (IOException e) {
-            QueryResponse response = new QueryResponse();
-            long executionTime = System.currentTimeMillis() - startTime;
-            response.setSuccess(Boolean.FALSE);
-            response.setError("Error while loading files");
-            response.setCode(500);
-            response.setExecutionTimeMs(null);
-            response.setData(null);
-            log.info("Status code: 500");
-            log.info("Execution time: "+executionTime);
-            return ResponseEntity.notFound().build();
+        List<String> fileNames = queryCatalog.getFileNames();
+        long executionTime = System.currentTimeMillis() - startTime;
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(Boolean.TRUE);
+        response.setExecutionTimeMs(executionTime);
+        response.setData(new ArrayList<>(fileNames));
+        log.debug("Listed {} query files in {} ms", fileNames.size(), executionTime);
+        return ResponseEntity.ok()
+                .eTag("W/\"" + queryCatalog.getVersion() + "\"")
+                .cacheControl(CacheControl.maxAge(filesMaxAge).mustRevalidate())
+                .body(response);
+    }
+
+    @Override
+    public ResponseEntity<CacheStatsResponse> getCacheStats() {
+        CacheStats stats = compiledQueryCache.stats();
+        CacheStatsResponse response = new CacheStatsResponse();
+        response.setSize(compiledQueryCache.size());
+        response.setHitCount(stats.hitCount());
+        response.setMissCount(stats.missCount());
+        response.setEvictionCount(stats.evictionCount());
+        response.setHitRate(stats.hitRate());
+        CacheStats resultStats = queryResultCache.stats();
+        response.setResultSize(queryResultCache.size());
+        response.setResultBytes(queryResultCache.weightBytes());
+        response.setResultHitCount(resultStats.hitCount());
+        response.setResultMissCount(resultStats.missCount());
+        response.setResultEvictionCount(resultStats.evictionCount());
+        response.setResultHitRate(resultStats.hitRate());
+        return ResponseEntity.ok(response);
+    }
+
+    @Override
+    public ResponseEntity<Void> invalidateCache(String queryIdentifier) {
+        log.info("Invalidating caches of query: {}", queryIdentifier);
+        if (queryIdentifier == null) {
+            compiledQueryCache.invalidateAll();
+            queryResultCache.invalidateAll();
+            querySnapshots.invalidateAll();
+        } else {
+            compiledQueryCache.invalidate(queryIdentifier);
+            queryResultCache.invalidate(queryIdentifier);
+            querySnapshots.invalidate(queryIdentifier);
         }
+        return ResponseEntity.noContent().build();
     }
 }
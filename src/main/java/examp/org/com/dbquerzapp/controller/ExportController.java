@@ -0,0 +1,177 @@
+package examp.org.com.dbquerzapp.controller;
+
+import com.example.api.ExportApi;
+import com.example.model.ExportJobResponse;
+import com.example.model.ExportRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import examp.org.com.dbquerzapp.service.ExportJob;
+import examp.org.com.dbquerzapp.service.ExportService;
+import examp.org.com.dbquerzapp.service.QueryRejectedException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+
+/**
+ * Background exports of saved queries: create a job, poll its progress, download the file once
+ * it is completed, or cancel it. The download is not part of the generated API because it writes
+ * the file straight to the servlet response.
+ */
+@RestController
+@Slf4j
+public class ExportController implements ExportApi {
+
+    /** Request attributes of Tomcat's sendfile support, see the NIO connector's useSendfile. */
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String GZIP_VALUE = "application/gzip";
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public ResponseEntity<ExportJobResponse> createExport(ExportRequest exportRequest) {
+        ExportJob job;
+        try {
+            ExportJob.Format format = ExportJob.Format.of(exportRequest.getFormat() == null ? null : exportRequest.getFormat().getValue());
+            job = exportService.submit(exportRequest.getQueryIdentifier(), exportRequest.getParameters(), format);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error(HttpStatus.NOT_FOUND, "Query not found"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(error(HttpStatus.BAD_REQUEST, e.getMessage()));
+        } catch (QueryRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(error(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage()));
+        }
+        return ResponseEntity.accepted().location(URI.create("/exports/" + job.getId())).body(toResponse(job));
+    }
+
+    @Override
+    public ResponseEntity<ExportJobResponse> getExport(String jobId) {
+        ExportJob job = exportService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error(HttpStatus.NOT_FOUND, "Export not found"));
+        }
+        return ResponseEntity.ok(toResponse(job));
+    }
+
+    @Override
+    public ResponseEntity<Void> cancelExport(String jobId) {
+        return exportService.cancel(jobId) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Sends the file of a completed export. On Tomcat the file is handed to the connector's
+     * sendfile support once the headers are written, so the kernel copies it to the socket
+     * without passing through the heap; elsewhere it is transferred through a FileChannel.
+     */
+    @GetMapping("/exports/{job_id}/file")
+    public void downloadExport(@PathVariable("job_id") String jobId, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        ExportJob job = exportService.getJob(jobId);
+        if (job == null) {
+            writeError(response, HttpStatus.NOT_FOUND, "Export not found");
+            return;
+        }
+        if (job.getStatus() != ExportJob.Status.COMPLETED) {
+            writeError(response, HttpStatus.CONFLICT, "Export is " + job.getStatus().name().toLowerCase(Locale.ROOT));
+            return;
+        }
+        Path file = job.getFile();
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (NoSuchFileException e) {
+            writeError(response, HttpStatus.NOT_FOUND, "Export file no longer exists");
+            return;
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(GZIP_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(job.getFileName()).build().toString());
+        response.setContentLengthLong(size);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            log.debug("Export {} sent with sendfile: bytes={}", jobId, size);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        }
+        log.debug("Export {} sent: bytes={}", jobId, size);
+    }
+
+    static ExportJobResponse toResponse(ExportJob job) {
+        ExportJobResponse response = new ExportJobResponse();
+        response.setJobId(job.getId());
+        response.setQueryIdentifier(job.getQueryIdentifier());
+        response.setFormat(job.getFormat().getValue());
+        response.setStatus(ExportJobResponse.StatusEnum.fromValue(job.getStatus().name().toLowerCase(Locale.ROOT)));
+        response.setRows(job.getRows());
+        response.setBytes(job.getBytes());
+        response.setCreatedAt(dateTime(job.getCreatedAt()));
+        response.setStartedAt(dateTime(job.getStartedAt()));
+        response.setFinishedAt(dateTime(job.getFinishedAt()));
+        response.setError(job.getError());
+        if (job.getStatus() == ExportJob.Status.COMPLETED) {
+            response.setDownloadUrl("/exports/" + job.getId() + "/file");
+        }
+        return response;
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), error(status, message));
+    }
+
+    private static ExportJobResponse error(HttpStatus status, String message) {
+        ExportJobResponse response = new ExportJobResponse();
+        response.setError(message);
+        response.setCode(status.value());
+        return response;
+    }
+
+    private static OffsetDateTime dateTime(Instant instant) {
+        return instant == null ? null : instant.atOffset(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,307 @@
+package examp.org.com.dbquerzapp.controller;
+
+import com.example.model.QueryResponse;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import examp.org.com.dbquerzapp.service.CompiledQuery;
+import examp.org.com.dbquerzapp.service.QueryAdmissionGate;
+import examp.org.com.dbquerzapp.service.QueryCancellation;
+import examp.org.com.dbquerzapp.service.QueryGovernor;
+import examp.org.com.dbquerzapp.service.QueryMetrics;
+import examp.org.com.dbquerzapp.service.QueryRejectedException;
+import examp.org.com.dbquerzapp.service.QueryService;
+import examp.org.com.dbquerzapp.service.RequestLogSampler;
+import examp.org.com.dbquerzapp.service.StreamingColumnarRowHandler;
+import examp.org.com.dbquerzapp.service.StreamingCompactJsonRowHandler;
+import examp.org.com.dbquerzapp.service.StreamingJsonRowHandler;
+import examp.org.com.dbquerzapp.service.StreamingResultWriter;
+import examp.org.com.dbquerzapp.service.WorkloadScheduler;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming variant of /execute-query. Rows are written while the ResultSet is being read,
+ * so heap use does not depend on the size of the result. The QueryResponse fields that are
+ * only known at the end (success, execution_time_ms and, on failure, error/code) are written
+ * after the data array, closing the same JSON object.
+ * <p>
+ * The format follows the Accept header: {@code application/json} (default), compact JSON with
+ * the column labels once and rows as arrays ({@value #COMPACT_JSON_VALUE}), or a binary
+ * columnar encoding ({@value #COLUMNAR_VALUE}, see {@link StreamingColumnarRowHandler}).
+ * All three are written straight from the ResultSet, without a map per row.
+ */
+@RestController
+@Slf4j
+public class StreamingQueryController {
+
+    public static final String COMPACT_JSON_VALUE = "application/vnd.dbquerzapp.compact+json";
+    public static final String COLUMNAR_VALUE = "application/vnd.dbquerzapp.columnar";
+    static final MediaType COMPACT_JSON = MediaType.parseMediaType(COMPACT_JSON_VALUE);
+    static final MediaType COLUMNAR = MediaType.parseMediaType(COLUMNAR_VALUE);
+    private static final List<MediaType> FORMATS = List.of(MediaType.APPLICATION_JSON, COMPACT_JSON, COLUMNAR);
+
+    @Autowired
+    private QueryService queryService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private QueryAdmissionGate admissionGate;
+
+    @Autowired
+    private QueryMetrics queryMetrics;
+
+    @Autowired
+    private RequestLogSampler requestLogSampler;
+
+    @Autowired
+    private WorkloadScheduler workloadScheduler;
+
+    @Value("${dbquerzapp.query.stream-flush-rows:1000}")
+    private int flushEveryRows;
+
+    @GetMapping(value = "/execute-query/stream", produces = {MediaType.APPLICATION_JSON_VALUE, COMPACT_JSON_VALUE, COLUMNAR_VALUE})
+    public ResponseEntity<StreamingResponseBody> streamQuery(@RequestParam("query_identifier") String queryIdentifier,
+                                                             @RequestParam Map<String, String> requestParameters,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        long startTime = System.currentTimeMillis();
+        Timer.Sample request = queryMetrics.start();
+        log.debug("Streaming query: {}", queryIdentifier);
+
+        CompiledQuery compiledQuery;
+        try {
+            compiledQuery = queryService.getCompiledQuery(queryIdentifier);
+        } catch (IOException e) {
+            logRequest(queryIdentifier, 404, 0, 0, startTime);
+            queryMetrics.stopRequest(request, QueryMetrics.UNKNOWN_QUERY, QueryMetrics.NOT_FOUND);
+            return error(HttpStatus.NOT_FOUND, "Query not found", startTime);
+        } catch (IllegalArgumentException e) {
+            logRequest(queryIdentifier, 400, 0, 0, startTime);
+            queryMetrics.stopRequest(request, QueryMetrics.UNKNOWN_QUERY, QueryMetrics.INVALID);
+            return error(HttpStatus.BAD_REQUEST, e.getMessage(), startTime);
+        }
+
+        if (!compiledQuery.isValid()) {
+            logRequest(queryIdentifier, 400, 0, 0, startTime);
+            queryMetrics.stopRequest(request, compiledQuery.getIdentifier(), QueryMetrics.INVALID);
+            return error(HttpStatus.BAD_REQUEST, "SQL validation failed: " + compiledQuery.getValidationResult().getErrorMessage(), startTime);
+        }
+
+        // every request parameter other than query_identifier is a named query parameter
+        Map<String, String> parameters = new HashMap<>(requestParameters);
+        parameters.remove("query_identifier");
+        try {
+            queryService.bindParameters(compiledQuery, parameters);
+        } catch (IllegalArgumentException e) {
+            logRequest(queryIdentifier, 400, 0, 0, startTime);
+            queryMetrics.stopRequest(request, compiledQuery.getIdentifier(), QueryMetrics.INVALID);
+            return error(HttpStatus.BAD_REQUEST, e.getMessage(), startTime);
+        }
+
+        // the slots are taken on the request thread so a full queue still gets a 503, and released by the
+        // body or, if it never runs, by QueryCancellationConfig when the async request ends
+        WorkloadScheduler.Workload workload = workloadScheduler.resolve(compiledQuery);
+        QueryAdmissionGate.Permit lane;
+        QueryAdmissionGate.Permit share;
+        QueryAdmissionGate.Permit permit;
+        try {
+            lane = queryService.admitCost(compiledQuery, parameters, null, false);
+        } catch (IllegalArgumentException e) {
+            logRequest(queryIdentifier, 400, 0, 0, startTime);
+            queryMetrics.stopRequest(request, compiledQuery.getIdentifier(), QueryMetrics.INVALID);
+            return error(HttpStatus.BAD_REQUEST, e.getMessage(), startTime);
+        } catch (QueryRejectedException e) {
+            return rejected(queryIdentifier, compiledQuery, request, e, startTime);
+        }
+        try {
+            share = workloadScheduler.acquire(workload);
+        } catch (QueryRejectedException e) {
+            if (lane != null) {
+                lane.close();
+            }
+            return rejected(queryIdentifier, compiledQuery, request, e, startTime);
+        }
+        try {
+            permit = queryMetrics.time(QueryMetrics.ADMISSION, compiledQuery.getIdentifier(), admissionGate::acquire);
+        } catch (QueryRejectedException e) {
+            share.close();
+            if (lane != null) {
+                lane.close();
+            }
+            return rejected(queryIdentifier, compiledQuery, request, e, startTime);
+        }
+
+        // cancelled by QueryCancellationConfig when the client goes away or the async request times out
+        QueryCancellation cancellation = new QueryCancellation();
+        cancellation.hold(lane, share, permit);
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute(QueryCancellation.ATTRIBUTE, cancellation, RequestAttributes.SCOPE_REQUEST);
+        }
+
+        MediaType format = negotiate(accept);
+        StreamingResponseBody body = responseStream -> {
+            if (!cancellation.start()) {
+                // the async request ended before the body ran and its slots are released already
+                queryMetrics.stopRequest(request, compiledQuery.getIdentifier(), QueryMetrics.ABORTED);
+                return;
+            }
+            CountingOutputStream outputStream = new CountingOutputStream(responseStream);
+            try (StreamingResultWriter writer = writer(format, outputStream)) {
+                writer.begin();
+                String error = null;
+                int code = HttpStatus.INTERNAL_SERVER_ERROR.value();
+                try {
+                    queryService.streamQuery(compiledQuery, parameters, writer, cancellation);
+                } catch (UncheckedIOException e) {
+                    log.info("Client aborted streaming of {} after {} rows", queryIdentifier, writer.getRowCount());
+                    queryMetrics.stopRequest(request, compiledQuery.getIdentifier(), QueryMetrics.ABORTED);
+                    throw e.getCause();
+                } catch (RuntimeException e) {
+                    if (cancellation.isCancelled()) {
+                        log.info("Streaming of {} cancelled after {} rows", queryIdentifier, writer.getRowCount());
+                        queryMetrics.stopRequest(request, compiledQuery.getIdentifier(), QueryMetrics.ABORTED);
+                        throw e;
+                    }
+                    if (QueryGovernor.isCancellation(e)) {
+                        log.warn("Streaming of {} exceeded its timeout after {} rows", queryIdentifier, writer.getRowCount());
+                        error = "Query exceeded its timeout";
+                        code = HttpStatus.GATEWAY_TIMEOUT.value();
+                    } else {
+                        log.error("Streaming of {} failed after {} rows", queryIdentifier, writer.getRowCount(), e);
+                        error = "Error while executing query";
+                    }
+                }
+                long executionTime = System.currentTimeMillis() - startTime;
+                writer.end(error, code, executionTime);
+                queryMetrics.recordRows(compiledQuery.getIdentifier(), writer.getRowCount());
+                workloadScheduler.recordRows(workload, writer.getRowCount());
+                queryMetrics.stopRequest(request, compiledQuery.getIdentifier(), error == null ? QueryMetrics.SUCCESS
+                        : code == HttpStatus.GATEWAY_TIMEOUT.value() ? QueryMetrics.TIMEOUT : QueryMetrics.ERROR);
+                logRequest(queryIdentifier, 200, writer.getRowCount(), outputStream.getCount(), startTime);
+            } finally {
+                cancellation.release();
+            }
+        };
+        return ResponseEntity.ok().contentType(format).body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> rejected(String queryIdentifier, CompiledQuery compiledQuery, Timer.Sample request,
+                                                           QueryRejectedException e, long startTime) {
+        logRequest(queryIdentifier, 503, 0, 0, startTime);
+        queryMetrics.stopRequest(request, compiledQuery.getIdentifier(), QueryMetrics.REJECTED);
+        ResponseEntity<StreamingResponseBody> rejected = error(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), startTime);
+        return ResponseEntity.status(rejected.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(rejected.getBody());
+    }
+
+    /** Same summary line as /execute-query; the bytes are those written to the response. */
+    private void logRequest(String queryIdentifier, int status, long rows, long bytes, long startTime) {
+        if (log.isInfoEnabled() && requestLogSampler.sample()) {
+            log.info("Stream {} finished: status={} rows={} bytes={} time_ms={}", queryIdentifier, status, rows, bytes,
+                    System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Picks the response format from the Accept header: the first supported type in order of
+     * preference, plain JSON when the client accepts anything.
+     */
+    static MediaType negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return MediaType.APPLICATION_JSON;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        MimeTypeUtils.sortBySpecificity(accepted);
+        for (MediaType type : accepted) {
+            for (MediaType format : FORMATS) {
+                if (type.includes(format)) {
+                    return format;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    private StreamingResultWriter writer(MediaType format, OutputStream outputStream) throws IOException {
+        if (format.equals(COLUMNAR)) {
+            return new StreamingColumnarRowHandler(outputStream, flushEveryRows);
+        }
+        JsonGenerator generator = objectMapper.createGenerator(outputStream, JsonEncoding.UTF8);
+        if (format.equals(COMPACT_JSON)) {
+            return new StreamingCompactJsonRowHandler(generator, flushEveryRows);
+        }
+        return new StreamingJsonRowHandler(generator, flushEveryRows);
+    }
+
+    private ResponseEntity<StreamingResponseBody> error(HttpStatus status, String message, long startTime) {
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(Boolean.FALSE);
+        response.setError(message);
+        response.setCode(status.value());
+        response.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+        response.setData(null);
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> objectMapper.writeValue(outputStream, response));
+    }
+
+    /** Counts the bytes written to the response for the summary log line. */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
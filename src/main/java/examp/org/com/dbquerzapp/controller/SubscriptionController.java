@@ -0,0 +1,90 @@
+package examp.org.com.dbquerzapp.controller;
+
+import com.example.model.QueryResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import examp.org.com.dbquerzapp.service.CompiledQuery;
+import examp.org.com.dbquerzapp.service.QueryRejectedException;
+import examp.org.com.dbquerzapp.service.QueryService;
+import examp.org.com.dbquerzapp.service.QuerySubscriptions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Live variant of /execute-query: the result of a saved query as a stream of Server-Sent Events,
+ * sent once on subscription and again whenever a table the query reads changes. See
+ * {@link QuerySubscriptions} for the events. Errors before the subscription starts are sent as a
+ * single {@value QuerySubscriptions#ERROR_EVENT} event with the HTTP status of /execute-query.
+ */
+@RestController
+@Slf4j
+public class SubscriptionController {
+
+    @Autowired
+    private QueryService queryService;
+
+    @Autowired
+    private QuerySubscriptions querySubscriptions;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @GetMapping(value = "/execute-query/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribe(@RequestParam("query_identifier") String queryIdentifier,
+                                                @RequestParam Map<String, String> requestParameters) {
+        long startTime = System.currentTimeMillis();
+        log.debug("Subscribing to query: {}", queryIdentifier);
+        CompiledQuery compiledQuery;
+        try {
+            compiledQuery = queryService.getCompiledQuery(queryIdentifier);
+        } catch (IOException e) {
+            return error(HttpStatus.NOT_FOUND, "Query not found", startTime);
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage(), startTime);
+        }
+        if (!compiledQuery.isValid()) {
+            return error(HttpStatus.BAD_REQUEST, "SQL validation failed: " + compiledQuery.getValidationResult().getErrorMessage(), startTime);
+        }
+
+        // every request parameter other than query_identifier is a named query parameter
+        Map<String, String> parameters = new HashMap<>(requestParameters);
+        parameters.remove("query_identifier");
+        try {
+            return ResponseEntity.ok().body(querySubscriptions.subscribe(compiledQuery, parameters));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage(), startTime);
+        } catch (QueryRejectedException e) {
+            ResponseEntity<SseEmitter> rejected = error(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), startTime);
+            return ResponseEntity.status(rejected.getStatusCode())
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(rejected.getBody());
+        }
+    }
+
+    private ResponseEntity<SseEmitter> error(HttpStatus status, String message, long startTime) {
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(Boolean.FALSE);
+        response.setError(message);
+        response.setCode(status.value());
+        response.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+        SseEmitter emitter = new SseEmitter();
+        try {
+            emitter.send(SseEmitter.event().name(QuerySubscriptions.ERROR_EVENT).data(objectMapper.writeValueAsString(response)));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return ResponseEntity.status(status).body(emitter);
+    }
+}
@@ -0,0 +1,411 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A materialized result held column by column instead of as a map per row. The column readers
+ * are chosen once per result from its ResultSetMetaData: INTEGER, SMALLINT and TINYINT go into
+ * an {@code int[]}, BIGINT into a {@code long[]}, DOUBLE and FLOAT into a {@code double[]},
+ * BOOLEAN into a bit set, and character columns are dictionary-encoded into an {@code int[]} of
+ * codes, so a repeated value is kept once. Every other type is read like ColumnMapRowMapper does
+ * and kept as an object. Reading a numeric row therefore allocates nothing.
+ * <p>
+ * Jackson writes the rows straight from the buffers, with pre-encoded column names and
+ * dictionary values. The list still offers the rows as case-insensitive maps like the ones of
+ * ColumnMapRowMapper, built on every {@link #get}, for callers that need them.
+ */
+@JsonSerialize(using = ColumnarRows.Serializer.class)
+public class ColumnarRows extends AbstractList<Map<String, Object>> {
+
+    private static final int INITIAL_CAPACITY = 16;
+    /** Distinct values a string column encodes before it stops looking values up. */
+    static final int MAX_DICTIONARY_SIZE = 4096;
+
+    private final String[] labels;
+    private final SerializedString[] names;
+    private final Column[] columns;
+    private int size;
+    private final boolean truncated;
+
+    private ColumnarRows(String[] labels, SerializedString[] names, Column[] columns, int size, boolean truncated) {
+        this.labels = labels;
+        this.names = names;
+        this.columns = columns;
+        this.size = size;
+        this.truncated = truncated;
+    }
+
+    /** Empty rows with a column reader per column of the result set. */
+    public static ColumnarRows of(ResultSetMetaData metaData) throws SQLException {
+        String[] labels = StreamingJsonRowHandler.resolveColumnLabels(metaData);
+        SerializedString[] names = new SerializedString[labels.length];
+        Column[] columns = new Column[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            names[i] = new SerializedString(labels[i]);
+            columns[i] = column(metaData, i + 1);
+        }
+        return new ColumnarRows(labels, names, columns, 0, false);
+    }
+
+    /** Appends the current row of the result set and returns the bytes it added to the buffers. */
+    public long add(ResultSet rs) throws SQLException {
+        long bytes = 0;
+        for (int i = 0; i < columns.length; i++) {
+            bytes += columns[i].read(rs, i + 1, size);
+        }
+        size++;
+        return bytes;
+    }
+
+    /**
+     * The first rows, marked as cut off by the {@link QueryGovernor}. The buffers are shared, so
+     * nothing may be added afterwards.
+     */
+    ColumnarRows truncated(int rowCount) {
+        return new ColumnarRows(labels, names, columns, rowCount, true);
+    }
+
+    /** The first rows, sharing the buffers. */
+    ColumnarRows head(int rowCount) {
+        return new ColumnarRows(labels, names, columns, rowCount, truncated);
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Map<String, Object> get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Row " + index + " of " + size);
+        }
+        Map<String, Object> row = new LinkedCaseInsensitiveMap<>(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            row.put(labels[i], columns[i].get(index));
+        }
+        return row;
+    }
+
+    private static Column column(ResultSetMetaData metaData, int index) throws SQLException {
+        switch (metaData.getColumnType(index)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return new IntColumn();
+            case Types.BIGINT:
+                return new LongColumn();
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleColumn();
+            case Types.BOOLEAN:
+                return new BooleanColumn();
+            case Types.BIT:
+                // PostgreSQL reports boolean as BIT; wider bit strings are not booleans
+                return metaData.getPrecision(index) <= 1 ? new BooleanColumn() : new ObjectColumn();
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return new StringColumn();
+            default:
+                return new ObjectColumn();
+        }
+    }
+
+    /** Values of one column; a clear bit in {@code present} is a NULL. */
+    private abstract static class Column {
+
+        final BitSet present = new BitSet();
+
+        /** Reads the column of the current row into the buffer, returning the bytes it added. */
+        abstract long read(ResultSet rs, int index, int row) throws SQLException;
+
+        abstract Object value(int row);
+
+        abstract void write(JsonGenerator generator, SerializerProvider provider, int row) throws IOException;
+
+        final Object get(int row) {
+            return present.get(row) ? value(row) : null;
+        }
+
+        /** Capacity of a buffer that has to hold the row; rows before it may have been NULL. */
+        static int capacity(int capacity, int row) {
+            return Math.max(row + 1, Math.max(INITIAL_CAPACITY, capacity * 2));
+        }
+    }
+
+    private static final class IntColumn extends Column {
+
+        private int[] values = new int[0];
+
+        @Override
+        long read(ResultSet rs, int index, int row) throws SQLException {
+            int value = rs.getInt(index);
+            if (rs.wasNull()) {
+                return 0;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, capacity(values.length, row));
+            }
+            values[row] = value;
+            present.set(row);
+            return Integer.BYTES;
+        }
+
+        @Override
+        Object value(int row) {
+            return values[row];
+        }
+
+        @Override
+        void write(JsonGenerator generator, SerializerProvider provider, int row) throws IOException {
+            generator.writeNumber(values[row]);
+        }
+    }
+
+    private static final class LongColumn extends Column {
+
+        private long[] values = new long[0];
+
+        @Override
+        long read(ResultSet rs, int index, int row) throws SQLException {
+            long value = rs.getLong(index);
+            if (rs.wasNull()) {
+                return 0;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, capacity(values.length, row));
+            }
+            values[row] = value;
+            present.set(row);
+            return Long.BYTES;
+        }
+
+        @Override
+        Object value(int row) {
+            return values[row];
+        }
+
+        @Override
+        void write(JsonGenerator generator, SerializerProvider provider, int row) throws IOException {
+            generator.writeNumber(values[row]);
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+
+        private double[] values = new double[0];
+
+        @Override
+        long read(ResultSet rs, int index, int row) throws SQLException {
+            double value = rs.getDouble(index);
+            if (rs.wasNull()) {
+                return 0;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, capacity(values.length, row));
+            }
+            values[row] = value;
+            present.set(row);
+            return Double.BYTES;
+        }
+
+        @Override
+        Object value(int row) {
+            return values[row];
+        }
+
+        @Override
+        void write(JsonGenerator generator, SerializerProvider provider, int row) throws IOException {
+            generator.writeNumber(values[row]);
+        }
+    }
+
+    private static final class BooleanColumn extends Column {
+
+        private final BitSet values = new BitSet();
+
+        @Override
+        long read(ResultSet rs, int index, int row) throws SQLException {
+            boolean value = rs.getBoolean(index);
+            if (rs.wasNull()) {
+                return 0;
+            }
+            values.set(row, value);
+            present.set(row);
+            return 1;
+        }
+
+        @Override
+        Object value(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        void write(JsonGenerator generator, SerializerProvider provider, int row) throws IOException {
+            generator.writeBoolean(values.get(row));
+        }
+    }
+
+    /**
+     * Strings as codes into a dictionary of the distinct values. Once the dictionary reaches
+     * {@link #MAX_DICTIONARY_SIZE} the column stops looking values up and appends every new one,
+     * so a high-cardinality column costs no more than a String[].
+     */
+    private static final class StringColumn extends Column {
+
+        private int[] codes = new int[0];
+        private final List<String> dictionary = new ArrayList<>();
+        private Map<String, Integer> index = new HashMap<>();
+        private SerializedString[] encoded;
+
+        @Override
+        long read(ResultSet rs, int column, int row) throws SQLException {
+            String value = rs.getString(column);
+            if (value == null) {
+                return 0;
+            }
+            long bytes = Integer.BYTES;
+            Integer code = index == null ? null : index.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                bytes += 48 + value.length();
+                if (index != null) {
+                    index.put(value, code);
+                    if (index.size() >= MAX_DICTIONARY_SIZE) {
+                        index = null;
+                    }
+                }
+            }
+            if (row >= codes.length) {
+                codes = Arrays.copyOf(codes, capacity(codes.length, row));
+            }
+            codes[row] = code;
+            present.set(row);
+            return bytes;
+        }
+
+        @Override
+        Object value(int row) {
+            return dictionary.get(codes[row]);
+        }
+
+        /** Each dictionary value is encoded on its first use and reused for every other row. */
+        @Override
+        void write(JsonGenerator generator, SerializerProvider provider, int row) throws IOException {
+            int code = codes[row];
+            if (index == null) {
+                generator.writeString(dictionary.get(code));
+                return;
+            }
+            if (encoded == null) {
+                encoded = new SerializedString[dictionary.size()];
+            } else if (code >= encoded.length) {
+                encoded = Arrays.copyOf(encoded, Math.max(dictionary.size(), encoded.length * 2));
+            }
+            SerializedString value = encoded[code];
+            if (value == null) {
+                value = new SerializedString(dictionary.get(code));
+                encoded[code] = value;
+            }
+            generator.writeString(value);
+        }
+    }
+
+    /** Any other type, read and serialized like a ColumnMapRowMapper value. */
+    private static final class ObjectColumn extends Column {
+
+        private Object[] values = new Object[0];
+
+        @Override
+        long read(ResultSet rs, int index, int row) throws SQLException {
+            Object value = JdbcUtils.getResultSetValue(rs, index);
+            if (value == null) {
+                return 0;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, capacity(values.length, row));
+            }
+            values[row] = value;
+            present.set(row);
+            if (value instanceof CharSequence text) {
+                return 8 + 48 + text.length();
+            }
+            if (value instanceof byte[] data) {
+                return 8 + 16 + data.length;
+            }
+            return 8 + 32;
+        }
+
+        @Override
+        Object value(int row) {
+            return values[row];
+        }
+
+        @Override
+        void write(JsonGenerator generator, SerializerProvider provider, int row) throws IOException {
+            provider.defaultSerializeValue(values[row], generator);
+        }
+    }
+
+    /**
+     * Writes the rows as the same JSON objects a list of ColumnMapRowMapper maps produces,
+     * leaving out NULL columns when the mapper's default inclusion drops null map values.
+     */
+    public static final class Serializer extends StdSerializer<ColumnarRows> {
+
+        public Serializer() {
+            super(ColumnarRows.class);
+        }
+
+        @Override
+        public void serialize(ColumnarRows rows, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            JsonInclude.Include inclusion = provider.getConfig().getDefaultPropertyInclusion(Map.class).getContentInclusion();
+            boolean writeNulls = inclusion == null || inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS;
+            generator.writeStartArray(rows, rows.size);
+            for (int row = 0; row < rows.size; row++) {
+                generator.writeStartObject();
+                for (int i = 0; i < rows.columns.length; i++) {
+                    Column column = rows.columns[i];
+                    if (column.present.get(row)) {
+                        generator.writeFieldName(rows.names[i]);
+                        column.write(generator, provider, row);
+                    } else if (writeNulls) {
+                        generator.writeFieldName(rows.names[i]);
+                        generator.writeNull();
+                    }
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package examp.org.com.dbquerzapp.service;
+
+import examp.org.com.dbquerzapp.validator.SelectStatement;
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A saved query that has been loaded, normalized and validated once.
+ * Invalid queries are cached as well so a broken file is not re-validated on every call.
+ * The SQL keeps its {@code :named} placeholders; values are bound per execution.
+ */
+@Getter
+@AllArgsConstructor
+public class CompiledQuery {
+        private final String identifier;
+        private final String sql;
+        private final List<QueryParameter> parameters;
+        private final QueryOptions options;
+        private final ValidationResult validationResult;
+        private final Instant compiledAt;
+
+        public boolean isValid() {
+            return validationResult.isValid();
+        }
+
+        /** Tables the query reads from; empty when it was not parsed. */
+        public List<String> getTables() {
+            SelectStatement statement = validationResult.getStatement();
+            return statement != null ? statement.tables() : List.of();
+        }
+
+}
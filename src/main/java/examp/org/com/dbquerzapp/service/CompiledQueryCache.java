@@ -0,0 +1,102 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiled queries keyed by query identifier. The versions published by the {@link QueryCatalog}
+ * live in an immutable map that is swapped as a whole, so a reload never blocks or tears a read;
+ * they are not subject to the size limit. Identifiers the catalog does not know are compiled on
+ * first use and kept in a bounded cache.
+ */
+@Component
+@Slf4j
+public class CompiledQueryCache {
+
+    @FunctionalInterface
+    public interface Loader {
+        CompiledQuery load(String queryIdentifier) throws IOException;
+    }
+
+    private final Cache<String, CompiledQuery> cache;
+    private final LongAdder publishedHits = new LongAdder();
+    private volatile Map<String, CompiledQuery> published = Map.of();
+
+    public CompiledQueryCache(@Value("${dbquerzapp.query.cache.max-size:256}") long maxSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    public CompiledQuery get(String queryIdentifier, Loader loader) throws IOException {
+        CompiledQuery compiledQuery = published.get(queryIdentifier);
+        if (compiledQuery != null) {
+            publishedHits.increment();
+            return compiledQuery;
+        }
+        try {
+            return cache.get(queryIdentifier, key -> {
+                try {
+                    return loader.load(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** The version currently published for the identifier, {@code null} if there is none. */
+    public CompiledQuery getPublished(String queryIdentifier) {
+        return published.get(queryIdentifier);
+    }
+
+    /** Makes the new versions and the removals visible to all readers at once. */
+    public synchronized void publish(Map<String, CompiledQuery> changed, Collection<String> removed) {
+        Map<String, CompiledQuery> next = new HashMap<>(published);
+        next.putAll(changed);
+        removed.forEach(next::remove);
+        published = Map.copyOf(next);
+        cache.invalidateAll(changed.keySet());
+        cache.invalidateAll(removed);
+    }
+
+    /** Drops the query, published or not; the next request compiles it from its file again. */
+    public synchronized void invalidate(String queryIdentifier) {
+        log.info("Invalidating compiled query: {}", queryIdentifier);
+        if (published.containsKey(queryIdentifier)) {
+            Map<String, CompiledQuery> next = new HashMap<>(published);
+            next.remove(queryIdentifier);
+            published = Map.copyOf(next);
+        }
+        cache.invalidate(queryIdentifier);
+    }
+
+    public synchronized void invalidateAll() {
+        log.info("Invalidating all compiled queries");
+        published = Map.of();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return published.size() + cache.estimatedSize();
+    }
+
+    /** Counters of the bounded cache, with reads of published versions counted as hits. */
+    public CacheStats stats() {
+        return cache.stats().plus(CacheStats.of(publishedHits.sum(), 0, 0, 0, 0, 0, 0));
+    }
+}
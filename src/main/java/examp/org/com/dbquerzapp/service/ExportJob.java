@@ -0,0 +1,140 @@
+package examp.org.com.dbquerzapp.service;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One background export of a saved query into a gzip-compressed file, as tracked by the
+ * {@link ExportService}. Progress is the number of rows and file bytes written so far; rows are
+ * only known at the end when the export ran as a PostgreSQL COPY.
+ */
+@Getter
+public class ExportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /** File formats of an export; both are gzip-compressed. */
+    public enum Format {
+        /** CSV with a header row, see {@link StreamingCsvRowHandler}. */
+        CSV("csv", ".csv.gz"),
+        /** The binary columnar encoding of {@link StreamingColumnarRowHandler}. */
+        COLUMNAR("columnar", ".dbqc.gz");
+
+        private final String value;
+        private final String extension;
+
+        Format(String value, String extension) {
+            this.value = value;
+            this.extension = extension;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /** Parses the format of an export request; IllegalArgumentException for an unknown one. */
+        public static Format of(String value) {
+            if (value == null || value.isBlank()) {
+                return CSV;
+            }
+            for (Format format : values()) {
+                if (format.value.equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported export format: " + value);
+        }
+    }
+
+    private final String id;
+    private final String queryIdentifier;
+    private final Format format;
+    private final Instant createdAt;
+    private final QueryCancellation cancellation = new QueryCancellation();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile Path file;
+
+    public ExportJob(String id, String queryIdentifier, Format format) {
+        this.id = id;
+        this.queryIdentifier = queryIdentifier;
+        this.format = format;
+        this.createdAt = Instant.now();
+    }
+
+    /** File name offered to the client when downloading the export. */
+    public String getFileName() {
+        return queryIdentifier + "-" + id + format.getExtension();
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /** Stops the job: a queued job is cancelled right away, a running one has its statement cancelled. */
+    public synchronized void cancel() {
+        cancellation.cancel();
+        if (status == Status.QUEUED) {
+            finish(Status.CANCELLED, null);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancellation.isCancelled();
+    }
+
+    /** Moves a queued job to running; false when it was cancelled while waiting. */
+    synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    void addRow() {
+        rows.incrementAndGet();
+    }
+
+    void addBytes(long count) {
+        bytes.addAndGet(count);
+    }
+
+    synchronized void complete(Path file, long rowCount) {
+        this.file = file;
+        rows.set(rowCount);
+        finish(Status.COMPLETED, null);
+    }
+
+    synchronized void fail(String message) {
+        finish(isCancelled() ? Status.CANCELLED : Status.FAILED, isCancelled() ? null : message);
+    }
+
+    private void finish(Status finalStatus, String message) {
+        error = message;
+        finishedAt = Instant.now();
+        status = finalStatus;
+    }
+}
@@ -0,0 +1,344 @@
+package examp.org.com.dbquerzapp.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Background exports of saved queries into gzip-compressed files, for results too large to send
+ * through /execute-query. Rows are streamed from the ResultSet through a gzip stream and a buffer
+ * into a FileChannel, so heap use does not depend on the size of the result. Parameterless CSV
+ * exports run as PostgreSQL {@code COPY ... TO STDOUT}, where the database formats the rows.
+ * <p>
+ * At most {@code export.max-concurrent} exports run at once, each holding an admission slot
+ * while it reads, and at most {@code export.max-queued} more wait; beyond that a new export is
+ * rejected with {@link QueryRejectedException}. Exports therefore never take more than
+ * max-concurrent connections away from interactive queries. Jobs are kept in memory; finished
+ * ones and their files are removed {@code export.retention} after they finished.
+ */
+@Service
+@Slf4j
+public class ExportService {
+
+    private static final String PART_EXTENSION = ".part";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int COLUMNAR_BATCH_ROWS = 1000;
+
+    @Autowired
+    private QueryService queryService;
+
+    @Autowired
+    private QueryAdmissionGate admissionGate;
+
+    @Autowired
+    private QueryMetrics queryMetrics;
+
+    @Autowired
+    private WorkloadScheduler workloadScheduler;
+
+    @Value("${dbquerzapp.query.export.directory:${java.io.tmpdir}/dbquerzapp-exports}")
+    private String directory;
+
+    @Value("${dbquerzapp.query.export.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${dbquerzapp.query.export.max-queued:20}")
+    private int maxQueued;
+
+    @Value("${dbquerzapp.query.export.timeout:30m}")
+    private Duration timeout;
+
+    @Value("${dbquerzapp.query.export.retention:1h}")
+    private Duration retention;
+
+    @Value("${dbquerzapp.query.export.copy:true}")
+    private boolean copy;
+
+    @Value("${dbquerzapp.query.admission.retry-after:2s}")
+    private Duration retryAfter;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private Path exportDirectory;
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() throws IOException {
+        exportDirectory = Path.of(directory).toAbsolutePath().normalize();
+        Files.createDirectories(exportDirectory);
+        // jobs only live in memory, so the files of an earlier run can no longer be downloaded
+        try (Stream<Path> files = Files.list(exportDirectory)) {
+            files.filter(ExportService::isExportFile).forEach(ExportService::delete);
+        }
+        BlockingQueue<Runnable> queue = maxQueued > 0 ? new ArrayBlockingQueue<>(maxQueued) : new SynchronousQueue<>();
+        executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0, TimeUnit.MILLISECONDS, queue,
+                Thread.ofPlatform().daemon().name("query-export-", 1).factory());
+    }
+
+    @PreDestroy
+    public void stop() {
+        jobs.values().forEach(ExportJob::cancel);
+        executor.shutdown();
+    }
+
+    /**
+     * Queues an export of the query. Throws IOException for an unknown query,
+     * IllegalArgumentException for an invalid query or bad parameters, and
+     * QueryRejectedException when the export queue is full.
+     */
+    public ExportJob submit(String queryIdentifier, Map<String, ?> parameterValues, ExportJob.Format format) throws IOException {
+        purgeExpired();
+        CompiledQuery compiledQuery = queryService.getCompiledQuery(queryIdentifier);
+        if (!compiledQuery.isValid()) {
+            throw new IllegalArgumentException("SQL validation failed: " + compiledQuery.getValidationResult().getErrorMessage());
+        }
+        // bad parameters are reported to the caller now rather than as a failed job
+        queryService.bindParameters(compiledQuery, parameterValues);
+
+        ExportJob job = new ExportJob(UUID.randomUUID().toString(), compiledQuery.getIdentifier(), format);
+        // resolved now, while the requesting client is known
+        WorkloadScheduler.Workload workload = workloadScheduler.resolveExport();
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, compiledQuery, parameterValues, workload));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            log.warn("Export of {} rejected: export queue is full ({})", queryIdentifier, maxQueued);
+            throw new QueryRejectedException("Too many exports in progress, retry later", Math.max(1, retryAfter.toSeconds()));
+        }
+        log.info("Export {} of {} queued: format={}", job.getId(), queryIdentifier, format.getValue());
+        return job;
+    }
+
+    /** The export with the id, null when it is unknown or has expired. */
+    public ExportJob getJob(String id) {
+        purgeExpired();
+        return jobs.get(id);
+    }
+
+    /**
+     * Cancels a queued or running export, or removes a finished one together with its file.
+     * Returns false when the export is unknown.
+     */
+    public boolean cancel(String id) {
+        ExportJob job = jobs.get(id);
+        if (job == null) {
+            return false;
+        }
+        if (job.getStatus().isFinished()) {
+            jobs.remove(id);
+            delete(job.getFile());
+        } else {
+            job.cancel();
+        }
+        return true;
+    }
+
+    public int getRunning() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    void run(ExportJob job, CompiledQuery compiledQuery, Map<String, ?> parameterValues, WorkloadScheduler.Workload workload) {
+        if (!job.start()) {
+            log.info("Export {} of {} cancelled before it started", job.getId(), job.getQueryIdentifier());
+            return;
+        }
+        Path part = exportDirectory.resolve(job.getId() + PART_EXTENSION);
+        try {
+            long rows;
+            // the channel is closed on its own as well, since a failing gzip trailer skips closing the streams below it
+            try (QueryAdmissionGate.Permit permit = admit(job, workload);
+                 FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 OutputStream outputStream = open(channel, job)) {
+                rows = write(job, compiledQuery, parameterValues, outputStream);
+            }
+            Path file = exportDirectory.resolve(job.getId() + job.getFormat().getExtension());
+            Files.move(part, file, StandardCopyOption.ATOMIC_MOVE);
+            job.complete(file, rows);
+            queryMetrics.recordRows(job.getQueryIdentifier(), rows);
+            workloadScheduler.recordRows(workload, rows);
+            log.info("Export {} of {} completed: rows={} bytes={} time_ms={}", job.getId(), job.getQueryIdentifier(),
+                    rows, job.getBytes(), Duration.between(job.getStartedAt(), job.getFinishedAt()).toMillis());
+        } catch (IOException | RuntimeException e) {
+            delete(part);
+            job.fail(message(e));
+            if (job.getStatus() == ExportJob.Status.CANCELLED) {
+                log.info("Export {} of {} cancelled after {} rows", job.getId(), job.getQueryIdentifier(), job.getRows());
+            } else {
+                log.error("Export {} of {} failed after {} rows", job.getId(), job.getQueryIdentifier(), job.getRows(), e);
+            }
+        }
+    }
+
+    /** Removes finished jobs older than the retention, together with their files. */
+    void purgeExpired() {
+        Instant expiry = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (job.getStatus().isFinished() && job.getFinishedAt().isBefore(expiry)) {
+                delete(job.getFile());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private long write(ExportJob job, CompiledQuery compiledQuery, Map<String, ?> parameterValues,
+                       OutputStream outputStream) throws IOException {
+        if (copy && job.getFormat() == ExportJob.Format.CSV && compiledQuery.getParameters().isEmpty()) {
+            long rows = queryService.copyQuery(compiledQuery, outputStream, timeout);
+            if (rows >= 0) {
+                return rows;
+            }
+        }
+        long startTime = System.currentTimeMillis();
+        StreamingResultWriter writer = job.getFormat() == ExportJob.Format.COLUMNAR
+                ? new StreamingColumnarRowHandler(outputStream, COLUMNAR_BATCH_ROWS)
+                : new StreamingCsvRowHandler(outputStream);
+        writer.begin();
+        try {
+            queryService.exportQuery(compiledQuery, parameterValues, rs -> {
+                writer.processRow(rs);
+                job.addRow();
+            }, job.getCancellation(), timeout);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.end(null, 0, System.currentTimeMillis() - startTime);
+        return writer.getRowCount();
+    }
+
+    /**
+     * Takes a slot of the export workload class and an admission slot like any other query.
+     * While none is free the export waits instead of failing, since nobody is waiting on the
+     * response.
+     */
+    private QueryAdmissionGate.Permit admit(ExportJob job, WorkloadScheduler.Workload workload) throws IOException {
+        while (true) {
+            QueryAdmissionGate.Permit share = null;
+            try {
+                share = workloadScheduler.acquire(workload);
+                QueryAdmissionGate.Permit permit = admissionGate.acquire();
+                QueryAdmissionGate.Permit held = share;
+                return () -> {
+                    permit.close();
+                    held.close();
+                };
+            } catch (QueryRejectedException e) {
+                if (share != null) {
+                    share.close();
+                }
+                if (job.isCancelled()) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(e.getRetryAfterSeconds()));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a query slot");
+                }
+            }
+        }
+    }
+
+    private static OutputStream open(FileChannel channel, ExportJob job) throws IOException {
+        OutputStream fileStream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        return new GZIPOutputStream(new ProgressOutputStream(fileStream, job), BUFFER_SIZE);
+    }
+
+    private static String message(Exception e) {
+        if (QueryGovernor.isCancellation(e)) {
+            return "Export exceeded its timeout";
+        }
+        if (e instanceof QueryRejectedException) {
+            return e.getMessage();
+        }
+        return "Error while exporting query";
+    }
+
+    private static boolean isExportFile(Path file) {
+        String fileName = file.getFileName().toString();
+        if (fileName.endsWith(PART_EXTENSION)) {
+            return true;
+        }
+        for (ExportJob.Format format : ExportJob.Format.values()) {
+            if (fileName.endsWith(format.getExtension())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete export file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /** Counts the bytes written to the file and stops the export once it is cancelled. */
+    private static final class ProgressOutputStream extends FilterOutputStream {
+
+        private final ExportJob job;
+
+        ProgressOutputStream(OutputStream out, ExportJob job) {
+            super(out);
+            this.job = job;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkCancelled();
+            out.write(b);
+            job.addBytes(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkCancelled();
+            out.write(b, off, len);
+            job.addBytes(len);
+        }
+
+        private void checkCancelled() throws InterruptedIOException {
+            if (job.isCancelled()) {
+                throw new InterruptedIOException("Export cancelled");
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JdbcTemplate that applies the limits of the {@link QueryGovernor.Scope} open on the calling
+ * thread to every statement it creates, on top of the template-wide settings.
+ */
+public class GovernedJdbcTemplate extends JdbcTemplate {
+
+    public GovernedJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement statement) throws SQLException {
+        super.applyStatementSettings(statement);
+        QueryGovernor.Scope scope = QueryGovernor.current();
+        if (scope != null) {
+            scope.apply(statement);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package examp.org.com.dbquerzapp.service;
+
+import examp.org.com.dbquerzapp.validator.SelectStatement;
+import examp.org.com.dbquerzapp.validator.SqlExpression;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites a saved query into one page of a keyset scan. The query is wrapped as a derived
+ * table and filtered on its own ORDER BY key, so every page is an index range scan that starts
+ * right after the previous page instead of skipping OFFSET rows:
+ * <pre>
+ * SELECT * FROM (&lt;query&gt;) page_src WHERE (k1, k2) &gt; (:_page_key0, :_page_key1) ORDER BY k1, k2 LIMIT :_page_limit
+ * </pre>
+ * The ORDER BY key must be unique and not null for pages to neither overlap nor skip rows.
+ */
+final class KeysetQuery {
+
+    static final String LIMIT_PARAMETER = "_page_limit";
+    private static final String KEY_PARAMETER = "_page_key";
+
+    private final String sql;
+    private final List<String> columns;
+    private final List<Boolean> descending;
+
+    private KeysetQuery(String sql, List<String> columns, List<Boolean> descending) {
+        this.sql = sql;
+        this.columns = columns;
+        this.descending = descending;
+    }
+
+    /**
+     * Throws IllegalArgumentException when the query has no ORDER BY on plain result columns,
+     * or limits its own result.
+     */
+    static KeysetQuery of(CompiledQuery compiledQuery) {
+        SelectStatement statement = compiledQuery.getValidationResult().getStatement();
+        if (statement == null || statement.orderBy().isEmpty()) {
+            throw new IllegalArgumentException("Pagination requires a query with an ORDER BY clause");
+        }
+        if (statement.limit() != null || statement.offset() != null) {
+            throw new IllegalArgumentException("Pagination cannot be combined with LIMIT or OFFSET in the query");
+        }
+
+        List<String> columns = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        for (SelectStatement.OrderItem item : statement.orderBy()) {
+            if (!(item.expression() instanceof SqlExpression.ColumnReference column)) {
+                throw new IllegalArgumentException("Pagination requires ORDER BY to list result columns only");
+            }
+            columns.add(column.name());
+            descending.add(item.descending());
+        }
+        return new KeysetQuery(compiledQuery.getSql(), List.copyOf(columns), List.copyOf(descending));
+    }
+
+    int size() {
+        return columns.size();
+    }
+
+    /**
+     * Returns the SQL for the page after the given key (the first page when it is null) and adds
+     * the key and limit values to the parameter source.
+     */
+    String pageSql(List<Object> afterKey, int limit, MapSqlParameterSource parameters) {
+        StringBuilder page = new StringBuilder("SELECT * FROM (\n").append(sql).append("\n) page_src");
+        if (afterKey != null) {
+            for (int i = 0; i < afterKey.size(); i++) {
+                parameters.addValue(KEY_PARAMETER + i, afterKey.get(i));
+            }
+            page.append(" WHERE ").append(predicate());
+        }
+        page.append(" ORDER BY ");
+        for (int i = 0; i < columns.size(); i++) {
+            page.append(i == 0 ? "" : ", ").append(columns.get(i)).append(descending.get(i) ? " DESC" : "");
+        }
+        parameters.addValue(LIMIT_PARAMETER, limit);
+        return page.append(" LIMIT :").append(LIMIT_PARAMETER).toString();
+    }
+
+    /** Reads the ORDER BY key of a result row, for the token of the next page. */
+    List<Object> keyOf(Map<String, Object> row) {
+        List<Object> key = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            String label = unquote(column);
+            if (!row.containsKey(label)) {
+                throw new IllegalArgumentException("Pagination requires the ORDER BY column " + label + " in the result");
+            }
+            Object value = row.get(label);
+            if (value == null) {
+                throw new IllegalArgumentException("Pagination requires non-null values in ORDER BY column " + label);
+            }
+            key.add(value);
+        }
+        return key;
+    }
+
+    /**
+     * A row-value comparison when all keys sort the same way, which PostgreSQL can answer with a
+     * single index range; the equivalent OR chain for mixed ASC/DESC keys.
+     */
+    private String predicate() {
+        if (!descending.contains(!descending.get(0))) {
+            String operator = descending.get(0) ? " < " : " > ";
+            if (columns.size() == 1) {
+                return columns.get(0) + operator + ":" + KEY_PARAMETER + 0;
+            }
+            StringBuilder left = new StringBuilder("(");
+            StringBuilder right = new StringBuilder("(");
+            for (int i = 0; i < columns.size(); i++) {
+                left.append(i == 0 ? "" : ", ").append(columns.get(i));
+                right.append(i == 0 ? "" : ", ").append(':').append(KEY_PARAMETER).append(i);
+            }
+            return left.append(')').append(operator).append(right).append(')').toString();
+        }
+
+        StringBuilder predicate = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            predicate.append(i == 0 ? "(" : " OR (");
+            for (int j = 0; j < i; j++) {
+                predicate.append(columns.get(j)).append(" = :").append(KEY_PARAMETER).append(j).append(" AND ");
+            }
+            predicate.append(columns.get(i)).append(descending.get(i) ? " < :" : " > :").append(KEY_PARAMETER).append(i).append(')');
+        }
+        return predicate.append(')').toString();
+    }
+
+    private static String unquote(String identifier) {
+        char first = identifier.charAt(0);
+        if ((first == '"' || first == '`') && identifier.length() > 1) {
+            return identifier.substring(1, identifier.length() - 1).replace(String.valueOf(first) + first, String.valueOf(first));
+        }
+        return identifier;
+    }
+}
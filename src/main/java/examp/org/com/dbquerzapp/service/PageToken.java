@@ -0,0 +1,129 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Opaque continuation token of a keyset-paginated query: the ORDER BY key of the last row
+ * returned, plus a fingerprint of the query and its parameter values so a token cannot be
+ * replayed against a different query. Key values keep their JDBC type, so the next page binds
+ * them exactly like the column they are compared with.
+ */
+@Getter
+@AllArgsConstructor
+class PageToken {
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+        private static final TypeReference<List<List<String>>> KEYS = new TypeReference<>() {
+        };
+
+        private final String fingerprint;
+        private final List<Object> keyValues;
+
+        String encode() {
+            List<List<String>> encoded = new ArrayList<>();
+            encoded.add(List.of(fingerprint));
+            for (Object value : keyValues) {
+                encoded.add(List.of(tag(value), text(value)));
+            }
+            try {
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(encoded));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Page token could not be encoded", e);
+            }
+        }
+
+        /**
+         * Decodes a token produced by {@link #encode()}. Throws IllegalArgumentException for
+         * anything else, including tokens whose structure has been tampered with.
+         */
+        static PageToken decode(String token) {
+            try {
+                List<List<String>> encoded = MAPPER.readValue(Base64.getUrlDecoder().decode(token), KEYS);
+                List<Object> keyValues = new ArrayList<>();
+                for (List<String> key : encoded.subList(1, encoded.size())) {
+                    keyValues.add(value(key.get(0), key.get(1)));
+                }
+                return new PageToken(encoded.get(0).get(0), keyValues);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+        }
+
+        private static String tag(Object value) {
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                return "l";
+            }
+            if (value instanceof BigInteger || value instanceof BigDecimal) {
+                return "n";
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return "f";
+            }
+            if (value instanceof Boolean) {
+                return "b";
+            }
+            if (value instanceof Timestamp || value instanceof LocalDateTime) {
+                return "t";
+            }
+            if (value instanceof OffsetDateTime) {
+                return "z";
+            }
+            if (value instanceof java.sql.Date || value instanceof LocalDate) {
+                return "d";
+            }
+            if (value instanceof UUID) {
+                return "u";
+            }
+            return "s";
+        }
+
+        private static String text(Object value) {
+            if (value instanceof Timestamp timestamp) {
+                return timestamp.toLocalDateTime().toString();
+            }
+            if (value instanceof java.sql.Date date) {
+                return date.toLocalDate().toString();
+            }
+            return value.toString();
+        }
+
+        private static Object value(String tag, String text) {
+            switch (tag) {
+                case "l":
+                    return Long.valueOf(text);
+                case "n":
+                    return new BigDecimal(text);
+                case "f":
+                    return Double.valueOf(text);
+                case "b":
+                    return Boolean.valueOf(text);
+                case "t":
+                    return LocalDateTime.parse(text);
+                case "z":
+                    return OffsetDateTime.parse(text);
+                case "d":
+                    return LocalDate.parse(text);
+                case "u":
+                    return UUID.fromString(text);
+                case "s":
+                    return text;
+                default:
+                    throw new IllegalArgumentException("Unknown key type: " + tag);
+            }
+        }
+}
@@ -0,0 +1,94 @@
+package examp.org.com.dbquerzapp.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded admission queue in front of the JDBC pool. At most {@code max-concurrent} queries run
+ * at once (sized to the connection pool), at most {@code max-queued} more wait for a slot, and
+ * nobody waits longer than {@code max-wait}. Everything beyond that is rejected immediately with
+ * {@link QueryRejectedException} instead of blocking until the pool's connection-timeout.
+ */
+@Component
+@Slf4j
+public class QueryAdmissionGate {
+
+    /** Releases the slot taken by {@link #acquire()}; safe to close more than once. */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final Semaphore slots;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int maxQueued;
+    private final Duration maxWait;
+    private final long retryAfterSeconds;
+
+    public QueryAdmissionGate(@Value("${dbquerzapp.query.admission.max-concurrent:10}") int maxConcurrent,
+                              @Value("${dbquerzapp.query.admission.max-queued:100}") int maxQueued,
+                              @Value("${dbquerzapp.query.admission.max-wait:5s}") Duration maxWait,
+                              @Value("${dbquerzapp.query.admission.retry-after:2s}") Duration retryAfter) {
+        this.slots = new Semaphore(maxConcurrent, true);
+        this.maxQueued = maxQueued;
+        this.maxWait = maxWait;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+    }
+
+    public Permit acquire() {
+        if (!tryAcquireNow()) {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                log.warn("Query rejected: admission queue is full ({})", maxQueued);
+                throw new QueryRejectedException("Too many queries in progress, retry later", retryAfterSeconds);
+            }
+            try {
+                if (!slots.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                    log.warn("Query rejected: no slot within {} ms", maxWait.toMillis());
+                    throw new QueryRejectedException("Too many queries in progress, retry later", retryAfterSeconds);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryRejectedException("Interrupted while waiting for a query slot", retryAfterSeconds);
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                slots.release();
+            }
+        };
+    }
+
+    /**
+     * Takes a free slot unless callers are already queued for one. The untimed tryAcquire()
+     * would barge past them even on a fair semaphore, so a new query could take every released
+     * slot while the queued ones run out their max-wait.
+     */
+    private boolean tryAcquireNow() {
+        try {
+            return slots.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryRejectedException("Interrupted while waiting for a query slot", retryAfterSeconds);
+        }
+    }
+
+    public int getAvailableSlots() {
+        return slots.availablePermits();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+}
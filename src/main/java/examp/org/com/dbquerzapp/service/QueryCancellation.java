@@ -0,0 +1,105 @@
+package examp.org.com.dbquerzapp.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lets another thread cancel the statement of a running request, for example when the client
+ * of a streamed response disconnects or the async request times out. The controller keeps it
+ * in the request attribute {@link #ATTRIBUTE}; the statement is registered by
+ * {@link GovernedJdbcTemplate} when it is created.
+ * <p>
+ * It also holds the admission slots of an async request, which are taken on the request thread
+ * but outlive it. Once the response body has started, only the body releases them, when it
+ * finishes: until then it holds a pooled connection, even after a timeout or a cancel, since
+ * {@link Statement#cancel()} does not wait for the statement to stop. A body that never started
+ * has its slots released when the async request completes, and then does not run the query.
+ */
+@Slf4j
+public class QueryCancellation {
+
+    public static final String ATTRIBUTE = QueryCancellation.class.getName();
+
+    /** SQLState of a statement cancelled by the client or a query timeout. */
+    static final String QUERY_CANCELED = "57014";
+
+    private static final int NEW = 0;
+    private static final int STARTED = 1;
+    private static final int RELEASED = 2;
+
+    private final AtomicReference<Statement> running = new AtomicReference<>();
+    private final List<QueryAdmissionGate.Permit> held = new CopyOnWriteArrayList<>();
+    private final AtomicInteger state = new AtomicInteger(NEW);
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+        Statement statement = running.get();
+        if (statement != null) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                log.debug("Statement could not be cancelled: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** Keeps the permits until {@link #release()}; null permits, like an unused cost lane, are skipped. */
+    public void hold(QueryAdmissionGate.Permit... permits) {
+        for (QueryAdmissionGate.Permit permit : permits) {
+            if (permit != null) {
+                held.add(permit);
+            }
+        }
+    }
+
+    /**
+     * Marks the response body as started, so that from now on only it releases the permits.
+     * Returns false when the async request already ended and released them; the body must not
+     * run the query then.
+     */
+    public boolean start() {
+        return state.compareAndSet(NEW, STARTED);
+    }
+
+    /** Releases the held permits, in reverse order of taking them; only the first call does. */
+    public void release() {
+        if (state.getAndSet(RELEASED) != RELEASED) {
+            close();
+        }
+    }
+
+    /** Releases the held permits unless the response body has started, which releases them itself. */
+    public void releaseIfNotStarted() {
+        if (state.compareAndSet(NEW, RELEASED)) {
+            close();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void register(Statement statement) throws SQLException {
+        running.set(statement);
+        if (cancelled) {
+            throw new SQLException("Query was cancelled", QUERY_CANCELED);
+        }
+    }
+
+    void unregister() {
+        running.set(null);
+    }
+
+    private void close() {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).close();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package examp.org.com.dbquerzapp.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Index of the saved queries in classpath:queries and the external query directory, built
+ * once all beans exist and before the web server accepts requests. Every query is compiled
+ * then and published to the {@link CompiledQueryCache}, so broken files are reported at startup:
+ * logged and counted, or, with {@code catalog.fail-on-invalid}, failing the startup. With
+ * {@code catalog.warmup} every valid query is also planned once on the database.
+ * <p>
+ * Changes reported by the {@link QueryDirectoryWatcher} are collected until no further change
+ * arrives for {@code catalog.reload-delay}, then only the changed files are compiled and
+ * swapped in together. A file that no longer validates does not replace a working version;
+ * the old one stays live and the error is reported until the file is fixed.
+ * <p>
+ * Published queries declared with {@code -- @refresh} are handed to {@link QuerySnapshots},
+ * which precomputes them from then on.
+ */
+@Component
+@Slf4j
+public class QueryCatalog implements SmartInitializingSingleton {
+
+    private static final String SQL_EXTENSION = ".sql";
+
+    @Autowired
+    private QueryService queryService;
+
+    @Autowired
+    private CompiledQueryCache compiledQueryCache;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private QuerySnapshots querySnapshots;
+
+    @Value("${dbquerzapp.query.directory:}")
+    private String directory;
+
+    @Value("${dbquerzapp.query.catalog.fail-on-invalid:false}")
+    private boolean failOnInvalid;
+
+    @Value("${dbquerzapp.query.catalog.warmup:false}")
+    private boolean warmup;
+
+    @Value("${dbquerzapp.query.catalog.reload-delay:500ms}")
+    private Duration reloadDelay;
+
+    private final PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("query-catalog-reload").factory());
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean pendingFullReload;
+    private ScheduledFuture<?> scheduledReload;
+
+    private volatile Snapshot snapshot = Snapshot.of(List.of(), Map.of());
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        long startTime = System.currentTimeMillis();
+        reload();
+        Map<String, String> invalid = snapshot.invalidQueries();
+        if (failOnInvalid && !invalid.isEmpty()) {
+            throw new IllegalStateException("Invalid saved queries: " + String.join(", ", new TreeSet<>(invalid.keySet())));
+        }
+        int warmed = warmup ? warmup() : 0;
+        log.info("Query catalog loaded: queries={} invalid={} warmed_up={} time_ms={}",
+                snapshot.fileNames().size(), invalid.size(), warmed, System.currentTimeMillis() - startTime);
+    }
+
+    @PreDestroy
+    public void stop() {
+        reloader.shutdownNow();
+    }
+
+    /** File names of all saved queries, sorted; served from memory. */
+    public List<String> getFileNames() {
+        return snapshot.fileNames();
+    }
+
+    /** Token that changes whenever the file names change; the ETag of the file listing. */
+    public String getVersion() {
+        return snapshot.version();
+    }
+
+    /** Validation error by query identifier, for every query file that fails validation. */
+    public Map<String, String> getInvalidQueries() {
+        return snapshot.invalidQueries();
+    }
+
+    /** Schedules the query for recompilation once the directory has been quiet for the reload delay. */
+    public void changed(String queryIdentifier) {
+        pending.add(queryIdentifier);
+        scheduleReload();
+    }
+
+    /** Schedules a full rescan, for when change events were lost. */
+    public void changedAll() {
+        pendingFullReload = true;
+        scheduleReload();
+    }
+
+    /** Scans both locations again and compiles every query. */
+    public synchronized void reload() {
+        SortedSet<String> identifiers = new TreeSet<>();
+        try {
+            for (Resource resource : resolver.getResources("classpath:queries/*" + SQL_EXTENSION)) {
+                identifiers.add(identifierOf(resource.getFilename()));
+            }
+            if (directory != null && !directory.isBlank() && Files.isDirectory(Path.of(directory))) {
+                try (Stream<Path> files = Files.list(Path.of(directory))) {
+                    files.filter(Files::isRegularFile)
+                            .map(file -> file.getFileName().toString())
+                            .filter(fileName -> fileName.endsWith(SQL_EXTENSION))
+                            .forEach(fileName -> identifiers.add(identifierOf(fileName)));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list saved queries", e);
+        }
+        snapshot.fileNames().forEach(fileName -> identifiers.add(identifierOf(fileName)));
+        refresh(identifiers);
+    }
+
+    /**
+     * Compiles the queries again and publishes the new versions in one swap. Queries whose file
+     * is gone are removed; the others in the catalog are not touched.
+     */
+    public synchronized void refresh(Collection<String> queryIdentifiers) {
+        SortedSet<String> identifiers = new TreeSet<>();
+        snapshot.fileNames().forEach(fileName -> identifiers.add(identifierOf(fileName)));
+        Map<String, String> invalid = new HashMap<>(snapshot.invalidQueries());
+        Map<String, CompiledQuery> changed = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+
+        for (String queryIdentifier : queryIdentifiers) {
+            invalid.remove(queryIdentifier);
+            CompiledQuery compiledQuery;
+            try {
+                compiledQuery = queryService.compileQuery(queryIdentifier);
+            } catch (IOException e) {
+                identifiers.remove(queryIdentifier);
+                removed.add(queryIdentifier);
+                continue;
+            }
+            identifiers.add(queryIdentifier);
+            if (compiledQuery.isValid()) {
+                changed.put(queryIdentifier, compiledQuery);
+                continue;
+            }
+            String error = compiledQuery.getValidationResult().getErrorMessage();
+            invalid.put(queryIdentifier, error);
+            CompiledQuery live = compiledQueryCache.getPublished(queryIdentifier);
+            if (live != null && live.isValid()) {
+                log.warn("Invalid saved query {}, keeping the previous version: {}", queryIdentifier, error);
+            } else {
+                log.warn("Invalid saved query {}: {}", queryIdentifier, error);
+                changed.put(queryIdentifier, compiledQuery);
+            }
+        }
+
+        compiledQueryCache.publish(changed, removed);
+        changed.keySet().forEach(queryResultCache::invalidate);
+        removed.forEach(queryResultCache::invalidate);
+        changed.values().forEach(querySnapshots::schedule);
+        removed.forEach(querySnapshots::unschedule);
+        snapshot = Snapshot.of(identifiers.stream().map(queryIdentifier -> queryIdentifier + SQL_EXTENSION).toList(),
+                Map.copyOf(invalid));
+        if (!changed.isEmpty() || !removed.isEmpty()) {
+            log.info("Query catalog updated: changed={} removed={}", changed.keySet(), removed);
+        }
+    }
+
+    /** Plans every valid query once; a failure is logged and does not stop the others. */
+    int warmup() {
+        int warmed = 0;
+        for (String fileName : snapshot.fileNames()) {
+            String queryIdentifier = identifierOf(fileName);
+            CompiledQuery compiledQuery = compiledQueryCache.getPublished(queryIdentifier);
+            if (compiledQuery == null || !compiledQuery.isValid()) {
+                continue;
+            }
+            try {
+                queryService.warmup(compiledQuery);
+                warmed++;
+            } catch (RuntimeException e) {
+                log.warn("Warmup of query {} failed: {}", queryIdentifier, e.getMessage());
+            }
+        }
+        return warmed;
+    }
+
+    /** Applies the changes collected since the last reload. */
+    void applyPending() {
+        try {
+            if (pendingFullReload) {
+                pendingFullReload = false;
+                pending.clear();
+                reload();
+                return;
+            }
+            List<String> identifiers = new ArrayList<>();
+            for (Iterator<String> iterator = pending.iterator(); iterator.hasNext(); ) {
+                identifiers.add(iterator.next());
+                iterator.remove();
+            }
+            if (!identifiers.isEmpty()) {
+                refresh(identifiers);
+            }
+        } catch (RuntimeException e) {
+            log.error("Reloading saved queries failed", e);
+        }
+    }
+
+    private void scheduleReload() {
+        synchronized (pending) {
+            if (scheduledReload != null) {
+                scheduledReload.cancel(false);
+            }
+            scheduledReload = reloader.schedule(this::applyPending, reloadDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static String identifierOf(String fileName) {
+        return fileName.substring(0, fileName.length() - SQL_EXTENSION.length());
+    }
+
+    private record Snapshot(List<String> fileNames, Map<String, String> invalidQueries, String version) {
+
+        static Snapshot of(List<String> fileNames, Map<String, String> invalidQueries) {
+            CRC32 crc = new CRC32();
+            crc.update(String.join("\n", fileNames).getBytes(StandardCharsets.UTF_8));
+            return new Snapshot(fileNames, invalidQueries, Long.toHexString(crc.getValue()));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package examp.org.com.dbquerzapp.service;
+
+/**
+ * Thrown when the planner estimates a query above the cost or row limit of the
+ * {@link QueryCostGate}. Retrying does not help, so it is a bad request (400) like the other
+ * refusals of a request, not a 503.
+ */
+public class QueryCostExceededException extends IllegalArgumentException {
+
+    public QueryCostExceededException(String message) {
+        super(message);
+    }
+}
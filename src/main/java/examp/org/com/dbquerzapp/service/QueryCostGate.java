@@ -0,0 +1,181 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Admission by planner estimate. Every query shape (the SQL as it is sent, per compiled version
+ * of the query) is planned once with {@code EXPLAIN (FORMAT JSON)}; its total cost and row
+ * estimate are cached for {@code ttl}. A query estimated above {@code max-cost} or
+ * {@code max-rows} is rejected with {@link QueryCostExceededException}; one above
+ * {@code low-priority-cost} or {@code low-priority-rows} runs in the low-priority lane, where at
+ * most {@code low-priority.max-concurrent} queries run at once, so expensive queries cannot take
+ * every pooled connection. A threshold of 0 is off.
+ * <p>
+ * Like {@link QueryResultCache}, the estimates are an asynchronous cache, so the EXPLAIN of a
+ * miss, and its wait for a slot, runs outside of the cache's map lock.
+ */
+@Component
+@Slf4j
+public class QueryCostGate {
+
+    public enum Lane { IMMEDIATE, LOW_PRIORITY }
+
+    /** Planner estimate of a query shape; {@link #UNKNOWN} when it could not be planned. */
+    public record Estimate(double totalCost, double rows) {
+
+        public static final Estimate UNKNOWN = new Estimate(0, 0);
+
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        /** Reads the top plan node of PostgreSQL's {@code EXPLAIN (FORMAT JSON)} output. */
+        public static Estimate parse(String plan) {
+            try {
+                JsonNode node = MAPPER.readTree(plan).path(0).path("Plan");
+                if (!node.has("Total Cost")) {
+                    return UNKNOWN;
+                }
+                return new Estimate(node.path("Total Cost").asDouble(), node.path("Plan Rows").asDouble());
+            } catch (JsonProcessingException e) {
+                return UNKNOWN;
+            }
+        }
+    }
+
+    /** A query shape: the SQL sent for one compiled version of a query. */
+    public record Key(String queryIdentifier, Instant compiledAt, String sql) {
+    }
+
+    private final boolean enabled;
+    private final double lowPriorityCost;
+    private final double lowPriorityRows;
+    private final double maxCost;
+    private final double maxRows;
+    private final Semaphore lowPrioritySlots;
+    private final Duration lowPriorityMaxWait;
+    private final long retryAfterSeconds;
+    private final AsyncCache<Key, Estimate> estimates;
+
+    public QueryCostGate(@Value("${dbquerzapp.query.cost.enabled:true}") boolean enabled,
+                         @Value("${dbquerzapp.query.cost.low-priority-cost:100000}") double lowPriorityCost,
+                         @Value("${dbquerzapp.query.cost.low-priority-rows:0}") double lowPriorityRows,
+                         @Value("${dbquerzapp.query.cost.max-cost:10000000}") double maxCost,
+                         @Value("${dbquerzapp.query.cost.max-rows:0}") double maxRows,
+                         @Value("${dbquerzapp.query.cost.low-priority.max-concurrent:2}") int lowPriorityMaxConcurrent,
+                         @Value("${dbquerzapp.query.cost.low-priority.max-wait:30s}") Duration lowPriorityMaxWait,
+                         @Value("${dbquerzapp.query.admission.retry-after:2s}") Duration retryAfter,
+                         @Value("${dbquerzapp.query.cost.ttl:10m}") Duration ttl,
+                         @Value("${dbquerzapp.query.cost.max-size:1024}") long maxSize) {
+        this.enabled = enabled;
+        this.lowPriorityCost = lowPriorityCost;
+        this.lowPriorityRows = lowPriorityRows;
+        this.maxCost = maxCost;
+        this.maxRows = maxRows;
+        this.lowPrioritySlots = new Semaphore(Math.max(1, lowPriorityMaxConcurrent), true);
+        this.lowPriorityMaxWait = lowPriorityMaxWait;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.estimates = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .buildAsync();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The cached estimate of the shape, planned by the planner on a miss only. Concurrent misses
+     * wait for one plan; when planning fails, they plan themselves.
+     */
+    public Estimate estimate(Key key, Supplier<Estimate> planner) {
+        while (true) {
+            CompletableFuture<Estimate> planning = new CompletableFuture<>();
+            CompletableFuture<Estimate> future = estimates.get(key, (k, executor) -> planning);
+            if (future == planning) {
+                try {
+                    Estimate estimate = planner.get();
+                    planning.complete(estimate);
+                    return estimate;
+                } catch (RuntimeException | Error e) {
+                    planning.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            try {
+                return future.join();
+            } catch (CompletionException | CancellationException e) {
+                estimates.asMap().remove(key, future);
+            }
+        }
+    }
+
+    /** The estimate of the shape if it is already known, without planning it; null otherwise. */
+    public Estimate cached(Key key) {
+        CompletableFuture<Estimate> future = estimates.getIfPresent(key);
+        return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /**
+     * The lane the estimate puts the query in. Throws QueryCostExceededException when it is above
+     * the limits.
+     */
+    public Lane classify(String queryIdentifier, Estimate estimate) {
+        if (exceeds(estimate.totalCost(), maxCost) || exceeds(estimate.rows(), maxRows)) {
+            log.warn("Query {} rejected: estimated cost {} and rows {}", queryIdentifier, estimate.totalCost(), estimate.rows());
+            throw new QueryCostExceededException(String.format(
+                    "Query %s is too expensive to run: estimated cost %.0f (limit %.0f), estimated rows %.0f (limit %.0f)",
+                    queryIdentifier, estimate.totalCost(), maxCost, estimate.rows(), maxRows));
+        }
+        if (exceeds(estimate.totalCost(), lowPriorityCost) || exceeds(estimate.rows(), lowPriorityRows)) {
+            return Lane.LOW_PRIORITY;
+        }
+        return Lane.IMMEDIATE;
+    }
+
+    /**
+     * Takes a slot of the low-priority lane, waiting at most {@code low-priority.max-wait}.
+     * Throws QueryRejectedException when the lane stays full.
+     */
+    public QueryAdmissionGate.Permit acquireLowPriority() {
+        try {
+            if (!lowPrioritySlots.tryAcquire(lowPriorityMaxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Query rejected: no low-priority slot within {} ms", lowPriorityMaxWait.toMillis());
+                throw new QueryRejectedException("Too many expensive queries in progress, retry later", retryAfterSeconds);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryRejectedException("Interrupted while waiting for a low-priority slot", retryAfterSeconds);
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                lowPrioritySlots.release();
+            }
+        };
+    }
+
+    public int getAvailableLowPrioritySlots() {
+        return lowPrioritySlots.availablePermits();
+    }
+
+    private static boolean exceeds(double estimate, double threshold) {
+        return threshold > 0 && estimate > threshold;
+    }
+}
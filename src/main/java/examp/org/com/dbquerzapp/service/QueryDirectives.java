@@ -0,0 +1,47 @@
+package examp.org.com.dbquerzapp.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Directives written as SQL line comments in a query file, for example
+ * {@code -- @param min_age integer}. The database sees plain comments, so the file still runs
+ * unchanged in any SQL client.
+ */
+final class QueryDirectives {
+
+    private final Map<String, List<String>> directives;
+
+    private QueryDirectives(Map<String, List<String>> directives) {
+        this.directives = directives;
+    }
+
+    static QueryDirectives parse(String sql) {
+        Map<String, List<String>> directives = new HashMap<>();
+        for (String line : sql.split("\\R")) {
+            String text = line.strip();
+            if (!text.startsWith("--")) {
+                continue;
+            }
+            text = text.substring(2).strip();
+            if (!text.startsWith("@") || text.length() == 1) {
+                continue;
+            }
+            int end = 1;
+            while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+                end++;
+            }
+            String name = text.substring(1, end).toLowerCase(Locale.ROOT);
+            directives.computeIfAbsent(name, key -> new ArrayList<>()).add(text.substring(end).strip());
+        }
+        return new QueryDirectives(directives);
+    }
+
+    /** Arguments of every occurrence of the directive, in file order. */
+    List<String> all(String name) {
+        return directives.getOrDefault(name, List.of());
+    }
+}
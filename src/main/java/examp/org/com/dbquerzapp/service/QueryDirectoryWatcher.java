@@ -0,0 +1,95 @@
+package examp.org.com.dbquerzapp.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches the external query directory (dbquerzapp.query.directory) and reports every .sql
+ * file that is created, modified or deleted there to the {@link QueryCatalog}, which reloads
+ * it once the directory is quiet. Does nothing when no external directory is configured.
+ */
+@Component
+@Slf4j
+public class QueryDirectoryWatcher {
+
+    private static final String SQL_EXTENSION = ".sql";
+
+    @Autowired
+    private QueryCatalog queryCatalog;
+
+    @Value("${dbquerzapp.query.directory:}")
+    private String directory;
+
+    private WatchService watchService;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (directory == null || directory.isBlank()) {
+            return;
+        }
+        Path path = Path.of(directory);
+        if (!Files.isDirectory(path)) {
+            log.warn("Query directory does not exist, not watching: {}", path);
+            return;
+        }
+        watchService = path.getFileSystem().newWatchService();
+        path.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        Thread.ofPlatform().daemon().name("query-directory-watcher").start(this::watch);
+        log.info("Watching query directory: {}", path);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handle(event);
+                }
+                if (!key.reset()) {
+                    log.warn("Query directory is no longer accessible, stopped watching");
+                    queryCatalog.changedAll();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.info("Query directory watcher stopped");
+        }
+    }
+
+    void handle(WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            queryCatalog.changedAll();
+            return;
+        }
+        String fileName = event.context().toString();
+        if (fileName.endsWith(SQL_EXTENSION)) {
+            String queryIdentifier = fileName.substring(0, fileName.length() - SQL_EXTENSION.length());
+            queryCatalog.changed(queryIdentifier);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package examp.org.com.dbquerzapp.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits of saved query executions, so one runaway query can neither hold a connection
+ * indefinitely nor fill the heap:
+ * <ul>
+ * <li>{@code timeout}: JDBC query timeout; the driver cancels the statement when it runs longer</li>
+ * <li>{@code max-rows}: rows of a materialized result; the statement fetches one more row, so a
+ * result that is cut off can be told apart from one that fits exactly</li>
+ * <li>{@code max-bytes}: estimated heap size of the column buffers of one materialized result</li>
+ * <li>{@code memory-budget}: estimated heap size of all results held at once; a query that
+ * would exceed it fails with {@link QueryRejectedException}. A result read for a request stays
+ * reserved until the request completes, after its response is written; one read outside a
+ * request, like a snapshot refresh, only while it is read</li>
+ * </ul>
+ * A result cut off at max-rows or max-bytes is marked {@link ColumnarRows#isTruncated truncated}. The
+ * {@code -- @timeout} and {@code -- @max-rows} directives of a query can only tighten the global
+ * limits. Streamed results are only subject to the timeout, since they are not held in memory;
+ * exports use {@code export.timeout} instead of the global timeout.
+ */
+@Component
+@Slf4j
+public class QueryGovernor {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private static final String RESERVATION = QueryGovernor.class.getName() + ".RESERVATION";
+
+    private final Duration timeout;
+    private final int maxRows;
+    private final long maxBytes;
+    private final long memoryBudget;
+    private final long retryAfterSeconds;
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    public QueryGovernor(@Value("${dbquerzapp.query.governor.timeout:30s}") Duration timeout,
+                         @Value("${dbquerzapp.query.governor.max-rows:100000}") int maxRows,
+                         @Value("${dbquerzapp.query.governor.max-bytes:64MB}") DataSize maxBytes,
+                         @Value("${dbquerzapp.query.governor.memory-budget:256MB}") DataSize memoryBudget,
+                         @Value("${dbquerzapp.query.admission.retry-after:2s}") Duration retryAfter) {
+        this.timeout = timeout;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes.toBytes();
+        this.memoryBudget = memoryBudget.toBytes();
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+    }
+
+    /** Applies all limits to the statements created on this thread until the scope is closed. */
+    public Scope materializing(QueryOptions options) {
+        return enter(new Scope(timeoutSeconds(options), maxRows(options), null));
+    }
+
+    /** Applies the timeout to a streamed query and lets the cancellation stop its statement. */
+    public Scope streaming(QueryOptions options, QueryCancellation cancellation) {
+        return enter(new Scope(timeoutSeconds(options), 0, cancellation));
+    }
+
+    /**
+     * Like {@link #streaming}, but with the timeout of background exports in place of the global
+     * one, since an export is expected to read far more rows than a request.
+     */
+    public Scope exporting(QueryOptions options, Duration exportTimeout, QueryCancellation cancellation) {
+        return enter(new Scope(timeoutSeconds(exportTimeout, options), 0, cancellation));
+    }
+
+    /** Effective row limit of the query, {@code 0} when unlimited. */
+    public int maxRows(QueryOptions options) {
+        Integer declared = options.getMaxRows();
+        if (declared == null) {
+            return maxRows;
+        }
+        return maxRows > 0 ? Math.min(maxRows, declared) : declared;
+    }
+
+    long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    static Scope current() {
+        return CURRENT.get();
+    }
+
+    /** Whether the failure is a statement cancelled by its timeout or by {@link QueryCancellation}. */
+    public static boolean isCancellation(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof QueryTimeoutException || cause instanceof SQLTimeoutException) {
+                return true;
+            }
+            if (cause instanceof SQLException sql && QueryCancellation.QUERY_CANCELED.equals(sql.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int timeoutSeconds(QueryOptions options) {
+        return timeoutSeconds(timeout, options);
+    }
+
+    private static int timeoutSeconds(Duration timeout, QueryOptions options) {
+        Duration effective = timeout;
+        if (options.getTimeout() != null && (effective == null || effective.isZero() || options.getTimeout().compareTo(effective) < 0)) {
+            effective = options.getTimeout();
+        }
+        if (effective == null || effective.isZero() || effective.isNegative()) {
+            return 0;
+        }
+        return (int) Math.max(1, (effective.toMillis() + 999) / 1000);
+    }
+
+    /**
+     * Keeps bytes of a result that was read completely reserved until the current request
+     * completes; without a request, or once it completed, they are returned right away.
+     */
+    private void hold(long bytes) {
+        Reservation reservation = bytes > 0 ? reservation() : null;
+        if (reservation == null || !reservation.add(bytes)) {
+            reservedBytes.addAndGet(-bytes);
+        }
+    }
+
+    private Reservation reservation() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        // the queries of a parallel batch share the attributes of their request
+        synchronized (attributes) {
+            try {
+                if (attributes.getAttribute(RESERVATION, RequestAttributes.SCOPE_REQUEST) instanceof Reservation reservation) {
+                    return reservation;
+                }
+                Reservation reservation = new Reservation();
+                attributes.setAttribute(RESERVATION, reservation, RequestAttributes.SCOPE_REQUEST);
+                attributes.registerDestructionCallback(RESERVATION, reservation, RequestAttributes.SCOPE_REQUEST);
+                return reservation;
+            } catch (IllegalStateException e) {
+                // the request is no longer active
+                return null;
+            }
+        }
+    }
+
+    private Scope enter(Scope scope) {
+        scope.previous = CURRENT.get();
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /** Limits of the query running on the current thread. */
+    public final class Scope implements AutoCloseable {
+
+        private final int timeoutSeconds;
+        private final int maxRows;
+        private final QueryCancellation cancellation;
+        private Scope previous;
+
+        private Scope(int timeoutSeconds, int maxRows, QueryCancellation cancellation) {
+            this.timeoutSeconds = timeoutSeconds;
+            this.maxRows = maxRows;
+            this.cancellation = cancellation;
+        }
+
+        public int getTimeoutSeconds() {
+            return timeoutSeconds;
+        }
+
+        /** Called for every statement created while the scope is open. */
+        void apply(Statement statement) throws SQLException {
+            if (timeoutSeconds > 0 && (statement.getQueryTimeout() == 0 || timeoutSeconds < statement.getQueryTimeout())) {
+                statement.setQueryTimeout(timeoutSeconds);
+            }
+            if (maxRows > 0) {
+                statement.setMaxRows(maxRows + 1);
+            }
+            if (cancellation != null) {
+                cancellation.register(statement);
+            }
+        }
+
+        /**
+         * Reads the rows into {@link ColumnarRows}, stopping at max-rows or max-bytes. The size of
+         * the column buffers is reserved against the memory budget while the rows are read and,
+         * within a request, until it completes.
+         */
+        public List<Map<String, Object>> extract(ResultSet resultSet) throws SQLException {
+            ColumnarRows rows = null;
+            long bytes = 0;
+            boolean read = false;
+            try {
+                while (resultSet.next()) {
+                    if (rows == null) {
+                        rows = ColumnarRows.of(resultSet.getMetaData());
+                    }
+                    if (maxRows > 0 && rows.size() == maxRows) {
+                        log.warn("Result truncated at max-rows ({})", maxRows);
+                        read = true;
+                        return rows.truncated(maxRows);
+                    }
+                    long rowBytes = rows.add(resultSet);
+                    if (maxBytes > 0 && bytes + rowBytes > maxBytes) {
+                        log.warn("Result truncated at max-bytes ({}) after {} rows", maxBytes, rows.size() - 1);
+                        read = true;
+                        return rows.truncated(rows.size() - 1);
+                    }
+                    if (memoryBudget > 0 && reservedBytes.addAndGet(rowBytes) > memoryBudget) {
+                        reservedBytes.addAndGet(-rowBytes);
+                        throw new QueryRejectedException("Result memory budget exhausted, retry later", retryAfterSeconds);
+                    }
+                    bytes += rowBytes;
+                }
+                read = true;
+                return rows != null ? rows : new ArrayList<>();
+            } finally {
+                if (memoryBudget > 0 && read) {
+                    hold(bytes);
+                } else if (memoryBudget > 0) {
+                    reservedBytes.addAndGet(-bytes);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (cancellation != null) {
+                cancellation.unregister();
+            }
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /** The memory reserved for the results of one request, returned when the request completes. */
+    private final class Reservation implements Runnable {
+
+        private long bytes;
+        private boolean released;
+
+        synchronized boolean add(long bytes) {
+            if (released) {
+                return false;
+            }
+            this.bytes += bytes;
+            return true;
+        }
+
+        @Override
+        public synchronized void run() {
+            released = true;
+            reservedBytes.addAndGet(-bytes);
+            bytes = 0;
+        }
+    }
+}
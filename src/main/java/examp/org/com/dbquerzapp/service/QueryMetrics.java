@@ -0,0 +1,97 @@
+package examp.org.com.dbquerzapp.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters of the query hot path, all tagged with the query identifier:
+ * <ul>
+ * <li>{@value #REQUESTS}: timer of whole requests, tagged with their outcome</li>
+ * <li>{@value #PHASE}: timer per phase of a request ({@code load}, {@code validate},
+ * {@code admission}, {@code execute}, {@code map}, {@code stream}, {@code export}) and its outcome</li>
+ * <li>{@value #ROWS}: distribution summary of the rows returned per execution</li>
+ * </ul>
+ * Connection pool gauges and the connection acquire timer are published by HikariCP itself
+ * ({@code hikaricp.connections.*}). Requests for unknown queries are tagged {@value #UNKNOWN_QUERY}
+ * so arbitrary identifiers cannot blow up the number of time series.
+ */
+@Component
+public class QueryMetrics {
+
+    public static final String REQUESTS = "dbquerzapp.query.requests";
+    public static final String PHASE = "dbquerzapp.query.phase";
+    public static final String ROWS = "dbquerzapp.query.rows";
+
+    public static final String LOAD = "load";
+    public static final String VALIDATE = "validate";
+    public static final String ADMISSION = "admission";
+    public static final String EXECUTE = "execute";
+    public static final String MAP = "map";
+    public static final String STREAM = "stream";
+    public static final String EXPORT = "export";
+
+    public static final String SUCCESS = "success";
+    public static final String INVALID = "invalid";
+    public static final String NOT_FOUND = "not_found";
+    public static final String REJECTED = "rejected";
+    public static final String ABORTED = "aborted";
+    public static final String TIMEOUT = "timeout";
+    public static final String ERROR = "error";
+
+    public static final String UNKNOWN_QUERY = "unknown";
+    /** Query tag of the admission of a consistent batch, which takes one slot for all its queries. */
+    public static final String BATCH_QUERY = "batch";
+
+    private final MeterRegistry registry;
+
+    public QueryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void stopPhase(Timer.Sample sample, String phase, String queryIdentifier, String outcome) {
+        sample.stop(Timer.builder(PHASE)
+                .description("Time spent in one phase of a saved query request")
+                .tag("phase", phase)
+                .tag("query", queryIdentifier)
+                .tag("outcome", outcome)
+                .register(registry));
+    }
+
+    public void stopRequest(Timer.Sample sample, String queryIdentifier, String outcome) {
+        sample.stop(Timer.builder(REQUESTS)
+                .description("Time of saved query requests")
+                .tag("query", queryIdentifier)
+                .tag("outcome", outcome)
+                .register(registry));
+    }
+
+    /** Runs the action as one phase; the outcome is {@value #ERROR} if it throws. */
+    public <T> T time(String phase, String queryIdentifier, Supplier<T> action) {
+        Timer.Sample sample = start();
+        String outcome = ERROR;
+        try {
+            T result = action.get();
+            outcome = SUCCESS;
+            return result;
+        } finally {
+            stopPhase(sample, phase, queryIdentifier, outcome);
+        }
+    }
+
+    public void recordRows(String queryIdentifier, long rows) {
+        DistributionSummary.builder(ROWS)
+                .description("Rows returned per execution of a saved query")
+                .baseUnit("rows")
+                .tag("query", queryIdentifier)
+                .register(registry)
+                .record(rows);
+    }
+}
@@ -0,0 +1,151 @@
+package examp.org.com.dbquerzapp.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Per-query execution options declared with header directives in the query file:
+ * <pre>
+ * -- @cache 5m      cache results for five minutes (opt-in, off by default)
+ * -- @timeout 10s   cancel the statement after ten seconds
+ * -- @max-rows 500  return at most 500 rows, marked as truncated when there are more
+ * -- @primary       always run on the primary, never on a read replica
+ * -- @workload reporting  admit in the reporting workload class instead of the default one
+ * -- @refresh 5m    precompute the result every five minutes and serve that snapshot ({@link RefreshSchedule})
+ * -- @max-stale 15m serve a snapshot for at most fifteen minutes, then run the query live again
+ * -- @key id        the result columns that identify a row, for delta responses ({@link ResultVersions})
+ * </pre>
+ * The timeout and row limit only tighten the global limits of {@link QueryGovernor}.
+ * Durations use the Spring Boot format ({@code 500ms}, {@code 30s}, {@code 5m}, {@code PT1H}).
+ */
+@Getter
+@AllArgsConstructor
+public class QueryOptions {
+        public static final QueryOptions NONE = new QueryOptions(null, null, null, false, null, null, null, null);
+
+        private final Duration resultCacheTtl;
+        private final Duration timeout;
+        private final Integer maxRows;
+        private final boolean primary;
+        private final String workloadClass;
+        private final RefreshSchedule refreshSchedule;
+        private final Duration maxStale;
+        private final List<String> key;
+
+        public boolean isResultCacheEnabled() {
+            return resultCacheTtl != null;
+        }
+
+        public boolean isPrecomputed() {
+            return refreshSchedule != null;
+        }
+
+        public boolean isKeyed() {
+            return key != null;
+        }
+
+        /**
+         * Reads the options from the directives of a query file. Throws IllegalArgumentException
+         * for a malformed or repeated directive.
+         */
+        static QueryOptions parse(QueryDirectives directives) {
+            return new QueryOptions(duration(directives, "cache"), duration(directives, "timeout"),
+                    positiveInteger(directives, "max-rows"), flag(directives, "primary"), name(directives, "workload"),
+                    schedule(directives, "refresh"), duration(directives, "max-stale"), columns(directives, "key"));
+        }
+
+        public static QueryOptions of(String sql) {
+            return parse(QueryDirectives.parse(sql));
+        }
+
+        private static Duration duration(QueryDirectives directives, String name) {
+            String value = single(directives, name);
+            if (value == null) {
+                return null;
+            }
+            try {
+                Duration duration = DurationStyle.detectAndParse(value);
+                if (duration.isNegative() || duration.isZero()) {
+                    throw new IllegalArgumentException();
+                }
+                return duration;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid @" + name + " directive: " + value);
+            }
+        }
+
+        private static RefreshSchedule schedule(QueryDirectives directives, String name) {
+            String value = single(directives, name);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return RefreshSchedule.parse(value);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid @" + name + " directive: " + value);
+            }
+        }
+
+        /** Comma-separated column labels, e.g. {@code -- @key region, id}. */
+        private static List<String> columns(QueryDirectives directives, String name) {
+            String value = single(directives, name);
+            if (value == null) {
+                return null;
+            }
+            List<String> columns = Arrays.stream(value.split(",")).map(String::trim).toList();
+            if (columns.stream().anyMatch(column -> !column.matches("[A-Za-z_][A-Za-z0-9_]*"))
+                    || columns.size() != new HashSet<>(columns).size()) {
+                throw new IllegalArgumentException("Invalid @" + name + " directive: " + value);
+            }
+            return columns;
+        }
+
+        private static Integer positiveInteger(QueryDirectives directives, String name) {
+            String value = single(directives, name);
+            if (value == null) {
+                return null;
+            }
+            try {
+                int number = Integer.parseInt(value);
+                if (number < 1) {
+                    throw new IllegalArgumentException();
+                }
+                return number;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid @" + name + " directive: " + value);
+            }
+        }
+
+        private static String name(QueryDirectives directives, String name) {
+            String value = single(directives, name);
+            if (value != null && !value.matches("[a-z][a-z0-9-]*")) {
+                throw new IllegalArgumentException("Invalid @" + name + " directive: " + value);
+            }
+            return value;
+        }
+
+        private static boolean flag(QueryDirectives directives, String name) {
+            String value = single(directives, name);
+            if (value != null && !value.isEmpty()) {
+                throw new IllegalArgumentException("The @" + name + " directive takes no value: " + value);
+            }
+            return value != null;
+        }
+
+        private static String single(QueryDirectives directives, String name) {
+            List<String> values = directives.all(name);
+            if (values.isEmpty()) {
+                return null;
+            }
+            if (values.size() > 1) {
+                throw new IllegalArgumentException("Duplicate @" + name + " directive");
+            }
+            return values.get(0);
+        }
+}
@@ -0,0 +1,19 @@
+package examp.org.com.dbquerzapp.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of a keyset-paginated query. {@code nextPageToken} is null on the last page.
+ */
+@Getter
+@AllArgsConstructor
+public class QueryPage {
+        private final List<Map<String, Object>> rows;
+        private final int pageSize;
+        private final String nextPageToken;
+
+}
@@ -0,0 +1,149 @@
+package examp.org.com.dbquerzapp.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * A typed named parameter declared in the header of a query file:
+ * <pre>
+ * -- @param min_age integer
+ * -- @param country text = HU
+ * </pre>
+ * A parameter without a default value is required.
+ */
+@Getter
+@AllArgsConstructor
+public class QueryParameter {
+        private final String name;
+        private final Type type;
+        private final String defaultValue;
+
+        public boolean isRequired() {
+            return defaultValue == null;
+        }
+
+        /**
+         * Parses the arguments of a {@code @param} directive ({@code name type [= default]}).
+         * Throws IllegalArgumentException for a malformed declaration or an unknown type.
+         */
+        static QueryParameter parse(String declaration) {
+            String definition = declaration;
+            String defaultValue = null;
+            int equals = declaration.indexOf('=');
+            if (equals >= 0) {
+                definition = declaration.substring(0, equals);
+                defaultValue = declaration.substring(equals + 1).strip();
+            }
+
+            String[] parts = definition.strip().split("\\s+");
+            if (parts.length != 2 || parts[0].isEmpty()) {
+                throw new IllegalArgumentException("Invalid parameter declaration: " + declaration);
+            }
+            QueryParameter parameter = new QueryParameter(parts[0], Type.of(parts[1]), defaultValue);
+            if (defaultValue != null) {
+                parameter.convert(defaultValue);
+            }
+            return parameter;
+        }
+
+        /**
+         * Converts a request value (a JSON scalar or a query-string value) to the declared type.
+         */
+        public Object convert(Object value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return type.convert(value);
+            } catch (NumberFormatException | DateTimeParseException | ClassCastException e) {
+                throw new IllegalArgumentException("Invalid value for query parameter " + name
+                        + ": expected " + type.name().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        public enum Type {
+            INTEGER(Types.INTEGER),
+            BIGINT(Types.BIGINT),
+            NUMERIC(Types.NUMERIC),
+            TEXT(Types.VARCHAR),
+            BOOLEAN(Types.BOOLEAN),
+            DATE(Types.DATE),
+            TIMESTAMP(Types.TIMESTAMP);
+
+            private final int sqlType;
+
+            Type(int sqlType) {
+                this.sqlType = sqlType;
+            }
+
+            public int getSqlType() {
+                return sqlType;
+            }
+
+            static Type of(String name) {
+                switch (name.toLowerCase(Locale.ROOT)) {
+                    case "int":
+                    case "integer":
+                        return INTEGER;
+                    case "bigint":
+                    case "long":
+                        return BIGINT;
+                    case "numeric":
+                    case "decimal":
+                        return NUMERIC;
+                    case "text":
+                    case "varchar":
+                    case "string":
+                        return TEXT;
+                    case "boolean":
+                    case "bool":
+                        return BOOLEAN;
+                    case "date":
+                        return DATE;
+                    case "timestamp":
+                        return TIMESTAMP;
+                    default:
+                        throw new IllegalArgumentException("Unknown query parameter type: " + name);
+                }
+            }
+
+            Object convert(Object value) {
+                if (this == TEXT) {
+                    return value.toString();
+                }
+                if (this == BOOLEAN) {
+                    if (value instanceof Boolean) {
+                        return value;
+                    }
+                    String text = value.toString();
+                    if (!text.equalsIgnoreCase("true") && !text.equalsIgnoreCase("false")) {
+                        throw new ClassCastException(text);
+                    }
+                    return Boolean.valueOf(text);
+                }
+                if (value instanceof Boolean) {
+                    throw new ClassCastException(value.toString());
+                }
+                String text = value.toString().strip();
+                switch (this) {
+                    case INTEGER:
+                        return Integer.valueOf(text);
+                    case BIGINT:
+                        return Long.valueOf(text);
+                    case NUMERIC:
+                        return new BigDecimal(text);
+                    case DATE:
+                        return LocalDate.parse(text);
+                    default:
+                        return LocalDateTime.parse(text);
+                }
+            }
+        }
+}
@@ -0,0 +1,19 @@
+package examp.org.com.dbquerzapp.service;
+
+/**
+ * Thrown when a query is not admitted because the admission queue in front of the connection
+ * pool is full or the wait for a slot timed out. Maps to 503 with a Retry-After header.
+ */
+public class QueryRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public QueryRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,113 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.example.model.QueryDelta;
+import com.example.model.QueryResponse;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a QueryResponse field by field with pre-encoded names and typed write calls, instead of
+ * Jackson's reflective bean serializer for the generated model. The fields come in the order of
+ * the generated model and a null field is left out when the mapper's default inclusion says so,
+ * so the JSON is the same as before. The rows are handed to their own serializer, which for
+ * {@link ColumnarRows} writes them straight from the column buffers.
+ */
+public class QueryResponseSerializer extends StdSerializer<QueryResponse> {
+
+    static final SerializedString SUCCESS = new SerializedString("success");
+    static final SerializedString DATA = new SerializedString("data");
+    static final SerializedString ERROR = new SerializedString("error");
+    static final SerializedString CODE = new SerializedString("code");
+    static final SerializedString EXECUTION_TIME_MS = new SerializedString("execution_time_ms");
+    static final SerializedString PAGE_SIZE = new SerializedString("page_size");
+    static final SerializedString NEXT_PAGE_TOKEN = new SerializedString("next_page_token");
+    static final SerializedString TRUNCATED = new SerializedString("truncated");
+    static final SerializedString SNAPSHOT_AGE_MS = new SerializedString("snapshot_age_ms");
+    static final SerializedString VERSION = new SerializedString("version");
+    static final SerializedString DELTA = new SerializedString("delta");
+
+    public QueryResponseSerializer() {
+        super(QueryResponse.class);
+    }
+
+    @Override
+    public void serialize(QueryResponse response, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        JsonInclude.Include inclusion = provider.getConfig().getDefaultPropertyInclusion(QueryResponse.class).getValueInclusion();
+        boolean writeNulls = inclusion == null || inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS;
+
+        generator.writeStartObject(response);
+        writeBoolean(generator, SUCCESS, response.getSuccess(), writeNulls);
+        List<Object> data = response.getData();
+        if (data != null) {
+            generator.writeFieldName(DATA);
+            provider.defaultSerializeValue(data, generator);
+        } else if (writeNulls) {
+            generator.writeFieldName(DATA);
+            generator.writeNull();
+        }
+        writeString(generator, ERROR, response.getError(), writeNulls);
+        writeNumber(generator, CODE, response.getCode(), writeNulls);
+        writeNumber(generator, EXECUTION_TIME_MS, response.getExecutionTimeMs(), writeNulls);
+        writeNumber(generator, PAGE_SIZE, response.getPageSize(), writeNulls);
+        writeString(generator, NEXT_PAGE_TOKEN, response.getNextPageToken(), writeNulls);
+        writeBoolean(generator, TRUNCATED, response.getTruncated(), writeNulls);
+        writeNumber(generator, SNAPSHOT_AGE_MS, response.getSnapshotAgeMs(), writeNulls);
+        writeString(generator, VERSION, response.getVersion(), writeNulls);
+        QueryDelta delta = response.getDelta();
+        if (delta != null) {
+            // only its four fields go through the bean serializer; its rows are written like data
+            generator.writeFieldName(DELTA);
+            provider.defaultSerializeValue(delta, generator);
+        } else if (writeNulls) {
+            generator.writeFieldName(DELTA);
+            generator.writeNull();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeBoolean(JsonGenerator generator, SerializedString name, Boolean value, boolean writeNulls) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeBoolean(value);
+        } else if (writeNulls) {
+            generator.writeFieldName(name);
+            generator.writeNull();
+        }
+    }
+
+    private static void writeString(JsonGenerator generator, SerializedString name, String value, boolean writeNulls) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeString(value);
+        } else if (writeNulls) {
+            generator.writeFieldName(name);
+            generator.writeNull();
+        }
+    }
+
+    private static void writeNumber(JsonGenerator generator, SerializedString name, Integer value, boolean writeNulls) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeNumber(value.intValue());
+        } else if (writeNulls) {
+            generator.writeFieldName(name);
+            generator.writeNull();
+        }
+    }
+
+    private static void writeNumber(JsonGenerator generator, SerializedString name, Long value, boolean writeNulls) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeNumber(value.longValue());
+        } else if (writeNulls) {
+            generator.writeFieldName(name);
+            generator.writeNull();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Opt-in cache of query results, for saved queries declared with {@code -- @cache <ttl>}.
+ * Rows are stored as pre-serialized JSON, so a hit is written to the response as raw bytes
+ * without touching JDBC or Jackson's object serialization. The cache is bounded by the total
+ * size of the stored JSON and evicts with Caffeine's W-TinyLFU policy; each entry expires after
+ * the TTL of its query. Concurrent misses for the same key wait for a single database query.
+ * <p>
+ * The cache is asynchronous: a miss only installs a future under the map's lock and runs the
+ * query, admission wait included, outside of it on the caller's thread. Callers of the same key
+ * park on that future, so on virtual threads no carrier is pinned on a monitor while a query
+ * runs, and misses of other keys never wait behind it.
+ */
+@Component
+@Slf4j
+public class QueryResultCache {
+
+    /**
+     * Identifies one result: the query, the compilation it was run from (so an edited query file
+     * never serves results of the old SQL) and the bound parameter values.
+     */
+    record Key(String queryIdentifier, Instant compiledAt, Map<String, Object> parameters) {
+    }
+
+    /**
+     * The rows as every hit returns them, already wrapped as TruncatedRows or VersionedRows with
+     * their ETag.
+     */
+    private record Entry(List<RawValue> rows, long bytes, Duration ttl) {
+    }
+
+    private final AsyncCache<Key, Entry> cache;
+    private final ObjectMapper objectMapper;
+
+    public QueryResultCache(ObjectMapper objectMapper,
+                            @Value("${dbquerzapp.query.result-cache.max-size:64MB}") DataSize maxSize) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Key key, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, entry.bytes()))
+                .expireAfter(new Expiry<Key, Entry>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+                        return entry.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+                        return entry.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Returns the cached rows for the key, running the query on a miss. Only one caller per key
+     * runs the query; the others block until its result is cached. A result the governor cut
+     * off is cached as {@link TruncatedRows}, so every hit returns it as such without a copy.
+     */
+    List<RawValue> get(Key key, Duration ttl, Supplier<List<Map<String, Object>>> query) {
+        return get(key, ttl, query, rows -> null);
+    }
+
+    /**
+     * Like {@link #get(Key, Duration, Supplier)}, for a query whose result is versioned: the
+     * version is computed once when the rows are cached, and every hit returns them as
+     * {@link VersionedRows} with that version. A truncated result is not versioned.
+     * <p>
+     * Either way, the weak ETag of the result, a CRC of its JSON, is computed when it is cached
+     * and read from {@link VersionedRows#etagOf} on every hit.
+     */
+    List<RawValue> get(Key key, Duration ttl, Supplier<List<Map<String, Object>>> query,
+                       Function<List<RawValue>, ResultVersions.Version> versioning) {
+        return load(key, ttl, query, versioning).rows();
+    }
+
+    /**
+     * Returns the entry of the key; the caller whose future got installed runs the query. When
+     * that query fails, the callers waiting for it try again instead of sharing its error, as
+     * they would have with a synchronous cache.
+     */
+    private Entry load(Key key, Duration ttl, Supplier<List<Map<String, Object>>> query,
+                       Function<List<RawValue>, ResultVersions.Version> versioning) {
+        while (true) {
+            CompletableFuture<Entry> loading = new CompletableFuture<>();
+            CompletableFuture<Entry> future = cache.get(key, (k, executor) -> loading);
+            if (future == loading) {
+                try {
+                    Entry entry = serialize(query.get(), ttl, versioning);
+                    loading.complete(entry);
+                    return entry;
+                } catch (RuntimeException | Error e) {
+                    // a failed future is removed from the cache, so the query is not cached
+                    loading.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            try {
+                return future.join();
+            } catch (CompletionException | CancellationException e) {
+                cache.asMap().remove(key, future);
+            }
+        }
+    }
+
+    public void invalidate(String queryIdentifier) {
+        log.info("Invalidating cached results of query: {}", queryIdentifier);
+        cache.synchronous().asMap().keySet().removeIf(key -> key.queryIdentifier().equals(queryIdentifier));
+    }
+
+    public void invalidateAll() {
+        log.info("Invalidating all cached query results");
+        cache.synchronous().invalidateAll();
+    }
+
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    public long weightBytes() {
+        return cache.synchronous().policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    private Entry serialize(List<Map<String, Object>> rows, Duration ttl,
+                            Function<List<RawValue>, ResultVersions.Version> versioning) {
+        List<RawValue> serialized = new ArrayList<>(rows.size());
+        long bytes = 0;
+        CRC32 crc = new CRC32();
+        for (Map<String, Object> row : rows) {
+            try {
+                SerializedString json = new SerializedString(objectMapper.writeValueAsString(row));
+                byte[] utf8 = json.asUnquotedUTF8();
+                bytes += utf8.length;
+                crc.update(utf8);
+                crc.update('\n');
+                serialized.add(new RawValue(json));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Query result could not be serialized", e);
+            }
+        }
+        boolean truncated = TruncatedRows.isTruncated(rows);
+        crc.update(truncated ? 1 : 0);
+        String etag = "W/\"" + Long.toHexString(crc.getValue()) + "\"";
+        List<RawValue> cached = List.copyOf(serialized);
+        if (truncated) {
+            return new Entry(new TruncatedRows<>(cached, etag), bytes, ttl);
+        }
+        return new Entry(new VersionedRows<>(cached, versioning.apply(cached), etag), bytes, ttl);
+    }
+}
@@ -1,18 +1,47 @@
 package examp.org.com.dbquerzapp.service;
 
+import com.fasterxml.jackson.databind.util.RawValue;
 import examp.org.com.dbquerzapp.validator.SqlValidator;
 import examp.org.com.dbquerzapp.validator.ValidationResult;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
 
 @Service
 @Slf4j
@@ -24,37 +53,481 @@ public class QueryService {
     @Autowired
     private SqlValidator sqlValidator;
 
+    @Autowired
+    private NamedParameterJdbcTemplate queryJdbcTemplate;
+
+    @Autowired
+    private CompiledQueryCache compiledQueryCache;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private QueryAdmissionGate admissionGate;
+
+    @Autowired
+    private QueryMetrics queryMetrics;
+
+    @Autowired
+    private QueryGovernor queryGovernor;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private QueryCostGate queryCostGate;
+
+    @Autowired
+    private WorkloadScheduler workloadScheduler;
+
+    @Autowired
+    private ResultVersions resultVersions;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${dbquerzapp.query.page.max-size:10000}")
+    private int maxPageSize;
+
+    @Value("${dbquerzapp.query.directory:}")
+    private String queryDirectory;
+
     private final PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
 
     public String loadQueryFromFile(String queryIdentifier) throws IOException {
         String fileName = queryIdentifier + ".sql";
-        log.info("Loading query from file: " + fileName);
-        Resource resource = resolver.getResource("classpath:queries/" + fileName);
-        log.info("Loading query from file: " + resource.getFilename());
+        Resource resource = resolveQueryResource(fileName);
         if (!resource.exists()) {
-            log.error("Query file not found: " + fileName);
+            log.debug("Query file not found: {}", fileName);
             throw new IOException("Query file not found: " + fileName);
         }
 
-        log.info("Loading query from file: " + fileName);
+        log.debug("Loading query from file: {}", resource.getDescription());
         return resource.getContentAsString(StandardCharsets.UTF_8);
     }
 
+    /**
+     * Returns the loaded, normalized and validated query for the identifier, compiling it
+     * on the first request only. Throws IOException when no query file exists.
+     */
+    public CompiledQuery getCompiledQuery(String queryIdentifier) throws IOException {
+        return compiledQueryCache.get(queryIdentifier, this::compileQuery);
+    }
+
+    /**
+     * Validates the query template, placeholders included, so executions only bind values.
+     * Every {@code :name} in the SQL has to be declared with a {@code -- @param} directive.
+     */
+    CompiledQuery compileQuery(String queryIdentifier) throws IOException {
+        log.info("Compiling query: {}", queryIdentifier);
+        Timer.Sample load = queryMetrics.start();
+        String sql = normalizeSql(loadQueryFromFile(queryIdentifier));
+        queryMetrics.stopPhase(load, QueryMetrics.LOAD, queryIdentifier, QueryMetrics.SUCCESS);
+
+        List<QueryParameter> parameters = new ArrayList<>();
+        QueryOptions options;
+        try {
+            QueryDirectives directives = QueryDirectives.parse(sql);
+            for (String declaration : directives.all("param")) {
+                parameters.add(QueryParameter.parse(declaration));
+            }
+            options = QueryOptions.parse(directives);
+            if (options.isPrecomputed() && parameters.stream().anyMatch(QueryParameter::isRequired)) {
+                throw new IllegalArgumentException("A query with @refresh cannot have required parameters");
+            }
+        } catch (IllegalArgumentException e) {
+            return new CompiledQuery(queryIdentifier, sql, List.of(), QueryOptions.NONE, ValidationResult.invalid(e.getMessage()), Instant.now());
+        }
+
+        Timer.Sample validation = queryMetrics.start();
+        ValidationResult validationResult = validateSql(sql);
+        if (validationResult.isValid() && validationResult.getStatement() != null) {
+            for (String name : validationResult.getStatement().parameters()) {
+                if (parameters.stream().noneMatch(parameter -> parameter.getName().equals(name))) {
+                    validationResult = ValidationResult.invalid("Undeclared query parameter: " + name);
+                    break;
+                }
+            }
+        }
+        queryMetrics.stopPhase(validation, QueryMetrics.VALIDATE, queryIdentifier,
+                validationResult.isValid() ? QueryMetrics.SUCCESS : QueryMetrics.INVALID);
+        return new CompiledQuery(queryIdentifier, sql, List.copyOf(parameters), options, validationResult, Instant.now());
+    }
+
     public ValidationResult validateSql(String sql) {
-        log.info("Validating SQL: " + sql);
+        log.debug("Validating SQL: {}", sql);
         return sqlValidator.validateSql(sql);
     }
 
     public List<Map<String, Object>> executeQuery(String sql) {
-        log.info("Executing query: " + sql);
         ValidationResult validationResult = validateSql(sql);
 
         if (!validationResult.isValid()) {
-            log.error("SQL validation failed: " + validationResult);
+            log.warn("SQL validation failed: {}", validationResult.getErrorMessage());
             throw new IllegalArgumentException("SQL validation failed: " + validationResult.getErrorMessage());
         }
 
-        log.info("Executing query: " + sql);
+        log.debug("Executing query: {}", sql);
         return jdbcTemplate.queryForList(sql);
     }
-}
\ No newline at end of file
+
+    public List<Map<String, Object>> executeQuery(CompiledQuery compiledQuery) {
+        return executeQuery(compiledQuery, Map.of());
+    }
+
+    public List<Map<String, Object>> executeQuery(CompiledQuery compiledQuery, Map<String, ?> parameterValues) {
+        requireValid(compiledQuery);
+        MapSqlParameterSource parameters = bindParameters(compiledQuery, parameterValues);
+        log.debug("Executing compiled query: {}", compiledQuery.getIdentifier());
+        return queryForList(compiledQuery, compiledQuery.getSql(), parameters);
+    }
+
+    /**
+     * Returns the rows of a query declared with {@code -- @cache <ttl>} from the result cache,
+     * as pre-serialized JSON. Only a miss runs the query, and only then is an admission slot
+     * taken, so hits are served even while the database is saturated. Only the rows of a miss
+     * count against the client's row quota. The rows of a query declared with {@code -- @key}
+     * come as {@link VersionedRows}, versioned once when they were cached.
+     */
+    public List<RawValue> executeCachedQuery(CompiledQuery compiledQuery, Map<String, ?> parameterValues) {
+        requireValid(compiledQuery);
+        if (!compiledQuery.getOptions().isResultCacheEnabled()) {
+            throw new IllegalStateException("Result cache is not enabled for query: " + compiledQuery.getIdentifier());
+        }
+        MapSqlParameterSource parameters = bindParameters(compiledQuery, parameterValues);
+        QueryResultCache.Key key = new QueryResultCache.Key(compiledQuery.getIdentifier(),
+                compiledQuery.getCompiledAt(), new TreeMap<>(parameters.getValues()));
+        return queryResultCache.get(key, compiledQuery.getOptions().getResultCacheTtl(), () -> {
+            WorkloadScheduler.Workload workload = workloadScheduler.resolve(compiledQuery);
+            try (QueryAdmissionGate.Permit lane = admitCost(compiledQuery, parameterValues, null, false);
+                 QueryAdmissionGate.Permit share = workloadScheduler.acquire(workload);
+                 QueryAdmissionGate.Permit permit = queryMetrics.time(QueryMetrics.ADMISSION, compiledQuery.getIdentifier(), admissionGate::acquire)) {
+                log.debug("Executing compiled query for the result cache: {}", compiledQuery.getIdentifier());
+                List<Map<String, Object>> rows = queryForList(compiledQuery, compiledQuery.getSql(), parameters);
+                workloadScheduler.recordRows(workload, rows.size());
+                return rows;
+            }
+        }, compiledQuery.getOptions().isKeyed() ? rows -> resultVersions.index(compiledQuery, rows) : rows -> null);
+    }
+
+    /**
+     * Returns one page of the query, continuing after the row the page token points to.
+     * Pages are read with a keyset predicate on the query's ORDER BY columns instead of an
+     * OFFSET, so a deep page costs the same as the first one.
+     */
+    public QueryPage executePage(CompiledQuery compiledQuery, Map<String, ?> parameterValues, int pageSize, String pageToken) {
+        requireValid(compiledQuery);
+        int maxRows = queryGovernor.maxRows(compiledQuery.getOptions());
+        int pageSizeLimit = maxRows > 0 ? Math.min(maxPageSize, maxRows) : maxPageSize;
+        if (pageSize < 1 || pageSize > pageSizeLimit) {
+            throw new IllegalArgumentException("page_size must be between 1 and " + pageSizeLimit);
+        }
+        KeysetQuery keysetQuery = KeysetQuery.of(compiledQuery);
+        MapSqlParameterSource parameters = bindParameters(compiledQuery, parameterValues);
+        String fingerprint = fingerprint(compiledQuery, parameters);
+
+        List<Object> afterKey = null;
+        if (pageToken != null && !pageToken.isEmpty()) {
+            PageToken token = PageToken.decode(pageToken);
+            if (!token.getFingerprint().equals(fingerprint) || token.getKeyValues().size() != keysetQuery.size()) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+            afterKey = token.getKeyValues();
+        }
+
+        // one extra row tells whether there is a next page without a separate COUNT
+        String sql = keysetQuery.pageSql(afterKey, pageSize + 1, parameters);
+        log.debug("Executing page of compiled query: {}", compiledQuery.getIdentifier());
+        List<Map<String, Object>> rows = queryForList(compiledQuery, sql, parameters);
+        if (rows.size() <= pageSize) {
+            return new QueryPage(rows, pageSize, null);
+        }
+        List<Map<String, Object>> page = rows instanceof ColumnarRows columnar
+                ? columnar.head(pageSize) : new ArrayList<>(rows.subList(0, pageSize));
+        String nextPageToken = new PageToken(fingerprint, keysetQuery.keyOf(page.get(pageSize - 1))).encode();
+        return new QueryPage(page, pageSize, nextPageToken);
+    }
+
+    /**
+     * Executes the query and hands every row to the handler as soon as it is read,
+     * without materializing the result. The read-only transaction turns off auto-commit,
+     * which the PostgreSQL driver needs to honour the fetch size with a server-side cursor.
+     * The cancellation, if given, lets another thread stop the statement. The connection is
+     * only opened at the first statement, so the query still runs on a read replica.
+     */
+    @Transactional(readOnly = true)
+    public void streamQuery(CompiledQuery compiledQuery, Map<String, ?> parameterValues, RowCallbackHandler rowCallbackHandler,
+                            QueryCancellation cancellation) {
+        requireValid(compiledQuery);
+        MapSqlParameterSource parameters = bindParameters(compiledQuery, parameterValues);
+        log.debug("Streaming query: {}", compiledQuery.getIdentifier());
+        try (ReplicaRouter.Route route = replicaRouter.route(compiledQuery.getOptions());
+             QueryGovernor.Scope scope = queryGovernor.streaming(compiledQuery.getOptions(), cancellation)) {
+            queryMetrics.time(QueryMetrics.STREAM, compiledQuery.getIdentifier(), () -> {
+                queryJdbcTemplate.query(compiledQuery.getSql(), parameters, rowCallbackHandler);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Streams the query for a background export: like {@link #streamQuery}, but with the export
+     * timeout in place of the global one.
+     */
+    @Transactional(readOnly = true)
+    public void exportQuery(CompiledQuery compiledQuery, Map<String, ?> parameterValues, RowCallbackHandler rowCallbackHandler,
+                            QueryCancellation cancellation, Duration timeout) {
+        requireValid(compiledQuery);
+        MapSqlParameterSource parameters = bindParameters(compiledQuery, parameterValues);
+        log.debug("Exporting query: {}", compiledQuery.getIdentifier());
+        try (ReplicaRouter.Route route = replicaRouter.route(compiledQuery.getOptions());
+             QueryGovernor.Scope scope = queryGovernor.exporting(compiledQuery.getOptions(), timeout, cancellation)) {
+            queryMetrics.time(QueryMetrics.EXPORT, compiledQuery.getIdentifier(), () -> {
+                queryJdbcTemplate.query(compiledQuery.getSql(), parameters, rowCallbackHandler);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Writes the result as CSV with a header row using PostgreSQL's {@code COPY ... TO STDOUT}:
+     * the database formats the rows and sends them as one stream, without a fetch round trip per
+     * batch. COPY cannot bind parameters, so this is only for queries that declare none. The
+     * export timeout becomes the transaction's statement_timeout; the copy is aborted when the
+     * output stream throws. Returns the number of rows, or -1 without writing anything when the
+     * database is not PostgreSQL.
+     */
+    @Transactional(readOnly = true)
+    public long copyQuery(CompiledQuery compiledQuery, OutputStream outputStream, Duration timeout) throws IOException {
+        requireValid(compiledQuery);
+        if (!compiledQuery.getParameters().isEmpty()) {
+            throw new IllegalArgumentException("COPY cannot bind the parameters of query: " + compiledQuery.getIdentifier());
+        }
+        // the SQL is on lines of its own so a trailing comment cannot swallow the closing parenthesis
+        String copySql = "COPY (\n" + compiledQuery.getSql() + "\n) TO STDOUT WITH (FORMAT csv, HEADER)";
+        log.debug("Copying query: {}", compiledQuery.getIdentifier());
+        try (ReplicaRouter.Route route = replicaRouter.route(compiledQuery.getOptions());
+             QueryGovernor.Scope scope = queryGovernor.exporting(compiledQuery.getOptions(), timeout, null)) {
+            Long rows = queryMetrics.time(QueryMetrics.EXPORT, compiledQuery.getIdentifier(), () ->
+                    jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+                        if (!connection.isWrapperFor(PGConnection.class)) {
+                            return -1L;
+                        }
+                        if (scope.getTimeoutSeconds() > 0) {
+                            try (Statement statement = connection.createStatement()) {
+                                statement.execute("SET LOCAL statement_timeout = " + scope.getTimeoutSeconds() * 1000L);
+                            }
+                        }
+                        try {
+                            return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(copySql, outputStream);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+            return rows == null ? -1 : rows;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Plans the query once with EXPLAIN, on the database it would run on, so the driver, the
+     * connection and the database's catalog caches are warm before the first request. The
+     * parameters are bound as typed nulls; the rows are not read.
+     */
+    public void warmup(CompiledQuery compiledQuery) {
+        requireValid(compiledQuery);
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        for (QueryParameter parameter : compiledQuery.getParameters()) {
+            parameters.addValue(parameter.getName(), null, parameter.getType().getSqlType());
+        }
+        log.debug("Warming up query: {}", compiledQuery.getIdentifier());
+        try (ReplicaRouter.Route route = replicaRouter.route(compiledQuery.getOptions());
+             QueryGovernor.Scope scope = queryGovernor.materializing(compiledQuery.getOptions())) {
+            queryJdbcTemplate.query("EXPLAIN " + compiledQuery.getSql(), parameters, resultSet -> null);
+        }
+    }
+
+    /**
+     * Checks the planner estimate of the query before it is admitted, see {@link QueryCostGate}.
+     * Throws QueryCostExceededException when it is too expensive to run at all. Returns the slot
+     * of the low-priority lane when it is expensive, to be held while it runs and taken before
+     * the admission slot so waiting for it does not block cheap queries; null otherwise. A page
+     * is estimated as its first page. Within a snapshot batch, which already holds a slot and a
+     * connection, the query is only checked against the limits, and only with an estimate that is
+     * already known: an EXPLAIN that fails there would abort the batch's transaction, and every
+     * later query of the batch with it.
+     */
+    public QueryAdmissionGate.Permit admitCost(CompiledQuery compiledQuery, Map<String, ?> parameterValues, Integer pageSize,
+                                               boolean inSnapshot) {
+        if (!queryCostGate.isEnabled()) {
+            return null;
+        }
+        requireValid(compiledQuery);
+        MapSqlParameterSource parameters = bindParameters(compiledQuery, parameterValues);
+        String sql = pageSize == null ? compiledQuery.getSql()
+                : KeysetQuery.of(compiledQuery).pageSql(null, pageSize + 1, parameters);
+        QueryCostGate.Key key = new QueryCostGate.Key(compiledQuery.getIdentifier(), compiledQuery.getCompiledAt(), sql);
+        QueryCostGate.Estimate estimate = inSnapshot ? queryCostGate.cached(key)
+                : queryCostGate.estimate(key, () -> explain(compiledQuery, sql, parameters));
+        if (estimate == null) {
+            return null;
+        }
+        QueryCostGate.Lane lane = queryCostGate.classify(compiledQuery.getIdentifier(), estimate);
+        if (lane == QueryCostGate.Lane.LOW_PRIORITY && !inSnapshot) {
+            log.debug("Query {} runs in the low-priority lane: estimated cost {}", compiledQuery.getIdentifier(), estimate.totalCost());
+            return queryCostGate.acquireLowPriority();
+        }
+        return null;
+    }
+
+    /**
+     * Plans the SQL with {@code EXPLAIN (FORMAT JSON)} on the database it would run on, with the
+     * request's parameter values. It is admitted like any statement: a slot of the client's
+     * workload class first, then an admission slot, both released once planned. A database that
+     * cannot explain the query yields {@link QueryCostGate.Estimate#UNKNOWN}, which is admitted
+     * immediately.
+     */
+    private QueryCostGate.Estimate explain(CompiledQuery compiledQuery, String sql, MapSqlParameterSource parameters) {
+        log.debug("Estimating cost of query: {}", compiledQuery.getIdentifier());
+        try (QueryAdmissionGate.Permit share = workloadScheduler.acquire(workloadScheduler.resolve(compiledQuery));
+             QueryAdmissionGate.Permit permit = admissionGate.acquire();
+             ReplicaRouter.Route route = replicaRouter.route(compiledQuery.getOptions());
+             QueryGovernor.Scope scope = queryGovernor.materializing(compiledQuery.getOptions())) {
+            String plan = queryJdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + sql, parameters, String.class);
+            return plan == null ? QueryCostGate.Estimate.UNKNOWN : QueryCostGate.Estimate.parse(plan);
+        } catch (DataAccessException e) {
+            log.warn("Cost of query {} could not be estimated: {}", compiledQuery.getIdentifier(), e.getMessage());
+            return QueryCostGate.Estimate.UNKNOWN;
+        }
+    }
+
+    /**
+     * Runs the action in one read-only REPEATABLE READ transaction: every query it executes
+     * uses the same pooled connection and reads the same snapshot of the database. The snapshot
+     * is taken on the primary, so queries pinned to it with {@code -- @primary} are honoured.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public <T> T inSnapshot(Supplier<T> action) {
+        try (ReplicaRouter.Route route = replicaRouter.primary()) {
+            return action.get();
+        }
+    }
+
+    /**
+     * Runs one step of {@link #inSnapshot} in a savepoint. On PostgreSQL a failed statement aborts
+     * the whole transaction, so a step that failed, by exception or as {@code failed} tells from
+     * its result, is rolled back to its savepoint and the steps after it still run in the snapshot.
+     */
+    public <T> T inSavepoint(Supplier<T> action, Predicate<T> failed) {
+        TransactionTemplate savepoint = new TransactionTemplate(transactionManager);
+        savepoint.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        return savepoint.execute(status -> {
+            T result = action.get();
+            if (failed.test(result)) {
+                status.setRollbackOnly();
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Converts the request values to the declared parameter types. Missing required values
+     * and names the query does not declare are rejected with IllegalArgumentException.
+     */
+    public MapSqlParameterSource bindParameters(CompiledQuery compiledQuery, Map<String, ?> parameterValues) {
+        Map<String, ?> values = parameterValues == null ? Map.of() : parameterValues;
+        for (String name : values.keySet()) {
+            if (compiledQuery.getParameters().stream().noneMatch(parameter -> parameter.getName().equals(name))) {
+                throw new IllegalArgumentException("Unknown query parameter: " + name);
+            }
+        }
+
+        MapSqlParameterSource source = new MapSqlParameterSource();
+        for (QueryParameter parameter : compiledQuery.getParameters()) {
+            Object value = values.get(parameter.getName());
+            if (value == null) {
+                if (parameter.isRequired()) {
+                    throw new IllegalArgumentException("Missing required query parameter: " + parameter.getName());
+                }
+                value = parameter.getDefaultValue();
+            }
+            source.addValue(parameter.getName(), parameter.convert(value), parameter.getType().getSqlType());
+        }
+        return source;
+    }
+
+    /**
+     * queryForList with the statement execution and the row mapping timed as separate phases:
+     * the extractor is only called once the statement has returned its ResultSet. The limits of
+     * the {@link QueryGovernor} apply; a statement cancelled by its timeout surfaces as
+     * QueryTimeoutException. The statement runs on a read replica unless the query is pinned to
+     * the primary.
+     */
+    private List<Map<String, Object>> queryForList(CompiledQuery compiledQuery, String sql, MapSqlParameterSource parameters) {
+        String queryIdentifier = compiledQuery.getIdentifier();
+        Timer.Sample execution = queryMetrics.start();
+        AtomicReference<Timer.Sample> mapping = new AtomicReference<>();
+        List<Map<String, Object>> rows;
+        try (ReplicaRouter.Route route = replicaRouter.route(compiledQuery.getOptions());
+             QueryGovernor.Scope scope = queryGovernor.materializing(compiledQuery.getOptions())) {
+            try {
+                rows = queryJdbcTemplate.query(sql, parameters, resultSet -> {
+                    queryMetrics.stopPhase(execution, QueryMetrics.EXECUTE, queryIdentifier, QueryMetrics.SUCCESS);
+                    mapping.set(queryMetrics.start());
+                    return scope.extract(resultSet);
+                });
+            } catch (RuntimeException e) {
+                boolean timedOut = QueryGovernor.isCancellation(e);
+                String outcome = timedOut ? QueryMetrics.TIMEOUT : QueryMetrics.ERROR;
+                if (mapping.get() == null) {
+                    queryMetrics.stopPhase(execution, QueryMetrics.EXECUTE, queryIdentifier, outcome);
+                } else {
+                    queryMetrics.stopPhase(mapping.get(), QueryMetrics.MAP, queryIdentifier, outcome);
+                }
+                if (timedOut && !(e instanceof QueryTimeoutException)) {
+                    throw new QueryTimeoutException("Query exceeded its timeout of " + scope.getTimeoutSeconds() + " s", e);
+                }
+                throw e;
+            }
+        }
+        if (mapping.get() != null) {
+            queryMetrics.stopPhase(mapping.get(), QueryMetrics.MAP, queryIdentifier, QueryMetrics.SUCCESS);
+        }
+        queryMetrics.recordRows(queryIdentifier, rows.size());
+        return rows;
+    }
+
+    private static String fingerprint(CompiledQuery compiledQuery, MapSqlParameterSource parameters) {
+        CRC32 crc = new CRC32();
+        crc.update(compiledQuery.getSql().getBytes(StandardCharsets.UTF_8));
+        crc.update(new TreeMap<>(parameters.getValues()).toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private void requireValid(CompiledQuery compiledQuery) {
+        if (!compiledQuery.isValid()) {
+            log.warn("SQL validation failed: {}", compiledQuery.getIdentifier());
+            throw new IllegalArgumentException("SQL validation failed: " + compiledQuery.getValidationResult().getErrorMessage());
+        }
+    }
+
+    private Resource resolveQueryResource(String fileName) {
+        if (queryDirectory != null && !queryDirectory.isBlank()) {
+            Path baseDirectory = Path.of(queryDirectory).toAbsolutePath().normalize();
+            Path file = baseDirectory.resolve(fileName).normalize();
+            if (file.startsWith(baseDirectory) && Files.isRegularFile(file)) {
+                return new FileSystemResource(file);
+            }
+        }
+        return resolver.getResource("classpath:queries/" + fileName);
+    }
+
+    private static String normalizeSql(String sql) {
+        String normalized = sql.strip();
+        while (normalized.endsWith(";")) {
+            normalized = normalized.substring(0, normalized.length() - 1).stripTrailing();
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,299 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Precomputed results of saved queries declared with {@code -- @refresh}. Each such query is run
+ * in the background on its schedule, through the same admission as a request, and its rows are
+ * serialized once into an immutable {@link Snapshot} that replaces the previous one in a single
+ * swap, so readers never see a half-built result and never wait for the database.
+ * <p>
+ * A snapshot is served until {@code -- @max-stale} (by default twice the refresh interval) after
+ * it was taken; past that, requests run the query live again. Once a snapshot is older than the
+ * {@code snapshot.refresh-ahead} fraction of that bound, it is refreshed before the schedule
+ * would, so a failed or late refresh does not let it expire while a new one is still possible.
+ * After a failed refresh, reads do not start another one for {@code snapshot.retry-after}; the
+ * schedule still runs, and an eviction refreshes right away.
+ */
+@Component
+@Slf4j
+public class QuerySnapshots {
+
+    /**
+     * One precomputed result, built from the SQL it was taken with. The version of the result of
+     * a {@code -- @key} query is computed with it, and null for other queries.
+     */
+    public record Snapshot(String sql, List<RawValue> rows, boolean truncated, long bytes, String etag,
+                           ResultVersions.Version version, Instant takenAt, Instant refreshAt, Instant expiresAt) {
+
+        public Duration age(Instant now) {
+            return Duration.between(takenAt, now);
+        }
+    }
+
+    /**
+     * The refresh schedule of one compiled version of a query. {@code retryAt} is set when a
+     * refresh failed, and reads start none before it.
+     */
+    private static final class Scheduled {
+        private final CompiledQuery compiledQuery;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile Instant retryAt;
+        private ScheduledFuture<?> next;
+        private boolean cancelled;
+
+        private Scheduled(CompiledQuery compiledQuery) {
+            this.compiledQuery = compiledQuery;
+        }
+    }
+
+    @Autowired
+    private QueryService queryService;
+
+    @Autowired
+    private QueryAdmissionGate admissionGate;
+
+    @Autowired
+    private WorkloadScheduler workloadScheduler;
+
+    @Autowired
+    private QueryMetrics queryMetrics;
+
+    @Autowired
+    private ResultVersions resultVersions;
+
+    private final ObjectMapper objectMapper;
+    private final double refreshAhead;
+    private final Duration retryAfter;
+    private final ScheduledExecutorService executor;
+    private final Map<String, Scheduled> schedules = new ConcurrentHashMap<>();
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    public QuerySnapshots(ObjectMapper objectMapper,
+                          @Value("${dbquerzapp.query.snapshot.threads:2}") int threads,
+                          @Value("${dbquerzapp.query.snapshot.refresh-ahead:0.8}") double refreshAhead,
+                          @Value("${dbquerzapp.query.snapshot.retry-after:30s}") Duration retryAfter) {
+        if (refreshAhead <= 0 || refreshAhead > 1) {
+            throw new IllegalArgumentException("dbquerzapp.query.snapshot.refresh-ahead must be in (0, 1]: " + refreshAhead);
+        }
+        this.objectMapper = objectMapper;
+        this.refreshAhead = refreshAhead;
+        this.retryAfter = retryAfter;
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, threads),
+                Thread.ofPlatform().daemon().name("query-snapshot-refresh-", 0).factory());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts refreshing the compiled query on its schedule, replacing the schedule of a previous
+     * version; the first snapshot is taken right away. A query that is invalid or has no
+     * {@code @refresh} directive is unscheduled instead.
+     */
+    public void schedule(CompiledQuery compiledQuery) {
+        String queryIdentifier = compiledQuery.getIdentifier();
+        if (!compiledQuery.isValid() || !compiledQuery.getOptions().isPrecomputed()) {
+            unschedule(queryIdentifier);
+            return;
+        }
+        Scheduled scheduled = new Scheduled(compiledQuery);
+        cancel(schedules.put(queryIdentifier, scheduled));
+        log.info("Precomputing query {} on schedule: {}", queryIdentifier, compiledQuery.getOptions().getRefreshSchedule());
+        reschedule(scheduled, Instant.now(), true);
+    }
+
+    /** Stops refreshing the query and drops its snapshot. */
+    public void unschedule(String queryIdentifier) {
+        Scheduled scheduled = schedules.remove(queryIdentifier);
+        if (scheduled != null) {
+            cancel(scheduled);
+            log.info("No longer precomputing query: {}", queryIdentifier);
+        }
+        snapshots.remove(queryIdentifier);
+    }
+
+    /** Drops the snapshot of the query and takes a new one right away. */
+    public void invalidate(String queryIdentifier) {
+        snapshots.remove(queryIdentifier);
+        Scheduled scheduled = schedules.get(queryIdentifier);
+        if (scheduled != null) {
+            refreshAsync(scheduled);
+        }
+    }
+
+    /** Drops every snapshot and takes new ones right away. */
+    public void invalidateAll() {
+        snapshots.clear();
+        schedules.values().forEach(this::refreshAsync);
+    }
+
+    /**
+     * Returns the snapshot of the compiled query, or null when the query has to run live: there is
+     * no snapshot yet, it was taken from other SQL, or it is past its staleness bound. Reading an
+     * aging snapshot starts its refresh in the background, unless the last one failed less than
+     * {@code retry-after} ago.
+     */
+    public Snapshot get(CompiledQuery compiledQuery) {
+        Snapshot snapshot = snapshots.get(compiledQuery.getIdentifier());
+        if (snapshot == null || !snapshot.sql().equals(compiledQuery.getSql())) {
+            return null;
+        }
+        Instant now = Instant.now();
+        if (now.isBefore(snapshot.refreshAt())) {
+            return snapshot;
+        }
+        Scheduled scheduled = schedules.get(compiledQuery.getIdentifier());
+        if (scheduled != null && (scheduled.retryAt == null || !now.isBefore(scheduled.retryAt))) {
+            refreshAsync(scheduled);
+        }
+        return now.isBefore(snapshot.expiresAt()) ? snapshot : null;
+    }
+
+    public int size() {
+        return snapshots.size();
+    }
+
+    private void refreshAsync(Scheduled scheduled) {
+        if (scheduled.refreshing.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> refresh(scheduled));
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                scheduled.refreshing.set(false);
+            }
+        }
+    }
+
+    private void scheduledRefresh(Scheduled scheduled) {
+        if (scheduled.refreshing.compareAndSet(false, true)) {
+            refresh(scheduled);
+        }
+    }
+
+    /**
+     * Runs the query like a request of the system client: cost lane, workload share and admission
+     * slot. A failure keeps the current snapshot, which is served until it expires, and holds
+     * off refreshes started by reads for {@code retry-after}.
+     */
+    private void refresh(Scheduled scheduled) {
+        CompiledQuery compiledQuery = scheduled.compiledQuery;
+        String queryIdentifier = compiledQuery.getIdentifier();
+        try {
+            Instant start = Instant.now();
+            WorkloadScheduler.Workload workload = workloadScheduler.resolve(compiledQuery);
+            List<Map<String, Object>> rows;
+            try (QueryAdmissionGate.Permit lane = queryService.admitCost(compiledQuery, Map.of(), null, false);
+                 QueryAdmissionGate.Permit share = workloadScheduler.acquire(workload);
+                 QueryAdmissionGate.Permit permit = queryMetrics.time(QueryMetrics.ADMISSION, queryIdentifier, admissionGate::acquire)) {
+                rows = queryService.executeQuery(compiledQuery, Map.of());
+            }
+            workloadScheduler.recordRows(workload, rows.size());
+            Snapshot snapshot = snapshot(compiledQuery, rows, start);
+            scheduled.retryAt = null;
+            if (schedules.get(queryIdentifier) == scheduled) {
+                snapshots.put(queryIdentifier, snapshot);
+                log.debug("Snapshot of query {} refreshed: rows={} bytes={} time_ms={}", queryIdentifier,
+                        snapshot.rows().size(), snapshot.bytes(), Duration.between(start, Instant.now()).toMillis());
+            }
+        } catch (RuntimeException e) {
+            scheduled.retryAt = Instant.now().plus(retryAfter);
+            log.warn("Refreshing the snapshot of query {} failed: {}", queryIdentifier, e.getMessage());
+        } finally {
+            scheduled.refreshing.set(false);
+            reschedule(scheduled, Instant.now(), false);
+        }
+    }
+
+    /**
+     * Plans the next refresh at the next time of the schedule, or earlier when the current
+     * snapshot would be past its refresh-ahead point by then.
+     */
+    private void reschedule(Scheduled scheduled, Instant now, boolean immediately) {
+        Instant next;
+        try {
+            next = scheduled.compiledQuery.getOptions().getRefreshSchedule().next(now);
+        } catch (IllegalStateException e) {
+            log.warn("Query {} is no longer refreshed: {}", scheduled.compiledQuery.getIdentifier(), e.getMessage());
+            return;
+        }
+        Snapshot snapshot = snapshots.get(scheduled.compiledQuery.getIdentifier());
+        if (snapshot != null && snapshot.refreshAt().isAfter(now) && snapshot.refreshAt().isBefore(next)) {
+            next = snapshot.refreshAt();
+        }
+        long delay = immediately ? 0 : Math.max(0, Duration.between(now, next).toMillis());
+        synchronized (scheduled) {
+            if (scheduled.cancelled || executor.isShutdown()) {
+                return;
+            }
+            if (scheduled.next != null) {
+                scheduled.next.cancel(false);
+            }
+            scheduled.next = executor.schedule(() -> scheduledRefresh(scheduled), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void cancel(Scheduled scheduled) {
+        if (scheduled == null) {
+            return;
+        }
+        synchronized (scheduled) {
+            scheduled.cancelled = true;
+            if (scheduled.next != null) {
+                scheduled.next.cancel(false);
+            }
+        }
+    }
+
+    private Snapshot snapshot(CompiledQuery compiledQuery, List<Map<String, Object>> rows, Instant takenAt) {
+        List<RawValue> serialized = new ArrayList<>(rows.size());
+        long bytes = 0;
+        CRC32 crc = new CRC32();
+        for (Map<String, Object> row : rows) {
+            try {
+                SerializedString json = new SerializedString(objectMapper.writeValueAsString(row));
+                byte[] utf8 = json.asUnquotedUTF8();
+                bytes += utf8.length;
+                crc.update(utf8);
+                crc.update('\n');
+                serialized.add(new RawValue(json));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Query result could not be serialized", e);
+            }
+        }
+        boolean truncated = TruncatedRows.isTruncated(rows);
+        crc.update(truncated ? 1 : 0);
+        QueryOptions options = compiledQuery.getOptions();
+        Duration maxStale = options.getMaxStale() != null
+                ? options.getMaxStale() : options.getRefreshSchedule().interval(takenAt).multipliedBy(2);
+        Instant refreshAt = takenAt.plusMillis((long) (maxStale.toMillis() * refreshAhead));
+        List<RawValue> snapshotRows = List.copyOf(serialized);
+        ResultVersions.Version version = !truncated && options.isKeyed() ? resultVersions.index(compiledQuery, snapshotRows) : null;
+        return new Snapshot(compiledQuery.getSql(), snapshotRows, truncated, bytes,
+                "W/\"" + Long.toHexString(crc.getValue()) + "\"", version, takenAt, refreshAt, takenAt.plus(maxStale));
+    }
+}
@@ -0,0 +1,322 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.example.model.QueryResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Live results of saved queries, pushed as Server-Sent Events. Subscribers of the same query and
+ * parameter values share one feed: the query runs once for all of them, when the first one
+ * subscribes and again when {@link TableChangeListener} reports a change of a table it reads.
+ * Changes are coalesced for {@code subscription.debounce} before the query runs, so a burst of
+ * writes costs one execution, and a result whose rows did not change is not sent again.
+ * <p>
+ * Every event is a {@value #RESULT_EVENT} event with a QueryResponse as data and the result
+ * version, a CRC of its rows, as event id; a failed execution is sent as an {@value #ERROR_EVENT}
+ * event. A comment is sent every {@code subscription.heartbeat} to keep idle connections open
+ * through proxies and to notice subscribers that went away.
+ */
+@Component
+@Slf4j
+public class QuerySubscriptions {
+
+    public static final String RESULT_EVENT = "result";
+    public static final String ERROR_EVENT = "error";
+
+    /** One subscribed result: the query and its bound parameter values. */
+    record Key(String queryIdentifier, Map<String, Object> parameters) {
+    }
+
+    /** The subscribers of one result and the last result sent to them. */
+    private static final class Feed {
+        private final Key key;
+        private final Map<String, ?> parameterValues;
+        private final Set<SseEmitter> subscribers = new CopyOnWriteArraySet<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile CompiledQuery compiledQuery;
+        private volatile String version;
+        private volatile String payload;
+
+        private Feed(Key key, CompiledQuery compiledQuery, Map<String, ?> parameterValues) {
+            this.key = key;
+            this.compiledQuery = compiledQuery;
+            this.parameterValues = parameterValues;
+        }
+    }
+
+    @Autowired
+    private QueryService queryService;
+
+    @Autowired
+    private QueryAdmissionGate admissionGate;
+
+    @Autowired
+    private WorkloadScheduler workloadScheduler;
+
+    @Autowired
+    private QueryMetrics queryMetrics;
+
+    @Autowired
+    private TableChangeListener tableChangeListener;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    private final ObjectMapper objectMapper;
+    private final Duration debounce;
+    private final Duration heartbeat;
+    private final Duration timeout;
+    private final int maxSubscribers;
+    private final long retryAfterSeconds;
+    private final ScheduledExecutorService executor;
+    private final Map<Key, Feed> feeds = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    public QuerySubscriptions(ObjectMapper objectMapper,
+                              @Value("${dbquerzapp.query.subscription.debounce:500ms}") Duration debounce,
+                              @Value("${dbquerzapp.query.subscription.heartbeat:30s}") Duration heartbeat,
+                              @Value("${dbquerzapp.query.subscription.timeout:30m}") Duration timeout,
+                              @Value("${dbquerzapp.query.subscription.max-subscribers:1000}") int maxSubscribers,
+                              @Value("${dbquerzapp.query.subscription.threads:2}") int threads,
+                              @Value("${dbquerzapp.query.admission.retry-after:2s}") Duration retryAfter) {
+        this.objectMapper = objectMapper;
+        this.debounce = debounce;
+        this.heartbeat = heartbeat;
+        this.timeout = timeout;
+        this.maxSubscribers = maxSubscribers;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, threads),
+                Thread.ofPlatform().daemon().name("query-subscription-", 0).factory());
+    }
+
+    @PostConstruct
+    public void start() {
+        tableChangeListener.addListener(this::tableChanged);
+        executor.scheduleAtFixedRate(this::sendHeartbeat, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        feeds.values().forEach(feed -> feed.subscribers.forEach(SseEmitter::complete));
+    }
+
+    /**
+     * Subscribes to the result of the query with the given parameter values. The subscriber gets
+     * the current result right away when the feed already has one. Throws
+     * IllegalArgumentException for invalid parameters and QueryRejectedException when
+     * {@code max-subscribers} are connected.
+     */
+    public SseEmitter subscribe(CompiledQuery compiledQuery, Map<String, ?> parameterValues) {
+        Map<String, Object> parameters = new TreeMap<>(queryService.bindParameters(compiledQuery, parameterValues).getValues());
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new QueryRejectedException("Too many live subscriptions", retryAfterSeconds);
+        }
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Key key = new Key(compiledQuery.getIdentifier(), parameters);
+        boolean[] created = {false};
+        Feed feed = feeds.compute(key, (k, existing) -> {
+            Feed current = existing;
+            if (current == null) {
+                current = new Feed(k, compiledQuery, parameterValues);
+                created[0] = true;
+            }
+            current.subscribers.add(emitter);
+            return current;
+        });
+        emitter.onCompletion(() -> unsubscribe(feed, emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> unsubscribe(feed, emitter));
+        if (created[0]) {
+            compiledQuery.getTables().forEach(tableChangeListener::listen);
+            log.info("Live subscription of query {} started: tables={}", compiledQuery.getIdentifier(), compiledQuery.getTables());
+            refresh(feed, Duration.ZERO);
+        } else if (feed.payload != null) {
+            send(feed, emitter, feed.version, feed.payload);
+        }
+        return emitter;
+    }
+
+    /** Subscribers currently connected, over all queries. */
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /** Queries with at least one subscriber; each costs one execution per change. */
+    public int getFeedCount() {
+        return feeds.size();
+    }
+
+    private void unsubscribe(Feed feed, SseEmitter emitter) {
+        if (!feed.subscribers.remove(emitter)) {
+            return;
+        }
+        subscriberCount.decrementAndGet();
+        feeds.computeIfPresent(feed.key, (k, current) -> current == feed && current.subscribers.isEmpty() ? null : current);
+    }
+
+    /** Runs the query of every feed that reads the table, once the debounce period has passed. */
+    void tableChanged(String table) {
+        for (Feed feed : feeds.values()) {
+            if (feed.compiledQuery.getTables().contains(table)) {
+                refresh(feed, debounce);
+            }
+        }
+    }
+
+    /** Schedules one execution of the feed; changes arriving until it starts are covered by it. */
+    private void refresh(Feed feed, Duration delay) {
+        if (feed.scheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(() -> {
+                    feed.scheduled.set(false);
+                    execute(feed);
+                }, delay.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                feed.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Runs the query like a request of the system client and sends the result to every subscriber
+     * when its rows changed. A rejected execution is retried after the Retry-After period. The
+     * query runs on the primary, where the change was notified; a replica may not have it yet.
+     */
+    private void execute(Feed feed) {
+        if (feed.subscribers.isEmpty()) {
+            return;
+        }
+        synchronized (feed) {
+            String queryIdentifier = feed.key.queryIdentifier();
+            long startTime = System.currentTimeMillis();
+            List<RawValue> rows = new ArrayList<>();
+            CRC32 crc = new CRC32();
+            boolean truncated;
+            try {
+                CompiledQuery compiledQuery = queryService.getCompiledQuery(queryIdentifier);
+                if (compiledQuery != feed.compiledQuery) {
+                    compiledQuery.getTables().forEach(tableChangeListener::listen);
+                    feed.compiledQuery = compiledQuery;
+                }
+                WorkloadScheduler.Workload workload = workloadScheduler.resolve(compiledQuery);
+                List<Map<String, Object>> result;
+                try (QueryAdmissionGate.Permit lane = queryService.admitCost(compiledQuery, feed.parameterValues, null, false);
+                     QueryAdmissionGate.Permit share = workloadScheduler.acquire(workload);
+                     QueryAdmissionGate.Permit permit = queryMetrics.time(QueryMetrics.ADMISSION, queryIdentifier, admissionGate::acquire);
+                     ReplicaRouter.Route route = replicaRouter.primary()) {
+                    result = queryService.executeQuery(compiledQuery, feed.parameterValues);
+                }
+                workloadScheduler.recordRows(workload, result.size());
+                for (Map<String, Object> row : result) {
+                    SerializedString json = new SerializedString(objectMapper.writeValueAsString(row));
+                    crc.update(json.asUnquotedUTF8());
+                    crc.update('\n');
+                    rows.add(new RawValue(json));
+                }
+                truncated = TruncatedRows.isTruncated(result);
+                crc.update(truncated ? 1 : 0);
+            } catch (QueryRejectedException e) {
+                log.debug("Live subscription of query {} rejected, retrying in {}s", queryIdentifier, e.getRetryAfterSeconds());
+                refresh(feed, Duration.ofSeconds(e.getRetryAfterSeconds()));
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Live subscription of query {} failed: {}", queryIdentifier, e.getMessage());
+                QueryResponse response = new QueryResponse();
+                response.setSuccess(Boolean.FALSE);
+                response.setError(e instanceof IOException ? "Query not found" : "Error while executing query");
+                response.setCode(e instanceof IOException ? 404 : 500);
+                response.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+                broadcast(feed, ERROR_EVENT, null, write(response));
+                return;
+            }
+            String version = Long.toHexString(crc.getValue());
+            if (version.equals(feed.version)) {
+                log.debug("Live subscription of query {} unchanged", queryIdentifier);
+                return;
+            }
+            QueryResponse response = new QueryResponse();
+            response.setSuccess(Boolean.TRUE);
+            response.setData(new ArrayList<>(rows));
+            response.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+            if (truncated) {
+                response.setTruncated(Boolean.TRUE);
+            }
+            String payload = write(response);
+            feed.version = version;
+            feed.payload = payload;
+            broadcast(feed, RESULT_EVENT, version, payload);
+            log.debug("Live subscription of query {} sent: rows={} subscribers={}", queryIdentifier, rows.size(), feed.subscribers.size());
+        }
+    }
+
+    private String write(QueryResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Query result could not be serialized", e);
+        }
+    }
+
+    private void broadcast(Feed feed, String name, String version, String payload) {
+        for (SseEmitter emitter : feed.subscribers) {
+            try {
+                SseEmitter.SseEventBuilder event = SseEmitter.event().name(name).data(payload);
+                emitter.send(version != null ? event.id(version) : event);
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+                unsubscribe(feed, emitter);
+            }
+        }
+    }
+
+    private void send(Feed feed, SseEmitter emitter, String version, String payload) {
+        try {
+            emitter.send(SseEmitter.event().name(RESULT_EVENT).id(version).data(payload));
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+            unsubscribe(feed, emitter);
+        }
+    }
+
+    private void sendHeartbeat() {
+        for (Feed feed : feeds.values()) {
+            for (SseEmitter emitter : feed.subscribers) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e);
+                    unsubscribe(feed, emitter);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * When a precomputed query is refreshed, declared with {@code -- @refresh}: either a fixed rate
+ * ({@code -- @refresh 5m}) or a Spring cron expression with seconds, in the server's time zone
+ * ({@code -- @refresh cron 0 0/15 * * * *}).
+ */
+public final class RefreshSchedule {
+
+    private static final String CRON_PREFIX = "cron ";
+
+    private final String declaration;
+    private final Duration rate;
+    private final CronExpression cron;
+
+    private RefreshSchedule(String declaration, Duration rate, CronExpression cron) {
+        this.declaration = declaration;
+        this.rate = rate;
+        this.cron = cron;
+    }
+
+    /** Throws IllegalArgumentException for a malformed rate or cron expression. */
+    public static RefreshSchedule parse(String declaration) {
+        if (declaration.startsWith(CRON_PREFIX)) {
+            return new RefreshSchedule(declaration, null, CronExpression.parse(declaration.substring(CRON_PREFIX.length()).strip()));
+        }
+        Duration rate = DurationStyle.detectAndParse(declaration);
+        if (rate.isNegative() || rate.isZero()) {
+            throw new IllegalArgumentException("Refresh rate must be positive: " + declaration);
+        }
+        return new RefreshSchedule(declaration, rate, null);
+    }
+
+    /** The first refresh after the given one. */
+    public Instant next(Instant after) {
+        if (rate != null) {
+            return after.plus(rate);
+        }
+        ZonedDateTime next = cron.next(after.atZone(ZoneId.systemDefault()));
+        if (next == null) {
+            throw new IllegalStateException("Cron expression never fires again: " + declaration);
+        }
+        return next.toInstant();
+    }
+
+    /** Time between the refresh after the given one and the one after that. */
+    public Duration interval(Instant after) {
+        Instant next = next(after);
+        return Duration.between(next, next(next));
+    }
+
+    @Override
+    public String toString() {
+        return declaration;
+    }
+}
@@ -0,0 +1,184 @@
+package examp.org.com.dbquerzapp.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the read replica for saved queries. Only code running inside {@link #route} is sent to
+ * a replica, so JPA, Liquibase and ad-hoc SQL always use the primary. Replicas are used round
+ * robin; one that failed its last health check, lags behind the primary by more than
+ * {@code max-lag} or refused a connection is skipped until a later check succeeds. Without an
+ * available replica the query falls back to the primary.
+ */
+@Slf4j
+public class ReplicaRouter implements AutoCloseable {
+
+    /** Seconds since the last replayed transaction, 0 on a server that is not a standby. */
+    public static final String POSTGRES_LAG_QUERY = "SELECT CASE WHEN pg_is_in_recovery() "
+            + "THEN COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) ELSE 0 END";
+
+    private static final ThreadLocal<Boolean> READ_REPLICA = new ThreadLocal<>();
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Duration maxLag;
+    private final String lagQuery;
+    private final Duration healthCheckInterval;
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService healthCheck;
+
+    /**
+     * @param replicas data sources of the replicas by name, used in logs and metrics
+     * @param lagQuery SQL returning the replication lag of a replica in seconds
+     */
+    public ReplicaRouter(Map<String, DataSource> replicas, Duration maxLag, String lagQuery, Duration healthCheckInterval) {
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.maxLag = maxLag;
+        this.lagQuery = lagQuery;
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /** Starts the periodic health and lag check; does nothing without replicas. */
+    public void start() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        healthCheck = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("replica-health-check").factory());
+        healthCheck.scheduleWithFixedDelay(this::checkReplicas, 0, healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Routing saved queries to {} read replicas", replicas.size());
+    }
+
+    /**
+     * Sends the connections opened on this thread to a replica, or to the primary when the query
+     * is pinned to it, until the route is closed. An enclosing route wins, so every statement of
+     * a transaction goes to the same database.
+     */
+    public Route route(QueryOptions options) {
+        return enter(!options.isPrimary());
+    }
+
+    /** Pins the connections opened on this thread to the primary until the route is closed. */
+    public Route primary() {
+        return enter(false);
+    }
+
+    /** Name of the replica for a connection opened now, {@code null} for the primary. */
+    public String select() {
+        if (!Boolean.TRUE.equals(READ_REPLICA.get()) || replicas.isEmpty()) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.isUsable()) {
+                return replica.name;
+            }
+        }
+        log.debug("No read replica available, using the primary");
+        return null;
+    }
+
+    /** Takes the replica out of rotation until its next successful health check. */
+    public void markUnavailable(String name, SQLException cause) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(name) && replica.available) {
+                replica.available = false;
+                log.warn("Read replica {} is unavailable: {}", name, cause.getMessage());
+            }
+        }
+    }
+
+    public Map<String, DataSource> getDataSources() {
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        replicas.forEach(replica -> dataSources.put(replica.name, replica.dataSource));
+        return dataSources;
+    }
+
+    public int getAvailableReplicas() {
+        return (int) replicas.stream().filter(Replica::isUsable).count();
+    }
+
+    /** Runs the lag query on every replica and updates its availability. */
+    void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean wasUsable = replica.isUsable();
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout((int) Math.max(1, healthCheckInterval.toSeconds()));
+                try (ResultSet resultSet = statement.executeQuery(lagQuery)) {
+                    replica.lag = resultSet.next() ? Duration.ofMillis((long) (resultSet.getDouble(1) * 1000)) : Duration.ZERO;
+                }
+                replica.available = true;
+            } catch (SQLException e) {
+                replica.available = false;
+                if (wasUsable) {
+                    log.warn("Read replica {} failed its health check: {}", replica.name, e.getMessage());
+                }
+                continue;
+            }
+            if (wasUsable && !replica.isUsable()) {
+                log.warn("Read replica {} lags {} behind the primary, skipping it", replica.name, replica.lag);
+            } else if (!wasUsable && replica.isUsable()) {
+                log.info("Read replica {} is available again", replica.name);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (healthCheck != null) {
+            healthCheck.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private Route enter(boolean readReplica) {
+        if (READ_REPLICA.get() != null) {
+            return () -> { };
+        }
+        READ_REPLICA.set(readReplica);
+        return READ_REPLICA::remove;
+    }
+
+    /** Routing decision of the current thread; closing it does not throw. */
+    public interface Route extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        // optimistic until the first health check, so queries do not wait for it
+        private volatile boolean available = true;
+        private volatile Duration lag = Duration.ZERO;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private boolean isUsable() {
+            return available && lag.compareTo(maxLag) <= 0;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * Data source that opens every connection on the database chosen by the {@link ReplicaRouter}.
+ * When a replica refuses the connection, it is taken out of rotation and the connection is
+ * opened on the primary instead.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final ReplicaRouter router;
+
+    public ReplicaRoutingDataSource(DataSource primary, ReplicaRouter router) {
+        this.router = router;
+        setDefaultTargetDataSource(primary);
+        setTargetDataSources(new HashMap<>(router.getDataSources()));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return router.select();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object replica = determineCurrentLookupKey();
+        if (replica == null) {
+            return getResolvedDefaultDataSource().getConnection();
+        }
+        try {
+            return getResolvedDataSources().get(replica).getConnection();
+        } catch (SQLException e) {
+            router.markUnavailable(replica.toString(), e);
+            return getResolvedDefaultDataSource().getConnection();
+        }
+    }
+}
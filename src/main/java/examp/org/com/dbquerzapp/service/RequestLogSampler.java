@@ -0,0 +1,56 @@
+package examp.org.com.dbquerzapp.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limit for the per-request summary lines: at most {@code max-per-second} of them are
+ * written each second, the rest are only counted and reported as one line when the next second
+ * starts. {@code 0} logs every request. Failures are logged by the callers regardless of it.
+ */
+@Component
+@Slf4j
+public class RequestLogSampler {
+
+    private record Window(long second, AtomicInteger count) {
+    }
+
+    private final int maxPerSecond;
+    private final LongSupplier clock;
+    private final AtomicReference<Window> window;
+
+    public RequestLogSampler(@Value("${dbquerzapp.query.log.max-per-second:10}") int maxPerSecond) {
+        this(maxPerSecond, System::currentTimeMillis);
+    }
+
+    RequestLogSampler(int maxPerSecond, LongSupplier clock) {
+        this.maxPerSecond = maxPerSecond;
+        this.clock = clock;
+        this.window = new AtomicReference<>(new Window(clock.getAsLong() / 1000, new AtomicInteger()));
+    }
+
+    /** Returns whether the caller may write its summary line for the current request. */
+    public boolean sample() {
+        if (maxPerSecond <= 0) {
+            return true;
+        }
+        long second = clock.getAsLong() / 1000;
+        Window current = window.get();
+        if (current.second() != second) {
+            Window next = new Window(second, new AtomicInteger());
+            if (window.compareAndSet(current, next)) {
+                int suppressed = current.count().get() - maxPerSecond;
+                if (suppressed > 0) {
+                    log.info("Suppressed {} request log lines", suppressed);
+                }
+            }
+            current = window.get();
+        }
+        return current.count().incrementAndGet() <= maxPerSecond;
+    }
+}
@@ -0,0 +1,253 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Versions of the results of queries declared with {@code -- @key <columns>}, for delta responses.
+ * A version is a hash of the result as a set of rows identified by their key, so it does not
+ * depend on row order or on the parameters that produced it. For each version the last results
+ * had, a row-hash index is kept: the key of every row, sorted, with a 64-bit hash of the row's
+ * JSON. A client that sends the version it holds gets only the rows inserted, updated and deleted
+ * since, found by a merge of the two indexes. Results that are kept, in the result cache or as a
+ * snapshot, are indexed once when they are stored; a request then only runs the merge.
+ * <p>
+ * The indexes are bounded by their total size and expire when no request used them for a while;
+ * a version whose index is gone is answered with the full result, as is a truncated result, one
+ * whose key is not unique, and a delta that would not be smaller than the full result.
+ */
+@Component
+@Slf4j
+public class ResultVersions {
+
+    /** The index of one version of the results of one query. */
+    record Key(String queryIdentifier, String version) {
+    }
+
+    /**
+     * One version of a result with its index: the row keys as JSON objects, sorted, and at the
+     * same position the hash of each row and where the row is in the result. It is computed once
+     * where the rows are kept, by the result cache or with a snapshot, so a request only merges.
+     */
+    public static final class Version {
+        private final String id;
+        private final String[] keys;
+        private final long[] hashes;
+        private final int[] positions;
+        private final long bytes;
+
+        private Version(String id, String[] keys, long[] hashes, int[] positions, long bytes) {
+            this.id = id;
+            this.keys = keys;
+            this.hashes = hashes;
+            this.positions = positions;
+            this.bytes = bytes;
+        }
+
+        public String id() {
+            return id;
+        }
+    }
+
+    private record Row(String key, long hash, int position) {
+    }
+
+    /** The version of a result and, when the client's version was known, what changed since. */
+    public record Versioned(String version, Delta delta) {
+    }
+
+    /** Rows as they are in the result; deleted rows only as their key, e.g. {@code {"id":3}}. */
+    public record Delta(String baseVersion, List<Object> inserted, List<Object> updated, List<Object> deleted) {
+    }
+
+    private final Cache<Key, Version> indexes;
+    private final ObjectMapper objectMapper;
+
+    public ResultVersions(ObjectMapper objectMapper,
+                          @Value("${dbquerzapp.query.delta.max-size:32MB}") DataSize maxSize,
+                          @Value("${dbquerzapp.query.delta.max-idle:1h}") Duration maxIdle) {
+        this.objectMapper = objectMapper;
+        this.indexes = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Key key, Version version) -> (int) Math.min(Integer.MAX_VALUE, version.bytes))
+                .expireAfterAccess(maxIdle)
+                .build();
+    }
+
+    /**
+     * Versions the rows of a keyed query, which may be maps or pre-serialized {@link RawValue}s.
+     * Returns null when the result cannot be versioned.
+     */
+    public Version index(CompiledQuery compiledQuery, List<?> rows) {
+        List<String> keyColumns = compiledQuery.getOptions().getKey();
+        if (keyColumns == null || TruncatedRows.isTruncated(rows)) {
+            return null;
+        }
+        List<Row> sorted = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            sorted.add(row(rows.get(i), i, keyColumns));
+        }
+        sorted.sort((a, b) -> a.key().compareTo(b.key()));
+        Hash64 versionHash = new Hash64();
+        versionHash.update(String.join(",", keyColumns).getBytes(StandardCharsets.UTF_8));
+        String[] keys = new String[sorted.size()];
+        long[] hashes = new long[sorted.size()];
+        int[] positions = new int[sorted.size()];
+        long bytes = 64;
+        for (int i = 0; i < sorted.size(); i++) {
+            Row row = sorted.get(i);
+            if (i > 0 && row.key().equals(keys[i - 1])) {
+                log.debug("Result of query {} has duplicate key {}, not versioned", compiledQuery.getIdentifier(), row.key());
+                return null;
+            }
+            versionHash.update(row.key().getBytes(StandardCharsets.UTF_8));
+            versionHash.update(row.hash());
+            keys[i] = row.key();
+            hashes[i] = row.hash();
+            positions[i] = row.position();
+            bytes += 20 + 40 + row.key().length();
+        }
+        return new Version(Long.toHexString(versionHash.value()), keys, hashes, positions, bytes);
+    }
+
+    /**
+     * Compares a version of the result, for the rows it was computed from, with the version the
+     * client holds. The delta is null when the client sent no version, or one whose index is no
+     * longer kept.
+     */
+    public Versioned delta(CompiledQuery compiledQuery, Version version, List<?> rows, String sinceVersion) {
+        // keeps the index from expiring while its result is served, or indexes a new version
+        indexes.get(new Key(compiledQuery.getIdentifier(), version.id()), key -> version);
+        Delta delta = null;
+        if (sinceVersion != null && !sinceVersion.equals(version.id())) {
+            Version base = indexes.getIfPresent(new Key(compiledQuery.getIdentifier(), sinceVersion));
+            if (base != null) {
+                delta = diff(sinceVersion, base, version, rows);
+            }
+        } else if (sinceVersion != null) {
+            delta = new Delta(sinceVersion, List.of(), List.of(), List.of());
+        }
+        if (delta != null && delta.inserted().size() + delta.updated().size() + delta.deleted().size() >= rows.size()) {
+            delta = null;
+        }
+        return new Versioned(version.id(), delta);
+    }
+
+    public long size() {
+        return indexes.estimatedSize();
+    }
+
+    private static Delta diff(String baseVersion, Version base, Version current, List<?> rows) {
+        List<Object> inserted = new ArrayList<>();
+        List<Object> updated = new ArrayList<>();
+        List<Object> deleted = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < current.keys.length || j < base.keys.length) {
+            int order = i == current.keys.length ? 1 : j == base.keys.length ? -1 : current.keys[i].compareTo(base.keys[j]);
+            if (order < 0) {
+                inserted.add(rows.get(current.positions[i++]));
+            } else if (order > 0) {
+                deleted.add(new RawValue(new SerializedString(base.keys[j++])));
+            } else {
+                if (current.hashes[i] != base.hashes[j]) {
+                    updated.add(rows.get(current.positions[i]));
+                }
+                i++;
+                j++;
+            }
+        }
+        return new Delta(baseVersion, inserted, updated, deleted);
+    }
+
+    private Row row(Object row, int position, List<String> keyColumns) {
+        try {
+            byte[] json;
+            Map<String, Object> key = new LinkedHashMap<>();
+            if (row instanceof RawValue raw && raw.rawValue() instanceof SerializableString serialized) {
+                json = serialized.asUnquotedUTF8();
+                JsonNode node = objectMapper.readTree(json);
+                for (String column : keyColumns) {
+                    key.put(column, field(node, column));
+                }
+            } else if (row instanceof Map<?, ?> map) {
+                json = objectMapper.writeValueAsBytes(map);
+                for (String column : keyColumns) {
+                    if (!map.containsKey(column)) {
+                        throw missing(column);
+                    }
+                    key.put(column, map.get(column));
+                }
+            } else {
+                throw new IllegalStateException("Unexpected result row: " + row);
+            }
+            Hash64 hash = new Hash64();
+            hash.update(json);
+            return new Row(objectMapper.writeValueAsString(key), hash.value(), position);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Query result could not be serialized", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cached query result could not be read", e);
+        }
+    }
+
+    /** The field of a serialized row, matched ignoring case like the column labels of a row map. */
+    private static JsonNode field(JsonNode node, String column) {
+        if (node.has(column)) {
+            return node.get(column);
+        }
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            if (field.getKey().equalsIgnoreCase(column)) {
+                return field.getValue();
+            }
+        }
+        throw missing(column);
+    }
+
+    private static IllegalArgumentException missing(String column) {
+        return new IllegalArgumentException("The result has no column " + column + " of the @key directive");
+    }
+
+    /** CRC32 and CRC32C side by side: 64 bits, so distinct rows practically never hash alike. */
+    private static final class Hash64 {
+        private final CRC32 high = new CRC32();
+        private final CRC32C low = new CRC32C();
+        private final byte[] buffer = new byte[Long.BYTES];
+
+        void update(byte[] bytes) {
+            high.update(bytes);
+            low.update(bytes);
+        }
+
+        void update(long value) {
+            for (int i = 0; i < Long.BYTES; i++) {
+                buffer[i] = (byte) (value >>> (8 * i));
+            }
+            update(buffer);
+        }
+
+        long value() {
+            return high.getValue() << 32 | low.getValue();
+        }
+    }
+}
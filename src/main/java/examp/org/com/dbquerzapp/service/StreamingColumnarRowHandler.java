@@ -0,0 +1,214 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Base64;
+import java.util.BitSet;
+
+/**
+ * Binary columnar encoding of a streamed result. Rows are collected into batches and every
+ * batch is written column by column, so a reader can decode or skip a whole column at once.
+ * All integers are big-endian, strings are a 4-byte length followed by UTF-8 bytes:
+ * <pre>
+ * header   "DBQC", version (1 byte), column count (4), per column: type (1), label (string)
+ * batch    row count (4, &gt; 0), per column: validity bitmap ((rows + 7) / 8 bytes, bit set =
+ *          not null, least significant bit first), byte length (4), the non-null values
+ * trailer  0 (4), status (1, 0 = success), execution_time_ms (8), on failure: error (string), code (4)
+ * </pre>
+ * Value types: {@code 1} int64, {@code 2} float64, {@code 3} boolean (1 byte), {@code 4} string.
+ * Exact numerics and temporal values are written as strings, so nothing is rounded.
+ */
+public class StreamingColumnarRowHandler implements StreamingResultWriter {
+
+    static final byte[] MAGIC = {'D', 'B', 'Q', 'C'};
+    static final byte VERSION = 1;
+    static final byte INT64 = 1;
+    static final byte FLOAT64 = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+
+    private final DataOutputStream out;
+    private final int batchRows;
+
+    private byte[] types;
+    private ByteArrayOutputStream[] values;
+    private DataOutputStream[] columns;
+    private BitSet[] present;
+    private int batchRowCount;
+    private long rowCount;
+
+    public StreamingColumnarRowHandler(OutputStream outputStream, int batchRows) {
+        this.out = new DataOutputStream(outputStream);
+        this.batchRows = batchRows > 0 ? batchRows : 1000;
+    }
+
+    @Override
+    public void begin() {
+        // the header needs the column metadata, so it is written with the first row
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        try {
+            if (types == null) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                String[] labels = StreamingJsonRowHandler.resolveColumnLabels(metaData);
+                byte[] columnTypes = new byte[labels.length];
+                for (int i = 0; i < labels.length; i++) {
+                    columnTypes[i] = typeOf(metaData.getColumnType(i + 1));
+                }
+                writeHeader(labels, columnTypes);
+            }
+            for (int i = 0; i < types.length; i++) {
+                Object value = JdbcUtils.getResultSetValue(rs, i + 1);
+                if (value != null) {
+                    present[i].set(batchRowCount);
+                    writeValue(columns[i], types[i], value);
+                }
+            }
+            batchRowCount++;
+            rowCount++;
+            if (batchRowCount == batchRows) {
+                writeBatch();
+            }
+        } catch (IOException e) {
+            // Usually the client went away; abort the iteration so the statement gets closed.
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void end(String error, int code, long executionTimeMs) throws IOException {
+        if (types == null) {
+            writeHeader(new String[0], new byte[0]);
+        }
+        if (batchRowCount > 0) {
+            writeBatch();
+        }
+        out.writeInt(0);
+        out.writeByte(error == null ? 0 : 1);
+        out.writeLong(executionTimeMs);
+        if (error != null) {
+            writeString(out, error);
+            out.writeInt(code);
+        }
+        out.flush();
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeHeader(String[] labels, byte[] columnTypes) throws IOException {
+        types = columnTypes;
+        values = new ByteArrayOutputStream[labels.length];
+        columns = new DataOutputStream[labels.length];
+        present = new BitSet[labels.length];
+
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            values[i] = new ByteArrayOutputStream();
+            columns[i] = new DataOutputStream(values[i]);
+            present[i] = new BitSet(batchRows);
+            out.writeByte(types[i]);
+            writeString(out, labels[i]);
+        }
+        // let the client see the columns before the first batch is complete
+        out.flush();
+    }
+
+    private void writeBatch() throws IOException {
+        out.writeInt(batchRowCount);
+        int bitmapLength = (batchRowCount + 7) / 8;
+        for (int i = 0; i < types.length; i++) {
+            byte[] bitmap = present[i].toByteArray();
+            out.write(bitmap);
+            out.write(new byte[bitmapLength - bitmap.length]);
+            out.writeInt(values[i].size());
+            values[i].writeTo(out);
+            values[i].reset();
+            present[i].clear();
+        }
+        batchRowCount = 0;
+        out.flush();
+    }
+
+    private static byte typeOf(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return INT64;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return FLOAT64;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            default:
+                return STRING;
+        }
+    }
+
+    private static void writeValue(DataOutputStream column, byte type, Object value) throws IOException {
+        switch (type) {
+            case INT64:
+                column.writeLong(((Number) value).longValue());
+                break;
+            case FLOAT64:
+                column.writeDouble(((Number) value).doubleValue());
+                break;
+            case BOOLEAN:
+                column.writeBoolean(value instanceof Boolean bool ? bool : "1".equals(value.toString()));
+                break;
+            default:
+                writeString(column, text(value));
+        }
+    }
+
+    static String text(Object value) {
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime().toString();
+        }
+        if (value instanceof java.sql.Date date) {
+            return date.toLocalDate().toString();
+        }
+        if (value instanceof java.sql.Time time) {
+            return time.toLocalTime().toString();
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        if (value instanceof byte[] bytes) {
+            return Base64.getEncoder().encodeToString(bytes);
+        }
+        return value.toString();
+    }
+
+    private static void writeString(DataOutputStream target, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        target.writeInt(bytes.length);
+        target.write(bytes);
+    }
+}
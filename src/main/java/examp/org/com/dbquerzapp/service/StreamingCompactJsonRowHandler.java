@@ -0,0 +1,57 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Compact JSON: the column labels once, then every row as an array of values in column order,
+ * so the labels are not repeated per row:
+ * <pre>
+ * {"columns":["id","name"],"rows":[[1,"John"],[2,"Jane"]],"success":true,"execution_time_ms":42}
+ * </pre>
+ * The labels are read from the metadata of the first row; an empty result has no columns.
+ */
+public class StreamingCompactJsonRowHandler extends StreamingJsonRowHandler {
+
+    public StreamingCompactJsonRowHandler(JsonGenerator generator, int flushEveryRows) {
+        super(generator, flushEveryRows);
+    }
+
+    @Override
+    public void begin() throws IOException {
+        generator.writeStartObject();
+    }
+
+    @Override
+    protected void writeRow(ResultSet rs, String[] columnLabels) throws SQLException, IOException {
+        if (getRowCount() == 0) {
+            writeColumns(columnLabels);
+        }
+        generator.writeStartArray();
+        for (int i = 0; i < columnLabels.length; i++) {
+            generator.writeObject(JdbcUtils.getResultSetValue(rs, i + 1));
+        }
+        generator.writeEndArray();
+    }
+
+    @Override
+    protected void endRows() throws IOException {
+        if (getRowCount() == 0) {
+            writeColumns(new String[0]);
+        }
+        generator.writeEndArray();
+    }
+
+    private void writeColumns(String[] columnLabels) throws IOException {
+        generator.writeArrayFieldStart("columns");
+        for (String label : columnLabels) {
+            generator.writeString(label);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("rows");
+    }
+}
@@ -0,0 +1,100 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * CSV the way PostgreSQL's COPY writes it, so both export paths produce the same layout: a
+ * header row with the column labels, then one line per row. Fields containing a separator,
+ * quote or line break are quoted, NULL is an empty field and an empty string is {@code ""}.
+ * Values are formatted like the columnar encoding.
+ * The header is taken from the metadata of the first row, so an empty result is an empty file.
+ * CSV has no trailer; {@link #end} only flushes.
+ */
+public class StreamingCsvRowHandler implements StreamingResultWriter {
+
+    private final Writer writer;
+
+    private int columnCount = -1;
+    private long rowCount;
+
+    public StreamingCsvRowHandler(OutputStream outputStream) {
+        this.writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void begin() {
+        // the header needs the column metadata, so it is written with the first row
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        try {
+            if (columnCount < 0) {
+                String[] labels = StreamingJsonRowHandler.resolveColumnLabels(rs.getMetaData());
+                columnCount = labels.length;
+                for (int i = 0; i < labels.length; i++) {
+                    writeField(i, labels[i]);
+                }
+                writer.write('\n');
+            }
+            for (int i = 0; i < columnCount; i++) {
+                Object value = JdbcUtils.getResultSetValue(rs, i + 1);
+                writeField(i, value == null ? null : StreamingColumnarRowHandler.text(value));
+            }
+            writer.write('\n');
+            rowCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void end(String error, int code, long executionTimeMs) throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeField(int column, String value) throws IOException {
+        if (column > 0) {
+            writer.write(',');
+        }
+        if (value == null) {
+            return;
+        }
+        if (value.isEmpty() || needsQuotes(value)) {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(value);
+        }
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,102 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Writes every row straight into a JSON array as it comes off the ResultSet.
+ * Column labels are resolved once from the metadata of the first row, and the
+ * values are read the same way ColumnMapRowMapper does, so the output matches
+ * the materialized /execute-query response.
+ */
+public class StreamingJsonRowHandler implements StreamingResultWriter {
+
+    protected final JsonGenerator generator;
+    private final int flushEveryRows;
+
+    private String[] columnLabels;
+    private long rowCount;
+
+    public StreamingJsonRowHandler(JsonGenerator generator, int flushEveryRows) {
+        this.generator = generator;
+        this.flushEveryRows = flushEveryRows;
+    }
+
+    @Override
+    public void begin() throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("data");
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        if (columnLabels == null) {
+            columnLabels = resolveColumnLabels(rs.getMetaData());
+        }
+        try {
+            writeRow(rs, columnLabels);
+            rowCount++;
+            // Push the first row out immediately, then in batches, so the client sees data before the query ends.
+            if (rowCount == 1 || (flushEveryRows > 0 && rowCount % flushEveryRows == 0)) {
+                generator.flush();
+            }
+        } catch (IOException e) {
+            // Usually the client went away; abort the iteration so the statement gets closed.
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the QueryResponse fields that follow the rows. They come after the data array
+     * because they are only known once the last row has been sent.
+     */
+    @Override
+    public void end(String error, int code, long executionTimeMs) throws IOException {
+        endRows();
+        generator.writeBooleanField("success", error == null);
+        if (error != null) {
+            generator.writeStringField("error", error);
+            generator.writeNumberField("code", code);
+        }
+        generator.writeNumberField("execution_time_ms", executionTimeMs);
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+
+    protected void writeRow(ResultSet rs, String[] columnLabels) throws SQLException, IOException {
+        generator.writeStartObject();
+        for (int i = 0; i < columnLabels.length; i++) {
+            generator.writeFieldName(columnLabels[i]);
+            generator.writeObject(JdbcUtils.getResultSetValue(rs, i + 1));
+        }
+        generator.writeEndObject();
+    }
+
+    protected void endRows() throws IOException {
+        generator.writeEndArray();
+    }
+
+    static String[] resolveColumnLabels(ResultSetMetaData metaData) throws SQLException {
+        String[] labels = new String[metaData.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+        }
+        return labels;
+    }
+}
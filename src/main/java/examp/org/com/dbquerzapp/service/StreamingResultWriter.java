@@ -0,0 +1,23 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes a streamed query result in one response format. Rows are written as they come off
+ * the ResultSet; the outcome of the query is only known afterwards and goes into a trailer.
+ * An IOException while writing a row (usually the client went away) is rethrown from
+ * {@link #processRow} as an UncheckedIOException so the iteration stops.
+ */
+public interface StreamingResultWriter extends RowCallbackHandler, Closeable {
+
+    /** Writes everything that precedes the first row. */
+    void begin() throws IOException;
+
+    /** Ends the rows, writes the trailer and flushes; error is null when the query succeeded. */
+    void end(String error, int code, long executionTimeMs) throws IOException;
+
+    long getRowCount();
+}
@@ -0,0 +1,156 @@
+package examp.org.com.dbquerzapp.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Listens for the change notifications that the triggers of the Liquibase changeset
+ * {@code notify-table-changes} send: one {@code NOTIFY} on channel {@value #CHANNEL_PREFIX}&lt;table&gt;
+ * per modifying statement. The listener holds one connection of its own, outside the pools, and
+ * only listens on the channels of tables someone asked for. After a lost connection it reconnects
+ * and reports every listened table as changed, since notifications sent meanwhile are gone.
+ * <p>
+ * Notifications are a PostgreSQL feature; on any other database the listener logs once and stops.
+ */
+@Component
+@Slf4j
+public class TableChangeListener {
+
+    public static final String CHANNEL_PREFIX = "dbquerzapp_";
+
+    private final DataSourceProperties dataSourceProperties;
+    private final boolean enabled;
+    private final Duration pollInterval;
+    private final Duration reconnectDelay;
+    private final Set<String> tables = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean supported = true;
+
+    public TableChangeListener(DataSourceProperties dataSourceProperties,
+                               @Value("${dbquerzapp.query.subscription.enabled:true}") boolean enabled,
+                               @Value("${dbquerzapp.query.subscription.poll-interval:500ms}") Duration pollInterval,
+                               @Value("${dbquerzapp.query.subscription.reconnect-delay:5s}") Duration reconnectDelay) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.enabled = enabled;
+        this.pollInterval = pollInterval;
+        this.reconnectDelay = reconnectDelay;
+        this.thread = Thread.ofPlatform().daemon().name("table-change-listener").unstarted(this::run);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /** Whether table changes are reported at all: enabled, and not given up on a database without notifications. */
+    public boolean isActive() {
+        return enabled && supported && running;
+    }
+
+    /** Starts listening on the channel of the table; picked up within one poll interval. */
+    public void listen(String table) {
+        tables.add(table);
+    }
+
+    /** Registers a callback that is called with the name of every changed table, on the listener thread. */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /** Reports the table as changed to every listener, as a notification on its channel would. */
+    void changed(String table) {
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(table);
+            } catch (RuntimeException e) {
+                log.warn("Table change listener failed for table {}", table, e);
+            }
+        }
+    }
+
+    private void run() {
+        String url = dataSourceProperties.determineUrl();
+        if (url == null || !url.startsWith("jdbc:postgresql:")) {
+            supported = false;
+            log.info("Table change notifications need PostgreSQL; live subscriptions are not refreshed on changes");
+            return;
+        }
+        boolean reconnected = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url,
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                connection.setAutoCommit(true);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                Set<String> listening = new HashSet<>();
+                if (reconnected) {
+                    log.info("Table change listener reconnected");
+                    tables.forEach(this::changed);
+                }
+                while (running) {
+                    for (String table : tables) {
+                        if (listening.add(table)) {
+                            try (Statement statement = connection.createStatement()) {
+                                statement.execute("LISTEN " + channel(table));
+                            }
+                            log.debug("Listening for changes of table {}", table);
+                        }
+                    }
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollInterval.toMillis());
+                    if (notifications != null) {
+                        Set<String> changed = new HashSet<>();
+                        for (PGNotification notification : notifications) {
+                            if (notification.getName().startsWith(CHANNEL_PREFIX)) {
+                                changed.add(notification.getName().substring(CHANNEL_PREFIX.length()));
+                            }
+                        }
+                        changed.forEach(this::changed);
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Table change listener lost its connection, reconnecting in {}: {}", reconnectDelay, e.getMessage());
+                reconnected = true;
+                try {
+                    Thread.sleep(reconnectDelay.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** The quoted channel name, so a table name is never read as SQL. */
+    static String channel(String table) {
+        return "\"" + (CHANNEL_PREFIX + table).replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,25 @@
+package examp.org.com.dbquerzapp.service;
+
+import java.util.List;
+
+/**
+ * Rows of a result that {@link QueryGovernor} cut off at {@code max-rows} or {@code max-bytes}.
+ * The rows themselves are complete; the response reports {@code truncated: true}. The rows are
+ * wrapped, not copied, and read-only. A cut-off result is never versioned, since the rows past
+ * the limit would look deleted, but a cached one carries its ETag.
+ */
+public class TruncatedRows<T> extends VersionedRows<T> {
+
+    public TruncatedRows(List<? extends T> rows) {
+        this(rows, null);
+    }
+
+    public TruncatedRows(List<? extends T> rows, String etag) {
+        super(rows, null, etag);
+    }
+
+    /** Whether the rows were cut off, either as TruncatedRows or as truncated {@link ColumnarRows}. */
+    public static boolean isTruncated(List<?> rows) {
+        return rows instanceof TruncatedRows || rows instanceof ColumnarRows columnar && columnar.isTruncated();
+    }
+}
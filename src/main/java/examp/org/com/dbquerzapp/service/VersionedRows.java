@@ -0,0 +1,51 @@
+package examp.org.com.dbquerzapp.service;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Rows of a result as {@link QueryResultCache} keeps them, with the ETag and, for a {@code -- @key}
+ * query, the {@link ResultVersions.Version} computed once when they were cached. The rows are
+ * wrapped, not copied, and read-only.
+ */
+public class VersionedRows<T> extends AbstractList<T> implements RandomAccess {
+
+    private final List<? extends T> rows;
+    private final ResultVersions.Version version;
+    private final String etag;
+
+    public VersionedRows(List<? extends T> rows, ResultVersions.Version version, String etag) {
+        this.rows = rows;
+        this.version = version;
+        this.etag = etag;
+    }
+
+    @Override
+    public T get(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    public ResultVersions.Version getVersion() {
+        return version;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /** The version the rows were cached with, or null when they are not VersionedRows. */
+    public static ResultVersions.Version versionOf(List<?> rows) {
+        return rows instanceof VersionedRows<?> versioned ? versioned.getVersion() : null;
+    }
+
+    /** The ETag the rows were cached with, or null when they are not VersionedRows. */
+    public static String etagOf(List<?> rows) {
+        return rows instanceof VersionedRows<?> versioned ? versioned.getEtag() : null;
+    }
+}
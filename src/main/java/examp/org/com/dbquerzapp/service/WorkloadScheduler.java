@@ -0,0 +1,369 @@
+package examp.org.com.dbquerzapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Workload classes in front of the {@link QueryAdmissionGate}. Every query is admitted in a class
+ * ({@code interactive}, {@code reporting}, {@code export} or any other configured one), picked by
+ * the client's configured class, else the query's {@code -- @workload} directive, else the default
+ * class. Each class is a bulkhead with its own connection quota ({@code max-concurrent}), queue
+ * ({@code max-queued}) and wait limit ({@code max-wait}), so a flood of reporting queries cannot
+ * take the slots of interactive users.
+ * <p>
+ * Inside a class, waiting queries are not served first come first served but by start-time fair
+ * queuing between clients: every admission advances the client's virtual time by 1/weight, and
+ * the waiting client with the lowest virtual time goes next. A client that floods the queue
+ * therefore only gets its share, and a client with weight 2 gets twice the share of one with
+ * weight 1. Per client and class, {@code max-concurrent-per-client} caps the queries running at
+ * once and {@code rows-per-minute} the rows returned in the current minute; a client over its row
+ * quota is rejected until the minute is over. 0 is unlimited.
+ * <p>
+ * The client is identified by the {@code client-header} request header, or by its address when
+ * the header is missing. Work without a request, like warm-up, runs as client {@value #SYSTEM_CLIENT}.
+ */
+@Slf4j
+public class WorkloadScheduler {
+
+    public static final String INTERACTIVE = "interactive";
+    public static final String REPORTING = "reporting";
+    public static final String EXPORT = "export";
+    public static final String SYSTEM_CLIENT = "system";
+
+    public static final String WAIT = "dbquerzapp.query.workload.wait";
+
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /** The class a query is admitted in and the client it is admitted for. */
+    public record Workload(String workloadClass, String client) {
+    }
+
+    /** Quotas of one workload class, bound from {@code dbquerzapp.query.workload.classes.<name>}. */
+    public record ClassSettings(@DefaultValue("10") int maxConcurrent,
+                                @DefaultValue("100") int maxQueued,
+                                @DefaultValue("5s") Duration maxWait,
+                                @DefaultValue("0") int maxConcurrentPerClient,
+                                @DefaultValue("0") long rowsPerMinute) {
+    }
+
+    /** A known client, bound from {@code dbquerzapp.query.workload.clients.<key>}. */
+    public record ClientSettings(String workloadClass, @DefaultValue("1") int weight) {
+    }
+
+    private final Map<String, Bulkhead> classes = new LinkedHashMap<>();
+    private final Map<String, ClientSettings> clients;
+    private final String defaultClass;
+    private final String clientHeader;
+    private final long retryAfterSeconds;
+    private final MeterRegistry registry;
+
+    public WorkloadScheduler(Map<String, ClassSettings> classes, Map<String, ClientSettings> clients, String defaultClass,
+                             String clientHeader, Duration retryAfter, MeterRegistry registry) {
+        classes.forEach((name, settings) -> this.classes.put(name, new Bulkhead(name, settings)));
+        if (!this.classes.containsKey(defaultClass)) {
+            this.classes.put(defaultClass, new Bulkhead(defaultClass,
+                    new ClassSettings(Integer.MAX_VALUE, Integer.MAX_VALUE, Duration.ofSeconds(5), 0, 0)));
+        }
+        for (Map.Entry<String, ClientSettings> client : clients.entrySet()) {
+            String workloadClass = client.getValue().workloadClass();
+            if (workloadClass != null && !this.classes.containsKey(workloadClass)) {
+                throw new IllegalStateException("Client " + client.getKey() + " refers to unknown workload class: " + workloadClass);
+            }
+        }
+        this.clients = Map.copyOf(clients);
+        this.defaultClass = defaultClass;
+        this.clientHeader = clientHeader;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.registry = registry;
+    }
+
+    /**
+     * The workload of a query run for the current request. The query may be null for work that
+     * is not one saved query, like a consistent batch.
+     */
+    public Workload resolve(CompiledQuery compiledQuery) {
+        String client = currentClient();
+        ClientSettings settings = clients.get(client);
+        if (settings != null && settings.workloadClass() != null) {
+            return new Workload(settings.workloadClass(), client);
+        }
+        String workloadClass = compiledQuery == null ? null : compiledQuery.getOptions().getWorkloadClass();
+        if (workloadClass == null || !classes.containsKey(workloadClass)) {
+            if (workloadClass != null) {
+                log.debug("Query {} declares unknown workload class {}, using {}", compiledQuery.getIdentifier(), workloadClass, defaultClass);
+            }
+            workloadClass = defaultClass;
+        }
+        return new Workload(workloadClass, client);
+    }
+
+    /** The workload of a background export for the current request: the export class when configured. */
+    public Workload resolveExport() {
+        return new Workload(classes.containsKey(EXPORT) ? EXPORT : defaultClass, currentClient());
+    }
+
+    /**
+     * Takes a slot of the workload's class, waiting in the class's fair queue for at most its
+     * max-wait. Throws QueryRejectedException when the queue is full, the wait times out or the
+     * client is over its row quota.
+     */
+    public QueryAdmissionGate.Permit acquire(Workload workload) {
+        Bulkhead bulkhead = bulkhead(workload);
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = QueryMetrics.REJECTED;
+        try {
+            QueryAdmissionGate.Permit permit = bulkhead.acquire(workload.client(), weight(workload.client()));
+            outcome = QueryMetrics.SUCCESS;
+            return permit;
+        } finally {
+            sample.stop(Timer.builder(WAIT)
+                    .description("Time queries wait for a slot of their workload class")
+                    .tag("class", bulkhead.name)
+                    .tag("outcome", outcome)
+                    .register(registry));
+        }
+    }
+
+    /** Counts rows returned to the client against its rows-per-minute quota. */
+    public void recordRows(Workload workload, long rows) {
+        bulkhead(workload).recordRows(workload.client(), rows);
+    }
+
+    public Set<String> getWorkloadClasses() {
+        return classes.keySet();
+    }
+
+    public int getRunning(String workloadClass) {
+        return classes.get(workloadClass).running();
+    }
+
+    public int getQueued(String workloadClass) {
+        return classes.get(workloadClass).queued();
+    }
+
+    private Bulkhead bulkhead(Workload workload) {
+        Bulkhead bulkhead = classes.get(workload.workloadClass());
+        return bulkhead != null ? bulkhead : classes.get(defaultClass);
+    }
+
+    private int weight(String client) {
+        ClientSettings settings = clients.get(client);
+        return settings == null ? 1 : Math.max(1, settings.weight());
+    }
+
+    private String currentClient() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            HttpServletRequest request = attributes.getRequest();
+            String client = request.getHeader(clientHeader);
+            return client != null && !client.isBlank() ? client.strip() : request.getRemoteAddr();
+        }
+        return SYSTEM_CLIENT;
+    }
+
+    /** One workload class: its slots, its fair queue and the state of its clients. */
+    private final class Bulkhead {
+
+        private final String name;
+        private final ClassSettings settings;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Client> clients = new HashMap<>();
+        private int running;
+        private int queued;
+        private double virtualTime;
+        private long lastSweep;
+
+        Bulkhead(String name, ClassSettings settings) {
+            this.name = name;
+            this.settings = settings;
+        }
+
+        QueryAdmissionGate.Permit acquire(String clientKey, int weight) {
+            Waiter waiter;
+            Client client;
+            lock.lock();
+            try {
+                client = clients.computeIfAbsent(clientKey, key -> new Client());
+                long now = System.currentTimeMillis();
+                if (settings.rowsPerMinute() > 0 && client.rows(now) >= settings.rowsPerMinute()) {
+                    long secondsLeft = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(client.windowStart + WINDOW_MILLIS - now));
+                    log.warn("Query rejected: client {} is over its quota of {} rows per minute in class {}", clientKey,
+                            settings.rowsPerMinute(), name);
+                    throw new QueryRejectedException("Row quota of the " + name + " workload exceeded, retry later", secondsLeft);
+                }
+                if (queued >= settings.maxQueued()) {
+                    log.warn("Query rejected: queue of workload class {} is full ({})", name, settings.maxQueued());
+                    throw new QueryRejectedException("Too many " + name + " queries in progress, retry later", retryAfterSeconds);
+                }
+                waiter = new Waiter(lock.newCondition(), weight);
+                client.waiting.add(waiter);
+                queued++;
+                dispatch();
+                long remaining = settings.maxWait().toNanos();
+                while (!waiter.admitted) {
+                    if (remaining <= 0) {
+                        client.waiting.remove(waiter);
+                        queued--;
+                        forget(clientKey, client);
+                        log.warn("Query rejected: no slot of workload class {} within {} ms", name, settings.maxWait().toMillis());
+                        throw new QueryRejectedException("Too many " + name + " queries in progress, retry later", retryAfterSeconds);
+                    }
+                    try {
+                        remaining = waiter.condition.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        if (waiter.admitted) {
+                            release(clientKey, client);
+                        } else {
+                            client.waiting.remove(waiter);
+                            queued--;
+                            forget(clientKey, client);
+                        }
+                        throw new QueryRejectedException("Interrupted while waiting for a query slot", retryAfterSeconds);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            AtomicBoolean released = new AtomicBoolean();
+            return () -> {
+                if (released.compareAndSet(false, true)) {
+                    lock.lock();
+                    try {
+                        release(clientKey, client);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            };
+        }
+
+        void recordRows(String clientKey, long rows) {
+            if (settings.rowsPerMinute() <= 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                long now = System.currentTimeMillis();
+                Client client = clients.computeIfAbsent(clientKey, key -> new Client());
+                client.rows(now);
+                client.windowRows += rows;
+                if (now - lastSweep >= WINDOW_MILLIS) {
+                    // idle clients are only kept for their row quota, which is over once their window is
+                    lastSweep = now;
+                    clients.values().removeIf(idle -> idle.running == 0 && idle.waiting.isEmpty() && idle.rows(now) == 0);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int running() {
+            lock.lock();
+            try {
+                return running;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int queued() {
+            lock.lock();
+            try {
+                return queued;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Hands free slots to the waiting clients with the lowest virtual start time. Holds the lock. */
+        private void dispatch() {
+            while (running < settings.maxConcurrent()) {
+                Client next = null;
+                double nextStart = Double.MAX_VALUE;
+                for (Client client : clients.values()) {
+                    if (client.waiting.isEmpty()
+                            || (settings.maxConcurrentPerClient() > 0 && client.running >= settings.maxConcurrentPerClient())) {
+                        continue;
+                    }
+                    double start = Math.max(virtualTime, client.finishTime);
+                    if (start < nextStart) {
+                        next = client;
+                        nextStart = start;
+                    }
+                }
+                if (next == null) {
+                    return;
+                }
+                Waiter waiter = next.waiting.poll();
+                virtualTime = nextStart;
+                next.finishTime = nextStart + 1.0 / waiter.weight;
+                next.running++;
+                running++;
+                queued--;
+                waiter.admitted = true;
+                waiter.condition.signal();
+            }
+        }
+
+        /** Holds the lock. */
+        private void release(String clientKey, Client client) {
+            client.running--;
+            running--;
+            forget(clientKey, client);
+            dispatch();
+        }
+
+        /** Drops an idle client, unless its row quota window is still open. Holds the lock. */
+        private void forget(String clientKey, Client client) {
+            if (client.running == 0 && client.waiting.isEmpty()
+                    && (settings.rowsPerMinute() <= 0 || client.rows(System.currentTimeMillis()) == 0)) {
+                clients.remove(clientKey);
+            }
+        }
+    }
+
+    private static final class Client {
+        private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+        private int running;
+        private double finishTime;
+        private long windowStart;
+        private long windowRows;
+
+        /** Rows in the current one-minute window, starting a new window once it is over. */
+        long rows(long now) {
+            if (now - windowStart >= WINDOW_MILLIS) {
+                windowStart = now;
+                windowRows = 0;
+            }
+            return windowRows;
+        }
+    }
+
+    private static final class Waiter {
+        private final Condition condition;
+        private final int weight;
+        private boolean admitted;
+
+        Waiter(Condition condition, int weight) {
+            this.condition = condition;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package examp.org.com.dbquerzapp.validator;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Syntax tree of a validated saved query: the first SELECT, any UNION branches, and the
+ * ORDER BY / LIMIT / OFFSET clauses that apply to the whole statement, plus the names of the
+ * {@code :named} parameters in order of first appearance.
+ */
+public record SelectStatement(
+        SelectCore select,
+        List<Union> unions,
+        List<OrderItem> orderBy,
+        Long limit,
+        Long offset,
+        List<String> parameters) {
+
+    /**
+     * Names of the tables the statement reads from, the main SELECT and every UNION branch, in
+     * order of first appearance. Unquoted names are folded to lower case, as PostgreSQL does.
+     */
+    public List<String> tables() {
+        Set<String> tables = new LinkedHashSet<>();
+        tables.add(select.from().tableName());
+        for (Union union : unions) {
+            tables.add(union.select().from().tableName());
+        }
+        return List.copyOf(tables);
+    }
+
+    public record SelectCore(
+            boolean distinct,
+            List<SelectItem> items,
+            TableReference from,
+            SqlExpression where,
+            List<SqlExpression> groupBy,
+            SqlExpression having) {
+    }
+
+    public record SelectItem(SqlExpression expression, String alias) {
+    }
+
+    public record TableReference(List<String> nameParts, String alias) {
+        public String name() {
+            return nameParts.get(nameParts.size() - 1);
+        }
+
+        /** The unqualified table name as the database knows it. */
+        public String tableName() {
+            String name = name();
+            if (name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) {
+                return name.substring(1, name.length() - 1).replace("\"\"", "\"");
+            }
+            return name.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public record Union(boolean all, SelectCore select) {
+    }
+
+    public record OrderItem(SqlExpression expression, boolean descending) {
+    }
+}
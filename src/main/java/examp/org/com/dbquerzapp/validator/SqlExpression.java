@@ -0,0 +1,51 @@
+package examp.org.com.dbquerzapp.validator;
+
+import java.util.List;
+
+/**
+ * Expression nodes of the parsed SELECT subset. Identifiers keep the text they were written
+ * with (quoted identifiers include their quotes), so a node can be rendered back into SQL.
+ */
+public sealed interface SqlExpression {
+
+    record Literal(Object value) implements SqlExpression {
+    }
+
+    /** Named bind parameter, written {@code :name} in the query file. */
+    record Parameter(String name) implements SqlExpression {
+    }
+
+    record ColumnReference(List<String> parts) implements SqlExpression {
+        public String name() {
+            return parts.get(parts.size() - 1);
+        }
+    }
+
+    /** {@code *} or {@code qualifier.*}; qualifier is null for a bare star. */
+    record Star(String qualifier) implements SqlExpression {
+    }
+
+    record FunctionCall(String name, boolean distinct, List<SqlExpression> arguments) implements SqlExpression {
+    }
+
+    record Unary(String operator, SqlExpression operand) implements SqlExpression {
+    }
+
+    record Binary(String operator, SqlExpression left, SqlExpression right) implements SqlExpression {
+    }
+
+    record Case(SqlExpression operand, List<When> whens, SqlExpression otherwise) implements SqlExpression {
+    }
+
+    record When(SqlExpression condition, SqlExpression result) {
+    }
+
+    record InList(SqlExpression operand, boolean negated, List<SqlExpression> values) implements SqlExpression {
+    }
+
+    record Between(SqlExpression operand, boolean negated, SqlExpression low, SqlExpression high) implements SqlExpression {
+    }
+
+    record IsNull(SqlExpression operand, boolean negated) implements SqlExpression {
+    }
+}
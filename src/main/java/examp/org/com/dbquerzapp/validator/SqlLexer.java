@@ -0,0 +1,261 @@
+package examp.org.com.dbquerzapp.validator;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Hand-written, linear-time tokenizer for saved queries. Tokens are produced on demand so the
+ * parser validates the query in a single pass: comments are skipped, dangerous keywords and
+ * unbalanced parentheses are reported as soon as they are read, and every character is looked
+ * at a bounded number of times.
+ */
+class SqlLexer {
+
+    private static final Map<String, DANGEROUS_KEYWORD> DENY_LIST = new HashMap<>();
+
+    static {
+        for (DANGEROUS_KEYWORD keyword : DANGEROUS_KEYWORD.values()) {
+            DENY_LIST.put(keyword.name(), keyword);
+        }
+    }
+
+    private final String sql;
+    private final int length;
+    private int position;
+    private int parenDepth;
+
+    SqlLexer(String sql) {
+        this.sql = sql;
+        this.length = sql.length();
+    }
+
+    SqlToken next() {
+        skipWhitespaceAndComments();
+        if (position >= length) {
+            if (parenDepth != 0) {
+                throw new SqlValidationException("Invalid SQL format");
+            }
+            return new SqlToken(SqlToken.Type.EOF, "", null, position);
+        }
+
+        int start = position;
+        char c = sql.charAt(position);
+        if (isIdentifierStart(c)) {
+            return word(start);
+        }
+        if (isDigit(c)) {
+            return number(start);
+        }
+        switch (c) {
+            case '\'':
+                return string(start);
+            case '"':
+            case '`':
+                return quotedIdentifier(start, c);
+            case ':':
+                return parameter(start);
+            case '(':
+                position++;
+                parenDepth++;
+                return new SqlToken(SqlToken.Type.LEFT_PAREN, "(", null, start);
+            case ')':
+                position++;
+                if (--parenDepth < 0) {
+                    throw new SqlValidationException("Invalid SQL format");
+                }
+                return new SqlToken(SqlToken.Type.RIGHT_PAREN, ")", null, start);
+            case ',':
+                position++;
+                return new SqlToken(SqlToken.Type.COMMA, ",", null, start);
+            case '.':
+                position++;
+                return new SqlToken(SqlToken.Type.DOT, ".", null, start);
+            case ';':
+                position++;
+                return new SqlToken(SqlToken.Type.SEMICOLON, ";", null, start);
+            case '=':
+            case '+':
+            case '-':
+            case '*':
+            case '/':
+            case '%':
+                position++;
+                return operator(start);
+            case '<':
+                position++;
+                if (peek('=') || peek('>')) {
+                    position++;
+                }
+                return operator(start);
+            case '>':
+                position++;
+                if (peek('=')) {
+                    position++;
+                }
+                return operator(start);
+            case '!':
+                position++;
+                if (!peek('=')) {
+                    throw SqlValidationException.syntax("unexpected character '!' at position " + start);
+                }
+                position++;
+                return operator(start);
+            case '|':
+                position++;
+                if (!peek('|')) {
+                    throw SqlValidationException.syntax("unexpected character '|' at position " + start);
+                }
+                position++;
+                return operator(start);
+            default:
+                position++;
+                throw SqlValidationException.syntax("unexpected character '" + c + "' at position " + start);
+        }
+    }
+
+    /**
+     * Scans the rest of the query for a dangerous keyword, tolerating any other error.
+     * Used after a syntax error so a forbidden keyword is still reported as such,
+     * without re-reading the part of the query that was already tokenized.
+     */
+    DANGEROUS_KEYWORD findDangerousKeyword() {
+        while (position < length) {
+            try {
+                next();
+            } catch (SqlValidationException e) {
+                if (e.getDangerousKeyword() != null) {
+                    return e.getDangerousKeyword();
+                }
+            }
+        }
+        return null;
+    }
+
+    private SqlToken word(int start) {
+        position++;
+        while (position < length && isIdentifierPart(sql.charAt(position))) {
+            position++;
+        }
+        String text = sql.substring(start, position);
+        String keyword = text.toUpperCase(Locale.ROOT);
+        DANGEROUS_KEYWORD dangerous = DENY_LIST.get(keyword);
+        if (dangerous != null) {
+            throw SqlValidationException.dangerousKeyword(dangerous);
+        }
+        return new SqlToken(SqlToken.Type.WORD, text, keyword, start);
+    }
+
+    private SqlToken number(int start) {
+        while (position < length && isDigit(sql.charAt(position))) {
+            position++;
+        }
+        if (position + 1 < length && sql.charAt(position) == '.' && isDigit(sql.charAt(position + 1))) {
+            position++;
+            while (position < length && isDigit(sql.charAt(position))) {
+                position++;
+            }
+        }
+        if (position < length && isIdentifierStart(sql.charAt(position))) {
+            while (position < length && isIdentifierPart(sql.charAt(position))) {
+                position++;
+            }
+            throw new SqlValidationException("Invalid identifier: table or column names cannot start with numbers");
+        }
+        return new SqlToken(SqlToken.Type.NUMBER, sql.substring(start, position), null, start);
+    }
+
+    private SqlToken parameter(int start) {
+        position++;
+        if (position >= length || !isIdentifierStart(sql.charAt(position))) {
+            throw SqlValidationException.syntax("unexpected character ':' at position " + start);
+        }
+        while (position < length && isIdentifierPart(sql.charAt(position))) {
+            position++;
+        }
+        return new SqlToken(SqlToken.Type.PARAMETER, sql.substring(start + 1, position), null, start);
+    }
+
+    private SqlToken string(int start) {
+        StringBuilder value = new StringBuilder();
+        position++;
+        while (position < length) {
+            char c = sql.charAt(position++);
+            if (c == '\'') {
+                if (peek('\'')) {
+                    value.append('\'');
+                    position++;
+                } else {
+                    return new SqlToken(SqlToken.Type.STRING, value.toString(), null, start);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        // A quote that never closes and swallows a statement separator is the classic break-out attempt.
+        if (value.indexOf(";") >= 0) {
+            throw SqlValidationException.injection();
+        }
+        throw SqlValidationException.syntax("unterminated string literal at position " + start);
+    }
+
+    private SqlToken quotedIdentifier(int start, char quote) {
+        position++;
+        while (position < length) {
+            char c = sql.charAt(position++);
+            if (c == quote) {
+                if (peek(quote)) {
+                    position++;
+                } else {
+                    return new SqlToken(SqlToken.Type.QUOTED_IDENTIFIER, sql.substring(start, position), null, start);
+                }
+            }
+        }
+        throw SqlValidationException.syntax("unterminated quoted identifier at position " + start);
+    }
+
+    private SqlToken operator(int start) {
+        return new SqlToken(SqlToken.Type.OPERATOR, sql.substring(start, position), null, start);
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (position < length) {
+            char c = sql.charAt(position);
+            if (Character.isWhitespace(c)) {
+                position++;
+            } else if (c == '-' && peekAt(position + 1, '-')) {
+                int end = sql.indexOf('\n', position);
+                position = end < 0 ? length : end + 1;
+            } else if (c == '/' && peekAt(position + 1, '*')) {
+                int end = sql.indexOf("*/", position + 2);
+                if (end < 0) {
+                    position = length;
+                    throw SqlValidationException.syntax("unterminated comment");
+                }
+                position = end + 2;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private boolean peek(char expected) {
+        return peekAt(position, expected);
+    }
+
+    private boolean peekAt(int index, char expected) {
+        return index < length && sql.charAt(index) == expected;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c) || c == '$';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
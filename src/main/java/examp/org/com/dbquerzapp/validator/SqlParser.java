@@ -0,0 +1,425 @@
+package examp.org.com.dbquerzapp.validator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recursive-descent parser for the supported SELECT subset:
+ * <pre>
+ * statement  := core (UNION [ALL] core)* [ORDER BY item [ASC|DESC], ...] [LIMIT n] [OFFSET n] [;]
+ * core       := SELECT [DISTINCT] (* | expr [[AS] alias], ...) FROM table [[AS] alias]
+ *               [WHERE expr] [GROUP BY expr, ...] [HAVING expr]
+ * </pre>
+ * Expressions cover literals, (qualified) columns, function calls, CASE, arithmetic,
+ * {@code :named} parameters, comparisons, LIKE, IN, BETWEEN, IS [NOT] NULL and AND/OR/NOT. The parser pulls tokens from
+ * the lexer one at a time and never backtracks, so validation is linear in the query length.
+ * Nesting of parentheses, NOT and signs is limited to {@value #MAX_DEPTH} levels, so a deeply
+ * nested query is rejected as invalid instead of overflowing the stack.
+ */
+class SqlParser {
+
+    private static final Set<String> RESERVED = Set.of(
+            "SELECT", "FROM", "WHERE", "GROUP", "BY", "HAVING", "ORDER", "LIMIT", "OFFSET",
+            "UNION", "ALL", "DISTINCT", "AS", "AND", "OR", "NOT", "IN", "IS", "NULL", "BETWEEN",
+            "LIKE", "ILIKE", "ESCAPE", "CASE", "WHEN", "THEN", "ELSE", "END", "ASC", "DESC",
+            "TRUE", "FALSE", "ON", "JOIN");
+
+    private static final Set<String> COMPARISON_OPERATORS = Set.of("=", "<>", "!=", "<", "<=", ">", ">=");
+
+    static final int MAX_DEPTH = 256;
+
+    private final SqlLexer lexer;
+    private final Set<String> parameters = new LinkedHashSet<>();
+    private SqlToken current;
+    private int depth;
+
+    SqlParser(SqlLexer lexer) {
+        this.lexer = lexer;
+        this.current = lexer.next();
+    }
+
+    SelectStatement parse() {
+        if (!current.isKeyword("SELECT")) {
+            throw new SqlValidationException("Only SELECT statements are allowed");
+        }
+        SelectStatement.SelectCore select = selectCore();
+
+        List<SelectStatement.Union> unions = new ArrayList<>();
+        while (acceptKeyword("UNION")) {
+            boolean all = acceptKeyword("ALL");
+            if (!all) {
+                acceptKeyword("DISTINCT");
+            }
+            unions.add(new SelectStatement.Union(all, selectCore()));
+        }
+
+        List<SelectStatement.OrderItem> orderBy = new ArrayList<>();
+        if (acceptKeyword("ORDER")) {
+            expectKeyword("BY");
+            do {
+                SqlExpression expression = expression();
+                boolean descending = acceptKeyword("DESC");
+                if (!descending) {
+                    acceptKeyword("ASC");
+                }
+                orderBy.add(new SelectStatement.OrderItem(expression, descending));
+            } while (accept(SqlToken.Type.COMMA));
+        }
+
+        Long limit = acceptKeyword("LIMIT") ? integer() : null;
+        Long offset = acceptKeyword("OFFSET") ? integer() : null;
+
+        if (accept(SqlToken.Type.SEMICOLON) && !current.is(SqlToken.Type.EOF)) {
+            throw new SqlValidationException("Multiple SQL statements are not allowed");
+        }
+        if (!current.is(SqlToken.Type.EOF)) {
+            throw unexpected("end of query");
+        }
+        return new SelectStatement(select, List.copyOf(unions), List.copyOf(orderBy), limit, offset, List.copyOf(parameters));
+    }
+
+    private SelectStatement.SelectCore selectCore() {
+        expectKeyword("SELECT");
+        boolean distinct = acceptKeyword("DISTINCT");
+        if (!distinct) {
+            acceptKeyword("ALL");
+        }
+
+        List<SelectStatement.SelectItem> items = new ArrayList<>();
+        do {
+            items.add(selectItem());
+        } while (accept(SqlToken.Type.COMMA));
+
+        expectKeyword("FROM");
+        SelectStatement.TableReference from = tableReference();
+
+        SqlExpression where = acceptKeyword("WHERE") ? expression() : null;
+
+        List<SqlExpression> groupBy = new ArrayList<>();
+        if (acceptKeyword("GROUP")) {
+            expectKeyword("BY");
+            do {
+                groupBy.add(expression());
+            } while (accept(SqlToken.Type.COMMA));
+        }
+
+        SqlExpression having = acceptKeyword("HAVING") ? expression() : null;
+        return new SelectStatement.SelectCore(distinct, List.copyOf(items), from, where, List.copyOf(groupBy), having);
+    }
+
+    private SelectStatement.SelectItem selectItem() {
+        if (current.isOperator("*")) {
+            advance();
+            return new SelectStatement.SelectItem(new SqlExpression.Star(null), null);
+        }
+        SqlExpression expression = expression();
+        return new SelectStatement.SelectItem(expression, alias());
+    }
+
+    private SelectStatement.TableReference tableReference() {
+        List<String> nameParts = new ArrayList<>();
+        nameParts.add(identifier("table name"));
+        while (accept(SqlToken.Type.DOT)) {
+            nameParts.add(identifier("table name"));
+        }
+        return new SelectStatement.TableReference(List.copyOf(nameParts), alias());
+    }
+
+    private String alias() {
+        if (acceptKeyword("AS")) {
+            return identifier("alias");
+        }
+        if (isIdentifier(current)) {
+            return identifier("alias");
+        }
+        return null;
+    }
+
+    private SqlExpression expression() {
+        nest();
+        SqlExpression left = andExpression();
+        while (acceptKeyword("OR")) {
+            left = new SqlExpression.Binary("OR", left, andExpression());
+        }
+        depth--;
+        return left;
+    }
+
+    private SqlExpression andExpression() {
+        SqlExpression left = notExpression();
+        while (acceptKeyword("AND")) {
+            left = new SqlExpression.Binary("AND", left, notExpression());
+        }
+        return left;
+    }
+
+    private SqlExpression notExpression() {
+        if (acceptKeyword("NOT")) {
+            nest();
+            SqlExpression operand = notExpression();
+            depth--;
+            return new SqlExpression.Unary("NOT", operand);
+        }
+        return predicate();
+    }
+
+    private SqlExpression predicate() {
+        SqlExpression left = additive();
+
+        if (current.is(SqlToken.Type.OPERATOR) && COMPARISON_OPERATORS.contains(current.text())) {
+            String operator = current.text();
+            advance();
+            return comparison(operator, left, additive());
+        }
+        if (acceptKeyword("IS")) {
+            boolean negated = acceptKeyword("NOT");
+            expectKeyword("NULL");
+            return new SqlExpression.IsNull(left, negated);
+        }
+
+        boolean negated = acceptKeyword("NOT");
+        if (acceptKeyword("IN")) {
+            expect(SqlToken.Type.LEFT_PAREN, "'('");
+            List<SqlExpression> values = new ArrayList<>();
+            do {
+                values.add(additive());
+            } while (accept(SqlToken.Type.COMMA));
+            expect(SqlToken.Type.RIGHT_PAREN, "')'");
+            return new SqlExpression.InList(left, negated, List.copyOf(values));
+        }
+        if (acceptKeyword("BETWEEN")) {
+            SqlExpression low = additive();
+            expectKeyword("AND");
+            return new SqlExpression.Between(left, negated, low, additive());
+        }
+        if (current.isKeyword("LIKE") || current.isKeyword("ILIKE")) {
+            String operator = (negated ? "NOT " : "") + current.keyword();
+            advance();
+            SqlExpression like = comparison(operator, left, additive());
+            if (acceptKeyword("ESCAPE")) {
+                if (!current.is(SqlToken.Type.STRING)) {
+                    throw unexpected("escape string");
+                }
+                advance();
+            }
+            return like;
+        }
+        if (negated) {
+            throw unexpected("IN, BETWEEN or LIKE");
+        }
+        return left;
+    }
+
+    private SqlExpression comparison(String operator, SqlExpression left, SqlExpression right) {
+        // Comparing two constants ("1 = 1", "'a' = 'a'") is the typical always-true injection payload.
+        if (left instanceof SqlExpression.Literal && right instanceof SqlExpression.Literal) {
+            throw SqlValidationException.injection();
+        }
+        return new SqlExpression.Binary(operator, left, right);
+    }
+
+    private SqlExpression additive() {
+        SqlExpression left = multiplicative();
+        while (current.isOperator("+") || current.isOperator("-") || current.isOperator("||")) {
+            String operator = current.text();
+            advance();
+            left = new SqlExpression.Binary(operator, left, multiplicative());
+        }
+        return left;
+    }
+
+    private SqlExpression multiplicative() {
+        SqlExpression left = unary();
+        while (current.isOperator("*") || current.isOperator("/") || current.isOperator("%")) {
+            String operator = current.text();
+            advance();
+            left = new SqlExpression.Binary(operator, left, unary());
+        }
+        return left;
+    }
+
+    private SqlExpression unary() {
+        if (current.isOperator("-") || current.isOperator("+")) {
+            String operator = current.text();
+            advance();
+            nest();
+            SqlExpression operand = unary();
+            depth--;
+            if (operand instanceof SqlExpression.Literal literal && literal.value() instanceof Number) {
+                return "-".equals(operator) ? new SqlExpression.Literal(negate((Number) literal.value())) : literal;
+            }
+            return new SqlExpression.Unary(operator, operand);
+        }
+        return primary();
+    }
+
+    private SqlExpression primary() {
+        SqlToken token = current;
+        switch (token.type()) {
+            case NUMBER:
+                advance();
+                return new SqlExpression.Literal(number(token.text()));
+            case STRING:
+                advance();
+                return new SqlExpression.Literal(token.text());
+            case PARAMETER:
+                advance();
+                parameters.add(token.text());
+                return new SqlExpression.Parameter(token.text());
+            case LEFT_PAREN: {
+                advance();
+                SqlExpression inner = expression();
+                expect(SqlToken.Type.RIGHT_PAREN, "')'");
+                return inner;
+            }
+            case WORD:
+                if (acceptKeyword("TRUE")) {
+                    return new SqlExpression.Literal(Boolean.TRUE);
+                }
+                if (acceptKeyword("FALSE")) {
+                    return new SqlExpression.Literal(Boolean.FALSE);
+                }
+                if (acceptKeyword("NULL")) {
+                    return new SqlExpression.Literal(null);
+                }
+                if (token.isKeyword("CASE")) {
+                    return caseExpression();
+                }
+                return columnOrFunction();
+            case QUOTED_IDENTIFIER:
+                return columnOrFunction();
+            default:
+                throw unexpected("expression");
+        }
+    }
+
+    private SqlExpression caseExpression() {
+        expectKeyword("CASE");
+        SqlExpression operand = current.isKeyword("WHEN") ? null : expression();
+        List<SqlExpression.When> whens = new ArrayList<>();
+        do {
+            expectKeyword("WHEN");
+            SqlExpression condition = expression();
+            expectKeyword("THEN");
+            whens.add(new SqlExpression.When(condition, expression()));
+        } while (current.isKeyword("WHEN"));
+        SqlExpression otherwise = acceptKeyword("ELSE") ? expression() : null;
+        expectKeyword("END");
+        return new SqlExpression.Case(operand, List.copyOf(whens), otherwise);
+    }
+
+    private SqlExpression columnOrFunction() {
+        List<String> parts = new ArrayList<>();
+        parts.add(identifier("column name"));
+        while (accept(SqlToken.Type.DOT)) {
+            if (current.isOperator("*")) {
+                advance();
+                return new SqlExpression.Star(String.join(".", parts));
+            }
+            parts.add(identifier("column name"));
+        }
+        if (!accept(SqlToken.Type.LEFT_PAREN)) {
+            return new SqlExpression.ColumnReference(List.copyOf(parts));
+        }
+
+        String name = String.join(".", parts);
+        List<SqlExpression> arguments = new ArrayList<>();
+        boolean distinct = false;
+        if (current.isOperator("*")) {
+            advance();
+            arguments.add(new SqlExpression.Star(null));
+        } else if (!current.is(SqlToken.Type.RIGHT_PAREN)) {
+            distinct = acceptKeyword("DISTINCT");
+            do {
+                arguments.add(expression());
+            } while (accept(SqlToken.Type.COMMA));
+        }
+        expect(SqlToken.Type.RIGHT_PAREN, "')'");
+        return new SqlExpression.FunctionCall(name, distinct, List.copyOf(arguments));
+    }
+
+    private String identifier(String what) {
+        if (!isIdentifier(current)) {
+            throw unexpected(what);
+        }
+        String text = current.text();
+        advance();
+        return text;
+    }
+
+    private static boolean isIdentifier(SqlToken token) {
+        return token.is(SqlToken.Type.QUOTED_IDENTIFIER)
+                || (token.is(SqlToken.Type.WORD) && !RESERVED.contains(token.keyword()));
+    }
+
+    private long integer() {
+        if (!current.is(SqlToken.Type.NUMBER) || current.text().indexOf('.') >= 0) {
+            throw unexpected("integer");
+        }
+        try {
+            long value = Long.parseLong(current.text());
+            advance();
+            return value;
+        } catch (NumberFormatException e) {
+            throw unexpected("integer");
+        }
+    }
+
+    private static Number number(String text) {
+        if (text.indexOf('.') < 0 && text.length() < 19) {
+            return Long.parseLong(text);
+        }
+        return new BigDecimal(text);
+    }
+
+    private static Number negate(Number value) {
+        return value instanceof Long longValue ? (Number) (-longValue) : ((BigDecimal) value).negate();
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (current.isKeyword(keyword)) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw unexpected(keyword);
+        }
+    }
+
+    private boolean accept(SqlToken.Type type) {
+        if (current.is(type)) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(SqlToken.Type type, String description) {
+        if (!accept(type)) {
+            throw unexpected(description);
+        }
+    }
+
+    /** Enters one level of nesting; the caller leaves it again with {@code depth--}. */
+    private void nest() {
+        if (++depth > MAX_DEPTH) {
+            throw SqlValidationException.syntax("nesting too deep at position " + current.position());
+        }
+    }
+
+    private void advance() {
+        current = lexer.next();
+    }
+
+    private SqlValidationException unexpected(String expected) {
+        return SqlValidationException.syntax("expected " + expected + " but found " + current.describe()
+                + " at position " + current.position());
+    }
+}
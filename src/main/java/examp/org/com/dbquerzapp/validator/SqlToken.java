@@ -0,0 +1,39 @@
+package examp.org.com.dbquerzapp.validator;
+
+/**
+ * A lexical token of a saved query. For WORD tokens {@code keyword} holds the upper-cased
+ * text so the parser can match keywords without re-normalizing; for all other tokens it is null.
+ */
+record SqlToken(Type type, String text, String keyword, int position) {
+
+    enum Type {
+        WORD,
+        QUOTED_IDENTIFIER,
+        STRING,
+        NUMBER,
+        PARAMETER,
+        OPERATOR,
+        COMMA,
+        DOT,
+        LEFT_PAREN,
+        RIGHT_PAREN,
+        SEMICOLON,
+        EOF
+    }
+
+    boolean is(Type expected) {
+        return type == expected;
+    }
+
+    boolean isKeyword(String expected) {
+        return type == Type.WORD && keyword.equals(expected);
+    }
+
+    boolean isOperator(String expected) {
+        return type == Type.OPERATOR && text.equals(expected);
+    }
+
+    String describe() {
+        return type == Type.EOF ? "end of query" : "'" + text + "'";
+    }
+}
@@ -0,0 +1,34 @@
+package examp.org.com.dbquerzapp.validator;
+
+import lombok.Getter;
+
+/**
+ * Raised by {@link SqlLexer} and {@link SqlParser} on the first problem found in a query.
+ * The message is the one reported to the caller through {@link ValidationResult}.
+ */
+@Getter
+class SqlValidationException extends RuntimeException {
+
+    private final DANGEROUS_KEYWORD dangerousKeyword;
+
+    SqlValidationException(String message) {
+        this(message, null);
+    }
+
+    private SqlValidationException(String message, DANGEROUS_KEYWORD dangerousKeyword) {
+        super(message, null, false, false);
+        this.dangerousKeyword = dangerousKeyword;
+    }
+
+    static SqlValidationException dangerousKeyword(DANGEROUS_KEYWORD keyword) {
+        return new SqlValidationException("Dangerous SQL keyword detected: " + keyword, keyword);
+    }
+
+    static SqlValidationException injection() {
+        return new SqlValidationException("Potential SQL injection detected");
+    }
+
+    static SqlValidationException syntax(String detail) {
+        return new SqlValidationException("Invalid SELECT SQL syntax: " + detail);
+    }
+}
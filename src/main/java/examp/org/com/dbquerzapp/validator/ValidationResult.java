@@ -8,13 +8,18 @@ import lombok.Getter;
 public class ValidationResult {
         private final boolean valid;
         private final String errorMessage;
+        private final SelectStatement statement;
 
         public static ValidationResult valid() {
-            return new ValidationResult(true, null);
+            return new ValidationResult(true, null, null);
+        }
+
+        public static ValidationResult valid(SelectStatement statement) {
+            return new ValidationResult(true, null, statement);
         }
 
         public static ValidationResult invalid(String errorMessage) {
-            return new ValidationResult(false, errorMessage);
+            return new ValidationResult(false, errorMessage, null);
         }
 
 }
@@ -0,0 +1,14 @@
+-- One NOTIFY on channel dbquerzapp_<table> per statement that modifies a watched table,
+-- picked up by TableChangeListener to refresh live query subscriptions. Statement level, so a
+-- bulk update sends one notification, and PostgreSQL folds identical notifications of one
+-- transaction into one.
+CREATE OR REPLACE FUNCTION dbquerzapp_notify_table_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('dbquerzapp_' || TG_TABLE_NAME, TG_OP);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER users_notify_table_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON users
+    FOR EACH STATEMENT EXECUTE FUNCTION dbquerzapp_notify_table_change();
@@ -1 +1,3 @@
+-- @cache 5m
+-- @key id
 SELECT * FROM users
\ No newline at end of file
@@ -0,0 +1,2 @@
+-- @param min_age integer
+SELECT * FROM users WHERE age >= :min_age ORDER BY id
\ No newline at end of file
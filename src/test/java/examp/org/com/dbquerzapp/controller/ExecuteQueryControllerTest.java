@@ -1,19 +1,53 @@
 package examp.org.com.dbquerzapp.controller;
 
+import com.example.model.BatchQueryRequest;
+import com.example.model.BatchQueryResponse;
+import com.example.model.CacheStatsResponse;
+import com.example.model.ExecuteQueryRequest;
 import com.example.model.QueryResponse;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import examp.org.com.dbquerzapp.service.CompiledQuery;
+import examp.org.com.dbquerzapp.service.QueryOptions;
+import examp.org.com.dbquerzapp.service.CompiledQueryCache;
+import examp.org.com.dbquerzapp.service.QueryPage;
+import examp.org.com.dbquerzapp.service.QueryAdmissionGate;
+import examp.org.com.dbquerzapp.service.QueryCatalog;
+import examp.org.com.dbquerzapp.service.QueryCostExceededException;
+import examp.org.com.dbquerzapp.service.QueryMetrics;
+import examp.org.com.dbquerzapp.service.QueryResultCache;
 import examp.org.com.dbquerzapp.service.QueryService;
+import examp.org.com.dbquerzapp.service.QuerySnapshots;
+import examp.org.com.dbquerzapp.service.RefreshSchedule;
+import examp.org.com.dbquerzapp.service.RequestLogSampler;
+import examp.org.com.dbquerzapp.service.ResultVersions;
+import examp.org.com.dbquerzapp.service.TruncatedRows;
+import examp.org.com.dbquerzapp.service.VersionedRows;
+import examp.org.com.dbquerzapp.service.WorkloadScheduler;
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -25,12 +59,42 @@ class ExecuteQueryControllerTest {
     @Mock
     private QueryService queryService;
 
+    private final QueryAdmissionGate admissionGate = new QueryAdmissionGate(1, 0, Duration.ZERO, Duration.ofSeconds(2));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Mock
+    private CompiledQueryCache compiledQueryCache;
+
+    @Mock
+    private QueryResultCache queryResultCache;
+
+    @Mock
+    private QueryCatalog queryCatalog;
+
+    @Mock
+    private QuerySnapshots querySnapshots;
+
     private ExecuteQueryController controller;
 
     @BeforeEach
     void setUp() {
         controller = new ExecuteQueryController();
         ReflectionTestUtils.setField(controller, "queryService", queryService);
+        ReflectionTestUtils.setField(controller, "compiledQueryCache", compiledQueryCache);
+        ReflectionTestUtils.setField(controller, "queryResultCache", queryResultCache);
+        ReflectionTestUtils.setField(controller, "queryCatalog", queryCatalog);
+        ReflectionTestUtils.setField(controller, "querySnapshots", querySnapshots);
+        ReflectionTestUtils.setField(controller, "resultVersions", new ResultVersions(new ObjectMapper(), DataSize.ofMegabytes(1), Duration.ofMinutes(5)));
+        ReflectionTestUtils.setField(controller, "defaultPageSize", 100);
+        ReflectionTestUtils.setField(controller, "maxBatchSize", 20);
+        ReflectionTestUtils.setField(controller, "batchConcurrency", 4);
+        ReflectionTestUtils.setField(controller, "filesMaxAge", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(controller, "admissionGate", admissionGate);
+        ReflectionTestUtils.setField(controller, "workloadScheduler", new WorkloadScheduler(Map.of(), Map.of(),
+                WorkloadScheduler.INTERACTIVE, "X-Client-Id", Duration.ofSeconds(1), meterRegistry));
+        ReflectionTestUtils.setField(controller, "queryMetrics", new QueryMetrics(meterRegistry));
+        ReflectionTestUtils.setField(controller, "requestLogSampler", new RequestLogSampler(0));
     }
 
     @Test
@@ -44,11 +108,12 @@ class ExecuteQueryControllerTest {
             Map.of("id", 2, "name", "Jane")
         );
 
-        when(queryService.loadQueryFromFile(queryIdentifier)).thenReturn(sql);
-        when(queryService.executeQuery(sql)).thenReturn(mockResults);
+        CompiledQuery compiledQuery = compiled(queryIdentifier, sql);
+        when(queryService.getCompiledQuery(queryIdentifier)).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(mockResults);
 
         // When
-        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier);
+        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier, null, null, null);
 
         // Then
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -59,8 +124,8 @@ class ExecuteQueryControllerTest {
         assertEquals(2, queryResponse.getData().size());
         assertTrue(queryResponse.getExecutionTimeMs() >= 0);
 
-        verify(queryService).loadQueryFromFile(queryIdentifier);
-        verify(queryService).executeQuery(sql);
+        verify(queryService).getCompiledQuery(queryIdentifier);
+        verify(queryService).executeQuery(compiledQuery, Map.of());
     }
 
     @Test
@@ -70,11 +135,12 @@ class ExecuteQueryControllerTest {
         String queryIdentifier = "invalid_query";
         String sql = "SELECT FORM users";
 
-        when(queryService.loadQueryFromFile(queryIdentifier)).thenReturn(sql);
-        when(queryService.executeQuery(sql)).thenThrow(new IllegalArgumentException("SQL validation failed: Invalid syntax"));
+        CompiledQuery compiledQuery = compiled(queryIdentifier, sql);
+        when(queryService.getCompiledQuery(queryIdentifier)).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenThrow(new IllegalArgumentException("SQL validation failed: Invalid syntax"));
 
         // When
-        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier);
+        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier, null, null, null);
 
         // Then
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
@@ -84,8 +150,8 @@ class ExecuteQueryControllerTest {
         assertFalse(queryResponse.getSuccess());
         assertEquals(400, queryResponse.getCode());
 
-        verify(queryService).loadQueryFromFile(queryIdentifier);
-        verify(queryService).executeQuery(sql);
+        verify(queryService).getCompiledQuery(queryIdentifier);
+        verify(queryService).executeQuery(compiledQuery, Map.of());
     }
 
     @Test
@@ -94,11 +160,11 @@ class ExecuteQueryControllerTest {
         // Given
         String queryIdentifier = "nonexistent_query";
 
-        when(queryService.loadQueryFromFile(queryIdentifier))
+        when(queryService.getCompiledQuery(queryIdentifier))
             .thenThrow(new IOException("Query file not found: nonexistent_query.sql"));
 
         // When
-        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier);
+        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier, null, null, null);
 
         // Then
         assertNotNull(response.getBody());
@@ -108,8 +174,8 @@ class ExecuteQueryControllerTest {
         assertEquals("Query not found", queryResponse.getError());
         assertEquals(404, queryResponse.getCode());
 
-        verify(queryService).loadQueryFromFile(queryIdentifier);
-        verify(queryService, never()).executeQuery(any());
+        verify(queryService).getCompiledQuery(queryIdentifier);
+        verify(queryService, never()).executeQuery(any(CompiledQuery.class), anyMap());
     }
 
     @Test
@@ -119,11 +185,12 @@ class ExecuteQueryControllerTest {
         String queryIdentifier = "failing_query";
         String sql = "SELECT * FROM nonexistent_table";
 
-        when(queryService.loadQueryFromFile(queryIdentifier)).thenReturn(sql);
-        when(queryService.executeQuery(sql)).thenThrow(new RuntimeException("Table does not exist"));
+        CompiledQuery compiledQuery = compiled(queryIdentifier, sql);
+        when(queryService.getCompiledQuery(queryIdentifier)).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenThrow(new RuntimeException("Table does not exist"));
 
         // When
-        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier);
+        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier, null, null, null);
 
         // Then
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
@@ -134,8 +201,8 @@ class ExecuteQueryControllerTest {
         assertEquals("Error while executing query", queryResponse.getError());
         assertEquals(500, queryResponse.getCode());
 
-        verify(queryService).loadQueryFromFile(queryIdentifier);
-        verify(queryService).executeQuery(sql);
+        verify(queryService).getCompiledQuery(queryIdentifier);
+        verify(queryService).executeQuery(compiledQuery, Map.of());
     }
 
     @Test
@@ -146,11 +213,12 @@ class ExecuteQueryControllerTest {
         String sql = "SELECT * FROM users WHERE id = 999";
         List<Map<String, Object>> emptyResults = new ArrayList<>();
 
-        when(queryService.loadQueryFromFile(queryIdentifier)).thenReturn(sql);
-        when(queryService.executeQuery(sql)).thenReturn(emptyResults);
+        CompiledQuery compiledQuery = compiled(queryIdentifier, sql);
+        when(queryService.getCompiledQuery(queryIdentifier)).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(emptyResults);
 
         // When
-        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier);
+        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier, null, null, null);
 
         // Then
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -161,37 +229,44 @@ class ExecuteQueryControllerTest {
         assertTrue(queryResponse.getData().isEmpty());
         assertTrue(queryResponse.getExecutionTimeMs() >= 0);
 
-        verify(queryService).loadQueryFromFile(queryIdentifier);
-        verify(queryService).executeQuery(sql);
+        verify(queryService).getCompiledQuery(queryIdentifier);
+        verify(queryService).executeQuery(compiledQuery, Map.of());
     }
 
     @Test
-    @DisplayName("Should list SQL files successfully")
-    void testListFilesSuccess() throws IOException {
+    @DisplayName("Should list SQL files from the query catalog")
+    void testListFilesSuccess() {
+        // Given
+        when(queryCatalog.getFileNames()).thenReturn(List.of("get_table_data.sql", "get_user_data.sql"));
+        when(queryCatalog.getVersion()).thenReturn("1a2b3c");
+
         // When
         ResponseEntity<QueryResponse> response = controller.listFiles();
 
         // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("W/\"1a2b3c\"", response.getHeaders().getETag());
+        assertEquals("max-age=60, must-revalidate", response.getHeaders().getCacheControl());
         assertNotNull(response.getBody());
         QueryResponse queryResponse = response.getBody();
+        assertTrue(queryResponse.getSuccess());
+        assertEquals(List.of("get_table_data.sql", "get_user_data.sql"), queryResponse.getData());
         assertTrue(queryResponse.getExecutionTimeMs() >= 0);
-
-        // Note: This test verifies the method structure and response format
-        // The actual file listing would require integration testing or more complex mocking
     }
 
     @Test
-    @DisplayName("Should handle IOException in listFiles")
-    void testListFilesIOException() {
-        // This test verifies error handling in listFiles method
-        // The exact implementation depends on how the PathMatchingResourcePatternResolver is mocked
+    @DisplayName("Should list no files when the catalog is empty")
+    void testListFilesEmpty() {
+        // Given
+        when(queryCatalog.getFileNames()).thenReturn(List.of());
 
         // When
         ResponseEntity<QueryResponse> response = controller.listFiles();
 
         // Then
-        assertNotNull(response);
-        // The method should handle IOException gracefully
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().getSuccess());
+        assertTrue(response.getBody().getData().isEmpty());
     }
 
     @Test
@@ -202,14 +277,15 @@ class ExecuteQueryControllerTest {
         String sql = "SELECT * FROM users";
         List<Map<String, Object>> mockResults = Arrays.asList(Map.of("id", 1, "name", "John"));
 
-        when(queryService.loadQueryFromFile(queryIdentifier)).thenReturn(sql);
-        when(queryService.executeQuery(sql)).thenAnswer(invocation -> {
+        CompiledQuery compiledQuery = compiled(queryIdentifier, sql);
+        when(queryService.getCompiledQuery(queryIdentifier)).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenAnswer(invocation -> {
             Thread.sleep(10); // Simulate some execution time
             return mockResults;
         });
 
         // When
-        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier);
+        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier, null, null, null);
 
         // Then
         assertNotNull(response.getBody());
@@ -232,11 +308,12 @@ class ExecuteQueryControllerTest {
             Map.of("id", 3, "name", "Bob", "email", "ilona@gmail.com", "active", true, "created_date", testDate)
         );
 
-        when(queryService.loadQueryFromFile(queryIdentifier)).thenReturn(sql);
-        when(queryService.executeQuery(sql)).thenReturn(mockResults);
+        CompiledQuery compiledQuery = compiled(queryIdentifier, sql);
+        when(queryService.getCompiledQuery(queryIdentifier)).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(mockResults);
 
         // When
-        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier);
+        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier, null, null, null);
 
         // Then
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -255,8 +332,8 @@ class ExecuteQueryControllerTest {
         assertEquals(true, firstResult.get("active"));
         assertEquals(testDate, firstResult.get("created_date"));
 
-        verify(queryService).loadQueryFromFile(queryIdentifier);
-        verify(queryService).executeQuery(sql);
+        verify(queryService).getCompiledQuery(queryIdentifier);
+        verify(queryService).executeQuery(compiledQuery, Map.of());
     }
 
     @Test
@@ -265,11 +342,11 @@ class ExecuteQueryControllerTest {
         // Given
         String queryIdentifier = null;
 
-        when(queryService.loadQueryFromFile(queryIdentifier))
+        when(queryService.getCompiledQuery(queryIdentifier))
             .thenThrow(new IllegalArgumentException("Query identifier cannot be null"));
 
         // When
-        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier);
+        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier, null, null, null);
 
         // Then
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
@@ -279,7 +356,7 @@ class ExecuteQueryControllerTest {
         assertFalse(queryResponse.getSuccess());
         assertEquals(400, queryResponse.getCode());
 
-        verify(queryService).loadQueryFromFile(queryIdentifier);
+        verify(queryService).getCompiledQuery(queryIdentifier);
     }
 
     @Test
@@ -288,11 +365,11 @@ class ExecuteQueryControllerTest {
         // Given
         String queryIdentifier = "";
 
-        when(queryService.loadQueryFromFile(queryIdentifier))
+        when(queryService.getCompiledQuery(queryIdentifier))
             .thenThrow(new IOException("Query file not found: .sql"));
 
         // When
-        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier);
+        ResponseEntity<QueryResponse> response = controller.executeQuery(queryIdentifier, null, null, null);
 
         // Then
         assertNotNull(response.getBody());
@@ -302,6 +379,560 @@ class ExecuteQueryControllerTest {
         assertEquals("Query not found", queryResponse.getError());
         assertEquals(404, queryResponse.getCode());
 
-        verify(queryService).loadQueryFromFile(queryIdentifier);
+        verify(queryService).getCompiledQuery(queryIdentifier);
+    }
+
+    @Test
+    @DisplayName("Should pass request parameters to the compiled query")
+    void testExecuteQueryWithParameters() throws IOException {
+        // Given
+        ExecuteQueryRequest request = new ExecuteQueryRequest();
+        request.setQueryIdentifier("get_users_older_than");
+        request.setParameters(Map.of("min_age", 30));
+        CompiledQuery compiledQuery = compiled("get_users_older_than", "SELECT * FROM users WHERE age >= :min_age");
+        when(queryService.getCompiledQuery("get_users_older_than")).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of("min_age", 30))).thenReturn(List.of(Map.of("id", 1)));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQueryWithParameters(request);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(response.getBody().getSuccess());
+        assertEquals(1, response.getBody().getData().size());
+    }
+
+    @Test
+    @DisplayName("Should return 400 when a parameter value is rejected")
+    void testExecuteQueryWithInvalidParameters() throws IOException {
+        // Given
+        ExecuteQueryRequest request = new ExecuteQueryRequest();
+        request.setQueryIdentifier("get_users_older_than");
+        request.setParameters(Map.of());
+        CompiledQuery compiledQuery = compiled("get_users_older_than", "SELECT * FROM users WHERE age >= :min_age");
+        when(queryService.getCompiledQuery("get_users_older_than")).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of()))
+            .thenThrow(new IllegalArgumentException("Missing required query parameter: min_age"));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQueryWithParameters(request);
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Missing required query parameter: min_age", response.getBody().getError());
+        assertEquals(400, response.getBody().getCode());
+    }
+
+    @Test
+    @DisplayName("Should return one page with page size and next page token")
+    void testExecuteQueryPage() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled("get_user_data", "SELECT * FROM users ORDER BY id");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executePage(compiledQuery, Map.of(), 100, "token-1"))
+            .thenReturn(new QueryPage(List.of(Map.of("id", 1)), 100, "token-2"));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("get_user_data", null, "token-1", null);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().getData().size());
+        assertEquals(100, response.getBody().getPageSize());
+        assertEquals("token-2", response.getBody().getNextPageToken());
+        verify(queryService, never()).executeQuery(any(CompiledQuery.class), anyMap());
+    }
+
+    @Test
+    @DisplayName("Should return 503 with Retry-After when no query slot is available")
+    void testExecuteQueryRejected() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled("get_user_data", "SELECT * FROM users");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        QueryAdmissionGate.Permit running = admissionGate.acquire();
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("get_user_data", null, null, null);
+        running.close();
+
+        // Then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst("Retry-After"));
+        assertEquals(503, response.getBody().getCode());
+        verify(queryService, never()).executeQuery(any(CompiledQuery.class), anyMap());
+    }
+
+    @Test
+    @DisplayName("Should release the query slot after execution")
+    void testExecuteQueryReleasesSlot() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled("get_user_data", "SELECT * FROM users");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenThrow(new RuntimeException("Table does not exist"));
+
+        // When
+        controller.executeQuery("get_user_data", null, null, null);
+
+        // Then
+        assertEquals(1, admissionGate.getAvailableSlots());
+    }
+
+    @Test
+    @DisplayName("Should answer 400 without taking a slot when the query is estimated too expensive")
+    void testExecuteQueryTooExpensive() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled("get_user_data", "SELECT * FROM users");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.admitCost(compiledQuery, Map.of(), null, false))
+                .thenThrow(new QueryCostExceededException("Query get_user_data is too expensive to run"));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("get_user_data", null, null, null);
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Query get_user_data is too expensive to run", response.getBody().getError());
+        assertEquals(1, admissionGate.getAvailableSlots());
+        verify(queryService, never()).executeQuery(any(CompiledQuery.class), anyMap());
+    }
+
+    @Test
+    @DisplayName("Should release the low-priority slot together with the query slot")
+    void testExecuteQueryLowPriorityLane() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled("get_user_data", "SELECT * FROM users");
+        AtomicBoolean laneReleased = new AtomicBoolean();
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.admitCost(compiledQuery, Map.of(), null, false)).thenReturn(() -> laneReleased.set(true));
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of(Map.of("id", 1)));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("get_user_data", null, null, null);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(laneReleased.get());
+        assertEquals(1, admissionGate.getAvailableSlots());
+    }
+
+    @Test
+    @DisplayName("Should report compiled query cache statistics")
+    void testGetCacheStats() {
+        // Given
+        when(compiledQueryCache.size()).thenReturn(3L);
+        when(compiledQueryCache.stats()).thenReturn(CacheStats.of(9, 3, 3, 0, 100, 1, 1));
+        when(queryResultCache.size()).thenReturn(2L);
+        when(queryResultCache.weightBytes()).thenReturn(2048L);
+        when(queryResultCache.stats()).thenReturn(CacheStats.of(1, 1, 1, 0, 100, 4, 4));
+
+        // When
+        ResponseEntity<CacheStatsResponse> response = controller.getCacheStats();
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CacheStatsResponse stats = response.getBody();
+        assertNotNull(stats);
+        assertEquals(3L, stats.getSize());
+        assertEquals(9L, stats.getHitCount());
+        assertEquals(3L, stats.getMissCount());
+        assertEquals(1L, stats.getEvictionCount());
+        assertEquals(0.75, stats.getHitRate(), 0.0001);
+        assertEquals(2L, stats.getResultSize());
+        assertEquals(2048L, stats.getResultBytes());
+        assertEquals(4L, stats.getResultEvictionCount());
+        assertEquals(0.5, stats.getResultHitRate(), 0.0001);
+    }
+
+    @Test
+    @DisplayName("Should serve queries declared with @cache from the result cache")
+    void testExecuteCachedQuery() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+            new QueryOptions(Duration.ofMinutes(5), null, null, false, null, null, null, null), ValidationResult.valid(), Instant.now());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeCachedQuery(compiledQuery, Map.of()))
+            .thenReturn(List.of(new RawValue("{\"id\":1}"), new RawValue("{\"id\":2}")));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("get_user_data", null, null, null);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(2, response.getBody().getData().size());
+        assertEquals(1, admissionGate.getAvailableSlots());
+        verify(queryService, never()).executeQuery(any(CompiledQuery.class), anyMap());
+    }
+
+    @Test
+    @DisplayName("Should tag cached results with the ETag computed when they were cached")
+    void testExecuteCachedQueryETag() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+            new QueryOptions(Duration.ofMinutes(5), null, null, false, null, null, null, null), ValidationResult.valid(), Instant.now());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeCachedQuery(compiledQuery, Map.of()))
+            .thenReturn(new VersionedRows<>(List.of(new RawValue(new SerializedString("{\"id\":1}"))), null, "W/\"5e1c0a2f\""))
+            .thenReturn(new VersionedRows<>(List.of(new RawValue(new SerializedString("{\"id\":1}"))), null, "W/\"5e1c0a2f\""))
+            .thenReturn(new VersionedRows<>(List.of(new RawValue(new SerializedString("{\"id\":2}"))), null, "W/\"7d3b91c4\""));
+
+        // When
+        ResponseEntity<QueryResponse> first = controller.executeQuery("get_user_data", null, null, null);
+        ResponseEntity<QueryResponse> same = controller.executeQuery("get_user_data", null, null, null);
+        ResponseEntity<QueryResponse> changed = controller.executeQuery("get_user_data", null, null, null);
+
+        // Then
+        assertEquals("W/\"5e1c0a2f\"", first.getHeaders().getETag());
+        assertEquals("W/\"5e1c0a2f\"", same.getHeaders().getETag());
+        assertEquals("W/\"7d3b91c4\"", changed.getHeaders().getETag());
+        assertEquals("no-cache, private", first.getHeaders().getCacheControl());
+    }
+
+    @Test
+    @DisplayName("Should serve queries declared with @refresh from their snapshot, with its age")
+    void testExecutePrecomputedQuery() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("daily_report", "SELECT * FROM users", List.of(),
+            new QueryOptions(null, null, null, false, null, RefreshSchedule.parse("5m"), null, null), ValidationResult.valid(), Instant.now());
+        Instant takenAt = Instant.now().minusSeconds(90);
+        QuerySnapshots.Snapshot snapshot = new QuerySnapshots.Snapshot("SELECT * FROM users",
+            List.of(new RawValue(new SerializedString("{\"id\":1}"))), false, 8, "W/\"1a2b\"",
+            null, takenAt, takenAt.plusSeconds(480), takenAt.plusSeconds(600));
+        when(queryService.getCompiledQuery("daily_report")).thenReturn(compiledQuery);
+        when(querySnapshots.get(compiledQuery)).thenReturn(snapshot);
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("daily_report", null, null, null);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().getData().size());
+        assertTrue(response.getBody().getSnapshotAgeMs() >= 90000);
+        assertEquals("W/\"1a2b\"", response.getHeaders().getETag());
+        assertEquals("90", response.getHeaders().getFirst(HttpHeaders.AGE));
+        verify(queryService, never()).executeQuery(any(CompiledQuery.class), anyMap());
+        verifyNoInteractions(queryResultCache);
+    }
+
+    @Test
+    @DisplayName("Should run a query declared with @refresh live when it has no fresh snapshot")
+    void testExecutePrecomputedQueryWithoutSnapshot() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("daily_report", "SELECT * FROM users", List.of(),
+            new QueryOptions(null, null, null, false, null, RefreshSchedule.parse("5m"), null, null), ValidationResult.valid(), Instant.now());
+        when(queryService.getCompiledQuery("daily_report")).thenReturn(compiledQuery);
+        when(querySnapshots.get(compiledQuery)).thenReturn(null);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of(Map.of("id", 1)));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("daily_report", null, null, null);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().getData().size());
+        assertNull(response.getBody().getSnapshotAgeMs());
+        assertNull(response.getHeaders().getETag());
+    }
+
+    @Test
+    @DisplayName("Should answer a query declared with @key with the rows changed since the client's version")
+    void testExecuteKeyedQueryDelta() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+            new QueryOptions(null, null, null, false, null, null, null, List.of("id")), ValidationResult.valid(), Instant.now());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of()))
+            .thenReturn(List.of(Map.of("id", 1, "name", "John"), Map.of("id", 2, "name", "Jane"), Map.of("id", 3, "name", "Bob")))
+            .thenReturn(List.of(Map.of("id", 1, "name", "John"), Map.of("id", 2, "name", "Janet"), Map.of("id", 3, "name", "Bob"),
+                Map.of("id", 4, "name", "Ann")));
+
+        // When
+        ResponseEntity<QueryResponse> full = controller.executeQuery("get_user_data", null, null, null);
+        ResponseEntity<QueryResponse> delta = controller.executeQuery("get_user_data", null, null, full.getBody().getVersion());
+
+        // Then
+        assertNotNull(full.getBody().getVersion());
+        assertEquals(3, full.getBody().getData().size());
+        assertNull(full.getBody().getDelta());
+        assertNull(delta.getBody().getData());
+        assertNotEquals(full.getBody().getVersion(), delta.getBody().getVersion());
+        assertEquals(full.getBody().getVersion(), delta.getBody().getDelta().getBaseVersion());
+        assertEquals(List.of(Map.of("id", 4, "name", "Ann")), delta.getBody().getDelta().getInserted());
+        assertEquals(List.of(Map.of("id", 2, "name", "Janet")), delta.getBody().getDelta().getUpdated());
+        assertTrue(delta.getBody().getDelta().getDeleted().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should return the full result for an unknown version and reject a version with pagination")
+    void testExecuteKeyedQueryUnknownVersion() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+            new QueryOptions(null, null, null, false, null, null, null, List.of("id")), ValidationResult.valid(), Instant.now());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of(Map.of("id", 1), Map.of("id", 2)));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("get_user_data", null, null, "expired");
+        ResponseEntity<QueryResponse> paged = controller.executeQuery("get_user_data", 10, null, "expired");
+
+        // Then
+        assertEquals(2, response.getBody().getData().size());
+        assertNotNull(response.getBody().getVersion());
+        assertNull(response.getBody().getDelta());
+        assertEquals(HttpStatus.BAD_REQUEST, paged.getStatusCode());
+        verify(queryService, never()).executePage(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("Should answer cached results of a query declared with @key by their cached version, with no ETag on a delta")
+    void testExecuteCachedKeyedQueryDelta() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+            new QueryOptions(Duration.ofMinutes(5), null, null, false, null, null, null, List.of("id")), ValidationResult.valid(), Instant.now());
+        ResultVersions resultVersions = spy(new ResultVersions(new ObjectMapper(), DataSize.ofMegabytes(1), Duration.ofMinutes(5)));
+        ReflectionTestUtils.setField(controller, "resultVersions", resultVersions);
+        List<RawValue> before = List.of(new RawValue(new SerializedString("{\"id\":1,\"name\":\"John\"}")),
+            new RawValue(new SerializedString("{\"id\":2,\"name\":\"Jane\"}")), new RawValue(new SerializedString("{\"id\":3,\"name\":\"Bob\"}")));
+        List<RawValue> after = List.of(before.get(0), new RawValue(new SerializedString("{\"id\":2,\"name\":\"Janet\"}")), before.get(2));
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeCachedQuery(compiledQuery, Map.of()))
+            .thenReturn(new VersionedRows<>(before, resultVersions.index(compiledQuery, before), "W/\"1\""))
+            .thenReturn(new VersionedRows<>(after, resultVersions.index(compiledQuery, after), "W/\"2\""));
+        clearInvocations(resultVersions);
+
+        // When
+        ResponseEntity<QueryResponse> full = controller.executeQuery("get_user_data", null, null, null);
+        ResponseEntity<QueryResponse> delta = controller.executeQuery("get_user_data", null, null, full.getBody().getVersion());
+
+        // Then
+        assertNotNull(full.getHeaders().getETag());
+        assertEquals(3, full.getBody().getData().size());
+        assertEquals(List.of(after.get(1)), delta.getBody().getDelta().getUpdated());
+        assertNull(delta.getHeaders().getETag());
+        verify(resultVersions, never()).index(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should evict the compiled query and its cached results")
+    void testInvalidateCache() {
+        // When
+        ResponseEntity<Void> response = controller.invalidateCache("get_user_data");
+
+        // Then
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+        verify(compiledQueryCache).invalidate("get_user_data");
+        verify(queryResultCache).invalidate("get_user_data");
+        verify(querySnapshots).invalidate("get_user_data");
+    }
+
+    @Test
+    @DisplayName("Should evict all caches when no query is given")
+    void testInvalidateAllCaches() {
+        // When
+        controller.invalidateCache(null);
+
+        // Then
+        verify(compiledQueryCache).invalidateAll();
+        verify(queryResultCache).invalidateAll();
+        verify(querySnapshots).invalidateAll();
+    }
+
+    @Test
+    @DisplayName("Should time requests per query and outcome and tag unknown queries as unknown")
+    void testExecuteQueryRecordsMetrics() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled("get_user_data", "SELECT * FROM users");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of(Map.of("id", 1)));
+        when(queryService.getCompiledQuery("no_such_query")).thenThrow(new IOException("Query file not found: no_such_query.sql"));
+
+        // When
+        controller.executeQuery("get_user_data", null, null, null);
+        ResponseEntity<QueryResponse> notFound = controller.executeQuery("no_such_query", null, null, null);
+
+        // Then
+        assertEquals(1, meterRegistry.get(QueryMetrics.REQUESTS).tag("query", "get_user_data")
+            .tag("outcome", QueryMetrics.SUCCESS).timer().count());
+        assertEquals(1, meterRegistry.get(QueryMetrics.PHASE).tag("phase", QueryMetrics.ADMISSION)
+            .tag("query", "get_user_data").timer().count());
+        assertEquals(1, meterRegistry.get(QueryMetrics.REQUESTS).tag("query", QueryMetrics.UNKNOWN_QUERY)
+            .tag("outcome", QueryMetrics.NOT_FOUND).timer().count());
+        assertNotNull(notFound.getBody().getExecutionTimeMs());
+    }
+
+    @Test
+    @DisplayName("Should mark a result cut off by the governor as truncated")
+    void testExecuteQueryTruncated() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled("get_user_data", "SELECT * FROM users");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of()))
+            .thenReturn(new TruncatedRows<>(List.of(Map.of("id", 1), Map.of("id", 2))));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("get_user_data", null, null, null);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(2, response.getBody().getData().size());
+        assertTrue(response.getBody().getTruncated());
+    }
+
+    @Test
+    @DisplayName("Should return 504 when the query exceeds its timeout")
+    void testExecuteQueryTimeout() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled("get_user_data", "SELECT * FROM users");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of()))
+            .thenThrow(new QueryTimeoutException("Query exceeded its timeout of 30 s"));
+
+        // When
+        ResponseEntity<QueryResponse> response = controller.executeQuery("get_user_data", null, null, null);
+
+        // Then
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+        assertEquals(504, response.getBody().getCode());
+        assertEquals("Query exceeded its timeout of 30 s", response.getBody().getError());
+        assertNull(response.getBody().getTruncated());
+        assertEquals(1, meterRegistry.get(QueryMetrics.REQUESTS).tag("outcome", QueryMetrics.TIMEOUT).timer().count());
+        assertEquals(1, admissionGate.getAvailableSlots());
+    }
+
+    @Test
+    @DisplayName("Should run a batch in parallel and report every query in request order")
+    void testExecuteBatch() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled("get_user_data", "SELECT * FROM users");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of(Map.of("id", 1), Map.of("id", 2)));
+        when(queryService.getCompiledQuery("no_such_query")).thenThrow(new IOException("Query file not found: no_such_query.sql"));
+        BatchQueryRequest request = batch(false, "get_user_data", "no_such_query");
+
+        // When
+        ResponseEntity<BatchQueryResponse> response = controller.executeBatch(request);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertFalse(response.getBody().getSuccess());
+        List<QueryResponse> results = response.getBody().getResults();
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).getSuccess());
+        assertEquals(2, results.get(0).getData().size());
+        assertEquals(404, results.get(1).getCode());
+        assertNotNull(response.getBody().getExecutionTimeMs());
+        assertEquals(1, admissionGate.getAvailableSlots());
+        verify(queryService, never()).inSnapshot(any());
+    }
+
+    @Test
+    @DisplayName("Should run a consistent batch in one snapshot holding a single slot")
+    void testExecuteConsistentBatch() throws IOException {
+        // Given
+        CompiledQuery users = compiled("get_user_data", "SELECT * FROM users");
+        CompiledQuery older = compiled("get_users_older_than", "SELECT * FROM users WHERE age >= :min_age");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(users);
+        when(queryService.getCompiledQuery("get_users_older_than")).thenReturn(older);
+        when(queryService.executeQuery(users, Map.of())).thenReturn(List.of(Map.of("id", 1)));
+        when(queryService.executeQuery(older, Map.of())).thenReturn(List.of());
+        when(queryService.inSnapshot(any())).thenAnswer(invocation -> {
+            // the batch holds the only slot while its queries run
+            assertEquals(0, admissionGate.getAvailableSlots());
+            return invocation.<Supplier<?>>getArgument(0).get();
+        });
+        when(queryService.inSavepoint(any(), any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+
+        // When
+        ResponseEntity<BatchQueryResponse> response = controller.executeBatch(batch(true, "get_user_data", "get_users_older_than"));
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(response.getBody().getSuccess());
+        assertEquals(2, response.getBody().getResults().size());
+        assertEquals(1, response.getBody().getResults().get(0).getData().size());
+        assertEquals(1, admissionGate.getAvailableSlots());
+        verify(queryService).inSnapshot(any());
+    }
+
+    @Test
+    @DisplayName("Should roll a failed query of a consistent batch back to its savepoint and run the rest")
+    void testExecuteConsistentBatchWithFailure() throws IOException {
+        // Given
+        CompiledQuery users = compiled("get_user_data", "SELECT * FROM users");
+        CompiledQuery older = compiled("get_users_older_than", "SELECT * FROM users WHERE age >= :min_age");
+        CompiledQuery tables = compiled("get_table_data", "SELECT * FROM tables");
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(users);
+        when(queryService.getCompiledQuery("get_users_older_than")).thenReturn(older);
+        when(queryService.getCompiledQuery("get_table_data")).thenReturn(tables);
+        when(queryService.executeQuery(users, Map.of())).thenReturn(List.of(Map.of("id", 1)));
+        when(queryService.executeQuery(older, Map.of())).thenThrow(new QueryTimeoutException("canceling statement due to statement timeout"));
+        when(queryService.executeQuery(tables, Map.of())).thenReturn(List.of(Map.of("id", 2)));
+        when(queryService.inSnapshot(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+        List<Boolean> rolledBack = new ArrayList<>();
+        when(queryService.inSavepoint(any(), any())).thenAnswer(invocation -> {
+            QueryResponse result = invocation.<Supplier<QueryResponse>>getArgument(0).get();
+            rolledBack.add(invocation.<Predicate<QueryResponse>>getArgument(1).test(result));
+            return result;
+        });
+
+        // When
+        ResponseEntity<BatchQueryResponse> response = controller.executeBatch(
+            batch(true, "get_user_data", "get_users_older_than", "get_table_data"));
+
+        // Then
+        List<QueryResponse> results = response.getBody().getResults();
+        assertFalse(response.getBody().getSuccess());
+        assertTrue(results.get(0).getSuccess());
+        assertEquals(504, results.get(1).getCode());
+        assertTrue(results.get(2).getSuccess());
+        assertEquals(List.of(false, true, false), rolledBack);
+    }
+
+    @Test
+    @DisplayName("Should reject a consistent batch with 503 when no slot is available")
+    void testExecuteConsistentBatchRejected() {
+        // Given
+        QueryAdmissionGate.Permit running = admissionGate.acquire();
+
+        // When
+        ResponseEntity<BatchQueryResponse> response = controller.executeBatch(batch(true, "get_user_data"));
+        running.close();
+
+        // Then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst("Retry-After"));
+        assertEquals(503, response.getBody().getCode());
+        verify(queryService, never()).inSnapshot(any());
+    }
+
+    @Test
+    @DisplayName("Should return 400 for an empty or oversized batch")
+    void testExecuteBatchSizeLimits() {
+        // When
+        ResponseEntity<BatchQueryResponse> empty = controller.executeBatch(batch(false));
+        ResponseEntity<BatchQueryResponse> oversized = controller.executeBatch(batch(false, Collections.nCopies(21, "get_user_data").toArray(String[]::new)));
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, empty.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, oversized.getStatusCode());
+        assertEquals(400, oversized.getBody().getCode());
+        verifyNoInteractions(queryService);
+    }
+
+    private static BatchQueryRequest batch(boolean consistent, String... queryIdentifiers) {
+        BatchQueryRequest request = new BatchQueryRequest();
+        request.setConsistent(consistent);
+        List<ExecuteQueryRequest> queries = new ArrayList<>();
+        for (String queryIdentifier : queryIdentifiers) {
+            ExecuteQueryRequest query = new ExecuteQueryRequest();
+            query.setQueryIdentifier(queryIdentifier);
+            query.setParameters(Map.of());
+            queries.add(query);
+        }
+        request.setQueries(queries);
+        return request;
+    }
+
+    private static CompiledQuery compiled(String queryIdentifier, String sql) {
+        return new CompiledQuery(queryIdentifier, sql, List.of(), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
     }
-}
\ No newline at end of file
+}
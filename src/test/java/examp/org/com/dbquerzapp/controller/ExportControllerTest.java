@@ -0,0 +1,215 @@
+package examp.org.com.dbquerzapp.controller;
+
+import com.example.model.ExportJobResponse;
+import com.example.model.ExportRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import examp.org.com.dbquerzapp.service.ExportJob;
+import examp.org.com.dbquerzapp.service.ExportService;
+import examp.org.com.dbquerzapp.service.QueryRejectedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExportControllerTest {
+
+    @Mock
+    private ExportService exportService;
+
+    @TempDir
+    Path directory;
+
+    private ExportController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = new ExportController();
+        ReflectionTestUtils.setField(controller, "exportService", exportService);
+        ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+    }
+
+    @Test
+    @DisplayName("Should queue an export and point to the job")
+    void testCreateExport() throws IOException {
+        // Given
+        ExportJob job = new ExportJob("job-1", "get_users_older_than", ExportJob.Format.COLUMNAR);
+        when(exportService.submit("get_users_older_than", Map.of("min_age", 30), ExportJob.Format.COLUMNAR)).thenReturn(job);
+        ExportRequest request = new ExportRequest();
+        request.setQueryIdentifier("get_users_older_than");
+        request.setParameters(Map.of("min_age", 30));
+        request.setFormat(ExportRequest.FormatEnum.COLUMNAR);
+
+        // When
+        ResponseEntity<ExportJobResponse> response = controller.createExport(request);
+
+        // Then
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("/exports/job-1", response.getHeaders().getLocation().toString());
+        assertEquals("job-1", response.getBody().getJobId());
+        assertEquals("columnar", response.getBody().getFormat());
+        assertEquals(ExportJobResponse.StatusEnum.QUEUED, response.getBody().getStatus());
+        assertNotNull(response.getBody().getCreatedAt());
+        assertNull(response.getBody().getDownloadUrl());
+    }
+
+    @Test
+    @DisplayName("Should map unknown queries, bad requests and a full queue to 404, 400 and 503")
+    void testCreateExportErrors() throws IOException {
+        // Given
+        when(exportService.submit(eq("missing"), any(), any())).thenThrow(new IOException("Query file not found: missing.sql"));
+        when(exportService.submit(eq("get_users_older_than"), any(), any()))
+                .thenThrow(new IllegalArgumentException("Missing required query parameter: min_age"));
+        when(exportService.submit(eq("get_user_data"), any(), any()))
+                .thenThrow(new QueryRejectedException("Too many exports in progress, retry later", 2));
+
+        // When
+        ResponseEntity<ExportJobResponse> notFound = controller.createExport(request("missing"));
+        ResponseEntity<ExportJobResponse> badRequest = controller.createExport(request("get_users_older_than"));
+        ResponseEntity<ExportJobResponse> rejected = controller.createExport(request("get_user_data"));
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, notFound.getStatusCode());
+        assertEquals("Query not found", notFound.getBody().getError());
+        assertEquals(HttpStatus.BAD_REQUEST, badRequest.getStatusCode());
+        assertEquals("Missing required query parameter: min_age", badRequest.getBody().getError());
+        assertEquals(400, badRequest.getBody().getCode());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+        assertEquals("2", rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    @DisplayName("Should report the progress of an export and 404 for an unknown one")
+    void testGetExport() {
+        // Given
+        ExportJob job = completedJob(directory.resolve("job-1.csv.gz"));
+        when(exportService.getJob("job-1")).thenReturn(job);
+
+        // When
+        ResponseEntity<ExportJobResponse> response = controller.getExport("job-1");
+        ResponseEntity<ExportJobResponse> missing = controller.getExport("job-2");
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(ExportJobResponse.StatusEnum.COMPLETED, response.getBody().getStatus());
+        assertEquals(42L, response.getBody().getRows());
+        assertEquals("/exports/job-1/file", response.getBody().getDownloadUrl());
+        assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Should cancel an export and 404 for an unknown one")
+    void testCancelExport() {
+        // Given
+        when(exportService.cancel("job-1")).thenReturn(true);
+
+        // When & Then
+        assertEquals(HttpStatus.NO_CONTENT, controller.cancelExport("job-1").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, controller.cancelExport("job-2").getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Should transfer the file of a completed export")
+    void testDownload() throws IOException {
+        // Given
+        Path file = Files.write(directory.resolve("job-1.csv.gz"), new byte[]{31, -117, 8, 0, 1, 2, 3});
+        ExportJob job = completedJob(file);
+        when(exportService.getJob("job-1")).thenReturn(job);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        controller.downloadExport("job-1", new MockHttpServletRequest(), response);
+
+        // Then
+        assertEquals(200, response.getStatus());
+        assertEquals("application/gzip", response.getContentType());
+        assertEquals("attachment; filename=\"get_user_data-job-1.csv.gz\"", response.getHeader(HttpHeaders.CONTENT_DISPOSITION));
+        assertEquals(7, response.getContentLengthLong());
+        assertArrayEquals(Files.readAllBytes(file), response.getContentAsByteArray());
+    }
+
+    @Test
+    @DisplayName("Should hand the file to the container's sendfile support when available")
+    void testDownloadWithSendfile() throws IOException {
+        // Given
+        Path file = Files.write(directory.resolve("job-1.csv.gz"), new byte[]{31, -117, 8, 0, 1, 2, 3});
+        ExportJob job = completedJob(file);
+        when(exportService.getJob("job-1")).thenReturn(job);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(ExportController.SENDFILE_SUPPORT, Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        controller.downloadExport("job-1", request, response);
+
+        // Then
+        assertEquals(file.toString(), request.getAttribute(ExportController.SENDFILE_FILENAME));
+        assertEquals(0L, request.getAttribute(ExportController.SENDFILE_START));
+        assertEquals(7L, request.getAttribute(ExportController.SENDFILE_END));
+        assertEquals(7, response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    @DisplayName("Should refuse to download unknown, unfinished and deleted exports")
+    void testDownloadErrors() throws IOException {
+        // Given
+        ExportJob running = new ExportJob("job-2", "get_user_data", ExportJob.Format.CSV);
+        when(exportService.getJob("job-2")).thenReturn(running);
+        ExportJob deleted = completedJob(directory.resolve("gone.csv.gz"));
+        when(exportService.getJob("job-3")).thenReturn(deleted);
+        MockHttpServletResponse unknown = new MockHttpServletResponse();
+        MockHttpServletResponse unfinished = new MockHttpServletResponse();
+        MockHttpServletResponse gone = new MockHttpServletResponse();
+
+        // When
+        controller.downloadExport("job-1", new MockHttpServletRequest(), unknown);
+        controller.downloadExport("job-2", new MockHttpServletRequest(), unfinished);
+        controller.downloadExport("job-3", new MockHttpServletRequest(), gone);
+
+        // Then
+        assertEquals(404, unknown.getStatus());
+        assertEquals(409, unfinished.getStatus());
+        assertTrue(unfinished.getContentAsString().contains("Export is queued"));
+        assertEquals(404, gone.getStatus());
+        assertTrue(gone.getContentAsString().contains("Export file no longer exists"));
+    }
+
+    private static ExportRequest request(String queryIdentifier) {
+        ExportRequest request = new ExportRequest();
+        request.setQueryIdentifier(queryIdentifier);
+        return request;
+    }
+
+    private static ExportJob completedJob(Path file) {
+        ExportJob job = mock(ExportJob.class);
+        lenient().when(job.getId()).thenReturn("job-1");
+        lenient().when(job.getQueryIdentifier()).thenReturn("get_user_data");
+        lenient().when(job.getFormat()).thenReturn(ExportJob.Format.CSV);
+        lenient().when(job.getStatus()).thenReturn(ExportJob.Status.COMPLETED);
+        lenient().when(job.getRows()).thenReturn(42L);
+        lenient().when(job.getCreatedAt()).thenReturn(Instant.now());
+        lenient().when(job.getFile()).thenReturn(file);
+        lenient().when(job.getFileName()).thenReturn("get_user_data-job-1.csv.gz");
+        return job;
+    }
+}
@@ -0,0 +1,402 @@
+package examp.org.com.dbquerzapp.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import examp.org.com.dbquerzapp.service.CompiledQuery;
+import examp.org.com.dbquerzapp.service.QueryOptions;
+import examp.org.com.dbquerzapp.service.QueryAdmissionGate;
+import examp.org.com.dbquerzapp.service.QueryCancellation;
+import examp.org.com.dbquerzapp.service.QueryMetrics;
+import examp.org.com.dbquerzapp.service.QueryService;
+import examp.org.com.dbquerzapp.service.RequestLogSampler;
+import examp.org.com.dbquerzapp.service.WorkloadScheduler;
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StreamingQueryControllerTest {
+
+    @Mock
+    private QueryService queryService;
+
+    private final QueryAdmissionGate admissionGate = new QueryAdmissionGate(1, 0, Duration.ZERO, Duration.ofSeconds(2));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private StreamingQueryController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = new StreamingQueryController();
+        ReflectionTestUtils.setField(controller, "queryService", queryService);
+        ReflectionTestUtils.setField(controller, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(controller, "flushEveryRows", 1);
+        ReflectionTestUtils.setField(controller, "admissionGate", admissionGate);
+        ReflectionTestUtils.setField(controller, "workloadScheduler", new WorkloadScheduler(Map.of(), Map.of(),
+                WorkloadScheduler.INTERACTIVE, "X-Client-Id", Duration.ofSeconds(1), meterRegistry));
+        ReflectionTestUtils.setField(controller, "queryMetrics", new QueryMetrics(meterRegistry));
+        ReflectionTestUtils.setField(controller, "requestLogSampler", new RequestLogSampler(0));
+    }
+
+    @Test
+    @DisplayName("Should stream rows followed by the response trailer fields")
+    void testStreamQuerySuccess() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            handler.processRow(row(1, "John"));
+            handler.processRow(row(2, "Jane"));
+            return null;
+        }).when(queryService).streamQuery(same(compiledQuery), anyMap(), any(RowCallbackHandler.class), any(QueryCancellation.class));
+
+        // When
+        ResponseEntity<StreamingResponseBody> response = controller.streamQuery("get_user_data", Map.of("query_identifier", "get_user_data"), null);
+        JsonNode body = write(response);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(body.get("success").asBoolean());
+        assertEquals(2, body.get("data").size());
+        assertEquals("John", body.get("data").get(0).get("name").asText());
+        assertEquals(2, body.get("data").get(1).get("id").asInt());
+        assertTrue(body.get("execution_time_ms").asLong() >= 0);
+        assertFalse(body.has("error"));
+        assertEquals(1, meterRegistry.get(QueryMetrics.REQUESTS).tag("query", "get_user_data")
+                .tag("outcome", QueryMetrics.SUCCESS).timer().count());
+        assertEquals(2.0, meterRegistry.get(QueryMetrics.ROWS).tag("query", "get_user_data").summary().totalAmount());
+    }
+
+    @Test
+    @DisplayName("Should report a failure in the trailer when execution breaks mid-stream")
+    void testStreamQueryExecutionError() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            handler.processRow(row(1, "John"));
+            throw new RuntimeException("connection reset");
+        }).when(queryService).streamQuery(same(compiledQuery), anyMap(), any(RowCallbackHandler.class), any(QueryCancellation.class));
+
+        // When
+        JsonNode body = write(controller.streamQuery("get_user_data", Map.of("query_identifier", "get_user_data"), null));
+
+        // Then
+        assertFalse(body.get("success").asBoolean());
+        assertEquals(1, body.get("data").size());
+        assertEquals("Error while executing query", body.get("error").asText());
+        assertEquals(500, body.get("code").asInt());
+        assertTrue(body.has("execution_time_ms"));
+    }
+
+    @Test
+    @DisplayName("Should return 404 when query file not found")
+    void testStreamQueryFileNotFound() throws Exception {
+        // Given
+        when(queryService.getCompiledQuery("missing")).thenThrow(new IOException("Query file not found: missing.sql"));
+
+        // When
+        ResponseEntity<StreamingResponseBody> response = controller.streamQuery("missing", Map.of("query_identifier", "missing"), null);
+        JsonNode body = write(response);
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertFalse(body.get("success").asBoolean());
+        assertEquals("Query not found", body.get("error").asText());
+        verify(queryService, never()).streamQuery(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should return 400 before streaming when SQL validation fails")
+    void testStreamQueryValidationFailure() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT FORM users", ValidationResult.invalid("Invalid syntax"));
+        when(queryService.getCompiledQuery("invalid")).thenReturn(compiledQuery);
+
+        // When
+        ResponseEntity<StreamingResponseBody> response = controller.streamQuery("invalid", Map.of("query_identifier", "invalid"), null);
+        JsonNode body = write(response);
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(400, body.get("code").asInt());
+        assertTrue(body.get("error").asText().contains("Invalid syntax"));
+        verify(queryService, never()).streamQuery(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should bind the remaining request parameters and reject bad values before streaming")
+    void testStreamQueryInvalidParameter() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id FROM users WHERE age >= :min_age", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.bindParameters(compiledQuery, Map.of("min_age", "thirty")))
+                .thenThrow(new IllegalArgumentException("Invalid value for query parameter min_age: expected integer"));
+
+        // When
+        ResponseEntity<StreamingResponseBody> response = controller.streamQuery("get_user_data",
+                Map.of("query_identifier", "get_user_data", "min_age", "thirty"), null);
+        JsonNode body = write(response);
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Invalid value for query parameter min_age: expected integer", body.get("error").asText());
+        verify(queryService, never()).streamQuery(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should return 503 with Retry-After and release the slot once streaming finished")
+    void testStreamQueryAdmission() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        ResponseEntity<StreamingResponseBody> running = controller.streamQuery("get_user_data", Map.of("query_identifier", "get_user_data"), null);
+
+        // When
+        ResponseEntity<StreamingResponseBody> rejected = controller.streamQuery("get_user_data", Map.of("query_identifier", "get_user_data"), null);
+        JsonNode body = write(rejected);
+        write(running);
+
+        // Then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+        assertEquals("2", rejected.getHeaders().getFirst("Retry-After"));
+        assertEquals(503, body.get("code").asInt());
+        assertEquals(1, admissionGate.getAvailableSlots());
+    }
+
+    @Test
+    @DisplayName("Should release the slot once and skip the query when the async request ends before the body ran")
+    void testStreamQueryReleasedOnCompletion() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        ServletRequestAttributes requestAttributes = new ServletRequestAttributes(new MockHttpServletRequest());
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        ResponseEntity<StreamingResponseBody> response;
+        try {
+            response = controller.streamQuery("get_user_data", Map.of("query_identifier", "get_user_data"), null);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        QueryCancellation cancellation = (QueryCancellation) requestAttributes.getAttribute(QueryCancellation.ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        assertEquals(0, admissionGate.getAvailableSlots());
+
+        // When
+        cancellation.releaseIfNotStarted();
+        cancellation.releaseIfNotStarted();
+        response.getBody().writeTo(new ByteArrayOutputStream());
+
+        // Then
+        assertEquals(1, admissionGate.getAvailableSlots());
+        verify(queryService, never()).streamQuery(any(), anyMap(), any(RowCallbackHandler.class), any(QueryCancellation.class));
+    }
+
+    @Test
+    @DisplayName("Should keep the slot of a running body until it finishes when the async request times out")
+    void testStreamQueryTimedOutWhileRunning() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        int[] slotsWhileRunning = new int[1];
+        doAnswer(invocation -> {
+            // what QueryCancellationConfig does on a timeout and when the async request completes
+            QueryCancellation cancellation = invocation.getArgument(3);
+            cancellation.cancel();
+            cancellation.releaseIfNotStarted();
+            slotsWhileRunning[0] = admissionGate.getAvailableSlots();
+            throw new UncategorizedSQLException("query", "SELECT id, name FROM users",
+                    new SQLException("canceling statement due to user request", "57014"));
+        }).when(queryService).streamQuery(same(compiledQuery), anyMap(), any(RowCallbackHandler.class), any(QueryCancellation.class));
+        ResponseEntity<StreamingResponseBody> response = controller.streamQuery("get_user_data",
+                Map.of("query_identifier", "get_user_data"), null);
+
+        // When
+        assertThrows(UncategorizedSQLException.class, () -> response.getBody().writeTo(new ByteArrayOutputStream()));
+
+        // Then
+        assertEquals(0, slotsWhileRunning[0]);
+        assertEquals(1, admissionGate.getAvailableSlots());
+    }
+
+    @Test
+    @DisplayName("Should report 504 in the trailer when the statement exceeds its timeout")
+    void testStreamQueryTimeout() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        doThrow(new UncategorizedSQLException("query", "SELECT id, name FROM users",
+                new SQLException("canceling statement due to statement timeout", "57014")))
+            .when(queryService).streamQuery(same(compiledQuery), anyMap(), any(RowCallbackHandler.class), any(QueryCancellation.class));
+
+        // When
+        JsonNode body = write(controller.streamQuery("get_user_data", Map.of("query_identifier", "get_user_data"), null));
+
+        // Then
+        assertFalse(body.get("success").asBoolean());
+        assertEquals("Query exceeded its timeout", body.get("error").asText());
+        assertEquals(504, body.get("code").asInt());
+        assertEquals(1, meterRegistry.get(QueryMetrics.REQUESTS).tag("outcome", QueryMetrics.TIMEOUT).timer().count());
+    }
+
+    @Test
+    @DisplayName("Should abort the response without a trailer when the request was cancelled")
+    void testStreamQueryCancelled() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        doAnswer(invocation -> {
+            invocation.<QueryCancellation>getArgument(3).cancel();
+            throw new UncategorizedSQLException("query", "SELECT id, name FROM users",
+                    new SQLException("canceling statement due to user request", "57014"));
+        }).when(queryService).streamQuery(same(compiledQuery), anyMap(), any(RowCallbackHandler.class), any(QueryCancellation.class));
+        ResponseEntity<StreamingResponseBody> response = controller.streamQuery("get_user_data",
+                Map.of("query_identifier", "get_user_data"), null);
+
+        // When & Then
+        assertThrows(UncategorizedSQLException.class, () -> response.getBody().writeTo(new ByteArrayOutputStream()));
+        assertEquals(1, meterRegistry.get(QueryMetrics.REQUESTS).tag("outcome", QueryMetrics.ABORTED).timer().count());
+        assertEquals(1, admissionGate.getAvailableSlots());
+    }
+
+    @Test
+    @DisplayName("Should stream compact JSON with the column labels once and rows as arrays")
+    void testStreamQueryCompactJson() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            handler.processRow(row(1, "John"));
+            handler.processRow(row(2, "Jane"));
+            return null;
+        }).when(queryService).streamQuery(same(compiledQuery), anyMap(), any(RowCallbackHandler.class), any(QueryCancellation.class));
+
+        // When
+        ResponseEntity<StreamingResponseBody> response = controller.streamQuery("get_user_data",
+                Map.of("query_identifier", "get_user_data"), StreamingQueryController.COMPACT_JSON_VALUE);
+        JsonNode body = write(response);
+
+        // Then
+        assertEquals(StreamingQueryController.COMPACT_JSON, response.getHeaders().getContentType());
+        assertEquals("[\"id\",\"name\"]", body.get("columns").toString());
+        assertEquals("[[1,\"John\"],[2,\"Jane\"]]", body.get("rows").toString());
+        assertTrue(body.get("success").asBoolean());
+        assertFalse(body.has("data"));
+    }
+
+    @Test
+    @DisplayName("Should write empty columns and rows in compact JSON when the query returns nothing")
+    void testStreamQueryCompactJsonEmpty() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+
+        // When
+        JsonNode body = write(controller.streamQuery("get_user_data",
+                Map.of("query_identifier", "get_user_data"), StreamingQueryController.COMPACT_JSON_VALUE));
+
+        // Then
+        assertEquals(0, body.get("columns").size());
+        assertEquals(0, body.get("rows").size());
+        assertTrue(body.get("success").asBoolean());
+    }
+
+    @Test
+    @DisplayName("Should stream the binary columnar encoding when it is accepted")
+    void testStreamQueryColumnar() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = compiled("SELECT id, name FROM users", ValidationResult.valid());
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            handler.processRow(row(1, "John"));
+            return null;
+        }).when(queryService).streamQuery(same(compiledQuery), anyMap(), any(RowCallbackHandler.class), any(QueryCancellation.class));
+
+        // When
+        ResponseEntity<StreamingResponseBody> response = controller.streamQuery("get_user_data",
+                Map.of("query_identifier", "get_user_data"), StreamingQueryController.COLUMNAR_VALUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        // Then
+        assertEquals(StreamingQueryController.COLUMNAR, response.getHeaders().getContentType());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("DBQC", new String(in.readNBytes(4), StandardCharsets.US_ASCII));
+        assertEquals(1, in.readByte());
+        assertEquals(2, in.readInt());
+    }
+
+    @Test
+    @DisplayName("Should pick the most preferred supported format from the Accept header")
+    void testNegotiate() {
+        assertEquals(MediaType.APPLICATION_JSON, StreamingQueryController.negotiate(null));
+        assertEquals(MediaType.APPLICATION_JSON, StreamingQueryController.negotiate("*/*"));
+        assertEquals(MediaType.APPLICATION_JSON, StreamingQueryController.negotiate("not a media type"));
+        assertEquals(StreamingQueryController.COMPACT_JSON,
+                StreamingQueryController.negotiate("application/json;q=0.5, application/vnd.dbquerzapp.compact+json"));
+        assertEquals(StreamingQueryController.COLUMNAR,
+                StreamingQueryController.negotiate("application/vnd.dbquerzapp.columnar, */*;q=0.1"));
+    }
+
+    private JsonNode write(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return objectMapper.readTree(out.toByteArray());
+    }
+
+    private static CompiledQuery compiled(String sql, ValidationResult validationResult) {
+        return new CompiledQuery("get_user_data", sql, List.of(), QueryOptions.NONE, validationResult, Instant.now());
+    }
+
+    private static ResultSet row(int id, String name) throws SQLException {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        lenient().when(metaData.getColumnCount()).thenReturn(2);
+        lenient().when(metaData.getColumnLabel(1)).thenReturn("id");
+        lenient().when(metaData.getColumnLabel(2)).thenReturn("name");
+        ResultSet rs = mock(ResultSet.class);
+        lenient().when(rs.getMetaData()).thenReturn(metaData);
+        lenient().when(rs.getObject(1)).thenReturn(id);
+        lenient().when(rs.getObject(2)).thenReturn(name);
+        return rs;
+    }
+}
@@ -0,0 +1,104 @@
+package examp.org.com.dbquerzapp.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import examp.org.com.dbquerzapp.service.CompiledQuery;
+import examp.org.com.dbquerzapp.service.QueryOptions;
+import examp.org.com.dbquerzapp.service.QueryRejectedException;
+import examp.org.com.dbquerzapp.service.QueryService;
+import examp.org.com.dbquerzapp.service.QuerySubscriptions;
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionControllerTest {
+
+    @Mock
+    private QueryService queryService;
+
+    @Mock
+    private QuerySubscriptions querySubscriptions;
+
+    private SubscriptionController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = new SubscriptionController();
+        ReflectionTestUtils.setField(controller, "queryService", queryService);
+        ReflectionTestUtils.setField(controller, "querySubscriptions", querySubscriptions);
+        ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+    }
+
+    @Test
+    @DisplayName("Should subscribe with the request parameters other than the query identifier")
+    void testSubscribe() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled(ValidationResult.valid());
+        SseEmitter emitter = new SseEmitter();
+        when(queryService.getCompiledQuery("active_users")).thenReturn(compiledQuery);
+        when(querySubscriptions.subscribe(compiledQuery, Map.of("min_age", "30"))).thenReturn(emitter);
+
+        // When
+        ResponseEntity<SseEmitter> response = controller.subscribe("active_users",
+                Map.of("query_identifier", "active_users", "min_age", "30"));
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(emitter, response.getBody());
+    }
+
+    @Test
+    @DisplayName("Should return 404 or 400 without subscribing when the query is missing or invalid")
+    void testSubscribeInvalidQuery() throws IOException {
+        // Given
+        when(queryService.getCompiledQuery("missing")).thenThrow(new IOException("Query file not found: missing.sql"));
+        when(queryService.getCompiledQuery("invalid")).thenReturn(compiled(ValidationResult.invalid("Invalid syntax")));
+
+        // When
+        ResponseEntity<SseEmitter> missing = controller.subscribe("missing", Map.of("query_identifier", "missing"));
+        ResponseEntity<SseEmitter> invalid = controller.subscribe("invalid", Map.of("query_identifier", "invalid"));
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, invalid.getStatusCode());
+        verify(querySubscriptions, never()).subscribe(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should return 503 with Retry-After when too many clients are subscribed")
+    void testSubscribeRejected() throws IOException {
+        // Given
+        CompiledQuery compiledQuery = compiled(ValidationResult.valid());
+        when(queryService.getCompiledQuery("active_users")).thenReturn(compiledQuery);
+        when(querySubscriptions.subscribe(compiledQuery, Map.of()))
+                .thenThrow(new QueryRejectedException("Too many live subscriptions", 2));
+
+        // When
+        ResponseEntity<SseEmitter> response = controller.subscribe("active_users", Map.of("query_identifier", "active_users"));
+
+        // Then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst("Retry-After"));
+    }
+
+    private static CompiledQuery compiled(ValidationResult validationResult) {
+        return new CompiledQuery("active_users", "SELECT id FROM users", List.of(), QueryOptions.NONE, validationResult, Instant.now());
+    }
+}
@@ -0,0 +1,135 @@
+package examp.org.com.dbquerzapp.load;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives /execute-query with a 90/10 mix of fast lookups and slow reports, more concurrent
+ * callers than there are pooled connections, and reports throughput and latency. Run with
+ * {@code ./gradlew loadTest}; excluded from the regular test task.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "dbquerzapp.query.admission.max-queued=50",
+        "dbquerzapp.query.admission.max-wait=2s",
+        "logging.level.examp.org.com.dbquerzapp=WARN"
+})
+@ActiveProfiles("test")
+class QueryAdmissionLoadTest {
+
+    private static final int REQUESTS = 1000;
+    private static final int CONCURRENT_CALLERS = 200;
+    private static final int SLOW_QUERY_MILLIS = 500;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void queryDirectory(DynamicPropertyRegistry registry) throws IOException {
+        Path directory = Files.createTempDirectory("load-queries");
+        Files.writeString(directory.resolve("fast_lookup.sql"), "SELECT id, email FROM users WHERE id = 1");
+        Files.writeString(directory.resolve("slow_report.sql"), "SELECT pause(" + SLOW_QUERY_MILLIS + ") AS waited FROM users WHERE id = 1");
+        registry.add("dbquerzapp.query.directory", directory::toString);
+    }
+
+    /** Stands in for an expensive analytical query. */
+    public static int pause(int millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return millis;
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("CREATE ALIAS IF NOT EXISTS PAUSE FOR \"" + QueryAdmissionLoadTest.class.getName() + ".pause\"");
+    }
+
+    @Test
+    @DisplayName("Should keep serving a 90/10 fast/slow mix and shed excess load with 503 instead of timing out")
+    void testFastSlowMix() throws Exception {
+        // Given
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        List<Long> fastLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Long> slowLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> statuses = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> calls = new ArrayList<>();
+
+        // When
+        long start = System.nanoTime();
+        try (ExecutorService callers = Executors.newFixedThreadPool(CONCURRENT_CALLERS, Thread.ofVirtual().factory())) {
+            for (int i = 0; i < REQUESTS; i++) {
+                boolean slow = i % 10 == 0;
+                calls.add(callers.submit(() -> {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                            + "/execute-query?query_identifier=" + (slow ? "slow_report" : "fast_lookup"))).GET().build();
+                    long requestStart = System.nanoTime();
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    long millis = Duration.ofNanos(System.nanoTime() - requestStart).toMillis();
+                    statuses.add(response.statusCode());
+                    if (response.statusCode() == 503) {
+                        assertTrue(response.headers().firstValue("Retry-After").isPresent());
+                    } else {
+                        (slow ? slowLatencies : fastLatencies).add(millis);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> call : calls) {
+                call.get();
+            }
+        }
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        // Then
+        long ok = statuses.stream().filter(status -> status == 200).count();
+        long rejected = statuses.stream().filter(status -> status == 503).count();
+        System.out.printf("requests=%d ok=%d rejected=%d elapsed=%dms throughput=%.1f req/s%n",
+                REQUESTS, ok, rejected, elapsedMillis, ok * 1000.0 / elapsedMillis);
+        System.out.printf("fast p50=%dms p99=%dms max=%dms | slow p50=%dms max=%dms%n",
+                percentile(fastLatencies, 50), percentile(fastLatencies, 99), percentile(fastLatencies, 100),
+                percentile(slowLatencies, 50), percentile(slowLatencies, 100));
+
+        assertEquals(REQUESTS, ok + rejected);
+        assertTrue(ok > 0);
+        // no caller waits for the 20s pool connection-timeout: at most max-wait plus one slow query
+        assertTrue(percentile(fastLatencies, 100) < 2000 + SLOW_QUERY_MILLIS + 1000);
+    }
+
+    private static long percentile(List<Long> latencies, int percentile) {
+        if (latencies.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+}
@@ -0,0 +1,180 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ColumnarRowsTest {
+
+    private static final String[] LABELS = {"id", "age", "score", "active", "city", "balance"};
+    private static final int[] TYPES = {Types.BIGINT, Types.INTEGER, Types.DOUBLE, Types.BOOLEAN, Types.VARCHAR, Types.NUMERIC};
+
+    private static final Object[][] ROWS = {
+            {1L, 30, 1.5, true, "Berlin", new BigDecimal("10.50")},
+            {2L, null, 2.0, false, "Paris", null},
+            {3L, 41, null, null, "Berlin", new BigDecimal("0.1")},
+            {4L, 25, 0.25, true, null, new BigDecimal("7")},
+    };
+
+    @Test
+    @DisplayName("Should offer the rows as the same maps ColumnMapRowMapper builds")
+    void testRowsMatchColumnMapRowMapper() throws SQLException {
+        // Given
+        ResultSet resultSet = resultSet();
+        ColumnarRows rows = ColumnarRows.of(resultSet.getMetaData());
+        List<Map<String, Object>> expected = new ArrayList<>();
+        ColumnMapRowMapper mapper = new ColumnMapRowMapper();
+
+        // When
+        while (resultSet.next()) {
+            rows.add(resultSet);
+            expected.add(mapper.mapRow(resultSet, expected.size()));
+        }
+
+        // Then
+        assertEquals(expected, rows);
+        assertEquals(4, rows.size());
+        assertEquals(30, rows.get(0).get("AGE"));
+        assertNull(rows.get(1).get("balance"));
+        assertFalse(rows.isTruncated());
+    }
+
+    @Test
+    @DisplayName("Should serialize the rows exactly like the maps, with and without null columns")
+    void testSerializationMatchesMaps() throws Exception {
+        // Given
+        ColumnarRows rows = read(resultSet());
+        List<Map<String, Object>> maps = new ArrayList<>(rows);
+        ObjectMapper withNulls = new ObjectMapper();
+        ObjectMapper withoutNulls = new ObjectMapper().setDefaultPropertyInclusion(JsonInclude.Include.NON_NULL);
+
+        // When
+        String json = withNulls.writeValueAsString(rows);
+        String compact = withoutNulls.writeValueAsString(rows);
+
+        // Then
+        assertEquals(withNulls.writeValueAsString(maps), json);
+        assertEquals(withoutNulls.writeValueAsString(maps), compact);
+        assertTrue(json.startsWith("[{\"id\":1,\"age\":30,\"score\":1.5,\"active\":true,\"city\":\"Berlin\",\"balance\":10.50}"));
+        assertFalse(compact.contains("null"));
+    }
+
+    @Test
+    @DisplayName("Should store a repeated string once and only count new strings as heap")
+    void testDictionaryEncoding() throws SQLException {
+        // Given
+        ResultSet resultSet = resultSet();
+        resultSet.next();
+        ColumnarRows rows = ColumnarRows.of(resultSet.getMetaData());
+
+        // When
+        long first = rows.add(resultSet);
+        resultSet.next();
+        resultSet.next();
+        long repeated = rows.add(resultSet);
+
+        // Then
+        assertEquals(8 + 4 + 8 + 1 + (4 + 48 + "Berlin".length()) + (8 + 32), first);
+        assertEquals(8 + 4 + 4 + (8 + 32), repeated);
+        assertSame(rows.get(0).get("city"), rows.get(1).get("city"));
+    }
+
+    @Test
+    @DisplayName("Should keep the first rows of a truncated result and share the buffers")
+    void testTruncatedAndHead() throws SQLException {
+        // Given
+        ColumnarRows rows = read(resultSet());
+
+        // When
+        ColumnarRows truncated = rows.truncated(2);
+        ColumnarRows head = rows.head(3);
+
+        // Then
+        assertTrue(truncated.isTruncated());
+        assertEquals(2, truncated.size());
+        assertEquals(List.of(rows.get(0), rows.get(1)), truncated);
+        assertFalse(head.isTruncated());
+        assertEquals(3, head.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> truncated.get(2));
+    }
+
+    @Test
+    @DisplayName("Should grow its buffers past their initial capacity, also after a run of NULLs")
+    void testGrowth() throws SQLException {
+        // Given
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnLabel(1)).thenReturn("n");
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        ResultSet resultSet = mock(ResultSet.class);
+        ColumnarRows rows = ColumnarRows.of(metaData);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            when(resultSet.getInt(1)).thenReturn(i);
+            when(resultSet.wasNull()).thenReturn(i < 40);
+            rows.add(resultSet);
+        }
+
+        // Then
+        assertEquals(100, rows.size());
+        assertNull(rows.get(39).get("n"));
+        assertEquals(40, rows.get(40).get("n"));
+        assertEquals(99, rows.get(99).get("n"));
+    }
+
+    private static ColumnarRows read(ResultSet resultSet) throws SQLException {
+        ColumnarRows rows = null;
+        while (resultSet.next()) {
+            if (rows == null) {
+                rows = ColumnarRows.of(resultSet.getMetaData());
+            }
+            rows.add(resultSet);
+        }
+        return rows;
+    }
+
+    /** A result set over {@link #ROWS} that answers both typed getters and getObject. */
+    private static ResultSet resultSet() throws SQLException {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(LABELS.length);
+        for (int i = 0; i < LABELS.length; i++) {
+            lenient().when(metaData.getColumnLabel(i + 1)).thenReturn(LABELS[i]);
+            lenient().when(metaData.getColumnType(i + 1)).thenReturn(TYPES[i]);
+        }
+        ResultSet resultSet = mock(ResultSet.class);
+        lenient().when(resultSet.getMetaData()).thenReturn(metaData);
+        int[] row = {-1};
+        Object[] last = {null};
+        when(resultSet.next()).thenAnswer(invocation -> ++row[0] < ROWS.length);
+        for (int i = 0; i < LABELS.length; i++) {
+            int column = i;
+            lenient().when(resultSet.getObject(column + 1)).thenAnswer(invocation -> last[0] = ROWS[row[0]][column]);
+            lenient().when(resultSet.getString(column + 1)).thenAnswer(invocation -> last[0] = ROWS[row[0]][column]);
+            lenient().when(resultSet.getLong(column + 1)).thenAnswer(invocation -> number(last[0] = ROWS[row[0]][column]).longValue());
+            lenient().when(resultSet.getInt(column + 1)).thenAnswer(invocation -> number(last[0] = ROWS[row[0]][column]).intValue());
+            lenient().when(resultSet.getDouble(column + 1)).thenAnswer(invocation -> number(last[0] = ROWS[row[0]][column]).doubleValue());
+            lenient().when(resultSet.getBoolean(column + 1)).thenAnswer(invocation -> Boolean.TRUE.equals(last[0] = ROWS[row[0]][column]));
+        }
+        lenient().when(resultSet.wasNull()).thenAnswer(invocation -> last[0] == null);
+        return resultSet;
+    }
+
+    private static Number number(Object value) {
+        return value == null ? 0 : (Number) value;
+    }
+}
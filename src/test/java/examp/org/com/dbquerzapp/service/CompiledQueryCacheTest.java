@@ -0,0 +1,101 @@
+package examp.org.com.dbquerzapp.service;
+
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledQueryCacheTest {
+
+    private CompiledQueryCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CompiledQueryCache(16);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    @DisplayName("Should load once and count hits and misses")
+    void testHitAndMissCounters() throws IOException {
+        CompiledQuery first = cache.get("get_user_data", this::load);
+        CompiledQuery second = cache.get("get_user_data", this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Should reload a query after it has been invalidated")
+    void testInvalidate() throws IOException {
+        CompiledQuery first = cache.get("get_user_data", this::load);
+        cache.invalidate("get_user_data");
+        CompiledQuery second = cache.get("get_user_data", this::load);
+
+        assertNotSame(first, second);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should drop every entry on invalidateAll")
+    void testInvalidateAll() throws IOException {
+        cache.get("a", this::load);
+        cache.get("b", this::load);
+        cache.invalidateAll();
+
+        cache.get("a", this::load);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should propagate IOException from the loader without caching")
+    void testLoaderIOException() {
+        IOException exception = assertThrows(IOException.class, () ->
+                cache.get("missing", id -> { throw new IOException("Query file not found: missing.sql"); }));
+
+        assertEquals("Query file not found: missing.sql", exception.getMessage());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("Should serve published versions without loading and swap them atomically")
+    void testPublish() throws IOException {
+        CompiledQuery published = load("get_user_data");
+        cache.publish(Map.of("get_user_data", published), List.of());
+
+        assertSame(published, cache.get("get_user_data", this::load));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().hitCount());
+
+        cache.publish(Map.of(), List.of("get_user_data"));
+        assertNull(cache.getPublished("get_user_data"));
+        assertNotSame(published, cache.get("get_user_data", this::load));
+    }
+
+    @Test
+    @DisplayName("Should drop a published version on invalidate")
+    void testInvalidatePublished() throws IOException {
+        cache.publish(Map.of("get_user_data", load("get_user_data")), List.of());
+        cache.invalidate("get_user_data");
+
+        assertNull(cache.getPublished("get_user_data"));
+        assertEquals(0, cache.size());
+    }
+
+    private CompiledQuery load(String queryIdentifier) {
+        loads.incrementAndGet();
+        return new CompiledQuery(queryIdentifier, "SELECT * FROM users", List.of(), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+    }
+}
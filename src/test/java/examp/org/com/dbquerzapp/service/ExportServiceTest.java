@@ -0,0 +1,383 @@
+package examp.org.com.dbquerzapp.service;
+
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExportServiceTest {
+
+    @Mock
+    private QueryService queryService;
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new ExportService();
+        ReflectionTestUtils.setField(exportService, "queryService", queryService);
+        ReflectionTestUtils.setField(exportService, "admissionGate", new QueryAdmissionGate(2, 0, Duration.ZERO, Duration.ofSeconds(1)));
+        ReflectionTestUtils.setField(exportService, "workloadScheduler", new WorkloadScheduler(Map.of(), Map.of(),
+                WorkloadScheduler.INTERACTIVE, "X-Client-Id", Duration.ofSeconds(1), meterRegistry));
+        ReflectionTestUtils.setField(exportService, "queryMetrics", new QueryMetrics(meterRegistry));
+        ReflectionTestUtils.setField(exportService, "directory", directory.toString());
+        ReflectionTestUtils.setField(exportService, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(exportService, "maxQueued", 1);
+        ReflectionTestUtils.setField(exportService, "timeout", Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(exportService, "retention", Duration.ofHours(1));
+        ReflectionTestUtils.setField(exportService, "copy", true);
+        ReflectionTestUtils.setField(exportService, "retryAfter", Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        exportService.stop();
+    }
+
+    @Test
+    @DisplayName("Should stream the rows into a gzip-compressed CSV file and report progress")
+    void testCsvExport() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery compiledQuery = withParameter();
+        when(queryService.getCompiledQuery("get_users_older_than")).thenReturn(compiledQuery);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            handler.processRow(row(1, "John"));
+            handler.processRow(row(2, "Doe, Jane"));
+            return null;
+        }).when(queryService).exportQuery(same(compiledQuery), eq(Map.of("min_age", 30)), any(), any(), eq(Duration.ofMinutes(30)));
+
+        // When
+        ExportJob job = exportService.submit("get_users_older_than", Map.of("min_age", 30), ExportJob.Format.CSV);
+        awaitFinished(job);
+
+        // Then
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(2, job.getRows());
+        assertEquals(Files.size(job.getFile()), job.getBytes());
+        assertEquals("id,name\n1,John\n2,\"Doe, Jane\"\n", gunzip(job.getFile()));
+        assertEquals("get_users_older_than-" + job.getId() + ".csv.gz", job.getFileName());
+        assertSame(job, exportService.getJob(job.getId()));
+        verify(queryService).bindParameters(compiledQuery, Map.of("min_age", 30));
+        verify(queryService, never()).copyQuery(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should export a parameterless CSV query with COPY")
+    void testCopyExport() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery compiledQuery = withoutParameters();
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.copyQuery(same(compiledQuery), any(), eq(Duration.ofMinutes(30)))).thenAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(1);
+            outputStream.write("id\n1\n2\n3\n".getBytes(StandardCharsets.UTF_8));
+            return 3L;
+        });
+
+        // When
+        ExportJob job = exportService.submit("get_user_data", null, ExportJob.Format.CSV);
+        awaitFinished(job);
+
+        // Then
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(3, job.getRows());
+        assertEquals("id\n1\n2\n3\n", gunzip(job.getFile()));
+        verify(queryService, never()).exportQuery(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should fall back to streaming when the database does not support COPY")
+    void testCopyFallback() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery compiledQuery = withoutParameters();
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.copyQuery(same(compiledQuery), any(), any())).thenReturn(-1L);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            handler.processRow(row(1, "John"));
+            return null;
+        }).when(queryService).exportQuery(same(compiledQuery), isNull(), any(), any(), any());
+
+        // When
+        ExportJob job = exportService.submit("get_user_data", null, ExportJob.Format.CSV);
+        awaitFinished(job);
+
+        // Then
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+        assertEquals("id,name\n1,John\n", gunzip(job.getFile()));
+    }
+
+    @Test
+    @DisplayName("Should write the columnar encoding for columnar exports")
+    void testColumnarExport() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery compiledQuery = withoutParameters();
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            handler.processRow(row(1, "John"));
+            return null;
+        }).when(queryService).exportQuery(same(compiledQuery), isNull(), any(), any(), any());
+
+        // When
+        ExportJob job = exportService.submit("get_user_data", null, ExportJob.Format.COLUMNAR);
+        awaitFinished(job);
+
+        // Then
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+        assertTrue(job.getFile().toString().endsWith(".dbqc.gz"));
+        assertTrue(gunzip(job.getFile()).startsWith("DBQC"));
+        verify(queryService, never()).copyQuery(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should reject exports beyond the queue and report what is running and queued")
+    void testQueueFull() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery compiledQuery = withoutParameters();
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(queryService.copyQuery(any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 0L;
+        });
+
+        // When
+        ExportJob running = exportService.submit("get_user_data", null, ExportJob.Format.CSV);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        ExportJob queued = exportService.submit("get_user_data", null, ExportJob.Format.CSV);
+        int runningCount = exportService.getRunning();
+        int queuedCount = exportService.getQueued();
+        QueryRejectedException exception = assertThrows(QueryRejectedException.class,
+                () -> exportService.submit("get_user_data", null, ExportJob.Format.CSV));
+        release.countDown();
+        awaitFinished(running);
+        awaitFinished(queued);
+
+        // Then
+        assertEquals(1, runningCount);
+        assertEquals(1, queuedCount);
+        assertEquals("Too many exports in progress, retry later", exception.getMessage());
+        assertEquals(1, exception.getRetryAfterSeconds());
+        assertEquals(ExportJob.Status.COMPLETED, running.getStatus());
+        assertEquals(ExportJob.Status.COMPLETED, queued.getStatus());
+    }
+
+    @Test
+    @DisplayName("Should cancel a running export and remove its partial file")
+    void testCancelRunning() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery compiledQuery = withParameter();
+        when(queryService.getCompiledQuery("get_users_older_than")).thenReturn(compiledQuery);
+        CountDownLatch started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            QueryCancellation cancellation = invocation.getArgument(3);
+            started.countDown();
+            while (!cancellation.isCancelled()) {
+                Thread.sleep(10);
+            }
+            throw new UncategorizedSQLException("export", "SELECT", new SQLException("canceling statement", "57014"));
+        }).when(queryService).exportQuery(any(), any(), any(), any(), any());
+
+        // When
+        ExportJob job = exportService.submit("get_users_older_than", Map.of("min_age", 30), ExportJob.Format.CSV);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(exportService.cancel(job.getId()));
+        awaitFinished(job);
+
+        // Then
+        assertEquals(ExportJob.Status.CANCELLED, job.getStatus());
+        assertNull(job.getError());
+        assertEquals(List.of(), files());
+    }
+
+    @Test
+    @DisplayName("Should cancel a queued export before it starts")
+    void testCancelQueued() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery compiledQuery = withoutParameters();
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        CountDownLatch release = new CountDownLatch(1);
+        when(queryService.copyQuery(any(), any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return 0L;
+        });
+        ExportJob running = exportService.submit("get_user_data", null, ExportJob.Format.CSV);
+        ExportJob queued = exportService.submit("get_user_data", null, ExportJob.Format.CSV);
+
+        // When
+        exportService.cancel(queued.getId());
+        release.countDown();
+        awaitFinished(running);
+
+        // Then
+        assertEquals(ExportJob.Status.CANCELLED, queued.getStatus());
+        assertNull(queued.getStartedAt());
+        verify(queryService, timeout(5000).times(1)).copyQuery(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should mark a failed export and remove its partial file")
+    void testFailure() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery compiledQuery = withParameter();
+        when(queryService.getCompiledQuery("get_users_older_than")).thenReturn(compiledQuery);
+        doThrow(new UncategorizedSQLException("export", "SELECT", new SQLException("relation does not exist")))
+                .when(queryService).exportQuery(any(), any(), any(), any(), any());
+
+        // When
+        ExportJob job = exportService.submit("get_users_older_than", Map.of("min_age", 30), ExportJob.Format.CSV);
+        awaitFinished(job);
+
+        // Then
+        assertEquals(ExportJob.Status.FAILED, job.getStatus());
+        assertEquals("Error while exporting query", job.getError());
+        assertEquals(List.of(), files());
+    }
+
+    @Test
+    @DisplayName("Should refuse invalid queries and bad parameters before queuing")
+    void testSubmitInvalid() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery invalid = new CompiledQuery("drop_users", "DROP TABLE users", List.of(), QueryOptions.NONE,
+                ValidationResult.invalid("Dangerous SQL keyword detected: DROP"), Instant.now());
+        CompiledQuery compiledQuery = withParameter();
+        when(queryService.getCompiledQuery("drop_users")).thenReturn(invalid);
+        when(queryService.getCompiledQuery("get_users_older_than")).thenReturn(compiledQuery);
+        when(queryService.bindParameters(compiledQuery, Map.of())).thenThrow(new IllegalArgumentException("Missing required query parameter: min_age"));
+        when(queryService.getCompiledQuery("missing")).thenThrow(new IOException("Query file not found: missing.sql"));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> exportService.submit("drop_users", Map.of(), ExportJob.Format.CSV));
+        assertThrows(IllegalArgumentException.class, () -> exportService.submit("get_users_older_than", Map.of(), ExportJob.Format.CSV));
+        assertThrows(IOException.class, () -> exportService.submit("missing", Map.of(), ExportJob.Format.CSV));
+        verify(queryService, never()).exportQuery(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should remove finished exports and their files after the retention")
+    void testRetention() throws Exception {
+        // Given
+        exportService.start();
+        CompiledQuery compiledQuery = withoutParameters();
+        when(queryService.getCompiledQuery("get_user_data")).thenReturn(compiledQuery);
+        when(queryService.copyQuery(any(), any(), any())).thenReturn(0L);
+        ExportJob job = exportService.submit("get_user_data", null, ExportJob.Format.CSV);
+        awaitFinished(job);
+        ReflectionTestUtils.setField(exportService, "retention", Duration.ZERO);
+        Thread.sleep(5);
+
+        // When
+        ExportJob expired = exportService.getJob(job.getId());
+
+        // Then
+        assertNull(expired);
+        assertFalse(Files.exists(job.getFile()));
+        assertFalse(exportService.cancel(job.getId()));
+    }
+
+    @Test
+    @DisplayName("Should delete the files left behind by an earlier run at startup")
+    void testStartDeletesLeftovers() throws IOException {
+        // Given
+        Files.writeString(directory.resolve("old.part"), "partial");
+        Files.writeString(directory.resolve("old.csv.gz"), "finished");
+        Files.writeString(directory.resolve("notes.txt"), "unrelated");
+
+        // When
+        exportService.start();
+
+        // Then
+        assertEquals(List.of("notes.txt"), files());
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static void awaitFinished(ExportJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!job.getStatus().isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.getStatus().isFinished(), "export did not finish");
+    }
+
+    private static String gunzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static CompiledQuery withParameter() {
+        return new CompiledQuery("get_users_older_than", "SELECT id, name FROM users WHERE age > :min_age",
+                List.of(QueryParameter.parse("min_age integer")), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+    }
+
+    private static CompiledQuery withoutParameters() {
+        return new CompiledQuery("get_user_data", "SELECT id, name FROM users", List.of(), QueryOptions.NONE,
+                ValidationResult.valid(), Instant.now());
+    }
+
+    private static ResultSet row(int id, String name) throws SQLException {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        lenient().when(metaData.getColumnCount()).thenReturn(2);
+        lenient().when(metaData.getColumnLabel(1)).thenReturn("id");
+        lenient().when(metaData.getColumnLabel(2)).thenReturn("name");
+        ResultSet rs = mock(ResultSet.class);
+        lenient().when(rs.getMetaData()).thenReturn(metaData);
+        lenient().when(rs.getObject(1)).thenReturn(id);
+        lenient().when(rs.getObject(2)).thenReturn(name);
+        return rs;
+    }
+}
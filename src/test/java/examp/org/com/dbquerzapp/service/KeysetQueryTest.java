@@ -0,0 +1,107 @@
+package examp.org.com.dbquerzapp.service;
+
+import examp.org.com.dbquerzapp.validator.SqlValidator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetQueryTest {
+
+    private static KeysetQuery keyset(String sql) {
+        return KeysetQuery.of(new CompiledQuery("q", sql, List.of(), QueryOptions.NONE, new SqlValidator().validateSql(sql), Instant.now()));
+    }
+
+    @Test
+    @DisplayName("Should order and limit the first page without a key predicate")
+    void testFirstPage() {
+        // Given
+        KeysetQuery keysetQuery = keyset("SELECT * FROM users ORDER BY id");
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        // When
+        String sql = keysetQuery.pageSql(null, 11, parameters);
+
+        // Then
+        assertEquals("SELECT * FROM (\nSELECT * FROM users ORDER BY id\n) page_src ORDER BY id LIMIT :_page_limit", sql);
+        assertEquals(11, parameters.getValue(KeysetQuery.LIMIT_PARAMETER));
+    }
+
+    @Test
+    @DisplayName("Should use a row-value comparison when all keys sort the same way")
+    void testUniformDirectionPredicate() {
+        // Given
+        KeysetQuery keysetQuery = keyset("SELECT * FROM users u ORDER BY u.age DESC, u.id DESC");
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        // When
+        String sql = keysetQuery.pageSql(List.of(30L, 7L), 11, parameters);
+
+        // Then
+        assertTrue(sql.endsWith(" page_src WHERE (age, id) < (:_page_key0, :_page_key1) ORDER BY age DESC, id DESC LIMIT :_page_limit"));
+        assertEquals(30L, parameters.getValue("_page_key0"));
+        assertEquals(7L, parameters.getValue("_page_key1"));
+    }
+
+    @Test
+    @DisplayName("Should expand mixed ASC/DESC keys into an OR chain")
+    void testMixedDirectionPredicate() {
+        // When
+        String sql = keyset("SELECT * FROM users ORDER BY last_name, id DESC").pageSql(List.of("Smith", 3L), 5, new MapSqlParameterSource());
+
+        // Then
+        assertTrue(sql.contains("WHERE ((last_name > :_page_key0) OR (last_name = :_page_key0 AND id < :_page_key1))"));
+    }
+
+    @Test
+    @DisplayName("Should reject queries that cannot be paginated by key")
+    void testRejectsUnsupportedQueries() {
+        assertThrows(IllegalArgumentException.class, () -> keyset("SELECT * FROM users"));
+        assertThrows(IllegalArgumentException.class, () -> keyset("SELECT * FROM users ORDER BY id LIMIT 10"));
+        assertThrows(IllegalArgumentException.class, () -> keyset("SELECT * FROM users ORDER BY lower(email)"));
+    }
+
+    @Test
+    @DisplayName("Should read the key of the last row and reject missing or null key columns")
+    void testKeyOf() {
+        // Given
+        KeysetQuery keysetQuery = keyset("SELECT * FROM users ORDER BY age, \"id\"");
+        Map<String, Object> row = new HashMap<>(Map.of("age", 30, "id", 7L));
+
+        // When & Then
+        assertEquals(List.of(30, 7L), keysetQuery.keyOf(row));
+        row.put("age", null);
+        assertThrows(IllegalArgumentException.class, () -> keysetQuery.keyOf(row));
+        assertThrows(IllegalArgumentException.class, () -> keysetQuery.keyOf(Map.of("id", 1L)));
+    }
+
+    @Test
+    @DisplayName("Should round-trip typed key values through the page token")
+    void testPageTokenRoundTrip() {
+        // Given
+        List<Object> key = List.of(7, "Smith", Timestamp.valueOf("2024-02-29 12:30:00"), Date.valueOf("2024-02-29"),
+                new BigDecimal("1.50"), 2.5d, true, UUID.fromString("123e4567-e89b-12d3-a456-426614174000"));
+
+        // When
+        PageToken decoded = PageToken.decode(new PageToken("abc", key).encode());
+
+        // Then
+        assertEquals("abc", decoded.getFingerprint());
+        assertEquals(List.of(7L, "Smith", LocalDateTime.of(2024, 2, 29, 12, 30), LocalDate.of(2024, 2, 29),
+                new BigDecimal("1.50"), 2.5d, true, UUID.fromString("123e4567-e89b-12d3-a456-426614174000")),
+                decoded.getKeyValues());
+        assertThrows(IllegalArgumentException.class, () -> PageToken.decode("not-a-token"));
+    }
+}
@@ -0,0 +1,104 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryAdmissionGateTest {
+
+    @Test
+    @DisplayName("Should hand out slots up to the limit and release each permit once")
+    void testAcquireAndRelease() {
+        // Given
+        QueryAdmissionGate gate = new QueryAdmissionGate(2, 0, Duration.ZERO, Duration.ofSeconds(3));
+
+        // When
+        QueryAdmissionGate.Permit first = gate.acquire();
+        QueryAdmissionGate.Permit second = gate.acquire();
+
+        // Then
+        assertEquals(0, gate.getAvailableSlots());
+        first.close();
+        first.close();
+        assertEquals(1, gate.getAvailableSlots());
+        second.close();
+        assertEquals(2, gate.getAvailableSlots());
+    }
+
+    @Test
+    @DisplayName("Should reject immediately with Retry-After when the queue is full")
+    void testRejectWhenQueueFull() {
+        // Given
+        QueryAdmissionGate gate = new QueryAdmissionGate(1, 0, Duration.ofSeconds(30), Duration.ofSeconds(3));
+        gate.acquire();
+
+        // When
+        long start = System.nanoTime();
+        QueryRejectedException exception = assertThrows(QueryRejectedException.class, gate::acquire);
+
+        // Then
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertEquals(3, exception.getRetryAfterSeconds());
+        assertEquals(0, gate.getQueued());
+    }
+
+    @Test
+    @DisplayName("Should reject a queued caller once the maximum wait has passed")
+    void testRejectAfterMaxWait() {
+        // Given
+        QueryAdmissionGate gate = new QueryAdmissionGate(1, 5, Duration.ofMillis(50), Duration.ofSeconds(1));
+        gate.acquire();
+
+        // When & Then
+        assertThrows(QueryRejectedException.class, gate::acquire);
+        assertEquals(0, gate.getQueued());
+    }
+
+    @Test
+    @DisplayName("Should admit a queued caller as soon as a slot is released")
+    void testQueuedCallerIsAdmitted() throws Exception {
+        // Given
+        QueryAdmissionGate gate = new QueryAdmissionGate(1, 5, Duration.ofSeconds(5), Duration.ofSeconds(1));
+        QueryAdmissionGate.Permit running = gate.acquire();
+        CompletableFuture<QueryAdmissionGate.Permit> queued = CompletableFuture.supplyAsync(gate::acquire);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (gate.getQueued() == 0) {
+                Thread.onSpinWait();
+            }
+        });
+
+        // When
+        running.close();
+
+        // Then
+        assertNotNull(queued.get(5, TimeUnit.SECONDS));
+        assertEquals(0, gate.getQueued());
+    }
+
+    @Test
+    @DisplayName("Should hand a released slot to the queued caller rather than to a new arrival")
+    void testNewCallerDoesNotBargePastQueue() throws Exception {
+        // Given
+        QueryAdmissionGate gate = new QueryAdmissionGate(1, 5, Duration.ofSeconds(1), Duration.ofSeconds(1));
+        QueryAdmissionGate.Permit running = gate.acquire();
+        CompletableFuture<QueryAdmissionGate.Permit> queued = CompletableFuture.supplyAsync(gate::acquire);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (gate.getQueued() == 0) {
+                Thread.onSpinWait();
+            }
+        });
+        Thread.sleep(50);
+
+        // When
+        running.close();
+
+        // Then
+        assertThrows(QueryRejectedException.class, gate::acquire);
+        assertNotNull(queued.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,183 @@
+package examp.org.com.dbquerzapp.service;
+
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueryCatalogTest {
+
+    @Mock
+    private QueryService queryService;
+
+    @Mock
+    private QueryResultCache queryResultCache;
+
+    @Mock
+    private QuerySnapshots querySnapshots;
+
+    @TempDir
+    Path directory;
+
+    private final CompiledQueryCache compiledQueryCache = new CompiledQueryCache(16);
+    private final Set<String> broken = new HashSet<>(Set.of("broken"));
+    private final Set<String> deleted = new HashSet<>();
+
+    private QueryCatalog catalog;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        catalog = new QueryCatalog();
+        ReflectionTestUtils.setField(catalog, "queryService", queryService);
+        ReflectionTestUtils.setField(catalog, "compiledQueryCache", compiledQueryCache);
+        ReflectionTestUtils.setField(catalog, "queryResultCache", queryResultCache);
+        ReflectionTestUtils.setField(catalog, "querySnapshots", querySnapshots);
+        ReflectionTestUtils.setField(catalog, "directory", directory.toString());
+        ReflectionTestUtils.setField(catalog, "reloadDelay", Duration.ofMillis(100));
+        lenient().when(queryService.compileQuery(anyString())).thenAnswer(invocation -> {
+            String queryIdentifier = invocation.getArgument(0);
+            if (deleted.contains(queryIdentifier)) {
+                throw new IOException("Query file not found: " + queryIdentifier + ".sql");
+            }
+            ValidationResult validationResult = broken.contains(queryIdentifier)
+                    ? ValidationResult.invalid("Only SELECT statements are allowed") : ValidationResult.valid();
+            return new CompiledQuery(queryIdentifier, "SELECT 1", List.of(), QueryOptions.NONE, validationResult, Instant.now());
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        catalog.stop();
+    }
+
+    @Test
+    @DisplayName("Should index, compile and publish the classpath and directory queries at startup")
+    void testLoad() throws IOException {
+        // Given
+        Files.writeString(directory.resolve("reporting.sql"), "SELECT 1");
+        Files.writeString(directory.resolve("broken.sql"), "DELETE FROM users");
+        Files.writeString(directory.resolve("notes.txt"), "not a query");
+
+        // When
+        catalog.afterSingletonsInstantiated();
+
+        // Then
+        assertEquals(List.of("broken.sql", "get_table_data.sql", "get_user_data.sql", "get_users_older_than.sql",
+                "reporting.sql"), catalog.getFileNames());
+        assertEquals(Map.of("broken", "Only SELECT statements are allowed"), catalog.getInvalidQueries());
+        assertTrue(compiledQueryCache.getPublished("reporting").isValid());
+        assertFalse(compiledQueryCache.getPublished("broken").isValid());
+        verify(queryService, never()).warmup(any());
+    }
+
+    @Test
+    @DisplayName("Should fail the startup on an invalid query when configured to")
+    void testFailOnInvalid() throws IOException {
+        // Given
+        Files.writeString(directory.resolve("broken.sql"), "DELETE FROM users");
+        ReflectionTestUtils.setField(catalog, "failOnInvalid", true);
+
+        // When
+        IllegalStateException exception = assertThrows(IllegalStateException.class, catalog::afterSingletonsInstantiated);
+
+        // Then
+        assertEquals("Invalid saved queries: broken", exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("Should warm up every valid query and carry on after a failure")
+    void testWarmup() throws IOException {
+        // Given
+        Files.writeString(directory.resolve("broken.sql"), "DELETE FROM users");
+        ReflectionTestUtils.setField(catalog, "warmup", true);
+        doThrow(new IllegalStateException("connection refused")).doNothing().when(queryService).warmup(any());
+
+        // When
+        catalog.afterSingletonsInstantiated();
+
+        // Then
+        verify(queryService, times(3)).warmup(any());
+        verify(queryService, never()).warmup(argThat(compiledQuery -> compiledQuery.getIdentifier().equals("broken")));
+    }
+
+    @Test
+    @DisplayName("Should keep the previous version live when a changed file no longer validates")
+    void testRefreshKeepsValidVersion() {
+        // Given
+        catalog.reload();
+        clearInvocations(queryResultCache);
+        CompiledQuery live = compiledQueryCache.getPublished("get_user_data");
+        broken.add("get_user_data");
+
+        // When
+        catalog.refresh(List.of("get_user_data"));
+
+        // Then
+        assertSame(live, compiledQueryCache.getPublished("get_user_data"));
+        assertEquals(Map.of("get_user_data", "Only SELECT statements are allowed"), catalog.getInvalidQueries());
+        verify(queryResultCache, never()).invalidate("get_user_data");
+    }
+
+    @Test
+    @DisplayName("Should only recompile changed files, adding new and removing deleted ones")
+    void testRefreshIncremental() throws IOException {
+        // Given
+        catalog.reload();
+        clearInvocations(queryResultCache, querySnapshots);
+        CompiledQuery untouched = compiledQueryCache.getPublished("get_table_data");
+        CompiledQuery previous = compiledQueryCache.getPublished("get_user_data");
+        String version = catalog.getVersion();
+        deleted.add("get_users_older_than");
+
+        // When
+        catalog.refresh(List.of("reporting", "get_users_older_than", "get_user_data"));
+
+        // Then
+        assertEquals(List.of("get_table_data.sql", "get_user_data.sql", "reporting.sql"), catalog.getFileNames());
+        assertNotEquals(version, catalog.getVersion());
+        assertSame(untouched, compiledQueryCache.getPublished("get_table_data"));
+        assertNotSame(previous, compiledQueryCache.getPublished("get_user_data"));
+        assertNull(compiledQueryCache.getPublished("get_users_older_than"));
+        verify(queryResultCache).invalidate("get_users_older_than");
+        verify(queryResultCache).invalidate("get_user_data");
+        verify(querySnapshots).unschedule("get_users_older_than");
+        verify(querySnapshots).schedule(compiledQueryCache.getPublished("get_user_data"));
+        verify(querySnapshots, never()).schedule(untouched);
+        verify(queryService, times(1)).compileQuery("get_table_data");
+    }
+
+    @Test
+    @DisplayName("Should debounce bursts of changes into one reload")
+    void testDebounce() throws IOException {
+        // When
+        catalog.changed("reporting");
+        catalog.changed("reporting");
+        catalog.changed("reporting");
+
+        // Then
+        verify(queryService, timeout(5000)).compileQuery("reporting");
+        verify(queryService, after(300).times(1)).compileQuery("reporting");
+        assertEquals(List.of("reporting.sql"), catalog.getFileNames());
+    }
+}
@@ -0,0 +1,76 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCostGateTest {
+
+    private final QueryCostGate gate = new QueryCostGate(true, 1000, 50000, 100000, 1000000, 1,
+            Duration.ZERO, Duration.ofSeconds(3), Duration.ofMinutes(10), 16);
+
+    @Test
+    @DisplayName("Should read the total cost and row estimate of the top plan node")
+    void testParse() {
+        // When
+        QueryCostGate.Estimate estimate = QueryCostGate.Estimate.parse(
+                "[{\"Plan\": {\"Node Type\": \"Limit\", \"Startup Cost\": 0.0, \"Total Cost\": 42.5, \"Plan Rows\": 100,"
+                        + " \"Plans\": [{\"Node Type\": \"Seq Scan\", \"Total Cost\": 9000.0, \"Plan Rows\": 500000}]}}]");
+
+        // Then
+        assertEquals(new QueryCostGate.Estimate(42.5, 100), estimate);
+        assertEquals(QueryCostGate.Estimate.UNKNOWN, QueryCostGate.Estimate.parse("not a plan"));
+    }
+
+    @Test
+    @DisplayName("Should put a query in a lane by its cost or its rows, and reject it above either limit")
+    void testClassify() {
+        // Then
+        assertEquals(QueryCostGate.Lane.IMMEDIATE, gate.classify("q", new QueryCostGate.Estimate(10, 10)));
+        assertEquals(QueryCostGate.Lane.IMMEDIATE, gate.classify("q", QueryCostGate.Estimate.UNKNOWN));
+        assertEquals(QueryCostGate.Lane.LOW_PRIORITY, gate.classify("q", new QueryCostGate.Estimate(5000, 10)));
+        assertEquals(QueryCostGate.Lane.LOW_PRIORITY, gate.classify("q", new QueryCostGate.Estimate(10, 60000)));
+        assertThrows(QueryCostExceededException.class, () -> gate.classify("q", new QueryCostGate.Estimate(200000, 10)));
+        assertThrows(QueryCostExceededException.class, () -> gate.classify("q", new QueryCostGate.Estimate(10, 2000000)));
+    }
+
+    @Test
+    @DisplayName("Should reject a low-priority query when the lane stays full, and admit it once released")
+    void testLowPriorityLane() {
+        // Given
+        QueryAdmissionGate.Permit permit = gate.acquireLowPriority();
+
+        // When
+        QueryRejectedException exception = assertThrows(QueryRejectedException.class, gate::acquireLowPriority);
+        permit.close();
+        permit.close();
+
+        // Then
+        assertEquals(3, exception.getRetryAfterSeconds());
+        assertEquals(1, gate.getAvailableLowPrioritySlots());
+        gate.acquireLowPriority().close();
+    }
+
+    @Test
+    @DisplayName("Should plan a query shape once and report it as known only once planned")
+    void testEstimateCached() {
+        // Given
+        QueryCostGate.Key key = new QueryCostGate.Key("q", Instant.EPOCH, "SELECT 1");
+        int[] planned = {0};
+
+        // When
+        QueryCostGate.Estimate unknown = gate.cached(key);
+        gate.estimate(key, () -> new QueryCostGate.Estimate(++planned[0], 1));
+        QueryCostGate.Estimate estimate = gate.estimate(key, () -> new QueryCostGate.Estimate(++planned[0], 1));
+
+        // Then
+        assertNull(unknown);
+        assertEquals(1, planned[0]);
+        assertEquals(1, estimate.totalCost());
+        assertSame(estimate, gate.cached(key));
+    }
+}
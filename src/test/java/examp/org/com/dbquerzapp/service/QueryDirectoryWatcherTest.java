@@ -0,0 +1,87 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueryDirectoryWatcherTest {
+
+    @Mock
+    private QueryCatalog queryCatalog;
+
+    private QueryDirectoryWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        watcher = new QueryDirectoryWatcher();
+        ReflectionTestUtils.setField(watcher, "queryCatalog", queryCatalog);
+    }
+
+    @Test
+    @DisplayName("Should report the identifier of a changed .sql file to the catalog")
+    void testHandleSqlFileChange() {
+        watcher.handle(event(StandardWatchEventKinds.ENTRY_MODIFY, Path.of("get_user_data.sql")));
+
+        verify(queryCatalog).changed("get_user_data");
+    }
+
+    @Test
+    @DisplayName("Should ignore files that are not queries")
+    void testHandleOtherFile() {
+        watcher.handle(event(StandardWatchEventKinds.ENTRY_CREATE, Path.of("README.md")));
+
+        verifyNoInteractions(queryCatalog);
+    }
+
+    @Test
+    @DisplayName("Should reload everything when events were lost")
+    void testHandleOverflow() {
+        watcher.handle(event(StandardWatchEventKinds.OVERFLOW, null));
+
+        verify(queryCatalog).changedAll();
+    }
+
+    @Test
+    @DisplayName("Should pick up changes in a watched directory")
+    void testWatchDirectory(@TempDir Path directory) throws Exception {
+        ReflectionTestUtils.setField(watcher, "directory", directory.toString());
+        watcher.start();
+        try {
+            Files.writeString(directory.resolve("new_query.sql"), "SELECT * FROM users");
+
+            verify(queryCatalog, timeout(15000).atLeastOnce()).changed("new_query");
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Should not start without a configured directory")
+    void testStartWithoutDirectory() throws Exception {
+        watcher.start();
+        watcher.stop();
+
+        verifyNoInteractions(queryCatalog);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static WatchEvent<Path> event(WatchEvent.Kind<?> kind, Path context) {
+        WatchEvent<Path> event = mock(WatchEvent.class);
+        doReturn(kind).when(event).kind();
+        lenient().when(event.context()).thenReturn(context);
+        return event;
+    }
+}
@@ -0,0 +1,203 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class QueryGovernorTest {
+
+    private final QueryGovernor governor = new QueryGovernor(Duration.ofSeconds(30), 100,
+            DataSize.ofMegabytes(1), DataSize.ofMegabytes(4), Duration.ofSeconds(3));
+
+    @Test
+    @DisplayName("Should apply the tighter of the global and per-query limits to statements of the current thread")
+    void testApplyLimits() throws SQLException {
+        // Given
+        Statement statement = mock(Statement.class);
+        GovernedJdbcTemplate template = new GovernedJdbcTemplate(mock(DataSource.class));
+        QueryOptions options = new QueryOptions(null, Duration.ofMillis(1500), 500, false, null, null, null, null);
+
+        // When
+        try (QueryGovernor.Scope scope = governor.materializing(options)) {
+            template.applyStatementSettings(statement);
+        }
+
+        // Then
+        verify(statement).setQueryTimeout(2);
+        verify(statement).setMaxRows(101);
+        assertNull(QueryGovernor.current());
+        assertEquals(50, governor.maxRows(new QueryOptions(null, null, 50, false, null, null, null, null)));
+    }
+
+    @Test
+    @DisplayName("Should leave statements created outside a scope alone")
+    void testNoScope() throws SQLException {
+        // Given
+        Statement statement = mock(Statement.class);
+
+        // When
+        new GovernedJdbcTemplate(mock(DataSource.class)).applyStatementSettings(statement);
+
+        // Then
+        verify(statement, never()).setQueryTimeout(anyInt());
+        verify(statement, never()).setMaxRows(anyInt());
+    }
+
+    @Test
+    @DisplayName("Should cut the result off at max-rows and mark it truncated")
+    void testTruncateAtMaxRows() throws SQLException {
+        // Given
+        ResultSet resultSet = rows(3, "John");
+
+        // When
+        List<Map<String, Object>> rows;
+        try (QueryGovernor.Scope scope = governor.materializing(new QueryOptions(null, null, 2, false, null, null, null, null))) {
+            rows = scope.extract(resultSet);
+        }
+
+        // Then
+        assertTrue(TruncatedRows.isTruncated(rows));
+        assertEquals(2, rows.size());
+        assertEquals(0, governor.getReservedBytes());
+    }
+
+    @Test
+    @DisplayName("Should return a result that fits exactly without marking it truncated")
+    void testResultWithinLimits() throws SQLException {
+        // Given
+        ResultSet resultSet = rows(2, "John");
+
+        // When
+        List<Map<String, Object>> rows;
+        try (QueryGovernor.Scope scope = governor.materializing(new QueryOptions(null, null, 2, false, null, null, null, null))) {
+            rows = scope.extract(resultSet);
+        }
+
+        // Then
+        assertFalse(TruncatedRows.isTruncated(rows));
+        assertEquals(2, rows.size());
+        assertEquals("John", rows.get(1).get("name"));
+    }
+
+    @Test
+    @DisplayName("Should cut the result off at max-bytes")
+    void testTruncateAtMaxBytes() throws SQLException {
+        // Given
+        QueryGovernor small = new QueryGovernor(null, 0, DataSize.ofBytes(1000), DataSize.ofBytes(0), Duration.ofSeconds(1));
+        ResultSet resultSet = rows(10, "x".repeat(300));
+
+        // When
+        List<Map<String, Object>> rows;
+        try (QueryGovernor.Scope scope = small.materializing(QueryOptions.NONE)) {
+            rows = scope.extract(resultSet);
+        }
+
+        // Then
+        assertTrue(TruncatedRows.isTruncated(rows));
+        assertEquals(2, rows.size());
+    }
+
+    @Test
+    @DisplayName("Should reject a result that exceeds the shared memory budget and release its reservation")
+    void testMemoryBudget() throws SQLException {
+        // Given
+        QueryGovernor small = new QueryGovernor(null, 0, DataSize.ofMegabytes(1), DataSize.ofBytes(1000), Duration.ofSeconds(3));
+        ResultSet resultSet = rows(10, "x".repeat(300));
+
+        // When
+        QueryRejectedException exception;
+        try (QueryGovernor.Scope scope = small.materializing(QueryOptions.NONE)) {
+            exception = assertThrows(QueryRejectedException.class, () -> scope.extract(resultSet));
+        }
+
+        // Then
+        assertEquals(3, exception.getRetryAfterSeconds());
+        assertEquals(0, small.getReservedBytes());
+    }
+
+    @Test
+    @DisplayName("Should keep the result of a request reserved until the request completes")
+    void testReservationHeldUntilRequestCompletes() throws SQLException {
+        // Given
+        ServletRequestAttributes attributes = new ServletRequestAttributes(new MockHttpServletRequest());
+        ResultSet resultSet = rows(3, "John");
+        List<Map<String, Object>> rows;
+        RequestContextHolder.setRequestAttributes(attributes);
+        try (QueryGovernor.Scope scope = governor.materializing(QueryOptions.NONE)) {
+            rows = scope.extract(resultSet);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        long reserved = governor.getReservedBytes();
+
+        // When
+        attributes.requestCompleted();
+
+        // Then
+        assertEquals(3, rows.size());
+        assertTrue(reserved > 0);
+        assertEquals(0, governor.getReservedBytes());
+    }
+
+    @Test
+    @DisplayName("Should cancel the registered statement and refuse statements after cancellation")
+    void testCancellation() throws SQLException {
+        // Given
+        QueryCancellation cancellation = new QueryCancellation();
+        Statement running = mock(Statement.class);
+        Statement next = mock(Statement.class);
+
+        try (QueryGovernor.Scope scope = governor.streaming(QueryOptions.NONE, cancellation)) {
+            // When
+            scope.apply(running);
+            cancellation.cancel();
+
+            // Then
+            verify(running).cancel();
+            verify(running, never()).setMaxRows(anyInt());
+            SQLException exception = assertThrows(SQLException.class, () -> scope.apply(next));
+            assertTrue(QueryGovernor.isCancellation(exception));
+        }
+        assertTrue(cancellation.isCancelled());
+    }
+
+    @Test
+    @DisplayName("Should recognize timeouts and cancelled statements among the causes of a failure")
+    void testIsCancellation() {
+        assertTrue(QueryGovernor.isCancellation(new QueryTimeoutException("timeout")));
+        assertTrue(QueryGovernor.isCancellation(new UncategorizedSQLException("query", "SELECT 1",
+                new SQLException("canceling statement due to user request", "57014"))));
+        assertFalse(QueryGovernor.isCancellation(new UncategorizedSQLException("query", "SELECT 1",
+                new SQLException("relation does not exist", "42P01"))));
+    }
+
+    private static ResultSet rows(int count, String name) throws SQLException {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnLabel(1)).thenReturn("name");
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        AtomicInteger remaining = new AtomicInteger(count);
+        when(resultSet.next()).thenAnswer(invocation -> remaining.getAndDecrement() > 0);
+        when(resultSet.getObject(1)).thenReturn(name);
+        return resultSet;
+    }
+}
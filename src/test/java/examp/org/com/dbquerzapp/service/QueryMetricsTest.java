@@ -0,0 +1,43 @@
+package examp.org.com.dbquerzapp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final QueryMetrics metrics = new QueryMetrics(registry);
+
+    @Test
+    @DisplayName("Should time a phase with the success outcome and return its result")
+    void testTimeSuccess() {
+        String result = metrics.time(QueryMetrics.ADMISSION, "get_user_data", () -> "permit");
+
+        assertEquals("permit", result);
+        assertEquals(1, registry.get(QueryMetrics.PHASE).tag("phase", QueryMetrics.ADMISSION)
+                .tag("query", "get_user_data").tag("outcome", QueryMetrics.SUCCESS).timer().count());
+    }
+
+    @Test
+    @DisplayName("Should time a failing phase with the error outcome and rethrow")
+    void testTimeFailure() {
+        assertThrows(QueryRejectedException.class, () -> metrics.time(QueryMetrics.ADMISSION, "get_user_data", () -> {
+            throw new QueryRejectedException("Too many queries in progress, retry later", 2);
+        }));
+
+        assertEquals(1, registry.get(QueryMetrics.PHASE).tag("outcome", QueryMetrics.ERROR).timer().count());
+    }
+
+    @Test
+    @DisplayName("Should record the rows returned per query")
+    void testRecordRows() {
+        metrics.recordRows("get_user_data", 10);
+        metrics.recordRows("get_user_data", 30);
+
+        assertEquals(2, registry.get(QueryMetrics.ROWS).tag("query", "get_user_data").summary().count());
+        assertEquals(30.0, registry.get(QueryMetrics.ROWS).summary().max());
+    }
+}
@@ -0,0 +1,63 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryParameterTest {
+
+    @Test
+    @DisplayName("Should parse required and defaulted declarations")
+    void testParseDeclaration() {
+        // When
+        QueryParameter required = QueryParameter.parse("min_age integer");
+        QueryParameter defaulted = QueryParameter.parse("country  varchar =  HU ");
+
+        // Then
+        assertEquals("min_age", required.getName());
+        assertEquals(QueryParameter.Type.INTEGER, required.getType());
+        assertTrue(required.isRequired());
+        assertEquals(QueryParameter.Type.TEXT, defaulted.getType());
+        assertEquals("HU", defaulted.getDefaultValue());
+        assertFalse(defaulted.isRequired());
+    }
+
+    @Test
+    @DisplayName("Should reject malformed declarations, unknown types and invalid defaults")
+    void testParseInvalidDeclaration() {
+        assertEquals("Invalid parameter declaration: integer",
+                assertThrows(IllegalArgumentException.class, () -> QueryParameter.parse("integer")).getMessage());
+        assertEquals("Unknown query parameter type: money",
+                assertThrows(IllegalArgumentException.class, () -> QueryParameter.parse("price money")).getMessage());
+        assertEquals("Invalid value for query parameter since: expected date",
+                assertThrows(IllegalArgumentException.class, () -> QueryParameter.parse("since date = yesterday")).getMessage());
+    }
+
+    @Test
+    @DisplayName("Should convert JSON and query-string values to the declared type")
+    void testConvert() {
+        assertEquals(42, QueryParameter.parse("a int").convert("42"));
+        assertEquals(42L, QueryParameter.parse("a bigint").convert(42));
+        assertEquals(new BigDecimal("1.50"), QueryParameter.parse("a numeric").convert("1.50"));
+        assertEquals("42", QueryParameter.parse("a text").convert(42));
+        assertEquals(Boolean.TRUE, QueryParameter.parse("a boolean").convert("TRUE"));
+        assertEquals(Boolean.FALSE, QueryParameter.parse("a bool").convert(false));
+        assertEquals(LocalDate.of(2024, 2, 29), QueryParameter.parse("a date").convert("2024-02-29"));
+        assertEquals(LocalDateTime.of(2024, 2, 29, 12, 30), QueryParameter.parse("a timestamp").convert("2024-02-29T12:30:00"));
+        assertNull(QueryParameter.parse("a integer").convert(null));
+    }
+
+    @Test
+    @DisplayName("Should reject values that do not match the declared type")
+    void testConvertInvalidValue() {
+        assertThrows(IllegalArgumentException.class, () -> QueryParameter.parse("a integer").convert("4.2"));
+        assertThrows(IllegalArgumentException.class, () -> QueryParameter.parse("a integer").convert(true));
+        assertThrows(IllegalArgumentException.class, () -> QueryParameter.parse("a boolean").convert("yes"));
+        assertThrows(IllegalArgumentException.class, () -> QueryParameter.parse("a timestamp").convert("noon"));
+    }
+}
@@ -0,0 +1,96 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.example.model.QueryDelta;
+import com.example.model.QueryResponse;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryResponseSerializerTest {
+
+    private final ObjectMapper reflective = new ObjectMapper().setDefaultPropertyInclusion(JsonInclude.Include.NON_NULL);
+    private final ObjectMapper direct = new ObjectMapper().setDefaultPropertyInclusion(JsonInclude.Include.NON_NULL)
+            .registerModule(new SimpleModule().addSerializer(QueryResponse.class, new QueryResponseSerializer()));
+
+    @Test
+    @DisplayName("Should write a successful, paginated response like the bean serializer")
+    void testSuccessResponse() throws Exception {
+        // Given
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("name", "John");
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(Boolean.TRUE);
+        response.setData(new ArrayList<>(List.of(row)));
+        response.setExecutionTimeMs(42L);
+        response.setPageSize(1);
+        response.setNextPageToken("token");
+        response.setTruncated(Boolean.TRUE);
+        response.setSnapshotAgeMs(1500L);
+
+        // When
+        String json = direct.writeValueAsString(response);
+
+        // Then
+        assertEquals(reflective.writeValueAsString(response), json);
+        assertEquals("{\"success\":true,\"data\":[{\"id\":1,\"name\":\"John\"}],\"execution_time_ms\":42,"
+                + "\"page_size\":1,\"next_page_token\":\"token\",\"truncated\":true,\"snapshot_age_ms\":1500}", json);
+    }
+
+    @Test
+    @DisplayName("Should write the version and delta of a keyed result like the bean serializer")
+    void testDeltaResponse() throws Exception {
+        // Given
+        QueryDelta delta = new QueryDelta();
+        delta.setBaseVersion("1a2b");
+        delta.setInserted(new ArrayList<>(List.of(Map.of("id", 4))));
+        delta.setUpdated(new ArrayList<>());
+        delta.setDeleted(new ArrayList<>(List.of(Map.of("id", 3))));
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(Boolean.TRUE);
+        response.setData(null);
+        response.setExecutionTimeMs(5L);
+        response.setVersion("3c4d");
+        response.setDelta(delta);
+
+        // When
+        String json = direct.writeValueAsString(response);
+
+        // Then
+        assertEquals(reflective.writeValueAsString(response), json);
+        assertEquals("{\"success\":true,\"execution_time_ms\":5,\"version\":\"3c4d\",\"delta\":{\"base_version\":\"1a2b\","
+                + "\"inserted\":[{\"id\":4}],\"updated\":[],\"deleted\":[{\"id\":3}]}}", json);
+    }
+
+    @Test
+    @DisplayName("Should write an error response like the bean serializer, with and without null fields")
+    void testErrorResponse() throws Exception {
+        // Given
+        QueryResponse response = new QueryResponse();
+        response.setSuccess(Boolean.FALSE);
+        response.setData(null);
+        response.setError("Query not found");
+        response.setCode(404);
+        response.setExecutionTimeMs(3L);
+        ObjectMapper reflectiveWithNulls = new ObjectMapper();
+        ObjectMapper directWithNulls = new ObjectMapper()
+                .registerModule(new SimpleModule().addSerializer(QueryResponse.class, new QueryResponseSerializer()));
+
+        // When
+        String json = direct.writeValueAsString(response);
+        String withNulls = directWithNulls.writeValueAsString(response);
+
+        // Then
+        assertEquals("{\"success\":false,\"error\":\"Query not found\",\"code\":404,\"execution_time_ms\":3}", json);
+        assertEquals(reflectiveWithNulls.writeValueAsString(response), withNulls);
+    }
+}
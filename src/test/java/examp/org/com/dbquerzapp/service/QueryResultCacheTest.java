@@ -0,0 +1,222 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryResultCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    private QueryResultCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new QueryResultCache(new ObjectMapper(), DataSize.ofMegabytes(1));
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    @DisplayName("Should store rows as pre-serialized JSON and count hits and misses")
+    void testSerializedRows() {
+        List<RawValue> first = cache.get(key("get_user_data", Map.of()), TTL, this::load);
+        List<RawValue> second = cache.get(key("get_user_data", Map.of()), TTL, this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals("{\"id\":1,\"name\":\"John\"}", first.get(0).rawValue().toString());
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    @DisplayName("Should keep a truncated result marked as truncated on hits")
+    void testTruncatedResult() {
+        List<RawValue> first = cache.get(key("get_user_data", Map.of()), TTL, () -> new TruncatedRows<>(load()));
+        List<RawValue> second = cache.get(key("get_user_data", Map.of()), TTL, this::load);
+
+        assertInstanceOf(TruncatedRows.class, first);
+        assertSame(first, second);
+        assertEquals(1, second.size());
+    }
+
+    @Test
+    @DisplayName("Should compute the ETag of a result once when it is cached")
+    void testETag() {
+        List<RawValue> first = cache.get(key("get_user_data", Map.of()), TTL, this::load);
+        List<RawValue> second = cache.get(key("get_user_data", Map.of()), TTL, this::load);
+        List<RawValue> same = cache.get(key("get_table_data", Map.of()), TTL, this::load);
+        List<RawValue> truncated = cache.get(key("get_users_older_than", Map.of()), TTL, () -> new TruncatedRows<>(load()));
+
+        String etag = VersionedRows.etagOf(first);
+        assertTrue(etag.startsWith("W/\""));
+        assertSame(etag, VersionedRows.etagOf(second));
+        assertEquals(etag, VersionedRows.etagOf(same));
+        assertNotEquals(etag, VersionedRows.etagOf(truncated));
+    }
+
+    @Test
+    @DisplayName("Should keep separate results per parameter values and compilation")
+    void testKeyedByParametersAndCompilation() {
+        Instant compiledAt = Instant.now();
+        cache.get(new QueryResultCache.Key("q", compiledAt, Map.of("min_age", 30)), TTL, this::load);
+        cache.get(new QueryResultCache.Key("q", compiledAt, Map.of("min_age", 40)), TTL, this::load);
+        cache.get(new QueryResultCache.Key("q", compiledAt.plusSeconds(1), Map.of("min_age", 30)), TTL, this::load);
+        cache.get(new QueryResultCache.Key("q", compiledAt, Map.of("min_age", 30)), TTL, this::load);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should run the query once for concurrent misses of the same key")
+    void testSingleFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<RawValue>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.get(key("get_user_data", Map.of()), TTL, () -> {
+                    await(release);
+                    return load();
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            List<RawValue> first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<List<RawValue>> result : results) {
+                assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should let callers waiting for a failed query run it themselves")
+    void testWaitersRetryFailedLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<List<RawValue>> failed = executor.submit(() -> cache.get(key("get_user_data", Map.of()), TTL, () -> {
+                loading.countDown();
+                await(fail);
+                throw new QueryRejectedException("Too many queries in progress, retry later", 2);
+            }));
+            loading.await(5, TimeUnit.SECONDS);
+            Future<List<RawValue>> waiting = executor.submit(() -> cache.get(key("get_user_data", Map.of()), TTL, this::load));
+            Thread.sleep(100);
+            fail.countDown();
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(QueryRejectedException.class, exception.getCause());
+            assertEquals(1, waiting.get(5, TimeUnit.SECONDS).size());
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should run the query again once the TTL has passed")
+    void testExpiresAfterTtl() throws InterruptedException {
+        cache.get(key("get_user_data", Map.of()), Duration.ofMillis(10), this::load);
+        Thread.sleep(50);
+        cache.get(key("get_user_data", Map.of()), Duration.ofMillis(10), this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should not cache a failed query")
+    void testFailedLoadNotCached() {
+        assertThrows(IllegalStateException.class, () -> cache.get(key("get_user_data", Map.of()), TTL, () -> {
+            throw new IllegalStateException("Connection refused");
+        }));
+        cache.get(key("get_user_data", Map.of()), TTL, this::load);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should version a result once when it is cached and return that version on hits")
+    void testVersionedResult() {
+        ResultVersions resultVersions = new ResultVersions(new ObjectMapper(), DataSize.ofMegabytes(1), TTL);
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT id, name FROM users", List.of(),
+                new QueryOptions(TTL, null, null, false, null, null, null, List.of("id")), ValidationResult.valid(), Instant.now());
+        AtomicInteger versions = new AtomicInteger();
+        Function<List<RawValue>, ResultVersions.Version> versioning = rows -> {
+            versions.incrementAndGet();
+            return resultVersions.index(compiledQuery, rows);
+        };
+
+        List<RawValue> first = cache.get(key("get_user_data", Map.of()), TTL, this::load, versioning);
+        List<RawValue> second = cache.get(key("get_user_data", Map.of()), TTL, this::load, versioning);
+        List<RawValue> truncated = cache.get(key("get_table_data", Map.of()), TTL, () -> new TruncatedRows<>(load()), versioning);
+
+        assertNotNull(VersionedRows.versionOf(first));
+        assertSame(VersionedRows.versionOf(first), VersionedRows.versionOf(second));
+        assertInstanceOf(TruncatedRows.class, truncated);
+        assertNull(VersionedRows.versionOf(truncated));
+        assertEquals(1, versions.get());
+    }
+
+    @Test
+    @DisplayName("Should invalidate the results of one query or of all queries")
+    void testInvalidate() {
+        cache.get(key("get_user_data", Map.of()), TTL, this::load);
+        cache.get(key("get_table_data", Map.of()), TTL, this::load);
+
+        cache.invalidate("get_user_data");
+        cache.get(key("get_user_data", Map.of()), TTL, this::load);
+        cache.get(key("get_table_data", Map.of()), TTL, this::load);
+        assertEquals(3, loads.get());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    private List<Map<String, Object>> load() {
+        loads.incrementAndGet();
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("name", "John");
+        return List.of(row);
+    }
+
+    private static QueryResultCache.Key key(String queryIdentifier, Map<String, Object> parameters) {
+        return new QueryResultCache.Key(queryIdentifier, Instant.EPOCH, parameters);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,21 +1,52 @@
 package examp.org.com.dbquerzapp.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import examp.org.com.dbquerzapp.validator.SqlValidator;
 import examp.org.com.dbquerzapp.validator.ValidationResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.util.unit.DataSize;
 
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,6 +59,9 @@ class QueryServiceTest {
     @Mock
     private JdbcTemplate jdbcTemplate;
 
+    @Mock
+    private NamedParameterJdbcTemplate queryJdbcTemplate;
+
     @Mock
     private SqlValidator sqlValidator;
 
@@ -36,12 +70,34 @@ class QueryServiceTest {
 
     private QueryService queryService;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ReplicaRouter replicaRouter = new ReplicaRouter(Map.of("replica-1", mock(DataSource.class)),
+            Duration.ofSeconds(10), "SELECT 0", Duration.ofSeconds(5));
+
     @BeforeEach
     void setUp() {
         queryService = new QueryService();
         ReflectionTestUtils.setField(queryService, "jdbcTemplate", jdbcTemplate);
         ReflectionTestUtils.setField(queryService, "sqlValidator", sqlValidator);
         ReflectionTestUtils.setField(queryService, "resolver", resolver);
+        ReflectionTestUtils.setField(queryService, "compiledQueryCache", new CompiledQueryCache(16));
+        ReflectionTestUtils.setField(queryService, "queryJdbcTemplate", queryJdbcTemplate);
+        ReflectionTestUtils.setField(queryService, "maxPageSize", 1000);
+        ReflectionTestUtils.setField(queryService, "queryResultCache", new QueryResultCache(new ObjectMapper(), DataSize.ofMegabytes(1)));
+        ReflectionTestUtils.setField(queryService, "admissionGate", new QueryAdmissionGate(1, 0, Duration.ZERO, Duration.ofSeconds(1)));
+        ReflectionTestUtils.setField(queryService, "workloadScheduler", new WorkloadScheduler(Map.of(), Map.of(),
+                WorkloadScheduler.INTERACTIVE, "X-Client-Id", Duration.ofSeconds(1), meterRegistry));
+        ReflectionTestUtils.setField(queryService, "queryMetrics", new QueryMetrics(meterRegistry));
+        ReflectionTestUtils.setField(queryService, "queryGovernor", new QueryGovernor(Duration.ofSeconds(30), 100000,
+                DataSize.ofMegabytes(64), DataSize.ofMegabytes(256), Duration.ofSeconds(1)));
+        ReflectionTestUtils.setField(queryService, "replicaRouter", replicaRouter);
+        ReflectionTestUtils.setField(queryService, "queryCostGate", costGate(false));
+    }
+
+    private static QueryCostGate costGate(boolean enabled) {
+        return new QueryCostGate(enabled, 1000, 0, 100000, 0, 1, Duration.ZERO, Duration.ofSeconds(1),
+                Duration.ofMinutes(10), 16);
     }
 
     @Test
@@ -262,4 +318,719 @@ class QueryServiceTest {
         verify(sqlValidator).validateSql(sql);
         verify(jdbcTemplate, never()).queryForList(any());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Should stream valid SQL with bound parameters")
+    void testStreamQuerySuccess() {
+        // Given
+        String sql = "SELECT * FROM users WHERE age >= :min_age";
+        CompiledQuery compiledQuery = new CompiledQuery("get_users_older_than", sql,
+                List.of(new QueryParameter("min_age", QueryParameter.Type.INTEGER, null)), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        RowCallbackHandler handler = rs -> { };
+
+        // When
+        queryService.streamQuery(compiledQuery, Map.of("min_age", "30"), handler, null);
+
+        // Then
+        verify(queryJdbcTemplate).query(eq(sql), argThat((SqlParameterSource source) ->
+                Integer.valueOf(30).equals(source.getValue("min_age"))), same(handler));
+    }
+
+    @Test
+    @DisplayName("Should not stream invalid SQL")
+    void testStreamQueryInvalidSql() {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("drop_users", "DROP TABLE users", List.of(), QueryOptions.NONE,
+                ValidationResult.invalid("Dangerous SQL keyword detected: DROP"), Instant.now());
+
+        // When & Then
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            queryService.streamQuery(compiledQuery, Map.of(), rs -> { }, null);
+        });
+
+        assertTrue(exception.getMessage().contains("Dangerous SQL keyword detected"));
+        verifyNoInteractions(queryJdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("Should load, normalize and validate a query only once")
+    void testGetCompiledQueryCachesResult() throws IOException {
+        // Given
+        Resource resource = new ByteArrayResource("  SELECT * FROM users;\n".getBytes(StandardCharsets.UTF_8));
+        when(resolver.getResource("classpath:queries/get_user_data.sql")).thenReturn(resource);
+        when(sqlValidator.validateSql("SELECT * FROM users")).thenReturn(ValidationResult.valid());
+
+        // When
+        CompiledQuery first = queryService.getCompiledQuery("get_user_data");
+        CompiledQuery second = queryService.getCompiledQuery("get_user_data");
+
+        // Then
+        assertSame(first, second);
+        assertEquals("SELECT * FROM users", first.getSql());
+        assertTrue(first.isValid());
+        verify(resolver, times(1)).getResource("classpath:queries/get_user_data.sql");
+        verify(sqlValidator, times(1)).validateSql("SELECT * FROM users");
+    }
+
+    @Test
+    @DisplayName("Should keep invalid queries compiled and refuse to execute them")
+    void testExecuteInvalidCompiledQuery() throws IOException {
+        // Given
+        Resource resource = new ByteArrayResource("SELECT FORM users".getBytes(StandardCharsets.UTF_8));
+        when(resolver.getResource("classpath:queries/broken.sql")).thenReturn(resource);
+        when(sqlValidator.validateSql("SELECT FORM users")).thenReturn(ValidationResult.invalid("Invalid SQL syntax"));
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("broken");
+
+        // Then
+        assertFalse(compiledQuery.isValid());
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            queryService.executeQuery(compiledQuery);
+        });
+        assertTrue(exception.getMessage().contains("Invalid SQL syntax"));
+        verifyNoInteractions(queryJdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("Should execute compiled queries without validating them again")
+    void testExecuteCompiledQuery() {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        List<Map<String, Object>> expectedResults = List.of(Map.of("id", 1));
+        when(queryJdbcTemplate.query(eq("SELECT * FROM users"), any(SqlParameterSource.class), any(ResultSetExtractor.class))).thenReturn(expectedResults);
+
+        // When
+        List<Map<String, Object>> results = queryService.executeQuery(compiledQuery);
+
+        // Then
+        assertEquals(expectedResults, results);
+        verifyNoInteractions(sqlValidator);
+    }
+
+    @Test
+    @DisplayName("Should prefer the external query directory over the classpath")
+    void testLoadQueryFromExternalDirectory(@TempDir Path directory) throws IOException {
+        // Given
+        Files.writeString(directory.resolve("external.sql"), "SELECT id FROM users");
+        ReflectionTestUtils.setField(queryService, "queryDirectory", directory.toString());
+
+        // When
+        String sql = queryService.loadQueryFromFile("external");
+
+        // Then
+        assertEquals("SELECT id FROM users", sql);
+        verify(resolver, never()).getResource(anyString());
+    }
+
+    @Test
+    @DisplayName("Should compile parameter declarations together with the query template")
+    void testCompileQueryWithParameters() throws IOException {
+        // Given
+        String sql = "-- @param min_age integer\n-- @param since date = 2020-01-01\nSELECT * FROM users WHERE age >= :min_age";
+        when(resolver.getResource("classpath:queries/get_users_older_than.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        when(sqlValidator.validateSql(sql)).thenReturn(new SqlValidator().validateSql(sql));
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("get_users_older_than");
+
+        // Then
+        assertTrue(compiledQuery.isValid());
+        assertEquals(2, compiledQuery.getParameters().size());
+        assertEquals("min_age", compiledQuery.getParameters().get(0).getName());
+        assertTrue(compiledQuery.getParameters().get(0).isRequired());
+        assertEquals(QueryParameter.Type.DATE, compiledQuery.getParameters().get(1).getType());
+        assertEquals("2020-01-01", compiledQuery.getParameters().get(1).getDefaultValue());
+    }
+
+    @Test
+    @DisplayName("Should reject a query that uses an undeclared parameter")
+    void testCompileQueryWithUndeclaredParameter() throws IOException {
+        // Given
+        String sql = "SELECT * FROM users WHERE age >= :min_age";
+        when(resolver.getResource("classpath:queries/undeclared.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        when(sqlValidator.validateSql(sql)).thenReturn(new SqlValidator().validateSql(sql));
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("undeclared");
+
+        // Then
+        assertFalse(compiledQuery.isValid());
+        assertEquals("Undeclared query parameter: min_age", compiledQuery.getValidationResult().getErrorMessage());
+    }
+
+    @Test
+    @DisplayName("Should reject a malformed parameter declaration without validating the SQL")
+    void testCompileQueryWithInvalidDeclaration() throws IOException {
+        // Given
+        String sql = "-- @param min_age weird\nSELECT * FROM users WHERE age >= :min_age";
+        when(resolver.getResource("classpath:queries/bad_param.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("bad_param");
+
+        // Then
+        assertFalse(compiledQuery.isValid());
+        assertEquals("Unknown query parameter type: weird", compiledQuery.getValidationResult().getErrorMessage());
+        verifyNoInteractions(sqlValidator);
+    }
+
+    @Test
+    @DisplayName("Should bind typed values, apply defaults and pass SQL types")
+    void testBindParameters() {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("q", "SELECT * FROM users WHERE age >= :min_age AND created >= :since",
+                List.of(new QueryParameter("min_age", QueryParameter.Type.INTEGER, null),
+                        new QueryParameter("since", QueryParameter.Type.DATE, "2020-01-01")), QueryOptions.NONE,
+                ValidationResult.valid(), Instant.now());
+
+        // When
+        MapSqlParameterSource source = queryService.bindParameters(compiledQuery, Map.of("min_age", 30));
+
+        // Then
+        assertEquals(30, source.getValue("min_age"));
+        assertEquals(LocalDate.of(2020, 1, 1), source.getValue("since"));
+        assertEquals(Types.INTEGER, source.getSqlType("min_age"));
+        assertEquals(Types.DATE, source.getSqlType("since"));
+    }
+
+    @Test
+    @DisplayName("Should reject missing, unknown and mistyped parameter values")
+    void testBindParametersRejectsBadValues() {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("q", "SELECT * FROM users WHERE age >= :min_age",
+                List.of(new QueryParameter("min_age", QueryParameter.Type.INTEGER, null)), QueryOptions.NONE,
+                ValidationResult.valid(), Instant.now());
+
+        // When & Then
+        assertEquals("Missing required query parameter: min_age", assertThrows(IllegalArgumentException.class,
+                () -> queryService.bindParameters(compiledQuery, Map.of())).getMessage());
+        assertEquals("Unknown query parameter: max_age", assertThrows(IllegalArgumentException.class,
+                () -> queryService.bindParameters(compiledQuery, Map.of("min_age", 1, "max_age", 2))).getMessage());
+        assertEquals("Invalid value for query parameter min_age: expected integer", assertThrows(IllegalArgumentException.class,
+                () -> queryService.bindParameters(compiledQuery, Map.of("min_age", "thirty"))).getMessage());
+        verifyNoInteractions(queryJdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("Should execute parameterized queries through the named parameter template")
+    void testExecuteCompiledQueryWithParameters() {
+        // Given
+        String sql = "SELECT * FROM users WHERE age >= :min_age";
+        CompiledQuery compiledQuery = new CompiledQuery("get_users_older_than", sql,
+                List.of(new QueryParameter("min_age", QueryParameter.Type.BIGINT, null)), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        List<Map<String, Object>> expectedResults = List.of(Map.of("id", 1));
+        when(queryJdbcTemplate.query(eq(sql), any(SqlParameterSource.class), any(ResultSetExtractor.class))).thenReturn(expectedResults);
+
+        // When
+        List<Map<String, Object>> results = queryService.executeQuery(compiledQuery, Map.of("min_age", 30));
+
+        // Then
+        assertEquals(expectedResults, results);
+        verify(queryJdbcTemplate).query(eq(sql), argThat((SqlParameterSource source) ->
+                Long.valueOf(30).equals(source.getValue("min_age"))), any(ResultSetExtractor.class));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("Should return a page and continue after its last key with the next page token")
+    void testExecutePageWithToken() {
+        // Given
+        String sql = "SELECT * FROM users ORDER BY id";
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", sql, List.of(), QueryOptions.NONE, new SqlValidator().validateSql(sql), Instant.now());
+        when(queryJdbcTemplate.query(anyString(), any(SqlParameterSource.class), any(ResultSetExtractor.class)))
+                .thenReturn(List.of(Map.of("id", 1L), Map.of("id", 2L), Map.of("id", 3L)))
+                .thenReturn(List.of(Map.of("id", 3L)));
+
+        // When
+        QueryPage first = queryService.executePage(compiledQuery, Map.of(), 2, null);
+        QueryPage second = queryService.executePage(compiledQuery, Map.of(), 2, first.getNextPageToken());
+
+        // Then
+        assertEquals(2, first.getRows().size());
+        assertNotNull(first.getNextPageToken());
+        assertEquals(List.of(Map.of("id", 3L)), second.getRows());
+        assertNull(second.getNextPageToken());
+        verify(queryJdbcTemplate).query(contains("WHERE id > :_page_key0"), argThat((SqlParameterSource source) ->
+                source.hasValue("_page_key0") && Long.valueOf(2).equals(source.getValue("_page_key0"))
+                        && Integer.valueOf(3).equals(source.getValue("_page_limit"))), any(ResultSetExtractor.class));
+    }
+
+    @Test
+    @DisplayName("Should reject page tokens issued for other parameter values and invalid page sizes")
+    void testExecutePageRejectsForeignToken() {
+        // Given
+        String sql = "-- @param min_age integer\nSELECT * FROM users WHERE age >= :min_age ORDER BY id";
+        CompiledQuery compiledQuery = new CompiledQuery("get_users_older_than", sql,
+                List.of(new QueryParameter("min_age", QueryParameter.Type.INTEGER, null)), QueryOptions.NONE, new SqlValidator().validateSql(sql), Instant.now());
+        when(queryJdbcTemplate.query(anyString(), any(SqlParameterSource.class), any(ResultSetExtractor.class)))
+                .thenReturn(List.of(Map.of("id", 1L), Map.of("id", 2L)));
+        String token = queryService.executePage(compiledQuery, Map.of("min_age", 20), 1, null).getNextPageToken();
+
+        // When & Then
+        assertEquals("Invalid page token", assertThrows(IllegalArgumentException.class,
+                () -> queryService.executePage(compiledQuery, Map.of("min_age", 40), 1, token)).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> queryService.executePage(compiledQuery, Map.of("min_age", 20), 0, null));
+        assertThrows(IllegalArgumentException.class, () -> queryService.executePage(compiledQuery, Map.of("min_age", 20), 1001, null));
+        verify(queryJdbcTemplate, times(1)).query(anyString(), any(SqlParameterSource.class), any(ResultSetExtractor.class));
+    }
+
+    @Test
+    @DisplayName("Should compile the @cache directive into the query options")
+    void testCompileQueryWithCacheDirective() throws IOException {
+        // Given
+        String sql = "-- @cache 5m\nSELECT * FROM users";
+        when(resolver.getResource("classpath:queries/cached.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        when(sqlValidator.validateSql(sql)).thenReturn(ValidationResult.valid());
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("cached");
+
+        // Then
+        assertTrue(compiledQuery.isValid());
+        assertTrue(compiledQuery.getOptions().isResultCacheEnabled());
+        assertEquals(Duration.ofMinutes(5), compiledQuery.getOptions().getResultCacheTtl());
+    }
+
+    @Test
+    @DisplayName("Should compile the @timeout and @max-rows directives and limit page sizes to max-rows")
+    void testCompileQueryWithGovernorDirectives() throws IOException {
+        // Given
+        String sql = "-- @timeout 5s\n-- @max-rows 50\nSELECT * FROM users ORDER BY id";
+        when(resolver.getResource("classpath:queries/governed.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        when(sqlValidator.validateSql(sql)).thenReturn(ValidationResult.valid());
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("governed");
+
+        // Then
+        assertEquals(Duration.ofSeconds(5), compiledQuery.getOptions().getTimeout());
+        assertEquals(50, compiledQuery.getOptions().getMaxRows());
+        assertEquals("page_size must be between 1 and 50", assertThrows(IllegalArgumentException.class,
+                () -> queryService.executePage(compiledQuery, Map.of(), 51, null)).getMessage());
+    }
+
+    @Test
+    @DisplayName("Should reject an invalid @cache directive")
+    void testCompileQueryWithInvalidCacheDirective() throws IOException {
+        // Given
+        String sql = "-- @cache never\nSELECT * FROM users";
+        when(resolver.getResource("classpath:queries/cached.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("cached");
+
+        // Then
+        assertFalse(compiledQuery.isValid());
+        assertEquals("Invalid @cache directive: never", compiledQuery.getValidationResult().getErrorMessage());
+        verifyNoInteractions(sqlValidator);
+    }
+
+    @Test
+    @DisplayName("Should run a cached query once per parameter values and serve repeats from the cache")
+    void testExecuteCachedQuery() {
+        // Given
+        String sql = "SELECT * FROM users WHERE age >= :min_age";
+        CompiledQuery compiledQuery = new CompiledQuery("get_users_older_than", sql,
+                List.of(new QueryParameter("min_age", QueryParameter.Type.INTEGER, null)),
+                new QueryOptions(Duration.ofMinutes(5), null, null, false, null, null, null, null), ValidationResult.valid(), Instant.now());
+        when(queryJdbcTemplate.query(eq(sql), any(SqlParameterSource.class), any(ResultSetExtractor.class)))
+                .thenReturn(List.of(Map.of("id", 1)));
+
+        // When
+        List<RawValue> first = queryService.executeCachedQuery(compiledQuery, Map.of("min_age", 30));
+        List<RawValue> second = queryService.executeCachedQuery(compiledQuery, Map.of("min_age", "30"));
+        queryService.executeCachedQuery(compiledQuery, Map.of("min_age", 40));
+
+        // Then
+        assertSame(first, second);
+        assertEquals("{\"id\":1}", first.get(0).rawValue().toString());
+        verify(queryJdbcTemplate, times(2)).query(eq(sql), any(SqlParameterSource.class), any(ResultSetExtractor.class));
+    }
+
+    @Test
+    @DisplayName("Should not use the result cache for queries without @cache")
+    void testExecuteCachedQueryNotEnabled() {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+                QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> queryService.executeCachedQuery(compiledQuery, Map.of()));
+        verifyNoInteractions(queryJdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("Should time load, validation, execution and row mapping and count the rows per query")
+    void testExecuteQueryRecordsMetrics() throws Exception {
+        // Given
+        Resource resource = new ByteArrayResource("SELECT * FROM users".getBytes(StandardCharsets.UTF_8));
+        when(resolver.getResource("classpath:queries/get_user_data.sql")).thenReturn(resource);
+        when(sqlValidator.validateSql("SELECT * FROM users")).thenReturn(ValidationResult.valid());
+        ResultSet resultSet = mock(ResultSet.class);
+        when(queryJdbcTemplate.query(eq("SELECT * FROM users"), any(SqlParameterSource.class), any(ResultSetExtractor.class)))
+                .thenAnswer(invocation -> invocation.<ResultSetExtractor<?>>getArgument(2).extractData(resultSet));
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("get_user_data");
+        List<Map<String, Object>> results = queryService.executeQuery(compiledQuery);
+
+        // Then
+        assertTrue(results.isEmpty());
+        for (String phase : List.of(QueryMetrics.LOAD, QueryMetrics.VALIDATE, QueryMetrics.EXECUTE, QueryMetrics.MAP)) {
+            assertEquals(1, meterRegistry.get(QueryMetrics.PHASE).tag("phase", phase)
+                    .tag("query", "get_user_data").tag("outcome", QueryMetrics.SUCCESS).timer().count(), phase);
+        }
+        assertEquals(1, meterRegistry.get(QueryMetrics.ROWS).tag("query", "get_user_data").summary().count());
+    }
+
+    @Test
+    @DisplayName("Should time a failed execution with the error outcome")
+    void testExecuteQueryRecordsFailure() {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+                QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        when(queryJdbcTemplate.query(anyString(), any(SqlParameterSource.class), any(ResultSetExtractor.class)))
+                .thenThrow(new RuntimeException("Table does not exist"));
+
+        // When & Then
+        assertThrows(RuntimeException.class, () -> queryService.executeQuery(compiledQuery));
+        assertEquals(1, meterRegistry.get(QueryMetrics.PHASE).tag("phase", QueryMetrics.EXECUTE)
+                .tag("outcome", QueryMetrics.ERROR).timer().count());
+        assertNull(meterRegistry.find(QueryMetrics.ROWS).summary());
+    }
+
+    @Test
+    @DisplayName("Should run the snapshot action and return its result")
+    void testInSnapshot() {
+        // When
+        List<Integer> result = queryService.inSnapshot(() -> List.of(1, 2));
+
+        // Then
+        assertEquals(List.of(1, 2), result);
+    }
+
+    @Test
+    @DisplayName("Should roll a failed action back to its savepoint and keep a successful one")
+    void testInSavepoint() {
+        // Given
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        TransactionStatus failedStatus = mock(TransactionStatus.class);
+        TransactionStatus okStatus = mock(TransactionStatus.class);
+        when(transactionManager.getTransaction(any())).thenReturn(failedStatus, okStatus);
+        ReflectionTestUtils.setField(queryService, "transactionManager", transactionManager);
+
+        // When
+        String failed = queryService.inSavepoint(() -> "failed", "failed"::equals);
+        String ok = queryService.inSavepoint(() -> "ok", "failed"::equals);
+
+        // Then
+        assertEquals("failed", failed);
+        assertEquals("ok", ok);
+        verify(transactionManager, times(2)).getTransaction(argThat(definition ->
+                definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_NESTED));
+        verify(failedStatus).setRollbackOnly();
+        verify(okStatus, never()).setRollbackOnly();
+    }
+
+    @Test
+    @DisplayName("Should report a statement cancelled by its timeout as QueryTimeoutException")
+    void testExecuteQueryTimeout() {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT pg_sleep(60)", List.of(),
+                new QueryOptions(null, Duration.ofSeconds(5), null, false, null, null, null, null), ValidationResult.valid(), Instant.now());
+        when(queryJdbcTemplate.query(anyString(), any(SqlParameterSource.class), any(ResultSetExtractor.class)))
+                .thenThrow(new UncategorizedSQLException("query", "SELECT pg_sleep(60)",
+                        new SQLException("canceling statement due to statement timeout", "57014")));
+
+        // When
+        QueryTimeoutException exception = assertThrows(QueryTimeoutException.class, () -> queryService.executeQuery(compiledQuery));
+
+        // Then
+        assertEquals("Query exceeded its timeout of 5 s", exception.getMessage());
+        assertEquals(1, meterRegistry.get(QueryMetrics.PHASE).tag("phase", QueryMetrics.EXECUTE)
+                .tag("outcome", QueryMetrics.TIMEOUT).timer().count());
+    }
+
+    @Test
+    @DisplayName("Should read the @primary directive")
+    void testCompileQueryPinnedToPrimary() throws IOException {
+        // Given
+        String sql = "-- @primary\nSELECT * FROM users";
+        when(resolver.getResource("classpath:queries/pinned.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        when(sqlValidator.validateSql(sql)).thenReturn(ValidationResult.valid());
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("pinned");
+
+        // Then
+        assertTrue(compiledQuery.isValid());
+        assertTrue(compiledQuery.getOptions().isPrimary());
+    }
+
+    @Test
+    @DisplayName("Should read the @workload directive and reject a malformed class name")
+    void testCompileQueryWorkloadClass() throws IOException {
+        // Given
+        String sql = "-- @workload reporting\nSELECT * FROM users";
+        String malformed = "-- @workload Reporting!\nSELECT * FROM users";
+        when(resolver.getResource("classpath:queries/report.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        when(resolver.getResource("classpath:queries/malformed.sql"))
+                .thenReturn(new ByteArrayResource(malformed.getBytes(StandardCharsets.UTF_8)));
+        when(sqlValidator.validateSql(sql)).thenReturn(ValidationResult.valid());
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("report");
+        CompiledQuery invalid = queryService.getCompiledQuery("malformed");
+
+        // Then
+        assertEquals(WorkloadScheduler.REPORTING, compiledQuery.getOptions().getWorkloadClass());
+        assertFalse(invalid.isValid());
+        assertEquals("Invalid @workload directive: Reporting!", invalid.getValidationResult().getErrorMessage());
+    }
+
+    @Test
+    @DisplayName("Should read the @refresh and @max-stale directives and reject @refresh with a required parameter")
+    void testCompileQueryRefreshSchedule() throws IOException {
+        // Given
+        String sql = "-- @refresh cron 0 0 * * * *\n-- @max-stale 90m\nSELECT * FROM users";
+        String parameterized = "-- @refresh 5m\n-- @param min_age integer\nSELECT * FROM users WHERE age > :min_age";
+        when(resolver.getResource("classpath:queries/report.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        when(resolver.getResource("classpath:queries/parameterized.sql"))
+                .thenReturn(new ByteArrayResource(parameterized.getBytes(StandardCharsets.UTF_8)));
+        when(sqlValidator.validateSql(sql)).thenReturn(ValidationResult.valid());
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("report");
+        CompiledQuery invalid = queryService.getCompiledQuery("parameterized");
+
+        // Then
+        assertTrue(compiledQuery.getOptions().isPrecomputed());
+        assertEquals("cron 0 0 * * * *", compiledQuery.getOptions().getRefreshSchedule().toString());
+        assertEquals(Duration.ofMinutes(90), compiledQuery.getOptions().getMaxStale());
+        assertFalse(invalid.isValid());
+        assertEquals("A query with @refresh cannot have required parameters", invalid.getValidationResult().getErrorMessage());
+    }
+
+    @Test
+    @DisplayName("Should read the @key directive and reject a malformed column list")
+    void testCompileQueryKey() throws IOException {
+        // Given
+        String sql = "-- @key region, id\nSELECT * FROM users";
+        String malformed = "-- @key id, id\nSELECT * FROM users";
+        when(resolver.getResource("classpath:queries/keyed.sql"))
+                .thenReturn(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        when(resolver.getResource("classpath:queries/malformed.sql"))
+                .thenReturn(new ByteArrayResource(malformed.getBytes(StandardCharsets.UTF_8)));
+        when(sqlValidator.validateSql(sql)).thenReturn(ValidationResult.valid());
+
+        // When
+        CompiledQuery compiledQuery = queryService.getCompiledQuery("keyed");
+        CompiledQuery invalid = queryService.getCompiledQuery("malformed");
+
+        // Then
+        assertTrue(compiledQuery.getOptions().isKeyed());
+        assertEquals(List.of("region", "id"), compiledQuery.getOptions().getKey());
+        assertFalse(invalid.isValid());
+        assertEquals("Invalid @key directive: id, id", invalid.getValidationResult().getErrorMessage());
+    }
+
+    @Test
+    @DisplayName("Should run saved queries on a read replica unless pinned to the primary or in a snapshot")
+    void testReplicaRouting() {
+        // Given
+        CompiledQuery replicaQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+                QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        CompiledQuery pinnedQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+                new QueryOptions(null, null, null, true, null, null, null, null), ValidationResult.valid(), Instant.now());
+        List<String> targets = new ArrayList<>();
+        when(queryJdbcTemplate.query(anyString(), any(SqlParameterSource.class), any(ResultSetExtractor.class)))
+                .thenAnswer(invocation -> {
+                    targets.add(String.valueOf(replicaRouter.select()));
+                    return List.of();
+                });
+
+        // When
+        queryService.executeQuery(replicaQuery);
+        queryService.executeQuery(pinnedQuery);
+        queryService.inSnapshot(() -> queryService.executeQuery(replicaQuery));
+
+        // Then
+        assertEquals(List.of("replica-1", "null", "null"), targets);
+        assertNull(replicaRouter.select());
+    }
+
+    @Test
+    @DisplayName("Should warm up a query with EXPLAIN and typed null parameters")
+    void testWarmup() {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_users_older_than", "SELECT * FROM users WHERE age > :min_age",
+                List.of(QueryParameter.parse("min_age integer")), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+
+        // When
+        queryService.warmup(compiledQuery);
+
+        // Then
+        verify(queryJdbcTemplate).query(eq("EXPLAIN SELECT * FROM users WHERE age > :min_age"),
+                argThat((SqlParameterSource parameters) -> parameters.hasValue("min_age")
+                        && parameters.getValue("min_age") == null
+                        && parameters.getSqlType("min_age") == Types.INTEGER),
+                any(ResultSetExtractor.class));
+    }
+
+    @Test
+    @DisplayName("Should plan a query shape once and put an expensive query in the low-priority lane")
+    void testAdmitCostLowPriority() {
+        // Given
+        ReflectionTestUtils.setField(queryService, "queryCostGate", costGate(true));
+        CompiledQuery compiledQuery = new CompiledQuery("get_users_older_than", "SELECT * FROM users WHERE age > :min_age",
+                List.of(QueryParameter.parse("min_age integer")), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        when(queryJdbcTemplate.queryForObject(eq("EXPLAIN (FORMAT JSON) SELECT * FROM users WHERE age > :min_age"),
+                any(SqlParameterSource.class), eq(String.class)))
+                .thenReturn("[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Total Cost\": 5000.5, \"Plan Rows\": 120000}}]");
+
+        // When
+        QueryAdmissionGate.Permit first = queryService.admitCost(compiledQuery, Map.of("min_age", 30), null, false);
+        first.close();
+        QueryAdmissionGate.Permit second = queryService.admitCost(compiledQuery, Map.of("min_age", 40), null, false);
+
+        // Then
+        assertNotNull(first);
+        assertNotNull(second);
+        second.close();
+        verify(queryJdbcTemplate, times(1)).queryForObject(anyString(), any(SqlParameterSource.class), eq(String.class));
+    }
+
+    @Test
+    @DisplayName("Should reject a query estimated above the cost limit and admit cheap or unplannable ones")
+    void testAdmitCostLimits() {
+        // Given
+        ReflectionTestUtils.setField(queryService, "queryCostGate", costGate(true));
+        CompiledQuery expensive = new CompiledQuery("expensive", "SELECT * FROM events", List.of(), QueryOptions.NONE,
+                ValidationResult.valid(), Instant.now());
+        CompiledQuery cheap = new CompiledQuery("cheap", "SELECT * FROM users WHERE id = 1", List.of(), QueryOptions.NONE,
+                ValidationResult.valid(), Instant.now());
+        CompiledQuery unplannable = new CompiledQuery("unplannable", "SELECT 1", List.of(), QueryOptions.NONE,
+                ValidationResult.valid(), Instant.now());
+        when(queryJdbcTemplate.queryForObject(eq("EXPLAIN (FORMAT JSON) SELECT * FROM events"), any(SqlParameterSource.class), eq(String.class)))
+                .thenReturn("[{\"Plan\": {\"Total Cost\": 2500000.0, \"Plan Rows\": 50000000}}]");
+        when(queryJdbcTemplate.queryForObject(eq("EXPLAIN (FORMAT JSON) SELECT * FROM users WHERE id = 1"), any(SqlParameterSource.class), eq(String.class)))
+                .thenReturn("[{\"Plan\": {\"Total Cost\": 8.3, \"Plan Rows\": 1}}]");
+        when(queryJdbcTemplate.queryForObject(eq("EXPLAIN (FORMAT JSON) SELECT 1"), any(SqlParameterSource.class), eq(String.class)))
+                .thenThrow(new UncategorizedSQLException("explain", "EXPLAIN (FORMAT JSON) SELECT 1", new SQLException("syntax error")));
+
+        // When
+        QueryCostExceededException exception = assertThrows(QueryCostExceededException.class,
+                () -> queryService.admitCost(expensive, Map.of(), null, false));
+
+        // Then
+        assertTrue(exception.getMessage().contains("too expensive"));
+        assertNull(queryService.admitCost(cheap, Map.of(), null, false));
+        assertNull(queryService.admitCost(unplannable, Map.of(), null, false));
+    }
+
+    @Test
+    @DisplayName("Should not EXPLAIN inside a snapshot batch and check it against a known estimate only")
+    void testAdmitCostInSnapshot() {
+        // Given
+        ReflectionTestUtils.setField(queryService, "queryCostGate", costGate(true));
+        CompiledQuery expensive = new CompiledQuery("expensive", "SELECT * FROM events", List.of(), QueryOptions.NONE,
+                ValidationResult.valid(), Instant.now());
+        when(queryJdbcTemplate.queryForObject(eq("EXPLAIN (FORMAT JSON) SELECT * FROM events"), any(SqlParameterSource.class), eq(String.class)))
+                .thenReturn("[{\"Plan\": {\"Total Cost\": 2500000.0, \"Plan Rows\": 50000000}}]");
+
+        // When
+        QueryAdmissionGate.Permit unknown = queryService.admitCost(expensive, Map.of(), null, true);
+        assertThrows(QueryCostExceededException.class, () -> queryService.admitCost(expensive, Map.of(), null, false));
+
+        // Then
+        assertNull(unknown);
+        assertThrows(QueryCostExceededException.class, () -> queryService.admitCost(expensive, Map.of(), null, true));
+        verify(queryJdbcTemplate, times(1)).queryForObject(anyString(), any(SqlParameterSource.class), eq(String.class));
+    }
+
+    @Test
+    @DisplayName("Should stream an export with the export timeout instead of the global one")
+    void testExportQuery() {
+        // Given
+        String sql = "SELECT * FROM users WHERE age >= :min_age";
+        CompiledQuery compiledQuery = new CompiledQuery("get_users_older_than", sql,
+                List.of(new QueryParameter("min_age", QueryParameter.Type.INTEGER, null)), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        RowCallbackHandler handler = rs -> { };
+        List<Integer> timeouts = new ArrayList<>();
+        doAnswer(invocation -> {
+            timeouts.add(QueryGovernor.current().getTimeoutSeconds());
+            return null;
+        }).when(queryJdbcTemplate).query(eq(sql), any(SqlParameterSource.class), same(handler));
+
+        // When
+        queryService.exportQuery(compiledQuery, Map.of("min_age", "30"), handler, new QueryCancellation(), Duration.ofMinutes(30));
+
+        // Then
+        assertEquals(List.of(1800), timeouts);
+        assertNull(QueryGovernor.current());
+    }
+
+    @Test
+    @DisplayName("Should copy a query with PostgreSQL COPY under the export timeout")
+    void testCopyQuery() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users -- all of them", List.of(),
+                QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        CopyManager copyManager = mock(CopyManager.class);
+        when(connection.isWrapperFor(PGConnection.class)).thenReturn(true);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(copyManager.copyOut(anyString(), any(OutputStream.class))).thenAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write("id\n1\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        });
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+
+        // When
+        long rows = queryService.copyQuery(compiledQuery, out, Duration.ofMinutes(30));
+
+        // Then
+        assertEquals(1, rows);
+        assertEquals("id\n1\n", out.toString(StandardCharsets.UTF_8));
+        verify(statement).execute("SET LOCAL statement_timeout = 1800000");
+        verify(copyManager).copyOut("COPY (\nSELECT * FROM users -- all of them\n) TO STDOUT WITH (FORMAT csv, HEADER)", out);
+    }
+
+    @Test
+    @DisplayName("Should not copy on databases other than PostgreSQL or with parameters")
+    void testCopyQueryNotSupported() throws Exception {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("get_user_data", "SELECT * FROM users", List.of(),
+                QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        CompiledQuery withParameters = new CompiledQuery("get_users_older_than", "SELECT * FROM users WHERE age > :min_age",
+                List.of(QueryParameter.parse("min_age integer")), QueryOptions.NONE, ValidationResult.valid(), Instant.now());
+        Connection connection = mock(Connection.class);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long rows = queryService.copyQuery(compiledQuery, out, Duration.ofMinutes(30));
+
+        // Then
+        assertEquals(-1, rows);
+        assertEquals(0, out.size());
+        assertThrows(IllegalArgumentException.class, () -> queryService.copyQuery(withParameters, out, Duration.ofMinutes(30)));
+    }
+}
@@ -0,0 +1,210 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QuerySnapshotsTest {
+
+    @Mock
+    private QueryService queryService;
+
+    private final QueryAdmissionGate admissionGate = new QueryAdmissionGate(1, 0, Duration.ZERO, Duration.ofSeconds(2));
+
+    private final ResultVersions resultVersions = new ResultVersions(new ObjectMapper(), DataSize.ofMegabytes(1), Duration.ofMinutes(5));
+
+    private QuerySnapshots snapshots;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        snapshots = new QuerySnapshots(new ObjectMapper(), 1, 0.5, Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(snapshots, "queryService", queryService);
+        ReflectionTestUtils.setField(snapshots, "admissionGate", admissionGate);
+        ReflectionTestUtils.setField(snapshots, "workloadScheduler", new WorkloadScheduler(Map.of(), Map.of(),
+                WorkloadScheduler.INTERACTIVE, "X-Client-Id", Duration.ofSeconds(1), meterRegistry));
+        ReflectionTestUtils.setField(snapshots, "queryMetrics", new QueryMetrics(meterRegistry));
+        ReflectionTestUtils.setField(snapshots, "resultVersions", resultVersions);
+    }
+
+    @AfterEach
+    void tearDown() {
+        snapshots.stop();
+    }
+
+    @Test
+    @DisplayName("Should take a snapshot right away and serve it only for the SQL it was taken with")
+    void testSchedule() throws InterruptedException {
+        // Given
+        CompiledQuery compiledQuery = query("SELECT id FROM users", "1h", null);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of(Map.of("id", 1), Map.of("id", 2)));
+
+        // When
+        snapshots.schedule(compiledQuery);
+        QuerySnapshots.Snapshot snapshot = await(() -> snapshots.get(compiledQuery));
+
+        // Then
+        assertEquals(List.of("{\"id\":1}", "{\"id\":2}"),
+                snapshot.rows().stream().map(row -> String.valueOf(row.rawValue())).toList());
+        assertTrue(snapshot.etag().startsWith("W/\""));
+        assertNull(snapshot.version());
+        assertEquals(Duration.ofHours(2), Duration.between(snapshot.takenAt(), snapshot.expiresAt()));
+        assertNull(snapshots.get(query("SELECT id, name FROM users", "1h", null)));
+        assertEquals(1, admissionGate.getAvailableSlots());
+    }
+
+    @Test
+    @DisplayName("Should refresh a snapshot ahead of its staleness bound and replace it in one swap")
+    void testRefreshAhead() throws InterruptedException {
+        // Given
+        CompiledQuery compiledQuery = query("SELECT count(*) AS total FROM users", "1h", Duration.ofMillis(400));
+        when(queryService.executeQuery(compiledQuery, Map.of()))
+                .thenReturn(List.of(Map.of("total", 1)))
+                .thenReturn(List.of(Map.of("total", 2)));
+        snapshots.schedule(compiledQuery);
+        QuerySnapshots.Snapshot first = await(() -> snapshots.get(compiledQuery));
+
+        // When
+        Thread.sleep(Math.max(0, Duration.between(Instant.now(), first.refreshAt()).toMillis()) + 10);
+        QuerySnapshots.Snapshot aging = snapshots.get(compiledQuery);
+        QuerySnapshots.Snapshot refreshed = await(() -> {
+            QuerySnapshots.Snapshot current = snapshots.get(compiledQuery);
+            return current != null && current != first ? current : null;
+        });
+
+        // Then
+        assertNotNull(aging);
+        assertEquals("{\"total\":2}", String.valueOf(refreshed.rows().get(0).rawValue()));
+        assertNotEquals(first.etag(), refreshed.etag());
+    }
+
+    @Test
+    @DisplayName("Should stop serving a snapshot past its staleness bound when refreshing fails")
+    void testMaxStale() throws InterruptedException {
+        // Given
+        CompiledQuery compiledQuery = query("SELECT id FROM users", "1h", Duration.ofMillis(200));
+        when(queryService.executeQuery(compiledQuery, Map.of()))
+                .thenReturn(List.of(Map.of("id", 1)))
+                .thenThrow(new IllegalStateException("database unavailable"));
+        snapshots.schedule(compiledQuery);
+        QuerySnapshots.Snapshot snapshot = await(() -> snapshots.get(compiledQuery));
+
+        // When
+        Thread.sleep(Math.max(0, Duration.between(Instant.now(), snapshot.expiresAt()).toMillis()) + 10);
+
+        // Then
+        assertNull(snapshots.get(compiledQuery));
+        verify(queryService, timeout(5000).atLeast(2)).executeQuery(compiledQuery, Map.of());
+    }
+
+    @Test
+    @DisplayName("Should not start a refresh on every read after a refresh failed")
+    void testRetryAfterFailedRefresh() throws InterruptedException {
+        // Given
+        CompiledQuery compiledQuery = query("SELECT id FROM users", "1h", Duration.ofSeconds(2));
+        when(queryService.executeQuery(compiledQuery, Map.of()))
+                .thenReturn(List.of(Map.of("id", 1)))
+                .thenThrow(new IllegalStateException("database unavailable"));
+        snapshots.schedule(compiledQuery);
+        QuerySnapshots.Snapshot snapshot = await(() -> snapshots.get(compiledQuery));
+        Thread.sleep(Math.max(0, Duration.between(Instant.now(), snapshot.refreshAt()).toMillis()) + 10);
+        verify(queryService, timeout(5000).times(2)).executeQuery(compiledQuery, Map.of());
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            snapshots.get(compiledQuery);
+        }
+        Thread.sleep(100);
+
+        // Then
+        verify(queryService, times(2)).executeQuery(compiledQuery, Map.of());
+    }
+
+    @Test
+    @DisplayName("Should drop the snapshot of an unscheduled query and never schedule an invalid one")
+    void testUnschedule() throws InterruptedException {
+        // Given
+        CompiledQuery compiledQuery = query("SELECT id FROM users", "1h", null);
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of(Map.of("id", 1)));
+        snapshots.schedule(compiledQuery);
+        await(() -> snapshots.get(compiledQuery));
+
+        // When
+        snapshots.unschedule("report");
+        snapshots.schedule(new CompiledQuery("broken", "SELECT", List.of(),
+                new QueryOptions(null, null, null, false, null, RefreshSchedule.parse("1h"), null, null),
+                ValidationResult.invalid("syntax error"), Instant.now()));
+
+        // Then
+        assertNull(snapshots.get(compiledQuery));
+        assertEquals(0, snapshots.size());
+        verify(queryService, after(100).times(1)).executeQuery(any(CompiledQuery.class), anyMap());
+    }
+
+    @Test
+    @DisplayName("Should version the snapshot of a query declared with @key when it is taken")
+    void testKeyedSnapshot() throws InterruptedException {
+        // Given
+        CompiledQuery compiledQuery = new CompiledQuery("report", "SELECT id FROM users", List.of(), new QueryOptions(null, null, null,
+                false, null, RefreshSchedule.parse("1h"), null, List.of("id")), ValidationResult.valid(), Instant.now());
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of(Map.of("id", 1), Map.of("id", 2)));
+
+        // When
+        snapshots.schedule(compiledQuery);
+        QuerySnapshots.Snapshot snapshot = await(() -> snapshots.get(compiledQuery));
+
+        // Then
+        assertNotNull(snapshot.version());
+        assertEquals(snapshot.version().id(), resultVersions.index(compiledQuery, List.of(Map.of("id", 2), Map.of("id", 1))).id());
+    }
+
+    @Test
+    @DisplayName("Should run fixed-rate and cron schedules at their next time")
+    void testRefreshSchedule() {
+        // Given
+        Instant now = Instant.parse("2026-01-01T10:07:30Z");
+
+        // Then
+        assertEquals(now.plus(Duration.ofMinutes(5)), RefreshSchedule.parse("5m").next(now));
+        assertEquals(Duration.ofMinutes(15), RefreshSchedule.parse("cron 0 0/15 * * * *").interval(now));
+        assertEquals(0, RefreshSchedule.parse("cron 0 0/15 * * * *").next(now).getEpochSecond() % 900);
+        assertThrows(IllegalArgumentException.class, () -> RefreshSchedule.parse("cron every hour"));
+        assertThrows(IllegalArgumentException.class, () -> RefreshSchedule.parse("0s"));
+    }
+
+    private static CompiledQuery query(String sql, String refresh, Duration maxStale) {
+        return new CompiledQuery("report", sql, List.of(), new QueryOptions(null, null, null, false, null,
+                RefreshSchedule.parse(refresh), maxStale, null), ValidationResult.valid(), Instant.now());
+    }
+
+    private static <T> T await(Supplier<T> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        T value = condition.get();
+        while (value == null && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+            value = condition.get();
+        }
+        assertNotNull(value);
+        return value;
+    }
+}
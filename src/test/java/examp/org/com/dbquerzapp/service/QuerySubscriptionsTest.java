@@ -0,0 +1,172 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import examp.org.com.dbquerzapp.validator.SqlValidator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QuerySubscriptionsTest {
+
+    @Mock
+    private QueryService queryService;
+
+    private final TableChangeListener tableChangeListener = new TableChangeListener(new DataSourceProperties(), false,
+            Duration.ofMillis(100), Duration.ofSeconds(1));
+
+    private final CompiledQuery compiledQuery = new CompiledQuery("active_users", "SELECT id FROM users", List.of(),
+            QueryOptions.NONE, new SqlValidator().validateSql("SELECT id FROM users"), Instant.now());
+
+    private ReplicaRouter replicaRouter;
+
+    private QuerySubscriptions subscriptions;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        subscriptions = new QuerySubscriptions(new ObjectMapper(), Duration.ofMillis(100), Duration.ofMinutes(1),
+                Duration.ofMinutes(5), 2, 1, Duration.ofSeconds(3));
+        ReflectionTestUtils.setField(subscriptions, "queryService", queryService);
+        ReflectionTestUtils.setField(subscriptions, "admissionGate", new QueryAdmissionGate(1, 0, Duration.ZERO, Duration.ofSeconds(2)));
+        ReflectionTestUtils.setField(subscriptions, "workloadScheduler", new WorkloadScheduler(Map.of(), Map.of(),
+                WorkloadScheduler.INTERACTIVE, "X-Client-Id", Duration.ofSeconds(1), meterRegistry));
+        ReflectionTestUtils.setField(subscriptions, "queryMetrics", new QueryMetrics(meterRegistry));
+        ReflectionTestUtils.setField(subscriptions, "tableChangeListener", tableChangeListener);
+        replicaRouter = new ReplicaRouter(Map.of("replica-1", replicaWithLag(5)), Duration.ofSeconds(10), "SELECT 0",
+                Duration.ofSeconds(5));
+        replicaRouter.checkReplicas();
+        ReflectionTestUtils.setField(subscriptions, "replicaRouter", replicaRouter);
+        subscriptions.start();
+        lenient().when(queryService.bindParameters(eq(compiledQuery), anyMap())).thenReturn(new MapSqlParameterSource());
+        lenient().when(queryService.getCompiledQuery("active_users")).thenReturn(compiledQuery);
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscriptions.stop();
+    }
+
+    @Test
+    @DisplayName("Should run the query once for every subscriber of the same result")
+    void testSharedFeed() {
+        // Given
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of(Map.of("id", 1)));
+
+        // When
+        subscriptions.subscribe(compiledQuery, Map.of());
+        subscriptions.subscribe(compiledQuery, Map.of());
+
+        // Then
+        verify(queryService, timeout(5000)).executeQuery(compiledQuery, Map.of());
+        verify(queryService, after(300).times(1)).executeQuery(compiledQuery, Map.of());
+        assertEquals(2, subscriptions.getSubscriberCount());
+        assertEquals(1, subscriptions.getFeedCount());
+    }
+
+    @Test
+    @DisplayName("Should run the query again once per burst of changes to a table it reads")
+    void testTableChanged() {
+        // Given
+        when(queryService.executeQuery(compiledQuery, Map.of()))
+                .thenReturn(List.of(Map.of("id", 1)))
+                .thenReturn(List.of(Map.of("id", 1), Map.of("id", 2)));
+        subscriptions.subscribe(compiledQuery, Map.of());
+        verify(queryService, timeout(5000)).executeQuery(compiledQuery, Map.of());
+
+        // When
+        tableChangeListener.changed("users");
+        tableChangeListener.changed("users");
+        tableChangeListener.changed("orders");
+        tableChangeListener.changed("users");
+
+        // Then
+        verify(queryService, timeout(5000).times(2)).executeQuery(compiledQuery, Map.of());
+        verify(queryService, after(400).times(2)).executeQuery(compiledQuery, Map.of());
+    }
+
+    @Test
+    @DisplayName("Should run the query on the primary even when a lagging replica is in rotation")
+    void testFeedRunsOnPrimary() {
+        // Given
+        List<String> selected = new CopyOnWriteArrayList<>();
+        when(queryService.executeQuery(compiledQuery, Map.of())).thenAnswer(invocation -> {
+            // the route QueryService opens for the query
+            try (ReplicaRouter.Route route = replicaRouter.route(compiledQuery.getOptions())) {
+                selected.add(String.valueOf(replicaRouter.select()));
+            }
+            return List.of(Map.of("id", 1));
+        });
+
+        // When
+        subscriptions.subscribe(compiledQuery, Map.of());
+
+        // Then
+        verify(queryService, timeout(5000)).executeQuery(compiledQuery, Map.of());
+        assertEquals(1, replicaRouter.getAvailableReplicas());
+        assertEquals(List.of("null"), selected);
+    }
+
+    @Test
+    @DisplayName("Should reject subscribers above the limit with a retry hint")
+    void testMaxSubscribers() {
+        // Given
+        lenient().when(queryService.executeQuery(compiledQuery, Map.of())).thenReturn(List.of());
+        subscriptions.subscribe(compiledQuery, Map.of());
+        subscriptions.subscribe(compiledQuery, Map.of());
+
+        // When
+        QueryRejectedException exception = assertThrows(QueryRejectedException.class,
+                () -> subscriptions.subscribe(compiledQuery, Map.of()));
+
+        // Then
+        assertEquals(3, exception.getRetryAfterSeconds());
+        assertEquals(2, subscriptions.getSubscriberCount());
+    }
+
+    @Test
+    @DisplayName("Should read the tables of the query from its FROM clauses")
+    void testTables() {
+        // Then
+        assertEquals(List.of("users"), compiledQuery.getTables());
+        assertEquals("\"dbquerzapp_users\"", TableChangeListener.channel("users"));
+        assertFalse(tableChangeListener.isActive());
+    }
+
+    private static DataSource replicaWithLag(double seconds) throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getDouble(1)).thenReturn(seconds);
+        Statement statement = mock(Statement.class);
+        when(statement.executeQuery("SELECT 0")).thenReturn(resultSet);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+}
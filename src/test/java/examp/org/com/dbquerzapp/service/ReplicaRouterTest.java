@@ -0,0 +1,145 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRouterTest {
+
+    @Test
+    @DisplayName("Should use the replicas round robin inside a route and the primary outside of it")
+    void testRoundRobin() {
+        // Given
+        ReplicaRouter router = router(mock(DataSource.class), mock(DataSource.class));
+
+        // When
+        String outside = router.select();
+        String first;
+        String second;
+        String third;
+        try (ReplicaRouter.Route route = router.route(QueryOptions.NONE)) {
+            first = router.select();
+            second = router.select();
+            third = router.select();
+        }
+
+        // Then
+        assertNull(outside);
+        assertNotEquals(first, second);
+        assertEquals(first, third);
+        assertNull(router.select());
+    }
+
+    @Test
+    @DisplayName("Should keep pinned queries and enclosing primary routes on the primary")
+    void testPrimaryRoutes() {
+        // Given
+        ReplicaRouter router = router(mock(DataSource.class));
+
+        // When
+        String pinned;
+        try (ReplicaRouter.Route route = router.route(new QueryOptions(null, null, null, true, null, null, null, null))) {
+            pinned = router.select();
+        }
+        String nested;
+        try (ReplicaRouter.Route outer = router.primary();
+             ReplicaRouter.Route inner = router.route(QueryOptions.NONE)) {
+            nested = router.select();
+        }
+
+        // Then
+        assertNull(pinned);
+        assertNull(nested);
+    }
+
+    @Test
+    @DisplayName("Should skip replicas that fail their health check or lag too far behind")
+    void testHealthCheck() throws SQLException {
+        // Given
+        DataSource lagging = replicaWithLag(60);
+        DataSource down = mock(DataSource.class);
+        when(down.getConnection()).thenThrow(new SQLException("Connection refused"));
+        DataSource healthy = replicaWithLag(0.5);
+        ReplicaRouter router = router(lagging, down, healthy);
+
+        // When
+        router.checkReplicas();
+
+        // Then
+        assertEquals(1, router.getAvailableReplicas());
+        try (ReplicaRouter.Route route = router.route(QueryOptions.NONE)) {
+            assertEquals("replica-3", router.select());
+            assertEquals("replica-3", router.select());
+        }
+    }
+
+    @Test
+    @DisplayName("Should fall back to the primary when no replica is available")
+    void testNoReplicaAvailable() {
+        // Given
+        ReplicaRouter router = router(mock(DataSource.class));
+        router.markUnavailable("replica-1", new SQLException("Connection refused"));
+
+        // When
+        try (ReplicaRouter.Route route = router.route(QueryOptions.NONE)) {
+            // Then
+            assertNull(router.select());
+        }
+        assertEquals(0, router.getAvailableReplicas());
+    }
+
+    @Test
+    @DisplayName("Should open the connection on the primary when the replica refuses it")
+    void testRoutingDataSourceFailover() throws SQLException {
+        // Given
+        DataSource primary = mock(DataSource.class);
+        Connection primaryConnection = mock(Connection.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        DataSource replica = mock(DataSource.class);
+        when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+        ReplicaRouter router = router(replica);
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, router);
+
+        // When
+        Connection connection;
+        try (ReplicaRouter.Route route = router.route(QueryOptions.NONE)) {
+            connection = dataSource.getConnection();
+        }
+
+        // Then
+        assertSame(primaryConnection, connection);
+        assertEquals(0, router.getAvailableReplicas());
+    }
+
+    private static ReplicaRouter router(DataSource... replicas) {
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        for (DataSource replica : replicas) {
+            dataSources.put("replica-" + (dataSources.size() + 1), replica);
+        }
+        return new ReplicaRouter(dataSources, Duration.ofSeconds(10), "SELECT 0", Duration.ofSeconds(5));
+    }
+
+    private static DataSource replicaWithLag(double seconds) throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getDouble(1)).thenReturn(seconds);
+        Statement statement = mock(Statement.class);
+        when(statement.executeQuery("SELECT 0")).thenReturn(resultSet);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+}
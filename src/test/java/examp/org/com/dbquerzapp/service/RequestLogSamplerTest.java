@@ -0,0 +1,40 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestLogSamplerTest {
+
+    @Test
+    @DisplayName("Should allow at most max-per-second lines and start over in the next second")
+    void testRateLimit() {
+        // Given
+        AtomicLong now = new AtomicLong(10_000);
+        RequestLogSampler sampler = new RequestLogSampler(2, now::get);
+
+        // When & Then
+        assertTrue(sampler.sample());
+        assertTrue(sampler.sample());
+        assertFalse(sampler.sample());
+        now.addAndGet(999);
+        assertFalse(sampler.sample());
+        now.addAndGet(1);
+        assertTrue(sampler.sample());
+    }
+
+    @Test
+    @DisplayName("Should log every request when the limit is 0")
+    void testUnlimited() {
+        // Given
+        RequestLogSampler sampler = new RequestLogSampler(0, () -> 0L);
+
+        // When & Then
+        for (int i = 0; i < 100; i++) {
+            assertTrue(sampler.sample());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package examp.org.com.dbquerzapp.service;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultVersionsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ResultVersions resultVersions = new ResultVersions(objectMapper, DataSize.ofMegabytes(1), Duration.ofMinutes(5));
+
+    private final CompiledQuery compiledQuery = keyed("id");
+
+    @Test
+    @DisplayName("Should return the inserted, updated and deleted rows since a known version")
+    void testDelta() {
+        // Given
+        List<Map<String, Object>> before = List.of(user(1, "John"), user(2, "Jane"), user(3, "Bob"), user(4, "Ann"), user(5, "Eve"));
+        List<Map<String, Object>> after = List.of(user(1, "John"), user(2, "Janet"), user(4, "Ann"), user(5, "Eve"), user(6, "Max"));
+        String version = version(before, null).version();
+
+        // When
+        ResultVersions.Versioned versioned = version(after, version);
+
+        // Then
+        ResultVersions.Delta delta = versioned.delta();
+        assertNotNull(delta);
+        assertEquals(version, delta.baseVersion());
+        assertEquals(List.of(user(6, "Max")), delta.inserted());
+        assertEquals(List.of(user(2, "Janet")), delta.updated());
+        assertEquals(1, delta.deleted().size());
+        assertEquals("{\"id\":3}", ((RawValue) delta.deleted().get(0)).rawValue().toString());
+        assertEquals(2, resultVersions.size());
+    }
+
+    @Test
+    @DisplayName("Should merge a kept version against any client version without indexing its rows again")
+    void testDeltaOfKeptVersion() {
+        // Given
+        String first = version(List.of(user(1, "John"), user(2, "Jane"), user(3, "Bob")), null).version();
+        String second = version(List.of(user(1, "John"), user(2, "Janet"), user(3, "Bob")), null).version();
+        List<Map<String, Object>> current = List.of(user(3, "Bob"), user(2, "Janet"), user(1, "Johnny"));
+        ResultVersions.Version kept = resultVersions.index(compiledQuery, current);
+
+        // When
+        ResultVersions.Versioned sinceFirst = resultVersions.delta(compiledQuery, kept, current, first);
+        ResultVersions.Versioned sinceSecond = resultVersions.delta(compiledQuery, kept, current, second);
+
+        // Then
+        assertEquals(kept.id(), sinceFirst.version());
+        assertEquals(List.of(user(1, "Johnny"), user(2, "Janet")), sinceFirst.delta().updated());
+        assertEquals(1, sinceSecond.delta().updated().size());
+        assertSame(current.get(2), sinceSecond.delta().updated().get(0));
+        assertEquals(3, resultVersions.size());
+    }
+
+    @Test
+    @DisplayName("Should version the same rows alike in any order and whether serialized or not")
+    void testVersionIgnoresOrderAndForm() throws Exception {
+        // Given
+        List<Map<String, Object>> rows = List.of(user(1, "John"), user(2, "Jane"));
+        List<RawValue> serialized = List.of(
+                new RawValue(new SerializedString(objectMapper.writeValueAsString(user(2, "Jane")))),
+                new RawValue(new SerializedString(objectMapper.writeValueAsString(user(1, "John")))));
+
+        // When
+        ResultVersions.Versioned first = version(rows, null);
+        ResultVersions.Versioned second = version(serialized, first.version());
+
+        // Then
+        assertEquals(first.version(), second.version());
+        assertNull(first.delta());
+        assertTrue(second.delta().inserted().isEmpty());
+        assertTrue(second.delta().updated().isEmpty());
+        assertTrue(second.delta().deleted().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should fall back to the full result for an unknown version or a delta as large as the result")
+    void testFullResultFallback() {
+        // Given
+        String version = version(List.of(user(1, "John")), null).version();
+
+        // When
+        ResultVersions.Versioned unknown = version(List.of(user(1, "John")), "0");
+        ResultVersions.Versioned replaced = version(List.of(user(2, "Jane")), version);
+
+        // Then
+        assertNotNull(unknown.version());
+        assertNull(unknown.delta());
+        assertNull(replaced.delta());
+    }
+
+    @Test
+    @DisplayName("Should not version truncated results or results whose key is not unique")
+    void testUnversionedResults() {
+        // When
+        ResultVersions.Versioned truncated = version(new TruncatedRows<>(List.of(user(1, "John"))), null);
+        ResultVersions.Versioned duplicate = version(List.of(user(1, "John"), user(1, "Jane")), null);
+
+        // Then
+        assertNull(truncated);
+        assertNull(duplicate);
+        assertEquals(0, resultVersions.size());
+    }
+
+    @Test
+    @DisplayName("Should reject a result without a column of the key")
+    void testMissingKeyColumn() {
+        // When
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> resultVersions.index(keyed("user_id"), List.of(user(1, "John"))));
+
+        // Then
+        assertEquals("The result has no column user_id of the @key directive", exception.getMessage());
+    }
+
+    private ResultVersions.Versioned version(List<?> rows, String sinceVersion) {
+        ResultVersions.Version version = resultVersions.index(compiledQuery, rows);
+        return version != null ? resultVersions.delta(compiledQuery, version, rows, sinceVersion) : null;
+    }
+
+    private static Map<String, Object> user(int id, String name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", name);
+        return row;
+    }
+
+    private static CompiledQuery keyed(String key) {
+        return new CompiledQuery("users", "SELECT id, name FROM users", List.of(),
+                new QueryOptions(null, null, null, false, null, null, null, List.of(key)), ValidationResult.valid(), Instant.now());
+    }
+}
@@ -0,0 +1,135 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StreamingColumnarRowHandlerTest {
+
+    @Test
+    @DisplayName("Should write typed columns in batches with validity bitmaps and a success trailer")
+    void testBatchesAndTypes() throws Exception {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingColumnarRowHandler handler = new StreamingColumnarRowHandler(out, 2);
+
+        // When
+        handler.begin();
+        handler.processRow(row(1L, 1.5, true, "John", new BigDecimal("10.50")));
+        handler.processRow(row(2L, null, false, null, new BigDecimal("0.1")));
+        handler.processRow(row(3L, 2.0, null, "Jane", null));
+        handler.end(null, 500, 42);
+
+        // Then
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("DBQC", new String(in.readNBytes(4), StandardCharsets.US_ASCII));
+        assertEquals(StreamingColumnarRowHandler.VERSION, in.readByte());
+        assertEquals(5, in.readInt());
+        byte[] expectedTypes = {StreamingColumnarRowHandler.INT64, StreamingColumnarRowHandler.FLOAT64,
+                StreamingColumnarRowHandler.BOOLEAN, StreamingColumnarRowHandler.STRING, StreamingColumnarRowHandler.STRING};
+        String[] expectedLabels = {"id", "score", "active", "name", "balance"};
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expectedTypes[i], in.readByte());
+            assertEquals(expectedLabels[i], readString(in));
+        }
+
+        // first batch: two rows
+        assertEquals(2, in.readInt());
+        assertEquals(0b11, in.readByte());
+        assertEquals(16, in.readInt());
+        assertEquals(1L, in.readLong());
+        assertEquals(2L, in.readLong());
+        assertEquals(0b01, in.readByte());
+        assertEquals(8, in.readInt());
+        assertEquals(1.5, in.readDouble());
+        assertEquals(0b11, in.readByte());
+        assertEquals(2, in.readInt());
+        assertTrue(in.readBoolean());
+        assertFalse(in.readBoolean());
+        assertEquals(0b01, in.readByte());
+        in.readInt();
+        assertEquals("John", readString(in));
+        assertEquals(0b11, in.readByte());
+        in.readInt();
+        assertEquals("10.50", readString(in));
+        assertEquals("0.1", readString(in));
+
+        // second batch: the remaining row
+        assertEquals(1, in.readInt());
+        assertEquals(0b1, in.readByte());
+        assertEquals(8, in.readInt());
+        assertEquals(3L, in.readLong());
+        in.readByte();
+        in.readNBytes(in.readInt());
+        assertEquals(0, in.readByte());
+        assertEquals(0, in.readInt());
+        assertEquals(1, in.readByte());
+        in.readNBytes(in.readInt());
+        assertEquals(0, in.readByte());
+        assertEquals(0, in.readInt());
+
+        // trailer
+        assertEquals(0, in.readInt());
+        assertEquals(0, in.readByte());
+        assertEquals(42L, in.readLong());
+        assertEquals(-1, in.read());
+        assertEquals(3, handler.getRowCount());
+    }
+
+    @Test
+    @DisplayName("Should write an empty header and the error in the trailer when the query fails before any row")
+    void testFailureWithoutRows() throws IOException {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingColumnarRowHandler handler = new StreamingColumnarRowHandler(out, 0);
+
+        // When
+        handler.end("Error while executing query", 500, 7);
+
+        // Then
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        in.readNBytes(5);
+        assertEquals(0, in.readInt());
+        assertEquals(0, in.readInt());
+        assertEquals(1, in.readByte());
+        assertEquals(7L, in.readLong());
+        assertEquals("Error while executing query", readString(in));
+        assertEquals(500, in.readInt());
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+
+    private static ResultSet row(Long id, Double score, Boolean active, String name, BigDecimal balance) throws SQLException {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(5);
+        String[] labels = {"id", "score", "active", "name", "balance"};
+        int[] types = {Types.BIGINT, Types.DOUBLE, Types.BOOLEAN, Types.VARCHAR, Types.NUMERIC};
+        for (int i = 0; i < labels.length; i++) {
+            when(metaData.getColumnLabel(i + 1)).thenReturn(labels[i]);
+            when(metaData.getColumnType(i + 1)).thenReturn(types[i]);
+        }
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getMetaData()).thenReturn(metaData);
+        when(rs.getObject(1)).thenReturn(id);
+        when(rs.getObject(2)).thenReturn(score);
+        when(rs.getObject(3)).thenReturn(active);
+        when(rs.getObject(4)).thenReturn(name);
+        when(rs.getObject(5)).thenReturn(balance);
+        return rs;
+    }
+}
@@ -0,0 +1,69 @@
+package examp.org.com.dbquerzapp.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StreamingCsvRowHandlerTest {
+
+    @Test
+    @DisplayName("Should write a header row and quote fields the way COPY does")
+    void testQuoting() throws Exception {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingCsvRowHandler handler = new StreamingCsvRowHandler(out);
+
+        // When
+        handler.begin();
+        handler.processRow(row(1, "Doe, Jane", new BigDecimal("10.50")));
+        handler.processRow(row(2, "say \"hi\"\nbye", null));
+        handler.processRow(row(3, "", new BigDecimal("0.1")));
+        handler.end(null, 0, 42);
+
+        // Then
+        assertEquals("id,name,balance\n"
+                + "1,\"Doe, Jane\",10.50\n"
+                + "2,\"say \"\"hi\"\"\nbye\",\n"
+                + "3,\"\",0.1\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals(3, handler.getRowCount());
+    }
+
+    @Test
+    @DisplayName("Should write nothing for an empty result")
+    void testEmptyResult() throws Exception {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingCsvRowHandler handler = new StreamingCsvRowHandler(out);
+
+        // When
+        handler.begin();
+        handler.end(null, 0, 1);
+        handler.close();
+
+        // Then
+        assertEquals(0, out.size());
+        assertEquals(0, handler.getRowCount());
+    }
+
+    private static ResultSet row(Object... values) throws SQLException {
+        String[] labels = {"id", "name", "balance"};
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        lenient().when(metaData.getColumnCount()).thenReturn(values.length);
+        ResultSet rs = mock(ResultSet.class);
+        lenient().when(rs.getMetaData()).thenReturn(metaData);
+        for (int i = 0; i < values.length; i++) {
+            lenient().when(metaData.getColumnLabel(i + 1)).thenReturn(labels[i]);
+            lenient().when(rs.getObject(i + 1)).thenReturn(values[i]);
+        }
+        return rs;
+    }
+}
@@ -0,0 +1,166 @@
+package examp.org.com.dbquerzapp.service;
+
+import examp.org.com.dbquerzapp.validator.ValidationResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    @DisplayName("Should pick the class of the client, else of the query, else the default class")
+    void testResolve() {
+        // Given
+        WorkloadScheduler scheduler = scheduler(Map.of(
+                WorkloadScheduler.INTERACTIVE, settings(4, 0, 0),
+                WorkloadScheduler.REPORTING, settings(2, 0, 0)));
+        CompiledQuery plain = query(null);
+        CompiledQuery report = query(WorkloadScheduler.REPORTING);
+        CompiledQuery unknown = query("analytics");
+
+        // When
+        WorkloadScheduler.Workload system = scheduler.resolve(report);
+        request("nightly-batch", "10.0.0.1");
+        WorkloadScheduler.Workload batch = scheduler.resolve(plain);
+        request(null, "10.0.0.2");
+        WorkloadScheduler.Workload byQuery = scheduler.resolve(report);
+        WorkloadScheduler.Workload byDefault = scheduler.resolve(unknown);
+
+        // Then
+        assertEquals(new WorkloadScheduler.Workload(WorkloadScheduler.REPORTING, WorkloadScheduler.SYSTEM_CLIENT), system);
+        assertEquals(new WorkloadScheduler.Workload(WorkloadScheduler.REPORTING, "nightly-batch"), batch);
+        assertEquals(new WorkloadScheduler.Workload(WorkloadScheduler.REPORTING, "10.0.0.2"), byQuery);
+        assertEquals(new WorkloadScheduler.Workload(WorkloadScheduler.INTERACTIVE, "10.0.0.2"), byDefault);
+    }
+
+    @Test
+    @DisplayName("Should give a waiting client its turn before a client that floods the queue")
+    void testFairQueuing() throws InterruptedException {
+        // Given
+        WorkloadScheduler scheduler = scheduler(Map.of(WorkloadScheduler.INTERACTIVE, settings(1, 0, 0)));
+        WorkloadScheduler.Workload flooding = new WorkloadScheduler.Workload(WorkloadScheduler.INTERACTIVE, "a");
+        WorkloadScheduler.Workload other = new WorkloadScheduler.Workload(WorkloadScheduler.INTERACTIVE, "b");
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        QueryAdmissionGate.Permit running = scheduler.acquire(flooding);
+
+        // When
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 3; i++) {
+                executor.submit(() -> admit(scheduler, flooding, admitted));
+            }
+            awaitQueued(scheduler, 3);
+            executor.submit(() -> admit(scheduler, other, admitted));
+            awaitQueued(scheduler, 4);
+            running.close();
+        }
+
+        // Then
+        assertEquals(List.of("b", "a", "a", "a"), admitted);
+        assertEquals(0, scheduler.getRunning(WorkloadScheduler.INTERACTIVE));
+        assertEquals(5, meterRegistry.get(WorkloadScheduler.WAIT).tag("class", WorkloadScheduler.INTERACTIVE)
+                .tag("outcome", QueryMetrics.SUCCESS).timer().count());
+    }
+
+    @Test
+    @DisplayName("Should hold a client to its concurrency quota while others still get slots")
+    void testPerClientQuota() {
+        // Given
+        WorkloadScheduler scheduler = scheduler(Map.of(WorkloadScheduler.INTERACTIVE, settings(2, 1, 0)));
+        WorkloadScheduler.Workload first = new WorkloadScheduler.Workload(WorkloadScheduler.INTERACTIVE, "a");
+        WorkloadScheduler.Workload second = new WorkloadScheduler.Workload(WorkloadScheduler.INTERACTIVE, "b");
+        QueryAdmissionGate.Permit permit = scheduler.acquire(first);
+
+        // When
+        assertThrows(QueryRejectedException.class, () -> scheduler.acquire(first));
+        QueryAdmissionGate.Permit other = scheduler.acquire(second);
+
+        // Then
+        assertEquals(2, scheduler.getRunning(WorkloadScheduler.INTERACTIVE));
+        assertEquals(0, scheduler.getQueued(WorkloadScheduler.INTERACTIVE));
+        permit.close();
+        permit.close();
+        other.close();
+        assertEquals(0, scheduler.getRunning(WorkloadScheduler.INTERACTIVE));
+    }
+
+    @Test
+    @DisplayName("Should reject a client over its rows per minute until the minute is over")
+    void testRowQuota() {
+        // Given
+        WorkloadScheduler scheduler = scheduler(Map.of(WorkloadScheduler.INTERACTIVE, settings(2, 0, 100)));
+        WorkloadScheduler.Workload heavy = new WorkloadScheduler.Workload(WorkloadScheduler.INTERACTIVE, "a");
+        WorkloadScheduler.Workload light = new WorkloadScheduler.Workload(WorkloadScheduler.INTERACTIVE, "b");
+
+        // When
+        scheduler.acquire(heavy).close();
+        scheduler.recordRows(heavy, 60);
+        scheduler.recordRows(heavy, 40);
+        QueryRejectedException exception = assertThrows(QueryRejectedException.class, () -> scheduler.acquire(heavy));
+
+        // Then
+        assertTrue(exception.getRetryAfterSeconds() >= 1 && exception.getRetryAfterSeconds() <= 60);
+        scheduler.acquire(light).close();
+    }
+
+    private WorkloadScheduler scheduler(Map<String, WorkloadScheduler.ClassSettings> classes) {
+        return new WorkloadScheduler(classes,
+                Map.of("nightly-batch", new WorkloadScheduler.ClientSettings(WorkloadScheduler.REPORTING, 1)),
+                WorkloadScheduler.INTERACTIVE, "X-Client-Id", Duration.ofSeconds(2), meterRegistry);
+    }
+
+    private static WorkloadScheduler.ClassSettings settings(int maxConcurrent, int maxConcurrentPerClient, long rowsPerMinute) {
+        return new WorkloadScheduler.ClassSettings(maxConcurrent, 10, maxConcurrentPerClient > 0 ? Duration.ZERO : Duration.ofSeconds(5),
+                maxConcurrentPerClient, rowsPerMinute);
+    }
+
+    private static CompiledQuery query(String workloadClass) {
+        return new CompiledQuery("q", "SELECT 1", List.of(), new QueryOptions(null, null, null, false, workloadClass, null, null, null),
+                ValidationResult.valid(), Instant.now());
+    }
+
+    private static void request(String client, String remoteAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddress);
+        if (client != null) {
+            request.addHeader("X-Client-Id", client);
+        }
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    private static void admit(WorkloadScheduler scheduler, WorkloadScheduler.Workload workload, List<String> admitted) {
+        try (QueryAdmissionGate.Permit permit = scheduler.acquire(workload)) {
+            admitted.add(workload.client());
+        }
+    }
+
+    private static void awaitQueued(WorkloadScheduler scheduler, int queued) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getQueued(WorkloadScheduler.INTERACTIVE) < queued && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(queued, scheduler.getQueued(WorkloadScheduler.INTERACTIVE));
+    }
+}
@@ -0,0 +1,127 @@
+package examp.org.com.dbquerzapp.validator;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlParserTest {
+
+    private static SelectStatement parse(String sql) {
+        return new SqlParser(new SqlLexer(sql)).parse();
+    }
+
+    @Test
+    @DisplayName("Should build a tree for the WHERE clause with correct precedence")
+    void testWherePrecedence() {
+        SelectStatement statement = parse("SELECT * FROM users WHERE age > 18 AND NOT active = false OR id IN (1, 2)");
+
+        SqlExpression.Binary or = assertInstanceOf(SqlExpression.Binary.class, statement.select().where());
+        assertEquals("OR", or.operator());
+        SqlExpression.Binary and = assertInstanceOf(SqlExpression.Binary.class, or.left());
+        assertEquals("AND", and.operator());
+        assertInstanceOf(SqlExpression.Unary.class, and.right());
+        SqlExpression.InList in = assertInstanceOf(SqlExpression.InList.class, or.right());
+        assertEquals(List.of(new SqlExpression.Literal(1L), new SqlExpression.Literal(2L)), in.values());
+    }
+
+    @Test
+    @DisplayName("Should parse select items, aliases, functions and stars")
+    void testSelectItems() {
+        SelectStatement statement = parse("SELECT DISTINCT u.*, lower(email) mail, -1.5 AS x FROM users u");
+
+        assertTrue(statement.select().distinct());
+        List<SelectStatement.SelectItem> items = statement.select().items();
+        assertEquals(new SqlExpression.Star("u"), items.get(0).expression());
+        SqlExpression.FunctionCall lower = assertInstanceOf(SqlExpression.FunctionCall.class, items.get(1).expression());
+        assertEquals("lower", lower.name());
+        assertEquals("mail", items.get(1).alias());
+        assertEquals(new SqlExpression.Literal(new BigDecimal("-1.5")), items.get(2).expression());
+    }
+
+    @Test
+    @DisplayName("Should parse CASE, BETWEEN, LIKE and IS NULL predicates")
+    void testPredicates() {
+        SelectStatement statement = parse(
+            "SELECT CASE age WHEN 1 THEN 'one' ELSE 'many' END FROM users "
+                + "WHERE age NOT BETWEEN 1 AND 10 AND email LIKE '%@test.com' AND phone IS NOT NULL");
+
+        assertInstanceOf(SqlExpression.Case.class, statement.select().items().get(0).expression());
+        SqlExpression.Binary where = assertInstanceOf(SqlExpression.Binary.class, statement.select().where());
+        assertInstanceOf(SqlExpression.IsNull.class, where.right());
+        SqlExpression.Binary left = assertInstanceOf(SqlExpression.Binary.class, where.left());
+        SqlExpression.Between between = assertInstanceOf(SqlExpression.Between.class, left.left());
+        assertTrue(between.negated());
+        assertEquals("LIKE", assertInstanceOf(SqlExpression.Binary.class, left.right()).operator());
+    }
+
+    @Test
+    @DisplayName("Should collect UNION branches and statement level ORDER BY")
+    void testUnion() {
+        SelectStatement statement = parse("SELECT id FROM a UNION SELECT id FROM b UNION ALL SELECT id FROM c ORDER BY id");
+
+        assertEquals(2, statement.unions().size());
+        assertFalse(statement.unions().get(0).all());
+        assertTrue(statement.unions().get(1).all());
+        assertEquals("c", statement.unions().get(1).select().from().name());
+        assertEquals(new SqlExpression.ColumnReference(List.of("id")), statement.orderBy().get(0).expression());
+    }
+
+    @Test
+    @DisplayName("Should list the tables read by every branch once, as the database names them")
+    void testTables() {
+        SelectStatement statement = parse("SELECT id FROM public.Users UNION SELECT id FROM \"Archive\" UNION SELECT id FROM users");
+
+        assertEquals(List.of("users", "Archive"), statement.tables());
+    }
+
+    @Test
+    @DisplayName("Should reject a non-integer LIMIT")
+    void testInvalidLimit() {
+        SqlValidationException exception = assertThrows(SqlValidationException.class, () -> parse("SELECT * FROM users LIMIT 1.5"));
+        assertTrue(exception.getMessage().contains("expected integer"));
+    }
+
+    @Test
+    @DisplayName("Should reject unknown characters")
+    void testUnexpectedCharacter() {
+        SqlValidationException exception = assertThrows(SqlValidationException.class, () -> parse("SELECT @x FROM users"));
+        assertTrue(exception.getMessage().contains("unexpected character '@'"));
+    }
+
+    @Test
+    @DisplayName("Should parse named parameters and list them once in order of appearance")
+    void testNamedParameters() {
+        SelectStatement statement = parse("SELECT * FROM users WHERE age BETWEEN :min_age AND :max_age OR age = :min_age");
+
+        assertEquals(List.of("min_age", "max_age"), statement.parameters());
+        SqlExpression.Binary or = assertInstanceOf(SqlExpression.Binary.class, statement.select().where());
+        SqlExpression.Between between = assertInstanceOf(SqlExpression.Between.class, or.left());
+        assertEquals(new SqlExpression.Parameter("min_age"), between.low());
+    }
+
+    @Test
+    @DisplayName("Should reject a colon that does not start a parameter name")
+    void testInvalidParameter() {
+        SqlValidationException exception = assertThrows(SqlValidationException.class, () -> parse("SELECT id::text FROM users"));
+        assertTrue(exception.getMessage().contains("unexpected character ':'"));
+    }
+
+    @Test
+    @DisplayName("Should reject nesting deeper than the limit instead of overflowing the stack")
+    void testNestingTooDeep() {
+        String parentheses = "SELECT * FROM users WHERE " + "(".repeat(5000) + "id = 1" + ")".repeat(5000);
+        String not = "SELECT * FROM users WHERE " + "NOT ".repeat(5000) + "active";
+        String signs = "SELECT " + "- ".repeat(5000) + "age FROM users";
+
+        for (String sql : List.of(parentheses, not, signs)) {
+            SqlValidationException exception = assertThrows(SqlValidationException.class, () -> parse(sql));
+            assertTrue(exception.getMessage().contains("nesting too deep"));
+        }
+        String allowed = "(".repeat(SqlParser.MAX_DEPTH - 1) + "id = 1" + ")".repeat(SqlParser.MAX_DEPTH - 1);
+        assertNotNull(parse("SELECT * FROM users WHERE " + allowed).select().where());
+    }
+}
@@ -6,6 +6,8 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.time.Duration;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class SqlValidatorTest {
@@ -263,4 +265,68 @@ class SqlValidatorTest {
         assertFalse(invalidResult.isValid());
         assertEquals("Test error", invalidResult.getErrorMessage());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Keywords inside string literals and quoted identifiers should not be treated as SQL")
+    void testKeywordsInsideLiterals() {
+        String[] validSqls = {
+            "SELECT * FROM users WHERE name = 'drop table'",
+            "SELECT \"update\" FROM users",
+            "SELECT * FROM users WHERE address = 'a; b'"
+        };
+
+        for (String sql : validSqls) {
+            ValidationResult result = sqlValidator.validateSql(sql);
+            assertTrue(result.isValid(), "SQL should be valid: " + sql + " -> " + result.getErrorMessage());
+        }
+    }
+
+    @Test
+    @DisplayName("Dangerous keywords should be reported even after a syntax error")
+    void testDangerousKeywordAfterSyntaxError() {
+        ValidationResult result = sqlValidator.validateSql("SELECT * FORM users WHERE x = 1; DROP TABLE users");
+        assertFalse(result.isValid());
+        assertEquals("Dangerous SQL keyword detected: DROP", result.getErrorMessage());
+    }
+
+    @Test
+    @DisplayName("A single trailing semicolon should be accepted")
+    void testTrailingSemicolon() {
+        assertTrue(sqlValidator.validateSql("SELECT * FROM users;").isValid());
+    }
+
+    @Test
+    @DisplayName("Valid SQL should come back with its syntax tree")
+    void testValidSqlReturnsStatement() {
+        ValidationResult result = sqlValidator.validateSql(
+            "SELECT u.id, COUNT(*) AS total FROM public.users u WHERE age >= 18 GROUP BY u.id ORDER BY total DESC LIMIT 5 OFFSET 10");
+
+        assertTrue(result.isValid());
+        SelectStatement statement = result.getStatement();
+        assertNotNull(statement);
+        assertEquals("users", statement.select().from().name());
+        assertEquals("u", statement.select().from().alias());
+        assertEquals(2, statement.select().items().size());
+        assertEquals("total", statement.select().items().get(1).alias());
+        assertEquals(1, statement.orderBy().size());
+        assertTrue(statement.orderBy().get(0).descending());
+        assertEquals(5L, statement.limit());
+        assertEquals(10L, statement.offset());
+    }
+
+    @Test
+    @DisplayName("Long SELECT lists with CASE expressions should validate in linear time")
+    void testLongSelectListIsLinear() {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(CASE WHEN c").append(i).append(" = 1 THEN 'a' ELSE 'b' END) AS x").append(i);
+        }
+        sql.append(" FROM t WHERE");
+
+        ValidationResult result = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> sqlValidator.validateSql(sql.toString()));
+        assertFalse(result.isValid());
+    }
+}